@@ -0,0 +1,124 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tmatesoft.svn.core.SVNCommitInfo;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryFactory;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNEditor;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator;
+
+/**
+ * Commits per second with a number of concurrent committers working on the same local FSFS
+ * repository, each one in its own directory. Number of committers is changed with JMH
+ * <code>-t</code> option, e.g. <code>-Pjmh.args="-t 8 FSCommit.*"</code>.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(4)
+public class FSCommitBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Repository {
+
+        private final AtomicInteger myCommittersCount = new AtomicInteger();
+        private File myRoot;
+        private SVNURL myURL;
+
+        @Setup
+        public void setUp() throws IOException, SVNException {
+            FSRepositoryFactory.setup();
+            myRoot = File.createTempFile("svnkit-benchmark", ".repo");
+            myRoot.delete();
+            myURL = SVNRepositoryFactory.createLocalRepository(myRoot, true, false);
+        }
+
+        @TearDown
+        public void tearDown() {
+            SVNFileUtil.deleteAll(myRoot, true);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Committer {
+
+        private SVNRepository myRepository;
+        private String myDirectory;
+        private int myCommitsCount;
+
+        @Setup
+        public void setUp(Repository repository) throws SVNException {
+            myRepository = SVNRepositoryFactory.create(repository.myURL);
+            myDirectory = "committer" + repository.myCommittersCount.getAndIncrement();
+
+            final ISVNEditor editor = myRepository.getCommitEditor("add " + myDirectory, null);
+            editor.openRoot(-1);
+            editor.addDir(myDirectory, null, -1);
+            editor.closeDir();
+            editor.closeDir();
+            editor.closeEdit();
+        }
+
+        @TearDown
+        public void tearDown() {
+            myRepository.closeSession();
+        }
+    }
+
+    @Benchmark
+    public long commit(Committer committer) throws SVNException {
+        final String path = committer.myDirectory + "/file" + committer.myCommitsCount++;
+        final byte[] contents = ("contents of " + path + "\n").getBytes();
+
+        final ISVNEditor editor = committer.myRepository.getCommitEditor("add " + path, null);
+        editor.openRoot(-1);
+        editor.openDir(committer.myDirectory, -1);
+        editor.addFile(path, null, -1);
+        editor.changeFileProperty(path, "benchmark", SVNPropertyValue.create(String.valueOf(committer.myCommitsCount)));
+        editor.applyTextDelta(path, null);
+        final String checksum = new SVNDeltaGenerator().sendDelta(path, new ByteArrayInputStream(contents), editor, true);
+        editor.closeFile(path, checksum);
+        editor.closeDir();
+        editor.closeDir();
+        final SVNCommitInfo commitInfo = editor.closeEdit();
+        return commitInfo.getNewRevision();
+    }
+}
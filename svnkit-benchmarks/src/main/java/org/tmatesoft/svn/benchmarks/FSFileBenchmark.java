@@ -0,0 +1,141 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.internal.io.fs.FSFile;
+
+/**
+ * Parses node-revision headers and property lists, the most frequent reads of FSFS revision files.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class FSFileBenchmark {
+
+    @Param({"memory", "file"})
+    public String storage;
+
+    @Param({"10", "100"})
+    public int properties;
+
+    private byte[] myHeader;
+    private byte[] myProperties;
+    private File myHeaderFile;
+    private File myPropertiesFile;
+
+    @Setup
+    public void setUp() throws IOException {
+        myHeader = createHeader();
+        myProperties = createProperties(properties);
+        if ("file".equals(storage)) {
+            myHeaderFile = writeTemporaryFile(myHeader);
+            myPropertiesFile = writeTemporaryFile(myProperties);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (myHeaderFile != null) {
+            myHeaderFile.delete();
+        }
+        if (myPropertiesFile != null) {
+            myPropertiesFile.delete();
+        }
+    }
+
+    @Benchmark
+    public int readHeader() throws SVNException {
+        final FSFile file = myHeaderFile != null ? new FSFile(myHeaderFile) : new FSFile(myHeader);
+        try {
+            final Map header = file.readHeader();
+            return header.size();
+        } finally {
+            file.close();
+        }
+    }
+
+    @Benchmark
+    public int readProperties() throws SVNException {
+        final FSFile file = myPropertiesFile != null ? new FSFile(myPropertiesFile) : new FSFile(myProperties);
+        try {
+            final SVNProperties properties = file.readProperties(false, true);
+            return properties.size();
+        } finally {
+            file.close();
+        }
+    }
+
+    private static byte[] createHeader() throws UnsupportedEncodingException {
+        final StringBuilder header = new StringBuilder();
+        header.append("id: 2-1574.0-1575.r1575/4321\n");
+        header.append("type: file\n");
+        header.append("pred: 2-1574.0-1503.r1503/87654\n");
+        header.append("count: 41\n");
+        header.append("text: 1575 3 1832 10240 3b7de41d2f9cb17a0c2e0fa4a49b3e15 0b9a0a0b1c1f7f4e2a2c6a5d2d5e8b0f0e9c1d2a 1574-17l/_4\n");
+        header.append("props: 1503 8765 312 0 4c0a6a0ce4a1b3fa1a83b4f3c0f7c2e1\n");
+        header.append("cpath: /trunk/svnkit/src/main/java/org/tmatesoft/svn/core/internal/io/fs/FSFile.java\n");
+        header.append("copyroot: 1200 /trunk\n");
+        header.append("\n");
+        return header.toString().getBytes("UTF-8");
+    }
+
+    private static byte[] createProperties(int count) throws UnsupportedEncodingException {
+        final SVNBenchmarkCorpus generator = new SVNBenchmarkCorpus(5);
+        final StringBuilder properties = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            final String name = i == 0 ? "svn:mergeinfo" : "property:" + i;
+            final String value = new String(generator.createText(i == 0 ? 4096 : 16 + i % 64), "US-ASCII");
+            properties.append("K ").append(name.length()).append('\n').append(name).append('\n');
+            properties.append("V ").append(value.length()).append('\n').append(value).append('\n');
+        }
+        properties.append("END\n");
+        return properties.toString().getBytes("UTF-8");
+    }
+
+    private static File writeTemporaryFile(byte[] data) throws IOException {
+        final File file = File.createTempFile("svnkit-benchmark", ".tmp");
+        final FileOutputStream os = new FileOutputStream(file);
+        try {
+            os.write(data);
+        } finally {
+            os.close();
+        }
+        return file;
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * Generates synthetic, reproducible data for benchmarks: file contents, modified revisions
+ * of them and diff windows between revisions.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNBenchmarkCorpus {
+
+    public static final int WINDOW_SIZE = 100 * 1024;
+
+    public static final String TEXT = "text";
+    public static final String BINARY = "binary";
+
+    private static final String[] WORDS = {
+        "public", "private", "static", "final", "void", "int", "long", "return", "if", "else", "for", "while",
+        "new", "null", "true", "false", "this", "myRepository", "getRevision()", "SVNException", "throws", "=", "==",
+        "+", "(", ")", "{", "}", ";", "path", "revision", "i", "0", "1", "length",
+    };
+
+    private final Random myRandom;
+
+    public SVNBenchmarkCorpus(long seed) {
+        myRandom = new Random(seed);
+    }
+
+    public byte[] create(String kind, int length) {
+        return BINARY.equals(kind) ? createBinary(length) : createText(length);
+    }
+
+    /**
+     * Source code like text: indented lines of words from a small vocabulary.
+     */
+    public byte[] createText(int length) {
+        final StringBuilder text = new StringBuilder(length + 100);
+        while (text.length() < length) {
+            final int indent = myRandom.nextInt(4);
+            for (int i = 0; i < indent; i++) {
+                text.append("    ");
+            }
+            final int words = 1 + myRandom.nextInt(10);
+            for (int i = 0; i < words; i++) {
+                text.append(WORDS[myRandom.nextInt(WORDS.length)]).append(' ');
+            }
+            text.append('\n');
+        }
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) text.charAt(i);
+        }
+        return data;
+    }
+
+    /**
+     * Binary data that is partially compressible: random bytes with repeated chunks.
+     */
+    public byte[] createBinary(int length) {
+        final byte[] data = new byte[length];
+        myRandom.nextBytes(data);
+        for (int offset = 4096; offset + 512 <= length; offset += 4096) {
+            System.arraycopy(data, myRandom.nextInt(offset - 512), data, offset, 512);
+        }
+        return data;
+    }
+
+    /**
+     * Returns the next revision of <code>source</code> with <code>editsCount</code> random edits,
+     * every edit replaces, inserts or deletes a short range of bytes.
+     */
+    public byte[] modify(byte[] source, int editsCount) {
+        final ByteArrayOutputStream target = new ByteArrayOutputStream(source.length + editsCount * 64);
+        final int[] positions = new int[editsCount];
+        for (int i = 0; i < editsCount; i++) {
+            positions[i] = myRandom.nextInt(source.length + 1);
+        }
+        Arrays.sort(positions);
+
+        int position = 0;
+        for (int i = 0; i < editsCount; i++) {
+            if (positions[i] < position) {
+                continue;
+            }
+            target.write(source, position, positions[i] - position);
+            position = positions[i];
+
+            final byte[] inserted = createText(myRandom.nextInt(64));
+            final int operation = myRandom.nextInt(3);
+            if (operation != 1) {
+                target.write(inserted, 0, inserted.length);
+            }
+            if (operation != 2) {
+                position = Math.min(source.length, position + myRandom.nextInt(64));
+            }
+        }
+        target.write(source, position, source.length - position);
+        return target.toByteArray();
+    }
+
+    public static SVNDiffWindow createWindow(long sourceOffset, byte[] source, byte[] target) {
+        final SVNDeltaAlgorithm algorithm = new SVNXDeltaAlgorithm();
+        algorithm.computeDelta(source, source.length, target, target.length);
+        final SVNDiffWindow window = new SVNDiffWindow(sourceOffset, source.length, target.length,
+                algorithm.getInstructionsLength(), algorithm.getNewDataLength());
+
+        final ByteBuffer data = algorithm.getData();
+        final byte[] copy = new byte[data.remaining()];
+        data.get(copy);
+        window.setData(ByteBuffer.wrap(copy));
+        return window;
+    }
+
+    public static byte[] toSvndiff(SVNDiffWindow[] windows, boolean writeHeader, int version) {
+        final ByteArrayOutputStream svndiff = new ByteArrayOutputStream();
+        try {
+            for (int i = 0; i < windows.length; i++) {
+                windows[i].writeTo(svndiff, writeHeader && i == 0, version);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return svndiff.toByteArray();
+    }
+}
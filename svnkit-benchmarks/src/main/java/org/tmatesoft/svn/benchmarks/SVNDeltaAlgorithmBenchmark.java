@@ -0,0 +1,90 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNVDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
+
+/**
+ * Computes a delta of a single window, as {@link org.tmatesoft.svn.core.io.diff.SVNDeltaGenerator}
+ * does on commit and import.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SVNDeltaAlgorithmBenchmark {
+
+    @Param({"xdelta", "vdelta"})
+    public String algorithm;
+
+    @Param({SVNBenchmarkCorpus.TEXT, SVNBenchmarkCorpus.BINARY})
+    public String corpus;
+
+    @Param({"100"})
+    public int edits;
+
+    private SVNDeltaAlgorithm myAlgorithm;
+    private byte[] mySource;
+    private byte[] myTarget;
+    private byte[] myUnrelatedTarget;
+
+    @Setup
+    public void setUp() {
+        final SVNBenchmarkCorpus generator = new SVNBenchmarkCorpus(1);
+        myAlgorithm = "vdelta".equals(algorithm) ? (SVNDeltaAlgorithm) new SVNVDeltaAlgorithm() : new SVNXDeltaAlgorithm();
+        mySource = generator.create(corpus, SVNBenchmarkCorpus.WINDOW_SIZE);
+        myTarget = generator.modify(mySource, edits);
+        myUnrelatedTarget = generator.create(corpus, SVNBenchmarkCorpus.WINDOW_SIZE);
+    }
+
+    @Benchmark
+    public int modifiedWindow() {
+        return computeDelta(mySource, myTarget);
+    }
+
+    @Benchmark
+    public int unrelatedWindow() {
+        return computeDelta(mySource, myUnrelatedTarget);
+    }
+
+    @Benchmark
+    public int newFileWindow() {
+        return computeDelta(new byte[0], myTarget);
+    }
+
+    private int computeDelta(byte[] source, byte[] target) {
+        myAlgorithm.computeDelta(source, source.length, target, target.length);
+        final int length = myAlgorithm.getInstructionsLength() + myAlgorithm.getNewDataLength();
+        myAlgorithm.reset();
+        return length;
+    }
+}
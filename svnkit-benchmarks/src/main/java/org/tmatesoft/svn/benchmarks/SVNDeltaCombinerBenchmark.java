@@ -0,0 +1,92 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.io.fs.FSFile;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * Reconstructs a window of the youngest revision of a file from its delta chain,
+ * the way {@link org.tmatesoft.svn.core.internal.io.fs.FSInputStream} reads representations.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SVNDeltaCombinerBenchmark {
+
+    @Param({SVNBenchmarkCorpus.TEXT, SVNBenchmarkCorpus.BINARY})
+    public String corpus;
+
+    @Param({"1", "8"})
+    public int chainLength;
+
+    @Param({"0", "1", "2"})
+    public int version;
+
+    private SVNDeltaCombiner myCombiner;
+    private FSFile[] myDeltas;
+
+    @Setup
+    public void setUp() {
+        final SVNBenchmarkCorpus generator = new SVNBenchmarkCorpus(4);
+        myDeltas = new FSFile[chainLength + 1];
+
+        byte[] revision = generator.create(corpus, SVNBenchmarkCorpus.WINDOW_SIZE);
+        myDeltas[chainLength] = createFile(SVNBenchmarkCorpus.createWindow(0, new byte[0], revision), version);
+        for (int i = chainLength - 1; i >= 0; i--) {
+            final byte[] nextRevision = generator.modify(revision, 20);
+            myDeltas[i] = createFile(SVNBenchmarkCorpus.createWindow(0, revision, nextRevision), version);
+            revision = nextRevision;
+        }
+        myCombiner = new SVNDeltaCombiner();
+    }
+
+    @Benchmark
+    public int combine() throws SVNException {
+        myCombiner.reset();
+        for (int i = 0; i < myDeltas.length; i++) {
+            myDeltas[i].seek(0);
+            final SVNDiffWindow window = myCombiner.readWindow(myDeltas[i], version);
+            final ByteBuffer target = myCombiner.addWindow(window);
+            if (target != null) {
+                return target.remaining();
+            }
+        }
+        return -1;
+    }
+
+    private static FSFile createFile(SVNDiffWindow window, int version) {
+        return new FSFile(SVNBenchmarkCorpus.toSvndiff(new SVNDiffWindow[] {window}, false, version));
+    }
+}
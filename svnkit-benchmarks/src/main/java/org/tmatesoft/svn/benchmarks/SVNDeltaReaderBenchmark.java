@@ -0,0 +1,94 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.benchmarks;
+
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * Parses an svndiff stream of several windows which arrives in network sized chunks.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SVNDeltaReaderBenchmark implements ISVNDeltaConsumer {
+
+    private static final int CHUNK_SIZE = 8192;
+
+    @Param({SVNBenchmarkCorpus.TEXT, SVNBenchmarkCorpus.BINARY})
+    public String corpus;
+
+    @Param({"0", "1", "2"})
+    public int version;
+
+    @Param({"16"})
+    public int windows;
+
+    private SVNDeltaReader myReader;
+    private byte[] mySvndiff;
+    private int myWindowsCount;
+
+    @Setup
+    public void setUp() {
+        final SVNBenchmarkCorpus generator = new SVNBenchmarkCorpus(3);
+        final SVNDiffWindow[] diffWindows = new SVNDiffWindow[windows];
+        for (int i = 0; i < windows; i++) {
+            final byte[] source = generator.create(corpus, SVNBenchmarkCorpus.WINDOW_SIZE);
+            diffWindows[i] = SVNBenchmarkCorpus.createWindow((long) i * source.length, source, generator.modify(source, 100));
+        }
+        mySvndiff = SVNBenchmarkCorpus.toSvndiff(diffWindows, true, version);
+        myReader = new SVNDeltaReader();
+    }
+
+    @Benchmark
+    public int nextWindow() throws SVNException {
+        myWindowsCount = 0;
+        myReader.reset("file", this);
+        for (int offset = 0; offset < mySvndiff.length; offset += CHUNK_SIZE) {
+            myReader.nextWindow(mySvndiff, offset, Math.min(CHUNK_SIZE, mySvndiff.length - offset), "file", this);
+        }
+        return myWindowsCount;
+    }
+
+    public void applyTextDelta(String path, String baseChecksum) {
+    }
+
+    public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+        myWindowsCount++;
+        return null;
+    }
+
+    public void textDeltaEnd(String path) {
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.benchmarks;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+/**
+ * Writes a diff window in svndiff0, svndiff1 and svndiff2 formats and applies it to the source view
+ * held in heap or direct buffers.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SVNDiffWindowBenchmark {
+
+    @Param({SVNBenchmarkCorpus.TEXT, SVNBenchmarkCorpus.BINARY})
+    public String corpus;
+
+    @Param({"100"})
+    public int edits;
+
+    private SVNDiffWindow myWindow;
+    private SVNDiffWindow myNewFileWindow;
+    private byte[] mySource;
+    private byte[] myTargetBuffer;
+    private ByteBuffer myDirectSource;
+    private ByteBuffer myDirectTarget;
+    private CountingOutputStream myOutputStream;
+
+    @Setup
+    public void setUp() {
+        final SVNBenchmarkCorpus generator = new SVNBenchmarkCorpus(2);
+        mySource = generator.create(corpus, SVNBenchmarkCorpus.WINDOW_SIZE);
+        final byte[] target = generator.modify(mySource, edits);
+        myWindow = SVNBenchmarkCorpus.createWindow(0, mySource, target);
+        myNewFileWindow = SVNBenchmarkCorpus.createWindow(0, new byte[0], target);
+        myTargetBuffer = new byte[target.length];
+        myDirectSource = ByteBuffer.allocateDirect(mySource.length);
+        myDirectSource.put(mySource);
+        myDirectSource.clear();
+        myDirectTarget = ByteBuffer.allocateDirect(target.length);
+        myOutputStream = new CountingOutputStream();
+    }
+
+    @Benchmark
+    public long writeTo() throws IOException {
+        myOutputStream.myCount = 0;
+        myWindow.writeTo(myOutputStream, true, false);
+        return myOutputStream.myCount;
+    }
+
+    @Benchmark
+    public long writeToCompressed() throws IOException {
+        myOutputStream.myCount = 0;
+        myWindow.writeTo(myOutputStream, true, true);
+        return myOutputStream.myCount;
+    }
+
+    @Benchmark
+    public long writeNewFileCompressed() throws IOException {
+        myOutputStream.myCount = 0;
+        myNewFileWindow.writeTo(myOutputStream, true, true);
+        return myOutputStream.myCount;
+    }
+
+    @Benchmark
+    public long writeToLZ4() throws IOException {
+        myOutputStream.myCount = 0;
+        myWindow.writeTo(myOutputStream, true, 2);
+        return myOutputStream.myCount;
+    }
+
+    @Benchmark
+    public long writeNewFileLZ4() throws IOException {
+        myOutputStream.myCount = 0;
+        myNewFileWindow.writeTo(myOutputStream, true, 2);
+        return myOutputStream.myCount;
+    }
+
+    @Benchmark
+    public int apply() {
+        return myWindow.apply(mySource, myTargetBuffer);
+    }
+
+    @Benchmark
+    public int applyDirect() {
+        myDirectTarget.clear();
+        return myWindow.apply(myDirectSource, myDirectTarget);
+    }
+
+    private static class CountingOutputStream extends OutputStream {
+
+        private long myCount;
+
+        public void write(int b) {
+            myCount++;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            myCount += len;
+        }
+    }
+}
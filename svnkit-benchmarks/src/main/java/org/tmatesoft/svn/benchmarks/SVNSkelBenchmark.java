@@ -0,0 +1,89 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.benchmarks;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.internal.util.SVNSkel;
+
+/**
+ * Parses skels the working copy database keeps properties and conflicts in.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+public class SVNSkelBenchmark {
+
+    @Param({"10", "100"})
+    public int properties;
+
+    private byte[] myPropertiesSkel;
+    private byte[] myNestedSkel;
+
+    @Setup
+    public void setUp() throws SVNException {
+        final SVNBenchmarkCorpus generator = new SVNBenchmarkCorpus(6);
+        final Map<String, SVNPropertyValue> propertyValues = new LinkedHashMap<String, SVNPropertyValue>();
+        for (int i = 0; i < properties; i++) {
+            propertyValues.put("property:" + i, SVNPropertyValue.create(new String(generator.createText(16 + i % 64))));
+        }
+        propertyValues.put("svn:eol-style", SVNPropertyValue.create("native"));
+        propertyValues.put("svn:mime-type", SVNPropertyValue.create("application/octet-stream"));
+        myPropertiesSkel = SVNSkel.createPropList(propertyValues).unparse();
+
+        final SVNSkel conflicts = SVNSkel.createEmptyList();
+        for (int i = 0; i < properties; i++) {
+            final SVNSkel conflict = SVNSkel.createEmptyList();
+            conflict.prepend(SVNSkel.createAtom("trunk/src/file" + i + ".java"));
+            conflict.prepend(SVNSkel.createAtom(String.valueOf(1000 + i)));
+            final SVNSkel location = SVNSkel.createEmptyList();
+            location.prepend(SVNSkel.createAtom("file"));
+            location.prepend(SVNSkel.createAtom("svn://localhost/repos"));
+            location.prepend(SVNSkel.createAtom("subversion"));
+            conflict.prepend(location);
+            conflict.prepend(SVNSkel.createAtom(i % 2 == 0 ? "text" : "prop"));
+            conflicts.prepend(conflict);
+        }
+        myNestedSkel = conflicts.unparse();
+    }
+
+    @Benchmark
+    public int parsePropertiesSkel() throws SVNException {
+        return SVNSkel.parse(myPropertiesSkel).getListSize();
+    }
+
+    @Benchmark
+    public int parseNestedSkel() throws SVNException {
+        return SVNSkel.parse(myNestedSkel).getListSize();
+    }
+}
@@ -56,6 +56,7 @@ public class SVNAdminCommandEnvironment extends AbstractSVNCommandEnvironment {
     private boolean myIsPre16Compatible;
     private boolean myIsPre17Compatible;
     private boolean myIsWith17Compatible;
+    private boolean myIsWith110Compatible;
     private boolean myIsUsePreCommitHook;
     private boolean myIsUsePostCommitHook;
     private boolean myIsUsePostRevPropChangeHook;
@@ -123,6 +124,8 @@ public class SVNAdminCommandEnvironment extends AbstractSVNCommandEnvironment {
             myIsPre17Compatible = true;
         } else if (option == SVNAdminOption.WITH_17_COMPATIBLE) {
             myIsWith17Compatible = true;
+        } else if (option == SVNAdminOption.WITH_110_COMPATIBLE) {
+            myIsWith110Compatible = true;
         }  else if (option == SVNAdminOption.PARENT_DIR) {
             myParentDir = optionValue.getValue();
             myParentDir = myParentDir.replace(File.separatorChar, '/');
@@ -243,6 +246,10 @@ public class SVNAdminCommandEnvironment extends AbstractSVNCommandEnvironment {
         return myIsWith17Compatible;
     }
 
+    public boolean isWith110Compatible() {
+        return myIsWith110Compatible;
+    }
+
     public boolean isUsePreCommitHook() {
         return myIsUsePreCommitHook;
     }
@@ -39,6 +39,7 @@ public class SVNAdminCreateCommand extends SVNAdminCommand {
         options.add(SVNAdminOption.PRE_16_COMPATIBLE);
         options.add(SVNAdminOption.PRE_17_COMPATIBLE);
         options.add(SVNAdminOption.WITH_17_COMPATIBLE);
+        options.add(SVNAdminOption.WITH_110_COMPATIBLE);
         return options;
     }
 
@@ -46,7 +47,8 @@ public class SVNAdminCreateCommand extends SVNAdminCommand {
         SVNAdminClient client = getEnvironment().getClientManager().getAdminClient();
         client.doCreateRepository(getLocalRepository(), null, false, false,
                 getSVNAdminEnvironment().isPre14Compatible(), getSVNAdminEnvironment().isPre15Compatible(), getSVNAdminEnvironment().isPre16Compatible(),
-                getSVNAdminEnvironment().isPre17Compatible(), getSVNAdminEnvironment().isWith17Compatible() );
+                getSVNAdminEnvironment().isPre17Compatible(), getSVNAdminEnvironment().isWith17Compatible(),
+                getSVNAdminEnvironment().isWith110Compatible());
     }
 
 }
@@ -47,6 +47,7 @@ public class SVNAdminOption extends AbstractSVNOption {
     public static final SVNAdminOption PRE_16_COMPATIBLE = new SVNAdminOption("pre-1.6-compatible");
     public static final SVNAdminOption PRE_17_COMPATIBLE = new SVNAdminOption("pre-1.7-compatible");
     public static final SVNAdminOption WITH_17_COMPATIBLE = new SVNAdminOption("with-1.7-compatible");
+    public static final SVNAdminOption WITH_110_COMPATIBLE = new SVNAdminOption("with-1.10-compatible");
 
     private SVNAdminOption(String name) {
         this(name, null, true);
@@ -174,6 +174,7 @@ public abstract class ServletDAVHandler extends BasicDAVHandler {
 
     protected static final String NAMESPACE_ATTR = "namespace";
 
+    protected static final String DIFF_VERSION_2 = "svndiff2";
     protected static final String DIFF_VERSION_1 = "svndiff1";
     protected static final String DIFF_VERSION = "svndiff";
 
@@ -1663,8 +1664,8 @@ public abstract class ServletDAVHandler extends BasicDAVHandler {
         return contains;
     }
 
-    protected boolean getSVNDiffVersion() {
-        boolean diffCompress = false;
+    protected int getSVNDiffVersion() {
+        int diffVersion = 0;
         for (Enumeration headerEncodings = getRequestHeaders(ACCEPT_ENCODING_HEADER); headerEncodings.hasMoreElements();)
         {
             String currentEncodings = (String) headerEncodings.nextElement();
@@ -1680,8 +1681,11 @@ public abstract class ServletDAVHandler extends BasicDAVHandler {
                 });
 
                 for (int i = encodings.length - 1; i >= 0; i--) {
-                    if (DIFF_VERSION_1.equals(getEncodingName(encodings[i]))) {
-                        diffCompress = true;
+                    if (DIFF_VERSION_2.equals(getEncodingName(encodings[i]))) {
+                        diffVersion = 2;
+                        break;
+                    } else if (DIFF_VERSION_1.equals(getEncodingName(encodings[i]))) {
+                        diffVersion = 1;
                         break;
                     } else if (DIFF_VERSION.equals(getEncodingName(encodings[i]))) {
                         break;
@@ -1689,7 +1693,7 @@ public abstract class ServletDAVHandler extends BasicDAVHandler {
                 }
             }
         }
-        return diffCompress;
+        return diffVersion;
     }
     
     protected FSCommitter getCommitter(FSFS fsfs, FSRoot root, FSTransactionInfo txn, Collection lockTokens, String userName) {
@@ -11,11 +11,9 @@
  */
 package org.tmatesoft.svn.core.internal.delta;
 
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
-import java.util.zip.InflaterInputStream;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -35,6 +33,8 @@ import org.tmatesoft.svn.util.SVNLogType;
  */
 public class SVNDeltaCombiner {
     
+    private static final byte[] EMPTY_SOURCE = new byte[0];
+    
     private SVNDiffWindow myWindow;
     
     private ByteBuffer myWindowData;    
@@ -43,6 +43,7 @@ public class SVNDeltaCombiner {
     private ByteBuffer myTarget;
     private ByteBuffer myRealTarget;
     private ByteBuffer myReadWindowBuffer;
+    private ByteBuffer myDecompressBuffer;
     
     private SVNRangeTree myRangeTree;
     private SVNOffsetsIndex myOffsetsIndex;
@@ -62,6 +63,7 @@ public class SVNDeltaCombiner {
         myWindow = null;
         myWindowData = null;
         myReadWindowBuffer = null;
+        myDecompressBuffer = null;
         myNextWindowData = clearBuffer(myNextWindowData);
         myNextWindowInstructions = null;
         myTarget = null;
@@ -106,10 +108,10 @@ public class SVNDeltaCombiner {
         }
         myReadWindowBuffer.position(0);
         myReadWindowBuffer.limit(myReadWindowBuffer.capacity());
-        if (version == 1) {
+        if (version == 1 || version == 2) {
             // decompress instructions and new data, put back to the buffer.
             try {
-                int[] lenghts = decompress(instructionsLength, dataLength);
+                int[] lenghts = decompress(instructionsLength, dataLength, version);
                 instructionsLength = lenghts[0];
                 dataLength = lenghts[1];
             } catch (IOException e) {
@@ -122,56 +124,38 @@ public class SVNDeltaCombiner {
         return window;
     }
 
-    private int[] decompress(int instructionsLength, int dataLength) throws IOException {
-        int originalPosition = myReadWindowBuffer.position();
-        int realInstructionsLength = readOffset(myReadWindowBuffer);
-        byte[] instructionsData = new byte[realInstructionsLength];
-        byte[] data = null;
+    private int[] decompress(int instructionsLength, int dataLength, int version) throws IOException {
+        // sections are expanded right into a second buffer, which then takes place of the read one.
+        myDecompressBuffer = clearBuffer(myDecompressBuffer);
+        int realInstructionsLength = decompressSection(instructionsLength, version);
         int realDataLength = 0;
-        int compressedLength = instructionsLength - (myReadWindowBuffer.position() - originalPosition);
-        if (realInstructionsLength == compressedLength) {
-            System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), instructionsData, 0, realInstructionsLength);
-            myReadWindowBuffer.position(myReadWindowBuffer.position() + realInstructionsLength);
-        } else {
-            byte[] compressedData = new byte[compressedLength];
-            System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), compressedData, 0, compressedLength);
-            myReadWindowBuffer.position(myReadWindowBuffer.position() + compressedLength);
-            InflaterInputStream is = new InflaterInputStream(new ByteArrayInputStream(compressedData));
-            int read = 0;
-            while(read < realInstructionsLength) {
-                read += is.read(instructionsData, read, realInstructionsLength - read);
-            }
-        }
         if (dataLength > 0) {
-            originalPosition = myReadWindowBuffer.position();
-            realDataLength = readOffset(myReadWindowBuffer);
-            compressedLength = dataLength - (myReadWindowBuffer.position() - originalPosition);
-            data = new byte[realDataLength];
-            if (compressedLength == realDataLength) {
-                System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), data, 0, realDataLength);
-                myReadWindowBuffer.position(myReadWindowBuffer.position() + realDataLength);
-            } else {
-                byte[] compressedData = new byte[compressedLength];
-                System.arraycopy(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), compressedData, 0, compressedLength);
-                myReadWindowBuffer.position(myReadWindowBuffer.position() + compressedLength);
-                InflaterInputStream is = new InflaterInputStream(new ByteArrayInputStream(compressedData));
-                int read = 0;
-                while(read < realDataLength) {
-                    read += is.read(data, read, realDataLength - read);
-                }
-            }
-        }
-        myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
-        myReadWindowBuffer = ensureBufferSize(myReadWindowBuffer, realInstructionsLength + realDataLength);
-        myReadWindowBuffer.put(instructionsData);
-        if (data != null) {
-            myReadWindowBuffer.put(data);
+            realDataLength = decompressSection(dataLength, version);
         }
+        ByteBuffer readBuffer = myReadWindowBuffer;
+        myReadWindowBuffer = myDecompressBuffer;
+        myDecompressBuffer = readBuffer;
         myReadWindowBuffer.position(0);
         myReadWindowBuffer.limit(myReadWindowBuffer.capacity());
         return new int[] {realInstructionsLength, realDataLength};
     }
 
+    private int decompressSection(int sectionLength, int version) throws IOException {
+        int originalPosition = myReadWindowBuffer.position();
+        int realLength = readOffset(myReadWindowBuffer);
+        int compressedLength = sectionLength - (myReadWindowBuffer.position() - originalPosition);
+        myDecompressBuffer = ensureBufferSize(myDecompressBuffer, realLength);
+        if (realLength == compressedLength) {
+            myDecompressBuffer.put(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), realLength);
+        } else {
+            SVNDiffCompression.decompress(myReadWindowBuffer.array(), myReadWindowBuffer.arrayOffset() + myReadWindowBuffer.position(), compressedLength,
+                    myDecompressBuffer.array(), myDecompressBuffer.arrayOffset() + myDecompressBuffer.position(), realLength, version);
+            myDecompressBuffer.position(myDecompressBuffer.position() + realLength);
+        }
+        myReadWindowBuffer.position(myReadWindowBuffer.position() + compressedLength);
+        return realLength;
+    }
+
     public void skipWindow(FSFile file) throws SVNException {
         myReadWindowBuffer = clearBuffer(myReadWindowBuffer);
         myReadWindowBuffer = ensureBufferSize(myReadWindowBuffer, 4096);
@@ -216,7 +200,7 @@ public class SVNDeltaCombiner {
             // apply window, make sure target not less then getTargetViewLength.
             myTarget = clearBuffer(myTarget);
             myTarget = ensureBufferSize(myTarget, window.getTargetViewLength());
-            window.apply(new byte[0], myTarget.array());
+            window.apply(EMPTY_SOURCE, myTarget.array());
             // and then apply myWindow if any.
             ByteBuffer result = null;
             if (myWindow != null) {
@@ -0,0 +1,173 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.tmatesoft.svn.core.io.diff.SVNDiffInstruction;
+
+/**
+ * Compresses and decompresses instructions and new data sections of svndiff1 windows
+ * with pooled {@link Deflater} and {@link Inflater} instances, so that native zlib
+ * streams are not created and finalized for every window. Sections of svndiff2 windows
+ * are compressed with LZ4, see {@link SVNLZ4}.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNDiffCompression {
+
+    private static final int MIN_COMPRESSIBLE_LENGTH = 512;
+    private static final int POOL_SIZE = 32;
+
+    private static final Deflater[] ourDeflaters = new Deflater[POOL_SIZE];
+    private static final Inflater[] ourInflaters = new Inflater[POOL_SIZE];
+    private static int ourDeflatersCount;
+    private static int ourInflatersCount;
+
+    /**
+     * Returns representation of <code>length</code> bytes of <code>src</code> in the given svndiff
+     * <code>version</code>, which should be either <code>1</code> (zlib) or <code>2</code> (LZ4).
+     */
+    public static ByteBuffer compress(byte[] src, int offset, int length, int version) {
+        if (version != 2) {
+            return compress(src, offset, length);
+        }
+        final ByteBuffer buffer = ByteBuffer.allocate(length + 10);
+        SVNDiffInstruction.writeInt(buffer, length);
+        final int position = buffer.position();
+        // there is no minimal length for svndiff2, data is stored as is when compressed one is not shorter.
+        final int compressedLength = SVNLZ4.compress(src, offset, length, buffer.array(), position, position + length - 1);
+        if (compressedLength >= 0) {
+            buffer.position(position + compressedLength);
+        } else {
+            buffer.put(src, offset, length);
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Returns svndiff1 representation of <code>length</code> bytes of <code>src</code>: the original
+     * length followed by zlib compressed bytes, or by the original bytes when they do not compress.
+     */
+    public static ByteBuffer compress(byte[] src, int offset, int length) {
+        final ByteBuffer buffer = ByteBuffer.allocate(length + 10);
+        SVNDiffInstruction.writeInt(buffer, length);
+        if (length >= MIN_COMPRESSIBLE_LENGTH) {
+            final Deflater deflater = acquireDeflater();
+            try {
+                deflater.setInput(src, offset, length);
+                deflater.finish();
+                // compressed data is of no use once it is not shorter than the original one.
+                int position = buffer.position();
+                while (!deflater.finished() && position < length) {
+                    position += deflater.deflate(buffer.array(), position, length - position);
+                }
+                if (deflater.finished() && position < length) {
+                    buffer.position(position);
+                    buffer.flip();
+                    return buffer;
+                }
+            } finally {
+                releaseDeflater(deflater);
+            }
+            buffer.clear();
+            SVNDiffInstruction.writeInt(buffer, length);
+        }
+        buffer.put(src, offset, length);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Inflates <code>compressedLength</code> bytes of <code>src</code> into exactly <code>length</code>
+     * bytes of <code>dst</code>.
+     */
+    public static void decompress(byte[] src, int srcOffset, int compressedLength, byte[] dst, int dstOffset, int length) throws IOException {
+        final Inflater inflater = acquireInflater();
+        try {
+            inflater.setInput(src, srcOffset, compressedLength);
+            int read = 0;
+            while (read < length) {
+                final int inflated = inflater.inflate(dst, dstOffset + read, length - read);
+                if (inflated == 0 && (inflater.finished() || inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new IOException("Decompression of svndiff data failed: " + read + " of " + length + " bytes inflated");
+                }
+                read += inflated;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Decompression of svndiff data failed: " + e.getMessage());
+        } finally {
+            releaseInflater(inflater);
+        }
+    }
+
+    /**
+     * Decompresses section of a window in the given svndiff <code>version</code>.
+     */
+    public static void decompress(byte[] src, int srcOffset, int compressedLength, byte[] dst, int dstOffset, int length, int version) throws IOException {
+        if (version == 2) {
+            SVNLZ4.decompress(src, srcOffset, compressedLength, dst, dstOffset, length);
+        } else {
+            decompress(src, srcOffset, compressedLength, dst, dstOffset, length);
+        }
+    }
+
+    private static Deflater acquireDeflater() {
+        synchronized (ourDeflaters) {
+            if (ourDeflatersCount > 0) {
+                final Deflater deflater = ourDeflaters[--ourDeflatersCount];
+                ourDeflaters[ourDeflatersCount] = null;
+                return deflater;
+            }
+        }
+        return new Deflater();
+    }
+
+    private static void releaseDeflater(Deflater deflater) {
+        deflater.reset();
+        synchronized (ourDeflaters) {
+            if (ourDeflatersCount < POOL_SIZE) {
+                ourDeflaters[ourDeflatersCount++] = deflater;
+                return;
+            }
+        }
+        deflater.end();
+    }
+
+    private static Inflater acquireInflater() {
+        synchronized (ourInflaters) {
+            if (ourInflatersCount > 0) {
+                final Inflater inflater = ourInflaters[--ourInflatersCount];
+                ourInflaters[ourInflatersCount] = null;
+                return inflater;
+            }
+        }
+        return new Inflater();
+    }
+
+    private static void releaseInflater(Inflater inflater) {
+        inflater.reset();
+        synchronized (ourInflaters) {
+            if (ourInflatersCount < POOL_SIZE) {
+                ourInflaters[ourInflatersCount++] = inflater;
+                return;
+            }
+        }
+        inflater.end();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Writes svndiff windows to a stream. Compressed (svndiff1 and svndiff2) windows may be compressed on a
+ * small pool of daemon threads while the caller computes next windows; windows are always
+ * written in the order they were passed to {@link #write(SVNDiffWindow, boolean)}.
+ *
+ * The pool is configured with <code>svnkit.svndiff.compression.threads</code> system property,
+ * <code>0</code> (default) makes windows to be compressed on the caller thread.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNDiffWindowWriter {
+
+    public static final String THREADS_PROPERTY = "svnkit.svndiff.compression.threads";
+
+    private static int ourThreadsCount = getIntegerProperty(THREADS_PROPERTY, 0);
+    private static ThreadPoolExecutor ourExecutor;
+
+    private final OutputStream myOutputStream;
+    private final int myVersion;
+    private final LinkedList<Future<byte[]>> myPendingWindows;
+
+    public SVNDiffWindowWriter(OutputStream os, int svndiffVersion) {
+        myOutputStream = os;
+        myVersion = svndiffVersion;
+        myPendingWindows = new LinkedList<Future<byte[]>>();
+    }
+
+    public static synchronized boolean isParallel() {
+        return ourThreadsCount > 0;
+    }
+
+    public static synchronized void setThreadsCount(int threadsCount) {
+        if (threadsCount == ourThreadsCount) {
+            return;
+        }
+        ourThreadsCount = threadsCount;
+        if (ourExecutor != null) {
+            ourExecutor.shutdown();
+            ourExecutor = null;
+        }
+    }
+
+    /**
+     * Writes <code>window</code> or schedules it for compression. Window data is copied, so the
+     * window could be reused by the caller once this method returns.
+     */
+    public void write(SVNDiffWindow window, final boolean writeHeader) throws IOException {
+        final ThreadPoolExecutor executor = myVersion > 0 && window.hasInstructions() ? getExecutor() : null;
+        if (executor != null) {
+            final SVNDiffWindow copy = window.clone(ByteBuffer.allocate(window.getDataLength()));
+            try {
+                myPendingWindows.add(executor.submit(new Callable<byte[]>() {
+                    public byte[] call() throws IOException {
+                        final ByteArrayOutputStream bos = new ByteArrayOutputStream(copy.getDataLength() / 2 + 64);
+                        copy.writeTo(bos, writeHeader, myVersion);
+                        return bos.toByteArray();
+                    }
+                }));
+                writePendingWindows(executor.getMaximumPoolSize() * 2);
+                return;
+            } catch (RejectedExecutionException e) {
+                SVNDebugLog.getDefaultLog().logFine(SVNLogType.DEFAULT, "Could not schedule svndiff window compression: " + e.getMessage());
+            }
+        }
+        writePendingWindows(0);
+        window.writeTo(myOutputStream, writeHeader, myVersion);
+    }
+
+    /**
+     * Waits for all scheduled windows and writes them.
+     */
+    public void flush() throws IOException {
+        writePendingWindows(0);
+    }
+
+    /**
+     * Cancels compression of windows that are not written yet.
+     */
+    public void dispose() {
+        for (Iterator<Future<byte[]>> windows = myPendingWindows.iterator(); windows.hasNext();) {
+            windows.next().cancel(false);
+        }
+        myPendingWindows.clear();
+    }
+
+    private void writePendingWindows(int maxPendingCount) throws IOException {
+        while (!myPendingWindows.isEmpty() && (myPendingWindows.size() > maxPendingCount || myPendingWindows.getFirst().isDone())) {
+            final Future<byte[]> window = myPendingWindows.removeFirst();
+            try {
+                myOutputStream.write(window.get());
+            } catch (InterruptedException e) {
+                dispose();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            } catch (ExecutionException e) {
+                dispose();
+                if (e.getCause() instanceof IOException) {
+                    throw (IOException) e.getCause();
+                }
+                final IOException ioe = new IOException(e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                ioe.initCause(e.getCause());
+                throw ioe;
+            }
+        }
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (ourThreadsCount <= 0) {
+            return null;
+        }
+        if (ourExecutor == null) {
+            ourExecutor = new ThreadPoolExecutor(ourThreadsCount, ourThreadsCount, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new CompressionThreadFactory());
+            ourExecutor.allowCoreThreadTimeOut(true);
+        }
+        return ourExecutor;
+    }
+
+    private static int getIntegerProperty(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(System.getProperty(name, String.valueOf(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static class CompressionThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger myThreadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "svnkit-svndiff-compression-" + myThreadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
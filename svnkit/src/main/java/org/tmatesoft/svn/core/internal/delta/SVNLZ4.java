@@ -0,0 +1,212 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.delta;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * LZ4 block format encoder and decoder, as used by svndiff2 windows.
+ * Block format only, there are no frame headers or checksums.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class SVNLZ4 {
+
+    private static final int MIN_MATCH = 4;
+    private static final int LAST_LITERALS = 5;
+    private static final int MATCH_FIND_LIMIT = 12;
+    private static final int MAX_DISTANCE = 0xFFFF;
+    private static final int HASH_LOG = 12;
+    private static final int SKIP_STRENGTH = 6;
+
+    private static final ThreadLocal<int[]> ourHashTable = new ThreadLocal<int[]>() {
+        protected int[] initialValue() {
+            return new int[1 << HASH_LOG];
+        }
+    };
+
+    /**
+     * Compresses <code>srcLength</code> bytes of <code>src</code> into <code>dst</code>, not writing
+     * beyond <code>dstLimit</code>.
+     *
+     * @return number of compressed bytes written or <code>-1</code> when compressed data does not fit
+     */
+    public static int compress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLimit) {
+        final int srcEnd = srcOffset + srcLength;
+        final int matchFindLimit = srcEnd - MATCH_FIND_LIMIT;
+        final int matchLimit = srcEnd - LAST_LITERALS;
+
+        int dp = dstOffset;
+        int anchor = srcOffset;
+        if (srcLength >= MATCH_FIND_LIMIT + 1) {
+            final int[] table = ourHashTable.get();
+            // positions are stored shifted by one, zero stands for an empty slot.
+            Arrays.fill(table, 0);
+
+            int ip = srcOffset;
+            while (ip < matchFindLimit) {
+                final int sequence = readInt(src, ip);
+                final int hash = hash(sequence);
+                final int ref = table[hash] - 1;
+                table[hash] = ip + 1;
+                if (ref < 0 || ip - ref > MAX_DISTANCE || readInt(src, ref) != sequence) {
+                    ip += 1 + ((ip - anchor) >>> SKIP_STRENGTH);
+                    continue;
+                }
+                int matchStart = ip;
+                int refStart = ref;
+                while (matchStart > anchor && refStart > srcOffset && src[matchStart - 1] == src[refStart - 1]) {
+                    matchStart--;
+                    refStart--;
+                }
+                int matchEnd = ip + MIN_MATCH;
+                int refEnd = ref + MIN_MATCH;
+                while (matchEnd < matchLimit && src[matchEnd] == src[refEnd]) {
+                    matchEnd++;
+                    refEnd++;
+                }
+                dp = writeSequence(src, anchor, matchStart - anchor, matchStart - refStart, matchEnd - matchStart, dst, dp, dstLimit);
+                if (dp < 0) {
+                    return -1;
+                }
+                anchor = ip = matchEnd;
+                if (ip - 2 < matchFindLimit) {
+                    table[hash(readInt(src, ip - 2))] = ip - 2 + 1;
+                }
+            }
+        }
+        dp = writeSequence(src, anchor, srcEnd - anchor, 0, 0, dst, dp, dstLimit);
+        return dp < 0 ? -1 : dp - dstOffset;
+    }
+
+    /**
+     * Decompresses <code>srcLength</code> bytes of <code>src</code> into exactly <code>dstLength</code>
+     * bytes of <code>dst</code>.
+     */
+    public static void decompress(byte[] src, int srcOffset, int srcLength, byte[] dst, int dstOffset, int dstLength) throws IOException {
+        final int srcEnd = srcOffset + srcLength;
+        final int dstEnd = dstOffset + dstLength;
+        int sp = srcOffset;
+        int dp = dstOffset;
+        while (true) {
+            if (sp >= srcEnd) {
+                throw new IOException("Decompression of svndiff data failed: unexpected end of LZ4 data");
+            }
+            final int token = src[sp++] & 0xFF;
+            int literalsLength = token >>> 4;
+            if (literalsLength == 0xF) {
+                int b;
+                do {
+                    if (sp >= srcEnd) {
+                        throw new IOException("Decompression of svndiff data failed: unexpected end of LZ4 data");
+                    }
+                    b = src[sp++] & 0xFF;
+                    literalsLength += b;
+                } while (b == 0xFF && literalsLength <= srcLength);
+            }
+            if (literalsLength > srcEnd - sp || literalsLength > dstEnd - dp) {
+                throw new IOException("Decompression of svndiff data failed: malformed LZ4 data");
+            }
+            System.arraycopy(src, sp, dst, dp, literalsLength);
+            sp += literalsLength;
+            dp += literalsLength;
+            if (sp == srcEnd) {
+                break;
+            }
+
+            if (srcEnd - sp < 2) {
+                throw new IOException("Decompression of svndiff data failed: unexpected end of LZ4 data");
+            }
+            final int distance = (src[sp] & 0xFF) | ((src[sp + 1] & 0xFF) << 8);
+            sp += 2;
+            if (distance == 0 || distance > dp - dstOffset) {
+                throw new IOException("Decompression of svndiff data failed: malformed LZ4 data");
+            }
+            int matchLength = token & 0xF;
+            if (matchLength == 0xF) {
+                int b;
+                do {
+                    if (sp >= srcEnd) {
+                        throw new IOException("Decompression of svndiff data failed: unexpected end of LZ4 data");
+                    }
+                    b = src[sp++] & 0xFF;
+                    matchLength += b;
+                } while (b == 0xFF && matchLength <= dstLength);
+            }
+            matchLength += MIN_MATCH;
+            if (matchLength > dstEnd - dp) {
+                throw new IOException("Decompression of svndiff data failed: malformed LZ4 data");
+            }
+            final int ref = dp - distance;
+            if (distance >= matchLength) {
+                System.arraycopy(dst, ref, dst, dp, matchLength);
+            } else {
+                for (int i = 0; i < matchLength; i++) {
+                    dst[dp + i] = dst[ref + i];
+                }
+            }
+            dp += matchLength;
+        }
+        if (dp != dstEnd) {
+            throw new IOException("Decompression of svndiff data failed: size of uncompressed data does not match stored original length");
+        }
+    }
+
+    private static int writeSequence(byte[] src, int literalsOffset, int literalsLength, int distance, int matchLength, byte[] dst, int dp, int dstLimit) {
+        final int required = 1 + literalsLength + literalsLength / 0xFF + 1 + (matchLength > 0 ? 2 + matchLength / 0xFF + 1 : 0);
+        if (dp + required > dstLimit) {
+            return -1;
+        }
+        final int tokenPosition = dp++;
+        int token;
+        if (literalsLength >= 0xF) {
+            token = 0xF0;
+            dp = writeLength(literalsLength - 0xF, dst, dp);
+        } else {
+            token = literalsLength << 4;
+        }
+        System.arraycopy(src, literalsOffset, dst, dp, literalsLength);
+        dp += literalsLength;
+        if (matchLength > 0) {
+            dst[dp++] = (byte) (distance & 0xFF);
+            dst[dp++] = (byte) ((distance >>> 8) & 0xFF);
+            final int length = matchLength - MIN_MATCH;
+            if (length >= 0xF) {
+                token |= 0xF;
+                dp = writeLength(length - 0xF, dst, dp);
+            } else {
+                token |= length;
+            }
+        }
+        dst[tokenPosition] = (byte) token;
+        return dp;
+    }
+
+    private static int writeLength(int length, byte[] dst, int dp) {
+        while (length >= 0xFF) {
+            dst[dp++] = (byte) 0xFF;
+            length -= 0xFF;
+        }
+        dst[dp++] = (byte) length;
+        return dp;
+    }
+
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8) | ((data[offset + 2] & 0xFF) << 16) | ((data[offset + 3] & 0xFF) << 24);
+    }
+
+    private static int hash(int sequence) {
+        return (sequence * -1640531535) >>> (32 - HASH_LOG);
+    }
+}
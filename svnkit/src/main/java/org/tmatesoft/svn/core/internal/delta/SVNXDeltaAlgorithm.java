@@ -11,106 +11,153 @@
  */
 package org.tmatesoft.svn.core.internal.delta;
 
-import java.util.Map;
-
-import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+import java.util.Arrays;
 
 /**
+ * Matches blocks of the target against fixed size blocks of the source with a rolling
+ * checksum. Source blocks are kept in an open addressing table of primitive arrays which,
+ * as well as the algorithm instance itself, is reused for all windows of a delta, so that
+ * computing a delta does not allocate.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
 public class SVNXDeltaAlgorithm extends SVNDeltaAlgorithm {
     
     private static final int MATCH_BLOCK_SIZE = 64;
+    private static final int ADLER32_MASK = 0x0000FFFF;
+
+    private int[] myChecksums = new int[0];
+    private int[] myBlocks = new int[0];
+    private int myTableMask;
     
     public void computeDelta(byte[] a, int aLength, byte[] b, int bLength) {
         if (bLength < MATCH_BLOCK_SIZE) {
             copyFromNewData(b, 0, bLength);
             return;
         }
-        PseudoAdler32 bAdler = new PseudoAdler32();
-        Map aMatchesTable = createMatchesTable(a, aLength, MATCH_BLOCK_SIZE, bAdler);
-        bAdler.reset();
-        bAdler.add(b, 0, MATCH_BLOCK_SIZE);
+        createMatchesTable(a, aLength);
+
+        int s1 = 1;
+        int s2 = 0;
+        int windowLength = 0;
+        for (int i = 0; i < MATCH_BLOCK_SIZE; i++) {
+            s1 = (s1 + (b[i] & 0xFF)) & ADLER32_MASK;
+            s2 = (s2 + s1) & ADLER32_MASK;
+            windowLength++;
+        }
 
         int lo = 0;
-        int size = bLength;
-        Match previousInsertion = null;
-        
-        while(lo < size) {
-            Match match = findMatch(aMatchesTable, bAdler, a, aLength, b, bLength, lo, previousInsertion);
-            if (match == null) {
-                if (previousInsertion != null && previousInsertion.length > 0) {
-                    previousInsertion.length++;
-                } else {
-                    previousInsertion = new Match(lo, 1);
+        int insertionPosition = 0;
+        int insertionLength = 0;
+
+        while (lo < bLength) {
+            int advance = 1;
+            boolean matched = false;
+            int block = findBlock((s2 << 16) | s1);
+            if (block >= 0) {
+                int aPos = block * MATCH_BLOCK_SIZE;
+                int length = Math.min(MATCH_BLOCK_SIZE, aLength - aPos);
+                if (equals(a, aLength, aPos, length, b, bLength, lo)) {
+                    matched = true;
+                    advance = length;
+                    // extend forward
+                    while (aPos + length < aLength && lo + advance < bLength && a[aPos + length] == b[lo + advance]) {
+                        length++;
+                        advance++;
+                    }
+                    // extend backward
+                    int bPos = lo;
+                    while (aPos > 0 && bPos > 0 && a[aPos - 1] == b[bPos - 1] && insertionLength != 0) {
+                        insertionLength--;
+                        bPos--;
+                        aPos--;
+                        length++;
+                    }
+                    if (insertionLength > 0) {
+                        copyFromNewData(b, insertionPosition, insertionLength);
+                        insertionLength = 0;
+                    }
+                    copyFromSource(aPos, length);
                 }
-            } else {
-                if (previousInsertion != null && previousInsertion.length > 0) {
-                    copyFromNewData(b, previousInsertion.position, previousInsertion.length);
-                    previousInsertion = null;
+            }
+            if (!matched) {
+                if (insertionLength > 0) {
+                    insertionLength++;
+                } else {
+                    insertionPosition = lo;
+                    insertionLength = 1;
                 }
-                copyFromSource(match.position, match.length);                
             }
-            int advance = match != null ? match.advance : 1;
             for (int next = lo; next < lo + advance; next++) {
-                bAdler.remove(b[next]);
+                int z = b[next] & 0xFF;
+                s1 = (s1 - z) & ADLER32_MASK;
+                s2 = (s2 - (windowLength * z + 1)) & ADLER32_MASK;
+                windowLength--;
                 if (next + MATCH_BLOCK_SIZE < bLength) {
-                    bAdler.add(b[next + MATCH_BLOCK_SIZE]);
+                    z = b[next + MATCH_BLOCK_SIZE] & 0xFF;
+                    s1 = (s1 + z) & ADLER32_MASK;
+                    s2 = (s2 + s1) & ADLER32_MASK;
+                    windowLength++;
                 }
             }
             lo += advance;
         }
-        if (previousInsertion != null && previousInsertion.length > 0) {
-            copyFromNewData(b, previousInsertion.position, previousInsertion.length);
-            previousInsertion = null;
+        if (insertionLength > 0) {
+            copyFromNewData(b, insertionPosition, insertionLength);
         }
     }
-    
-    private static Match findMatch(Map matchesTable, PseudoAdler32 checksum, byte[] a, int aLength, byte[] b, int bLength, int bPos, Match previousInsertion) {
-        Match existingMatch = (Match) matchesTable.get(new Integer(checksum.getValue()));
-        if (existingMatch == null) {
-            return null;
-        }
-        if (!equals(a, aLength, existingMatch.position, existingMatch.length, b, bLength, bPos)) {
-            return null;
-        }
-        existingMatch = new Match(existingMatch.position, existingMatch.length);
-        existingMatch.advance = existingMatch.length;
 
-        // extend forward 
-        while(existingMatch.position + existingMatch.length < aLength &&
-                bPos + existingMatch.advance < bLength &&
-                a[existingMatch.position + existingMatch.length] == b[bPos + existingMatch.advance]) {
-            existingMatch.length++;
-            existingMatch.advance++;
-        }
-        // extend backward
-        if (previousInsertion != null) {
-            while(existingMatch.position > 0 && bPos > 0 &&
-                    a[existingMatch.position - 1] == b[bPos -1] &&
-                    previousInsertion.length != 0) {
-                previousInsertion.length--;
-                bPos--;
-                existingMatch.position--;
-                existingMatch.length++;
+    private void createMatchesTable(byte[] data, int dataLength) {
+        int blocksCount = (dataLength + MATCH_BLOCK_SIZE - 1) / MATCH_BLOCK_SIZE;
+        int capacity = 16;
+        while (capacity < blocksCount * 2) {
+            capacity <<= 1;
+        }
+        if (myBlocks.length < capacity) {
+            myChecksums = new int[capacity];
+            myBlocks = new int[capacity];
+        } else {
+            Arrays.fill(myBlocks, 0, capacity, 0);
+        }
+        myTableMask = capacity - 1;
+
+        for (int block = 0; block < blocksCount; block++) {
+            int offset = block * MATCH_BLOCK_SIZE;
+            int end = Math.min(offset + MATCH_BLOCK_SIZE, dataLength);
+            int s1 = 1;
+            int s2 = 0;
+            for (int i = offset; i < end; i++) {
+                s1 = (s1 + (data[i] & 0xFF)) & ADLER32_MASK;
+                s2 = (s2 + s1) & ADLER32_MASK;
+            }
+            int checksum = (s2 << 16) | s1;
+            int slot = getSlot(checksum);
+            while (myBlocks[slot] != 0 && myChecksums[slot] != checksum) {
+                slot = (slot + 1) & myTableMask;
+            }
+            // the first block with the checksum is used for matching
+            if (myBlocks[slot] == 0) {
+                myChecksums[slot] = checksum;
+                myBlocks[slot] = block + 1;
             }
         }
-        return existingMatch;
     }
-    
-    private static Map createMatchesTable(byte[] data, int dataLength, int blockLength, PseudoAdler32 adler32) {
-        Map matchesTable = new SVNHashMap();
-        for(int i = 0; i < dataLength; i+= blockLength) {
-            int length = i + blockLength >= dataLength ? dataLength - i : blockLength;
-            adler32.add(data, i, length);
-            Integer checksum = new Integer(adler32.getValue());
-            if (!matchesTable.containsKey(checksum)) {
-                matchesTable.put(checksum, new Match(i, length));
+
+    private int findBlock(int checksum) {
+        int slot = getSlot(checksum);
+        while (myBlocks[slot] != 0) {
+            if (myChecksums[slot] == checksum) {
+                return myBlocks[slot] - 1;
             }
-            adler32.reset();
+            slot = (slot + 1) & myTableMask;
         }
-        return matchesTable;
+        return -1;
+    }
+
+    private int getSlot(int checksum) {
+        int hash = checksum * 0x9E3779B1;
+        return (hash ^ (hash >>> 16)) & myTableMask;
     }
     
     private static boolean equals(byte[] a, int aLength, int aPos, int length, byte[] b, int bLength, int bPos) {
@@ -124,64 +171,4 @@ public class SVNXDeltaAlgorithm extends SVNDeltaAlgorithm {
         }
         return true;
     }
-    
-    private static class Match {
-        
-        public Match(int p, int l) {
-            position = p;
-            length = l;
-        }
-        
-        public int position;
-        public int length;
-        public int advance;
-    }
-
-    private static int ADLER32_MASK = 0x0000FFFF;
-
-    private static class PseudoAdler32 {        
-        
-        private int myS1;
-        private int myS2;
-        private int myLength;
-        
-        public PseudoAdler32() {
-            reset();
-        }
-        
-        public void add(byte b) {
-            int z = b & 0x000000FF;
-            myS1 = myS1 + z;
-            myS1 = myS1 & ADLER32_MASK;
-            myS2 = myS2 + myS1;
-            myS2 = myS2 & ADLER32_MASK;
-            myLength++;
-        }
-        
-        public void remove(byte b) {
-            int z = b & 0x000000FF;
-            myS1 = myS1 - z;
-            myS1 = myS1 & ADLER32_MASK;
-            myS2 = myS2 - (myLength * z + 1);
-            myS2 = myS2 & ADLER32_MASK;
-            myLength--;
-        }
-        
-        public void add(byte[] data, int offset, int length) {
-            for (int i = offset; i < offset + length; i++) {
-                add(data[i]);
-            }
-        }
-        
-        public int getValue() {
-            return (myS2 << 16) | myS1;
-        }
-        
-        public void reset() {
-            myS1 = 1;
-            myS2 = 0;
-            myLength = 0;
-        }
-    }
 }
- 
\ No newline at end of file
@@ -410,7 +410,7 @@ class DAVCommitEditor implements ISVNEditor {
                 myDeltaFile = SVNFileUtil.createTempFile("svnkit", ".tmp");
                 myCurrentDelta = SVNFileUtil.openFileForWriting(myDeltaFile);
             }
-            diffWindow.writeTo(myCurrentDelta, myIsFirstWindow);
+            diffWindow.writeTo(myCurrentDelta, myIsFirstWindow, myConnection.getSVNDiffVersion());
             myIsFirstWindow = false;
             return SVNFileUtil.DUMMY_OUT;
         } catch (IOException e) {
@@ -61,6 +61,7 @@ public class DAVConnection {
     protected boolean myKeepLocks;
     protected Map myLocks;
     protected Map myCapabilities;
+    private int mySVNDiffVersion;
     //HTTPv2 stuff:
     protected boolean myHttpV2Enabled;
     protected String myMeResource;
@@ -355,7 +356,7 @@ public class DAVConnection {
         httpConnection.setSpoolResponse(spool || isReportResponseSpooled());
         try {
             HTTPHeader header = new HTTPHeader();
-            header.addHeaderValue(HTTPHeader.ACCEPT_ENCODING_HEADER, "svndiff1;q=0.9,svndiff;q=0.8");
+            header.addHeaderValue(HTTPHeader.ACCEPT_ENCODING_HEADER, "svndiff2;q=0.95,svndiff1;q=0.9,svndiff;q=0.8");
             return performHttpRequest(httpConnection, "REPORT", path, header, requestBody, -1, 0, null, handler);
         } finally {
             httpConnection.setSpoolResponse(false);
@@ -710,6 +711,10 @@ public class DAVConnection {
         return myRepository;
     }
 
+    public int getSVNDiffVersion() {
+        return mySVNDiffVersion;
+    }
+
     protected void parseCapabilities(HTTPStatus status) {
         if (myCapabilities == null) {
             myCapabilities = new SVNHashMap();
@@ -720,6 +725,7 @@ public class DAVConnection {
         myCapabilities.put(SVNCapability.ATOMIC_REVPROPS, DAV_CAPABILITY_NO);
         myCapabilities.put(SVNCapability.INHERITED_PROPS, DAV_CAPABILITY_NO);
         myCapabilities.put(SVNCapability.EPHEMERAL_PROPS, DAV_CAPABILITY_NO);
+        mySVNDiffVersion = 0;
 
         HTTPHeader header = status.getHeader();
         Collection capValues = header.getHeaderValues(HTTPHeader.DAV_HEADER);
@@ -740,6 +746,10 @@ public class DAVConnection {
                     myCapabilities.put(SVNCapability.INHERITED_PROPS, DAV_CAPABILITY_YES);
                 } else if (DAVElement.EPHEMERAL_PROPS_OPTION.equalsIgnoreCase(value)) {
                     myCapabilities.put(SVNCapability.EPHEMERAL_PROPS, DAV_CAPABILITY_YES);
+                } else if (DAVElement.SVNDIFF1_OPTION.equalsIgnoreCase(value)) {
+                    mySVNDiffVersion = Math.max(mySVNDiffVersion, 1);
+                } else if (DAVElement.SVNDIFF2_OPTION.equalsIgnoreCase(value)) {
+                    mySVNDiffVersion = 2;
                 }
 			}
     	}
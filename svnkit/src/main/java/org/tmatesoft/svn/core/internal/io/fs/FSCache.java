@@ -0,0 +1,273 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, thread safe LRU cache. Entries are spread over a number of
+ * independently locked segments, every segment keeps its entries in access
+ * order, so lookups, insertions and evictions are all O(1).
+ *
+ * The cache may be limited both by the number of entries and by the total
+ * weight of the entries, weight of a single entry is computed by
+ * {@link #getWeight(Object, Object)} which subclasses may override.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSCache<K, V> {
+
+    private final String myName;
+    private final Segment<K, V>[] mySegments;
+
+    public FSCache(String name, int maxEntries) {
+        this(name, maxEntries, 0, 1);
+    }
+
+    @SuppressWarnings("unchecked")
+    public FSCache(String name, int maxEntries, long maxWeight, int concurrencyLevel) {
+        myName = name;
+        int segmentsCount = 1;
+        while (segmentsCount < concurrencyLevel && segmentsCount < 64) {
+            segmentsCount <<= 1;
+        }
+        if (maxEntries > 0) {
+            while (segmentsCount > 1 && maxEntries / segmentsCount < 16) {
+                segmentsCount >>= 1;
+            }
+        }
+        mySegments = new Segment[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            mySegments[i] = new Segment<K, V>(this,
+                    maxEntries > 0 ? Math.max(1, maxEntries / segmentsCount) : 0,
+                    maxWeight > 0 ? Math.max(1, maxWeight / segmentsCount) : 0);
+        }
+    }
+
+    public String getName() {
+        return myName;
+    }
+
+    public V get(K key) {
+        if (key == null) {
+            return null;
+        }
+        return getSegment(key).get(key);
+    }
+
+    public void put(K key, V value) {
+        if (key == null || value == null) {
+            return;
+        }
+        getSegment(key).put(key, value, getWeight(key, value));
+    }
+
+    public V remove(K key) {
+        if (key == null) {
+            return null;
+        }
+        return getSegment(key).remove(key);
+    }
+
+    public void clear() {
+        for (int i = 0; i < mySegments.length; i++) {
+            mySegments[i].clear();
+        }
+    }
+
+    public long getHitsCount() {
+        long count = 0;
+        for (int i = 0; i < mySegments.length; i++) {
+            synchronized (mySegments[i]) {
+                count += mySegments[i].myHits;
+            }
+        }
+        return count;
+    }
+
+    public long getMissesCount() {
+        long count = 0;
+        for (int i = 0; i < mySegments.length; i++) {
+            synchronized (mySegments[i]) {
+                count += mySegments[i].myMisses;
+            }
+        }
+        return count;
+    }
+
+    public long getEvictionsCount() {
+        long count = 0;
+        for (int i = 0; i < mySegments.length; i++) {
+            synchronized (mySegments[i]) {
+                count += mySegments[i].myEvictions;
+            }
+        }
+        return count;
+    }
+
+    public int getEntriesCount() {
+        int count = 0;
+        for (int i = 0; i < mySegments.length; i++) {
+            synchronized (mySegments[i]) {
+                count += mySegments[i].myEntries.size();
+            }
+        }
+        return count;
+    }
+
+    public long getWeight() {
+        long weight = 0;
+        for (int i = 0; i < mySegments.length; i++) {
+            synchronized (mySegments[i]) {
+                weight += mySegments[i].myWeight;
+            }
+        }
+        return weight;
+    }
+
+    public String toString() {
+        StringBuffer buffer = new StringBuffer();
+        buffer.append("{[");
+        buffer.append("Cache:");
+        buffer.append(myName);
+        buffer.append("][");
+        buffer.append("Entries:");
+        buffer.append(getEntriesCount());
+        buffer.append("][");
+        buffer.append("Weight:");
+        buffer.append(getWeight());
+        buffer.append("][");
+        buffer.append("Hits:");
+        buffer.append(getHitsCount());
+        buffer.append("][");
+        buffer.append("Misses:");
+        buffer.append(getMissesCount());
+        buffer.append("][");
+        buffer.append("Evictions:");
+        buffer.append(getEvictionsCount());
+        buffer.append("]}");
+        return buffer.toString();
+    }
+
+    protected long getWeight(K key, V value) {
+        return 1;
+    }
+
+    protected void entryRemoved(K key, V value) {
+    }
+
+    private Segment<K, V> getSegment(Object key) {
+        if (mySegments.length == 1) {
+            return mySegments[0];
+        }
+        int hash = key.hashCode();
+        hash ^= (hash >>> 20) ^ (hash >>> 12);
+        hash ^= (hash >>> 7) ^ (hash >>> 4);
+        return mySegments[hash & (mySegments.length - 1)];
+    }
+
+    private static class Segment<K, V> {
+
+        private final FSCache<K, V> myOwner;
+        private final LinkedHashMap<K, Entry<V>> myEntries;
+        private final int myMaxEntries;
+        private final long myMaxWeight;
+        private long myWeight;
+        private long myHits;
+        private long myMisses;
+        private long myEvictions;
+
+        public Segment(FSCache<K, V> owner, int maxEntries, long maxWeight) {
+            myOwner = owner;
+            myMaxEntries = maxEntries;
+            myMaxWeight = maxWeight;
+            myEntries = new LinkedHashMap<K, Entry<V>>(16, 0.75f, true);
+        }
+
+        public synchronized V get(K key) {
+            Entry<V> entry = myEntries.get(key);
+            if (entry == null) {
+                myMisses++;
+                return null;
+            }
+            myHits++;
+            return entry.myValue;
+        }
+
+        public synchronized void put(K key, V value, long weight) {
+            if (myMaxWeight > 0 && weight > myMaxWeight) {
+                remove(key);
+                return;
+            }
+            Entry<V> oldEntry = myEntries.put(key, new Entry<V>(value, weight));
+            if (oldEntry != null) {
+                myWeight -= oldEntry.myWeight;
+                if (oldEntry.myValue != value) {
+                    myOwner.entryRemoved(key, oldEntry.myValue);
+                }
+            }
+            myWeight += weight;
+
+            Iterator<Map.Entry<K, Entry<V>>> eldest = myEntries.entrySet().iterator();
+            while (eldest.hasNext() && isOverflown()) {
+                Map.Entry<K, Entry<V>> evicted = eldest.next();
+                if (evicted.getKey().equals(key)) {
+                    continue;
+                }
+                eldest.remove();
+                myWeight -= evicted.getValue().myWeight;
+                myEvictions++;
+                myOwner.entryRemoved(evicted.getKey(), evicted.getValue().myValue);
+            }
+        }
+
+        public synchronized V remove(K key) {
+            Entry<V> entry = myEntries.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            myWeight -= entry.myWeight;
+            myOwner.entryRemoved(key, entry.myValue);
+            return entry.myValue;
+        }
+
+        public synchronized void clear() {
+            for (Iterator<Map.Entry<K, Entry<V>>> entries = myEntries.entrySet().iterator(); entries.hasNext();) {
+                Map.Entry<K, Entry<V>> entry = entries.next();
+                entries.remove();
+                myOwner.entryRemoved(entry.getKey(), entry.getValue().myValue);
+            }
+            myWeight = 0;
+        }
+
+        private boolean isOverflown() {
+            if (myMaxEntries > 0 && myEntries.size() > myMaxEntries) {
+                return true;
+            }
+            return myMaxWeight > 0 && myWeight > myMaxWeight;
+        }
+    }
+
+    private static class Entry<V> {
+
+        private final V myValue;
+        private final long myWeight;
+
+        public Entry(V value, long weight) {
+            myValue = value;
+            myWeight = weight;
+        }
+    }
+}
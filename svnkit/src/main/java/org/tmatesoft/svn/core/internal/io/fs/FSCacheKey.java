@@ -0,0 +1,104 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+/**
+ * Key of an entry in one of the process-wide {@link FSCaches}, qualifies
+ * repository specific key with the id of the repository instance.
+ * Key is either an arbitrary object, a (revision, offset) pair or
+ * both, e.g. an index of a delta window within a representation.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSCacheKey {
+
+    private final String myInstanceId;
+    private final Object myKey;
+    private final long myRevision;
+    private final long myOffset;
+    private final int myHashCode;
+
+    public FSCacheKey(String instanceId, Object key) {
+        this(instanceId, key, -1, -1);
+    }
+
+    public FSCacheKey(String instanceId, long revision, long offset) {
+        this(instanceId, null, revision, offset);
+    }
+
+    public FSCacheKey(String instanceId, Object key, long revision, long offset) {
+        myInstanceId = instanceId;
+        myKey = key;
+        myRevision = revision;
+        myOffset = offset;
+        int hashCode = instanceId.hashCode();
+        hashCode = 31 * hashCode + (key == null ? 0 : key.hashCode());
+        hashCode = 31 * hashCode + (int) (revision ^ (revision >>> 32));
+        hashCode = 31 * hashCode + (int) (offset ^ (offset >>> 32));
+        myHashCode = hashCode;
+    }
+
+    public static FSCacheKey createRepresentationKey(String instanceId, FSRepresentation representation) {
+        return new FSCacheKey(instanceId, representation.getRevision(), representation.getItemIndex());
+    }
+
+    public static FSCacheKey createWindowKey(String instanceId, FSRepresentation representation, int chunkIndex) {
+        return new FSCacheKey(instanceId, new Integer(chunkIndex), representation.getRevision(), representation.getItemIndex());
+    }
+
+    public String getInstanceId() {
+        return myInstanceId;
+    }
+
+    public Object getKey() {
+        return myKey;
+    }
+
+    public long getRevision() {
+        return myRevision;
+    }
+
+    public long getOffset() {
+        return myOffset;
+    }
+
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || obj.getClass() != FSCacheKey.class) {
+            return false;
+        }
+        FSCacheKey key = (FSCacheKey) obj;
+        if (myHashCode != key.myHashCode || myRevision != key.myRevision || myOffset != key.myOffset) {
+            return false;
+        }
+        if (myKey == null ? key.myKey != null : !myKey.equals(key.myKey)) {
+            return false;
+        }
+        return myInstanceId.equals(key.myInstanceId);
+    }
+
+    public int hashCode() {
+        return myHashCode;
+    }
+
+    public String toString() {
+        if (myKey == null) {
+            return myInstanceId + ":r" + myRevision + "/" + myOffset;
+        } else if (myRevision < 0 && myOffset < 0) {
+            return myInstanceId + ":" + myKey;
+        }
+        return myInstanceId + ":r" + myRevision + "/" + myOffset + ":" + myKey;
+    }
+}
@@ -0,0 +1,435 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+
+import org.tmatesoft.svn.core.internal.io.fs.index.FSLogicalAddressingIndex;
+import org.tmatesoft.svn.core.internal.wc.DefaultSVNOptions;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+
+/**
+ * Process-wide caches of immutable FSFS data shared by all {@link FSFS}
+ * instances. Entries are keyed with {@link FSCacheKey}, so that data of
+ * different repositories never mix.
+ *
+ * Caches are configured with system properties:
+ * <ul>
+ * <li><code>svnkit.fsfs.caches</code> - <code>false</code> disables all shared caches;</li>
+ * <li><code>svnkit.fsfs.cache.revisionNodes.entries</code> - maximum number of cached node-revisions;</li>
+ * <li><code>svnkit.fsfs.cache.revisionNodes.memory</code> - approximate memory limit (in bytes) of cached node-revisions;</li>
+ * <li><code>svnkit.fsfs.cache.dirEntries.entries</code> - maximum number of cached directory listings;</li>
+ * <li><code>svnkit.fsfs.cache.dirEntries.memory</code> - approximate memory limit (in bytes) of cached directory listings;</li>
+ * <li><code>svnkit.fsfs.cache.fulltexts.entries</code> - maximum number of cached file fulltexts;</li>
+ * <li><code>svnkit.fsfs.cache.fulltexts.memory</code> - memory limit (in bytes) of cached file fulltexts;</li>
+ * <li><code>svnkit.fsfs.cache.fulltexts.maxSize</code> - size (in bytes) of the largest fulltext to cache, contents
+ * of larger files are cached window by window;</li>
+ * <li><code>svnkit.fsfs.cache.windows.entries</code> - maximum number of cached combined delta windows;</li>
+ * <li><code>svnkit.fsfs.cache.windows.memory</code> - memory limit (in bytes) of cached combined delta windows;</li>
+ * <li><code>svnkit.fsfs.cache.indexes.entries</code> - maximum number of cached L2P and P2L index headers and pages;</li>
+ * <li><code>svnkit.fsfs.cache.indexes.memory</code> - memory limit (in bytes) of cached index headers and pages;</li>
+ * <li><code>svnkit.fsfs.cache.revisionProperties.entries</code> - maximum number of cached revision properties;</li>
+ * <li><code>svnkit.fsfs.cache.revisionProperties.memory</code> - approximate memory limit (in bytes) of cached revision properties;</li>
+ * <li><code>svnkit.fsfs.cache.changes.entries</code> - maximum number of cached revision changed paths lists;</li>
+ * <li><code>svnkit.fsfs.cache.changes.memory</code> - approximate memory limit (in bytes) of cached changed paths,
+ * changes of a revision that do not fit into a cache segment are not cached;</li>
+ * <li><code>svnkit.fsfs.cache.directSize</code> - size (in bytes) starting from which cached contents is kept
+ * out of the Java heap;</li>
+ * <li><code>svnkit.fsfs.mmap</code> - <code>true</code> makes revision and pack files to be read through
+ * memory mappings shared by all readers, disabled by default;</li>
+ * <li><code>svnkit.fsfs.mmap.files</code> - maximum number of simultaneously mapped files;</li>
+ * <li><code>svnkit.fsfs.mmap.memory</code> - maximum total size (in bytes) of simultaneously mapped files.</li>
+ * </ul>
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSCaches {
+
+    public static final String CACHES_ENABLED_PROPERTY = "svnkit.fsfs.caches";
+    public static final String REVISION_NODES_ENTRIES_PROPERTY = "svnkit.fsfs.cache.revisionNodes.entries";
+    public static final String REVISION_NODES_MEMORY_PROPERTY = "svnkit.fsfs.cache.revisionNodes.memory";
+    public static final String DIR_ENTRIES_ENTRIES_PROPERTY = "svnkit.fsfs.cache.dirEntries.entries";
+    public static final String DIR_ENTRIES_MEMORY_PROPERTY = "svnkit.fsfs.cache.dirEntries.memory";
+    public static final String FULLTEXTS_ENTRIES_PROPERTY = "svnkit.fsfs.cache.fulltexts.entries";
+    public static final String FULLTEXTS_MEMORY_PROPERTY = "svnkit.fsfs.cache.fulltexts.memory";
+    public static final String FULLTEXTS_MAX_SIZE_PROPERTY = "svnkit.fsfs.cache.fulltexts.maxSize";
+    public static final String WINDOWS_ENTRIES_PROPERTY = "svnkit.fsfs.cache.windows.entries";
+    public static final String WINDOWS_MEMORY_PROPERTY = "svnkit.fsfs.cache.windows.memory";
+    public static final String INDEXES_ENTRIES_PROPERTY = "svnkit.fsfs.cache.indexes.entries";
+    public static final String INDEXES_MEMORY_PROPERTY = "svnkit.fsfs.cache.indexes.memory";
+    public static final String REVISION_PROPERTIES_ENTRIES_PROPERTY = "svnkit.fsfs.cache.revisionProperties.entries";
+    public static final String REVISION_PROPERTIES_MEMORY_PROPERTY = "svnkit.fsfs.cache.revisionProperties.memory";
+    public static final String CHANGES_ENTRIES_PROPERTY = "svnkit.fsfs.cache.changes.entries";
+    public static final String CHANGES_MEMORY_PROPERTY = "svnkit.fsfs.cache.changes.memory";
+    public static final String DIRECT_SIZE_PROPERTY = "svnkit.fsfs.cache.directSize";
+    public static final String MMAP_ENABLED_PROPERTY = "svnkit.fsfs.mmap";
+    public static final String MMAP_FILES_PROPERTY = "svnkit.fsfs.mmap.files";
+    public static final String MMAP_MEMORY_PROPERTY = "svnkit.fsfs.mmap.memory";
+
+    private static final int CONCURRENCY_LEVEL = 16;
+
+    private static volatile boolean ourIsEnabled = DefaultSVNOptions.getBooleanValue(System.getProperty(CACHES_ENABLED_PROPERTY), true);
+
+    private static volatile FSCache<FSCacheKey, FSRevisionNode> ourRevisionNodesCache;
+    private static volatile FSCache<FSCacheKey, FSDirEntries> ourDirEntriesCache;
+    private static volatile FSCache<FSCacheKey, ByteBuffer> ourFulltextsCache;
+    private static volatile FSCache<FSCacheKey, ByteBuffer> ourWindowsCache;
+    private static volatile FSCache<FSCacheKey, Object> ourIndexesCache;
+    private static volatile FSCache<FSCacheKey, SVNProperties> ourRevisionPropertiesCache;
+    private static volatile FSCache<FSCacheKey, FSPathChange[]> ourChangesCache;
+
+    private static final long ourMaxFulltextSize = getLongProperty(FULLTEXTS_MAX_SIZE_PROPERTY, 0x100000);
+    private static final long ourDirectSize = getLongProperty(DIRECT_SIZE_PROPERTY, 0x10000);
+
+    private static volatile boolean ourIsMappingEnabled = DefaultSVNOptions.getBooleanValue(System.getProperty(MMAP_ENABLED_PROPERTY), false);
+    private static volatile FSCache<String, ByteBuffer> ourMappedFiles;
+
+    public static boolean isEnabled() {
+        return ourIsEnabled;
+    }
+
+    public static synchronized void setEnabled(boolean enabled) {
+        ourIsEnabled = enabled;
+        if (!enabled) {
+            clear();
+        }
+    }
+
+    public static synchronized void clear() {
+        if (ourRevisionNodesCache != null) {
+            ourRevisionNodesCache.clear();
+        }
+        if (ourDirEntriesCache != null) {
+            ourDirEntriesCache.clear();
+        }
+        if (ourFulltextsCache != null) {
+            ourFulltextsCache.clear();
+        }
+        if (ourWindowsCache != null) {
+            ourWindowsCache.clear();
+        }
+        if (ourIndexesCache != null) {
+            ourIndexesCache.clear();
+        }
+        if (ourRevisionPropertiesCache != null) {
+            ourRevisionPropertiesCache.clear();
+        }
+        if (ourChangesCache != null) {
+            ourChangesCache.clear();
+        }
+        if (ourMappedFiles != null) {
+            ourMappedFiles.clear();
+        }
+    }
+
+    public static boolean isMappingEnabled() {
+        return ourIsMappingEnabled;
+    }
+
+    public static synchronized void setMappingEnabled(boolean enabled) {
+        ourIsMappingEnabled = enabled;
+        if (!enabled && ourMappedFiles != null) {
+            ourMappedFiles.clear();
+        }
+    }
+
+    public static FSCache<FSCacheKey, FSRevisionNode> getRevisionNodesCache() {
+        if (!ourIsEnabled) {
+            return null;
+        }
+        if (ourRevisionNodesCache == null) {
+            createRevisionNodesCache();
+        }
+        return ourRevisionNodesCache;
+    }
+
+    private static synchronized void createRevisionNodesCache() {
+        if (ourRevisionNodesCache == null) {
+            final int maxEntries = (int) getLongProperty(REVISION_NODES_ENTRIES_PROPERTY, 0x4000);
+            final long maxMemory = getLongProperty(REVISION_NODES_MEMORY_PROPERTY, 0x1000000);
+            ourRevisionNodesCache = new FSCache<FSCacheKey, FSRevisionNode>("revision-nodes", maxEntries, maxMemory, CONCURRENCY_LEVEL) {
+                protected long getWeight(FSCacheKey key, FSRevisionNode node) {
+                    return getRevisionNodeSize(node);
+                }
+            };
+        }
+    }
+
+    public static FSCache<FSCacheKey, FSDirEntries> getDirEntriesCache() {
+        if (!ourIsEnabled) {
+            return null;
+        }
+        if (ourDirEntriesCache == null) {
+            createDirEntriesCache();
+        }
+        return ourDirEntriesCache;
+    }
+
+    private static synchronized void createDirEntriesCache() {
+        if (ourDirEntriesCache == null) {
+            final int maxEntries = (int) getLongProperty(DIR_ENTRIES_ENTRIES_PROPERTY, 0x1000);
+            final long maxMemory = getLongProperty(DIR_ENTRIES_MEMORY_PROPERTY, 0x2000000);
+            ourDirEntriesCache = new FSCache<FSCacheKey, FSDirEntries>("dir-entries", maxEntries, maxMemory, CONCURRENCY_LEVEL) {
+                protected long getWeight(FSCacheKey key, FSDirEntries entries) {
+                    return entries.getApproximateSize();
+                }
+            };
+        }
+    }
+
+    public static FSCache<FSCacheKey, ByteBuffer> getFulltextsCache() {
+        if (!ourIsEnabled) {
+            return null;
+        }
+        if (ourFulltextsCache == null) {
+            createContentsCaches();
+        }
+        return ourFulltextsCache;
+    }
+
+    public static FSCache<FSCacheKey, ByteBuffer> getWindowsCache() {
+        if (!ourIsEnabled) {
+            return null;
+        }
+        if (ourWindowsCache == null) {
+            createContentsCaches();
+        }
+        return ourWindowsCache;
+    }
+
+    private static synchronized void createContentsCaches() {
+        if (ourFulltextsCache == null) {
+            final int maxEntries = (int) getLongProperty(FULLTEXTS_ENTRIES_PROPERTY, 0x400);
+            final long maxMemory = getLongProperty(FULLTEXTS_MEMORY_PROPERTY, 0x4000000);
+            ourFulltextsCache = new FSCache<FSCacheKey, ByteBuffer>("fulltexts", maxEntries, maxMemory, CONCURRENCY_LEVEL) {
+                protected long getWeight(FSCacheKey key, ByteBuffer contents) {
+                    return 64 + contents.capacity();
+                }
+            };
+        }
+        if (ourWindowsCache == null) {
+            final int maxEntries = (int) getLongProperty(WINDOWS_ENTRIES_PROPERTY, 0x400);
+            final long maxMemory = getLongProperty(WINDOWS_MEMORY_PROPERTY, 0x4000000);
+            ourWindowsCache = new FSCache<FSCacheKey, ByteBuffer>("windows", maxEntries, maxMemory, CONCURRENCY_LEVEL) {
+                protected long getWeight(FSCacheKey key, ByteBuffer contents) {
+                    return 64 + contents.capacity();
+                }
+            };
+        }
+    }
+
+    /**
+     * Returns cache of decoded L2P and P2L index headers and pages of log-addressed revision and pack files.
+     */
+    public static FSCache<FSCacheKey, Object> getIndexesCache() {
+        if (!ourIsEnabled) {
+            return null;
+        }
+        if (ourIndexesCache == null) {
+            createIndexesCache();
+        }
+        return ourIndexesCache;
+    }
+
+    private static synchronized void createIndexesCache() {
+        if (ourIndexesCache == null) {
+            final int maxEntries = (int) getLongProperty(INDEXES_ENTRIES_PROPERTY, 0x1000);
+            final long maxMemory = getLongProperty(INDEXES_MEMORY_PROPERTY, 0x1000000);
+            ourIndexesCache = new FSCache<FSCacheKey, Object>("indexes", maxEntries, maxMemory, CONCURRENCY_LEVEL) {
+                protected long getWeight(FSCacheKey key, Object indexData) {
+                    return FSLogicalAddressingIndex.getApproximateSize(indexData);
+                }
+            };
+        }
+    }
+
+    /**
+     * Returns cache of revision properties. Revision properties are mutable, so entries are keyed
+     * with the revision properties generation of the repository and must never be modified.
+     */
+    public static FSCache<FSCacheKey, SVNProperties> getRevisionPropertiesCache() {
+        if (!ourIsEnabled) {
+            return null;
+        }
+        if (ourRevisionPropertiesCache == null) {
+            createRevisionPropertiesCache();
+        }
+        return ourRevisionPropertiesCache;
+    }
+
+    private static synchronized void createRevisionPropertiesCache() {
+        if (ourRevisionPropertiesCache == null) {
+            final int maxEntries = (int) getLongProperty(REVISION_PROPERTIES_ENTRIES_PROPERTY, 0x4000);
+            final long maxMemory = getLongProperty(REVISION_PROPERTIES_MEMORY_PROPERTY, 0x1000000);
+            ourRevisionPropertiesCache = new FSCache<FSCacheKey, SVNProperties>("revision-properties", maxEntries, maxMemory, CONCURRENCY_LEVEL) {
+                protected long getWeight(FSCacheKey key, SVNProperties properties) {
+                    return getPropertiesSize(properties);
+                }
+            };
+        }
+    }
+
+    /**
+     * Returns cache of folded changed paths of revisions. Cached changes are shared and must never be
+     * modified, callers get copies of them.
+     */
+    public static FSCache<FSCacheKey, FSPathChange[]> getChangesCache() {
+        if (!ourIsEnabled) {
+            return null;
+        }
+        if (ourChangesCache == null) {
+            createChangesCache();
+        }
+        return ourChangesCache;
+    }
+
+    private static synchronized void createChangesCache() {
+        if (ourChangesCache == null) {
+            final int maxEntries = (int) getLongProperty(CHANGES_ENTRIES_PROPERTY, 0x1000);
+            final long maxMemory = getLongProperty(CHANGES_MEMORY_PROPERTY, 0x2000000);
+            ourChangesCache = new FSCache<FSCacheKey, FSPathChange[]>("changes", maxEntries, maxMemory, CONCURRENCY_LEVEL) {
+                protected long getWeight(FSCacheKey key, FSPathChange[] changes) {
+                    return getChangesSize(changes);
+                }
+            };
+        }
+    }
+
+    /**
+     * Returns the size of the largest fulltext that is cached as a whole.
+     */
+    public static long getMaxFulltextSize() {
+        return ourMaxFulltextSize;
+    }
+
+    /**
+     * Copies <code>length</code> bytes of <code>contents</code> into a new read-only buffer suitable
+     * for caching, large contents is copied into a direct buffer, so that it is kept out of the Java heap.
+     */
+    public static ByteBuffer createCachedContents(byte[] contents, int offset, int length) {
+        ByteBuffer buffer = length >= ourDirectSize ? ByteBuffer.allocateDirect(length) : ByteBuffer.allocate(length);
+        buffer.put(contents, offset, length);
+        buffer.flip();
+        return buffer.asReadOnlyBuffer();
+    }
+
+    /**
+     * Returns read-only view of the whole <code>file</code> contents mapped into memory, or <code>null</code>
+     * when mapping is disabled or not possible. Mapping is shared by all callers, but every call returns
+     * a view with its own position and limit. File must never be modified once mapped, mapping of the
+     * file that was replaced is detected by its length and modification time.
+     */
+    public static ByteBuffer getMappedFile(File file) {
+        if (!ourIsMappingEnabled || file == null) {
+            return null;
+        }
+        if (ourMappedFiles == null) {
+            createMappedFiles();
+        }
+        final long length = file.length();
+        if (length <= 0 || length > Integer.MAX_VALUE) {
+            return null;
+        }
+        final String key = file.getAbsolutePath() + ":" + length + ":" + file.lastModified();
+        ByteBuffer buffer = ourMappedFiles.get(key);
+        if (buffer == null) {
+            RandomAccessFile raFile = null;
+            try {
+                raFile = new RandomAccessFile(file, "r");
+                buffer = raFile.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            } catch (IOException e) {
+                return null;
+            } finally {
+                SVNFileUtil.closeFile(raFile);
+            }
+            ourMappedFiles.put(key, buffer);
+        }
+        return buffer.duplicate();
+    }
+
+    private static synchronized void createMappedFiles() {
+        if (ourMappedFiles == null) {
+            final int maxFiles = (int) getLongProperty(MMAP_FILES_PROPERTY, 0x100);
+            final long maxMemory = getLongProperty(MMAP_MEMORY_PROPERTY, 0x40000000);
+            ourMappedFiles = new FSCache<String, ByteBuffer>("mapped-files", maxFiles, maxMemory, 1) {
+                protected long getWeight(String key, ByteBuffer buffer) {
+                    return buffer.capacity();
+                }
+            };
+        }
+    }
+
+    public static long getLongProperty(String name, long defaultValue) {
+        return DefaultSVNOptions.getLongValue(System.getProperty(name), defaultValue);
+    }
+
+    static long getStringSize(String string) {
+        return string == null ? 0 : 40 + 2 * string.length();
+    }
+
+    private static long getChangesSize(FSPathChange[] changes) {
+        long size = 32 + 8 * changes.length;
+        for (int i = 0; i < changes.length; i++) {
+            size += 96 + getStringSize(changes[i].getPath()) + getStringSize(changes[i].getCopyPath()) + getIdSize(changes[i].getRevNodeId());
+        }
+        return size;
+    }
+
+    private static long getPropertiesSize(SVNProperties properties) {
+        long size = 80;
+        for (Iterator names = properties.nameSet().iterator(); names.hasNext();) {
+            final String name = (String) names.next();
+            final SVNPropertyValue value = properties.getSVNPropertyValue(name);
+            size += 40 + getStringSize(name);
+            if (value != null) {
+                size += value.isString() ? getStringSize(value.getString()) : 40 + value.getBytes().length;
+            }
+        }
+        return size;
+    }
+
+    private static long getRevisionNodeSize(FSRevisionNode node) {
+        long size = 160;
+        size += getIdSize(node.getId());
+        size += getIdSize(node.getPredecessorId());
+        size += getRepresentationSize(node.getTextRepresentation());
+        size += getRepresentationSize(node.getPropsRepresentation());
+        size += getStringSize(node.getCreatedPath());
+        size += getStringSize(node.getCopyFromPath());
+        size += getStringSize(node.getCopyRootPath());
+        return size;
+    }
+
+    private static long getIdSize(FSID id) {
+        if (id == null) {
+            return 0;
+        }
+        return 48 + getStringSize(id.getNodeID()) + getStringSize(id.getCopyID()) + getStringSize(id.getTxnID());
+    }
+
+    private static long getRepresentationSize(FSRepresentation representation) {
+        if (representation == null) {
+            return 0;
+        }
+        return 64 + getStringSize(representation.getMD5HexDigest()) + getStringSize(representation.getSHA1HexDigest()) +
+                getStringSize(representation.getTxnId()) + getStringSize(representation.getUniquifier());
+    }
+}
@@ -308,6 +308,9 @@ public class FSCommitter {
 
             mergeChanges(myFSFS, getTxnRoot(), youngishRootNode, conflictPath);
             myTxn.setBaseRevision(youngishRev);
+            // everything that does not depend on the new revision number is done before the lock is taken,
+            // so that other committers only wait for the final append.
+            getTxnRoot().prepareFinalRevision();
 
             FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(myFSFS);
             final Collection<FSRepresentation> representations = myFSFS.getRepositoryCacheManager() != null ?
@@ -326,10 +329,13 @@ public class FSCommitter {
                     }
                     throw svne;
                 } finally {
+                    getTxnRoot().clearPreparedFinalRevision();
                     writeLock.unlock();
                     FSWriteLock.release(writeLock);
                 }
             }
+            // transaction is not referenced anymore, removing its files doesn't need to block other committers.
+            myFSFS.purgeTxn(myTxn.getTxnId());
             // write representations here.
             if (representations != null && !representations.isEmpty()) {
                 if (myFSFS.getRepositoryCacheManager() != null) {
@@ -347,6 +353,14 @@ public class FSCommitter {
                     }
                 }
             }
+            FSNodeHistoryIndex nodeHistoryIndex = myFSFS.getNodeHistoryIndex();
+            if (nodeHistoryIndex != null) {
+                nodeHistoryIndex.updateAfterCommit(newRevision);
+            }
+            FSLogIndex logIndex = myFSFS.getLogIndex();
+            if (logIndex != null) {
+                logIndex.updateAfterCommit(newRevision);
+            }
             break;
         }
 
@@ -486,7 +500,7 @@ public class FSCommitter {
     }
 
     private long commit(Collection<FSRepresentation> representations) throws SVNException {
-        long oldRev = myFSFS.getYoungestRevision();
+        long oldRev = myFSFS.readYoungestRevisionUnderWriteLock();
 
         if (myTxn.getBaseRevision() != oldRev) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_TXN_OUT_OF_DATE, "Transaction out of date");
@@ -527,9 +541,12 @@ public class FSCommitter {
         }
 
         String commitTime = SVNDate.formatDate(new Date(System.currentTimeMillis()));
+        String revisionTime = commitTime;
         SVNProperties presetRevisionProperties = myFSFS.getTransactionProperties(myTxn.getTxnId());
         if (presetRevisionProperties == null || !presetRevisionProperties.containsName(SVNRevisionProperty.DATE)) {
             myFSFS.setTransactionProperty(myTxn.getTxnId(), SVNRevisionProperty.DATE, SVNPropertyValue.create(commitTime));
+        } else {
+            revisionTime = presetRevisionProperties.getStringValue(SVNRevisionProperty.DATE);
         }
 
         File txnPropsFile = myFSFS.getTransactionPropertiesFile(myTxn.getTxnId());
@@ -541,6 +558,9 @@ public class FSCommitter {
             // TODO pack property?
         }
 
+        // index entry is written before current, so that readers never see revision without it.
+        myFSFS.updateRevisionTimeIndex(newRevision, revisionTime);
+
         try {
             txnRoot.writeFinalCurrentFile(newRevision, startNodeId, startCopyId);
         } catch (IOException ioe) {
@@ -548,7 +568,6 @@ public class FSCommitter {
             SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
         }
         myFSFS.setYoungestRevisionCache(newRevision);
-        myFSFS.purgeTxn(myTxn.getTxnId());
         return newRevision;
     }
 
@@ -734,7 +753,7 @@ public class FSCommitter {
 
     private void verifyLocks() throws SVNException {
         FSTransactionRoot txnRoot = getTxnRoot();
-        Map changes = txnRoot.getChangedPaths();
+        Map changes = txnRoot.getChangedPathsToCommit();
         Object[] changedPaths = changes.keySet().toArray();
         Arrays.sort(changedPaths);
 
@@ -782,7 +801,7 @@ public class FSCommitter {
                 public void handleUnlock(String path, SVNLock lock, SVNErrorMessage error) throws SVNException {
                 }
             };
-            fsfs.walkDigestFiles(fsfs.getDigestFileFromRepositoryPath(path), handler, haveWriteLock);
+            fsfs.walkLocks(path, handler, haveWriteLock);
         } else {
             SVNLock lock = fsfs.getLockHelper(path, haveWriteLock);
             if (lock != null) {
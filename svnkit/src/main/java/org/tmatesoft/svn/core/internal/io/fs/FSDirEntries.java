@@ -0,0 +1,120 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable entries of a committed directory. Entries are kept in arrays:
+ * in the iteration order of the map they were created from and sorted by
+ * name for the binary search lookups. Instances are shared between threads
+ * through {@link FSCaches} and so must never be modified.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSDirEntries extends AbstractMap {
+
+    private static final Comparator ENTRIES_COMPARATOR = new Comparator() {
+        public int compare(Object o1, Object o2) {
+            return ((FSEntry) o1).getName().compareTo(((FSEntry) o2).getName());
+        }
+    };
+
+    private final FSEntry[] myEntries;
+    private final FSEntry[] mySortedEntries;
+    private final String[] mySortedNames;
+    private Set myEntrySet;
+
+    public FSDirEntries(Map entries) {
+        myEntries = (FSEntry[]) entries.values().toArray(new FSEntry[entries.size()]);
+        mySortedEntries = (FSEntry[]) myEntries.clone();
+        Arrays.sort(mySortedEntries, ENTRIES_COMPARATOR);
+        mySortedNames = new String[mySortedEntries.length];
+        for (int i = 0; i < mySortedEntries.length; i++) {
+            mySortedNames[i] = mySortedEntries[i].getName();
+        }
+    }
+
+    public int size() {
+        return myEntries.length;
+    }
+
+    public boolean containsKey(Object key) {
+        return indexOf(key) >= 0;
+    }
+
+    public Object get(Object key) {
+        int index = indexOf(key);
+        return index >= 0 ? mySortedEntries[index] : null;
+    }
+
+    public Set entrySet() {
+        if (myEntrySet == null) {
+            myEntrySet = new AbstractSet() {
+                public Iterator iterator() {
+                    return new EntriesIterator();
+                }
+
+                public int size() {
+                    return myEntries.length;
+                }
+            };
+        }
+        return myEntrySet;
+    }
+
+    public long getApproximateSize() {
+        long size = 64 + 12 * myEntries.length;
+        for (int i = 0; i < myEntries.length; i++) {
+            FSID id = myEntries[i].getId();
+            size += 64 + FSCaches.getStringSize(myEntries[i].getName());
+            size += 48 + FSCaches.getStringSize(id.getNodeID()) + FSCaches.getStringSize(id.getCopyID());
+        }
+        return size;
+    }
+
+    private int indexOf(Object key) {
+        if (!(key instanceof String)) {
+            return -1;
+        }
+        return Arrays.binarySearch(mySortedNames, key);
+    }
+
+    private class EntriesIterator implements Iterator {
+
+        private int myIndex;
+
+        public boolean hasNext() {
+            return myIndex < myEntries.length;
+        }
+
+        public Object next() {
+            if (myIndex >= myEntries.length) {
+                throw new NoSuchElementException();
+            }
+            FSEntry entry = myEntries[myIndex++];
+            return new AbstractMap.SimpleImmutableEntry(entry.getName(), entry);
+        }
+
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+    }
+}
@@ -56,6 +56,7 @@ import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.diff.SVNDeltaProcessor;
 import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
 import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
 
 /**
@@ -74,6 +75,7 @@ public class FSFS {
     public static final String FS_TYPE_FILE = "fs-type";
     public static final String TXN_CURRENT_FILE = "txn-current";
     public static final String MIN_UNPACKED_REV_FILE = "min-unpacked-rev";
+    public static final String REVPROP_GENERATION_FILE = "revprop-generation";
     public static final String TXN_CURRENT_LOCK_FILE = "txn-current-lock";
     public static final String REVISION_PROPERTIES_DIR = "revprops";
     public static final String WRITE_LOCK_FILE = "write-lock";
@@ -94,6 +96,10 @@ public class FSFS {
     public static final String COMPRESS_PACKED_REVPROPS_OPTION = "compress-packed-revprops";
     public static final String REVPROP_PACK_SIZE_OPTION = "revprop-pack-size";
 
+    public static final String DELTIFICATION_SECTION = "deltification";
+    public static final String COMPRESSION_OPTION = "compression";
+    public static final String COMPRESSION_LEVEL_OPTION = "compression-level";
+
     public static final String IO_SECTION = "io";
     public static final String BLOCK_SIZE_OPTION = "block-size";
     public static final String L2P_PAGE_SIZE_OPTION = "l2p-page-size";
@@ -124,7 +130,8 @@ public class FSFS {
     public static final int REPOSITORY_FORMAT = 5;
     public static final int REPOSITORY_FORMAT_LEGACY = 3;
     public static final int DB_FORMAT_PRE_17 = 4;
-    public static final int DB_FORMAT = 7;
+    public static final int DB_FORMAT_PRE_110 = 7;
+    public static final int DB_FORMAT = 8;
     public static final int DB_FORMAT_LOW = 1;
     public static final int MIN_SVNDIFF1_FORMAT = 2;
     public static final int LAYOUT_FORMAT_OPTION_MINIMAL_FORMAT = 3;
@@ -139,10 +146,14 @@ public class FSFS {
     public static final int MIN_PACKED_REVPROP_FORMAT = 6;
     public static final int MIN_LOG_ADDRESSING_MINIMAL_FORMAT = 7;
     public static final int MIN_MERGEINFO_IN_CHANGED_FORMAT = 7;
+    public static final int MIN_SVNDIFF2_FORMAT = 8;
+    public static final int MIN_REP_STRING_OPTIONAL_VALUES_FORMAT = 8;
 
     //TODO: we should be able to change this via some option
     private static long DEFAULT_MAX_FILES_PER_DIRECTORY = 1000;
     private static final String DB_TYPE = "fsfs";
+    private static final String REVISION_PROPERTIES_CACHE_KEY = "revprops";
+    private static final long REVPROP_GENERATION_TIMESTAMP_RESOLUTION = 2000;
 
     public static final String REVISION_PROPERTIES_DB = "revprops.db";
     public static final String REVISION_PROPERTIES_TABLE = "revprop";
@@ -154,6 +165,7 @@ public class FSFS {
     private int myDBFormat;
     private int myReposFormat;
     private String myUUID;
+    private String myCacheInstanceId;
     private String myFSType;
     private File myRepositoryRoot;
     private File myRevisionsRoot;
@@ -175,15 +187,24 @@ public class FSFS {
     private File myRepositoryCacheFile;
     private long myMaxFilesPerDirectory;
     private long myYoungestRevisionCache;
+    private FSYoungestRevision myYoungestRevision;
     private long myMinUnpackedRevision;
     private boolean myUseLogAddressing;
     private SVNConfigFile myConfig;
     private IFSRepresentationCacheManager myReposCacheManager;
+    private FSRevisionTimeIndex myRevisionTimeIndex;
+    private FSNodeHistoryIndex myNodeHistoryIndex;
+    private FSLogIndex myLogIndex;
     private long myMinUnpackedRevProp;
+    private long myRevisionPropertiesGeneration;
+    private long myRevisionPropertiesGenerationModified = -1;
+    private long myRevisionPropertiesGenerationLength;
+    private long myRevisionPropertiesGenerationReadTime;
     
     private boolean myIsHooksEnabled;
     private boolean myCompressPackedRevprops;
     private boolean myIsRepSharingAllowed;
+    private int mySVNDiffVersion;
     private long myRevpropPackSize;
 
     private long myBlockSize;
@@ -208,6 +229,15 @@ public class FSFS {
         return myDBFormat;
     }
 
+    /**
+     * Returns svndiff version new representations are written in: <code>1</code> (zlib) by default,
+     * <code>2</code> (LZ4) only when <code>[deltification]</code> section of <code>fsfs.conf</code>
+     * says <code>compression = lz4</code>, which requires format 8 repository.
+     */
+    public int getSVNDiffVersion() {
+        return mySVNDiffVersion;
+    }
+
     public long getMaxFilesPerDirectory() {
         return myMaxFilesPerDirectory;
     }
@@ -230,6 +260,20 @@ public class FSFS {
             myReposCacheManager.close();
             myReposCacheManager = null;
         }
+        synchronized (this) {
+            if (myRevisionTimeIndex != null) {
+                myRevisionTimeIndex.close();
+                myRevisionTimeIndex = null;
+            }
+            if (myNodeHistoryIndex != null) {
+                myNodeHistoryIndex.close();
+                myNodeHistoryIndex = null;
+            }
+            if (myLogIndex != null) {
+                myLogIndex.close();
+                myLogIndex = null;
+            }
+        }
     }
 
     public void openForRecovery() throws SVNException {
@@ -299,6 +343,7 @@ public class FSFS {
             isRepSharingAllowed = DefaultSVNOptions.getBooleanValue(optionValue, true);
         }
         myIsRepSharingAllowed = isRepSharingAllowed;
+        mySVNDiffVersion = readSVNDiffVersion(config);
 
         if (myDBFormat >= MIN_REP_SHARING_FORMAT && isRepSharingAllowed) {
             myReposCacheManager = FSRepresentationCacheUtil.open(this);
@@ -429,6 +474,17 @@ public class FSFS {
         return myUUID;
     }
 
+    /**
+     * Returns id which distinguishes this repository in the process-wide {@link FSCaches}:
+     * repository location, its UUID and the time repository was created at.
+     */
+    public String getCacheInstanceId() throws SVNException {
+        if (myCacheInstanceId == null) {
+            myCacheInstanceId = getRepositoryRoot().getAbsolutePath() + ":" + getUUID() + ":" + getFSTypeFile().lastModified();
+        }
+        return myCacheInstanceId;
+    }
+
     public File getDBRoot() {
         if (myDBRoot == null) {
             myDBRoot = new File(myRepositoryRoot, DB_DIR);
@@ -574,22 +630,55 @@ public class FSFS {
     }
 
     public long getYoungestRevision() throws SVNException {
+        myYoungestRevisionCache = getYoungestRevisionHolder().getRevision(this);
+        return myYoungestRevisionCache;
+    }
+
+    /**
+     * Reads the youngest revision from <code>db/current</code> bypassing the process-wide cache.
+     * Used instead of {@link #getYoungestRevision()} while the repository write lock is held.
+     */
+    public long readYoungestRevisionUnderWriteLock() throws SVNException {
+        myYoungestRevisionCache = getYoungestRevisionHolder().readRevision(this);
+        return myYoungestRevisionCache;
+    }
+
+    private synchronized FSYoungestRevision getYoungestRevisionHolder() {
+        if (myYoungestRevision == null) {
+            myYoungestRevision = FSYoungestRevision.getInstance(this);
+        }
+        return myYoungestRevision;
+    }
+
+    /**
+     * Registers a listener to be notified about new revisions of this repository. Listeners are
+     * shared by all {@link FSFS} instances of the repository root, so commits made through any of
+     * them are reported. Commits made by other processes are reported once noticed by
+     * {@link #getYoungestRevision()}. Listeners are kept while any {@link FSFS} instance of the
+     * repository root is reachable.
+     */
+    public void addRevisionListener(IFSRevisionListener listener) {
+        getYoungestRevisionHolder().addListener(listener);
+    }
+
+    public void removeRevisionListener(IFSRevisionListener listener) {
+        getYoungestRevisionHolder().removeListener(listener);
+    }
+
+    protected long readYoungestRevision() throws SVNException {
         FSFile file = new FSFile(getCurrentFile());
         try {
             String line = file.readLine(180);
             int spaceIndex = line.indexOf(' ');
             if (spaceIndex > 0) {
-                myYoungestRevisionCache = Long.parseLong(line.substring(0, spaceIndex));
-            } else {
-                myYoungestRevisionCache = Long.parseLong(line);
+                return Long.parseLong(line.substring(0, spaceIndex));
             }
-            return myYoungestRevisionCache;
+            return Long.parseLong(line);
         } catch (NumberFormatException nfe) {
-            myYoungestRevisionCache = 0;
+            return 0;
         } finally {
             file.close();
         }
-        return myYoungestRevisionCache;
     }
 
     public long getMinUnpackedRev() throws SVNException {
@@ -681,21 +770,51 @@ public class FSFS {
     }
 
     public SVNProperties getRevisionProperties(long revision) throws SVNException {
-        try{
-            if (!SVNRevision.isValidRevisionNumber(revision)) {
-                revision = getYoungestRevision();
+        if (!SVNRevision.isValidRevisionNumber(revision)) {
+            revision = getYoungestRevision();
+        }
+        final FSCache<FSCacheKey, SVNProperties> propertiesCache = FSCaches.getRevisionPropertiesCache();
+        if (propertiesCache == null) {
+            return readRevisionPropertiesWithRetry(revision, null);
+        }
+        final long generation = getRevisionPropertiesGeneration();
+        if (generation % 2 != 0) {
+            // revision properties are being changed right now or their change was interrupted.
+            return readRevisionPropertiesWithRetry(revision, null);
+        }
+        final String instanceId = getCacheInstanceId();
+        final FSCacheKey cacheKey = new FSCacheKey(instanceId, REVISION_PROPERTIES_CACHE_KEY, revision, generation);
+        final SVNProperties cachedProperties = propertiesCache.get(cacheKey);
+        if (cachedProperties != null) {
+            return new SVNProperties(cachedProperties);
+        }
+        final Map<Long, SVNProperties> packProperties = new HashMap<Long, SVNProperties>();
+        final SVNProperties properties = readRevisionPropertiesWithRetry(revision, packProperties);
+        if (getRevisionPropertiesGeneration() == generation) {
+            propertiesCache.put(cacheKey, new SVNProperties(properties));
+            for (Map.Entry<Long, SVNProperties> entry : packProperties.entrySet()) {
+                final long packedRevision = entry.getKey().longValue();
+                if (packedRevision != revision) {
+                    propertiesCache.put(new FSCacheKey(instanceId, REVISION_PROPERTIES_CACHE_KEY, packedRevision, generation), entry.getValue());
+                }
             }
-            return readRevisionProperties(revision);
+        }
+        return properties;
+    }
+
+    private SVNProperties readRevisionPropertiesWithRetry(long revision, Map<Long, SVNProperties> packProperties) throws SVNException {
+        try{
+            return readRevisionProperties(revision, packProperties);
         } catch(SVNException e ) {
             if(e.getErrorMessage().getErrorCode()==SVNErrorCode.FS_NO_SUCH_REVISION && myDBFormat >= MIN_PACKED_REVPROP_FORMAT ) {
                 updateMinUnpackedRevProp();
-                return readRevisionProperties(revision);
+                return readRevisionProperties(revision, packProperties);
             }
             throw e;
         }
     }
 
-    private SVNProperties readRevisionProperties(long revision) throws SVNException {
+    private SVNProperties readRevisionProperties(long revision, Map<Long, SVNProperties> packProperties) throws SVNException {
         ensureRevisionsExists(revision);
         SVNProperties properties = null;
         if (!isPackedRevisionProperties(revision)) {
@@ -712,13 +831,13 @@ public class FSFS {
         }
         if (myDBFormat >= MIN_PACKED_REVPROP_FORMAT && properties == null) {
             // read packed revision props
-            return readPackedRevisionProperties(revision);
+            return readPackedRevisionProperties(revision, packProperties);
             // TODO wrap exception, do retry
         }
         return properties == null ? new SVNProperties() : properties;
     }
     
-    private SVNProperties readPackedRevisionProperties(long revision) throws SVNException {
+    private SVNProperties readPackedRevisionProperties(long revision, Map<Long, SVNProperties> packProperties) throws SVNException {
         if (!isPackedRevisionProperties(revision)) {
             updateMinUnpackedRevProp();
         }
@@ -729,6 +848,16 @@ public class FSFS {
         final File packFile = getPackedRevPropFile(revision);
         final SVNFSFSPackedRevProps packedRevProps = SVNFSFSPackedRevProps.fromPackFile(packFile);
         final SVNProperties properties = packedRevProps.parseProperties(revision);
+        if (packProperties != null) {
+            // the whole pack is decoded anyway, keep properties of all its revisions.
+            final long firstRevision = packedRevProps.getFirstRevision();
+            for (long packedRevision = firstRevision; packedRevision < firstRevision + packedRevProps.getRevisionsCount(); packedRevision++) {
+                if (packedRevision != revision) {
+                    final SVNProperties packedProperties = packedRevProps.parseProperties(packedRevision);
+                    packProperties.put(packedRevision, packedProperties == null ? new SVNProperties() : packedProperties);
+                }
+            }
+        }
         return properties == null ? new SVNProperties() : properties;
     }
 
@@ -856,6 +985,27 @@ public class FSFS {
     }
 
     public FSRevisionNode getRevisionNode(FSID id) throws SVNException  {
+        final FSCache<FSCacheKey, FSRevisionNode> nodesCache = id.isTxn() ? null : FSCaches.getRevisionNodesCache();
+        final FSCacheKey cacheKey = nodesCache != null ? new FSCacheKey(getCacheInstanceId(), id) : null;
+        if (nodesCache != null) {
+            final FSRevisionNode cachedNode = nodesCache.get(cacheKey);
+            if (cachedNode != null) {
+                return FSRevisionNode.dumpRevisionNode(cachedNode);
+            }
+        }
+
+        FSRevisionNode node = readRevisionNode(id);
+        if (nodesCache != null) {
+            nodesCache.put(cacheKey, node);
+            return FSRevisionNode.dumpRevisionNode(node);
+        }
+        return node;
+    }
+
+    /**
+     * Reads node revision from the revision (or transaction) file, bypassing the nodes cache.
+     */
+    FSRevisionNode readRevisionNode(FSID id) throws SVNException {
         FSFile revisionFile = null;
 
         if (id.isTxn()) {
@@ -879,6 +1029,13 @@ public class FSFS {
         return node;
     }
 
+    /**
+     * Reads and parses committed directory representation, bypassing the directory entries cache.
+     */
+    Map readDirContents(FSRepresentation txtRep) throws SVNException {
+        return parsePlainRepresentation(parseProperties(txtRep), false);
+    }
+
     public Map getDirContents(FSRevisionNode revNode) throws SVNException {
         FSRepresentation txtRep = revNode.getTextRepresentation();
         if (txtRep != null && txtRep.isTxn()) {
@@ -896,7 +1053,17 @@ public class FSFS {
             }
             return entries;
         } else if (txtRep != null) {
-            return parsePlainRepresentation(parseProperties(txtRep), false);
+            final FSCache<FSCacheKey, FSDirEntries> entriesCache = FSCaches.getDirEntriesCache();
+            if (entriesCache == null) {
+                return readDirContents(txtRep);
+            }
+            final FSCacheKey cacheKey = FSCacheKey.createRepresentationKey(getCacheInstanceId(), txtRep);
+            FSDirEntries entries = entriesCache.get(cacheKey);
+            if (entries == null) {
+                entries = new FSDirEntries(readDirContents(txtRep));
+                entriesCache.put(cacheKey, entries);
+            }
+            return entries;
         }
         return new SVNHashMap();// returns an empty map, must not be null!!
     }
@@ -1273,6 +1440,7 @@ public class FSFS {
             synchronized (writeLock) {
                 try {
                     writeLock.lock();
+                    beginRevisionPropertiesChange();
 
                     if (!isPackedRevisionProperties(revision)) {
                         SVNWCProperties revProps = new SVNWCProperties(getRevisionPropertiesFile(revision, false), null);
@@ -1315,13 +1483,90 @@ public class FSFS {
                             }
                         }
                     }
+                    if (SVNRevisionProperty.DATE.equals(propertyName)) {
+                        updateRevisionTimeIndex(revision, propertyValue != null ? propertyValue.getString() : null);
+                    } else if (SVNRevisionProperty.AUTHOR.equals(propertyName)) {
+                        updateLogIndex(revision, propertyValue != null ? propertyValue.getString() : null);
+                    }
                 } finally {
-                    writeLock.unlock();
-                    FSWriteLock.release(writeLock);
+                    try {
+                        endRevisionPropertiesChange();
+                    } finally {
+                        writeLock.unlock();
+                        FSWriteLock.release(writeLock);
+                    }
                 }
             }
     }
 
+    public File getRevisionPropertiesGenerationFile() {
+        return new File(getDBRoot(), REVPROP_GENERATION_FILE);
+    }
+
+    /**
+     * Returns the revision properties generation, which is incremented before and after every change
+     * of revision properties, so that it is odd while a change is in progress. Cached revision properties
+     * are keyed with the generation and are not used while it is odd. Same counter is maintained by native
+     * Subversion 1.9 and newer in <code>db/revprop-generation</code>, missing file means generation 0.
+     */
+    public long getRevisionPropertiesGeneration() throws SVNException {
+        final File generationFile = getRevisionPropertiesGenerationFile();
+        final long readTime = System.currentTimeMillis();
+        final long lastModified = generationFile.lastModified();
+        final long length = generationFile.length();
+        synchronized (this) {
+            // file is replaced on every change, its timestamp is trusted only when it is
+            // old enough to differ from the timestamp of any later change.
+            if (lastModified != 0 && lastModified == myRevisionPropertiesGenerationModified && length == myRevisionPropertiesGenerationLength &&
+                    myRevisionPropertiesGenerationReadTime - lastModified > REVPROP_GENERATION_TIMESTAMP_RESOLUTION) {
+                return myRevisionPropertiesGeneration;
+            }
+        }
+        if (!generationFile.isFile()) {
+            return 0;
+        }
+        long generation = 0;
+        FSFile file = new FSFile(generationFile);
+        try {
+            generation = file.readLong();
+        } catch (NumberFormatException nfe) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Revprop generation file ''{0}'' is corrupt", generationFile);
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        } finally {
+            file.close();
+        }
+        synchronized (this) {
+            myRevisionPropertiesGeneration = generation;
+            myRevisionPropertiesGenerationModified = lastModified;
+            myRevisionPropertiesGenerationLength = length;
+            myRevisionPropertiesGenerationReadTime = readTime;
+        }
+        return generation;
+    }
+
+    void beginRevisionPropertiesChange() throws SVNException {
+        final long generation = getRevisionPropertiesGeneration();
+        // generation remains odd after an interrupted change.
+        writeRevisionPropertiesGeneration(generation % 2 == 0 ? generation + 1 : generation + 2);
+    }
+
+    void endRevisionPropertiesChange() throws SVNException {
+        final long generation = getRevisionPropertiesGeneration();
+        if (generation % 2 != 0) {
+            writeRevisionPropertiesGeneration(generation + 1);
+        }
+    }
+
+    private void writeRevisionPropertiesGeneration(long generation) throws SVNException {
+        final File generationFile = getRevisionPropertiesGenerationFile();
+        final File tmpFile = SVNFileUtil.createUniqueFile(getDBRoot(), REVPROP_GENERATION_FILE, ".tmp", false);
+        SVNFileUtil.writeToFile(tmpFile, generation + "\n", "US-ASCII");
+        SVNFileUtil.rename(tmpFile, generationFile);
+        synchronized (this) {
+            myRevisionPropertiesGenerationModified = -1;
+        }
+    }
+
     protected long getRevPropPackSize() {
         return myRevpropPackSize;
     }
@@ -1537,6 +1782,119 @@ public class FSFS {
             }
             children.clear();
         }
+        // stale index entry is harmless, so index is updated after digest files.
+        updateLockIndex(lock.getPath(), false);
+    }
+
+    /**
+     * Reports locks of <code>repositoryPath</code> and of all paths below it. When lock index is
+     * enabled, locks are read from digest files of indexed paths only, otherwise digest files tree
+     * is walked. Missing index is only built when repository write lock is held, readers walk
+     * digest files instead.
+     */
+    public void walkLocks(String repositoryPath, ISVNLockHandler getLocksHandler, boolean haveWriteLock) throws SVNException {
+        repositoryPath = SVNPathUtil.canonicalizeAbsolutePath(repositoryPath);
+        List<String> lockedPaths = null;
+        if (FSLockIndex.isEnabled()) {
+            if (haveWriteLock) {
+                FSLockIndex lockIndex = getLockIndexForUpdate();
+                if (lockIndex != null) {
+                    try {
+                        lockedPaths = lockIndex.getLockedPaths(repositoryPath);
+                    } catch (SVNException e) {
+                        SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+                        deleteLockIndex(lockIndex);
+                    }
+                }
+            } else {
+                try {
+                    lockedPaths = FSLockIndex.getIndex(this).getLockedPaths(repositoryPath);
+                } catch (SVNException e) {
+                    SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+                }
+            }
+        }
+        if (lockedPaths == null) {
+            walkDigestFiles(getDigestFileFromRepositoryPath(repositoryPath), getLocksHandler, haveWriteLock);
+            return;
+        }
+        for (String lockedPath : lockedPaths) {
+            SVNLock lock = fetchLockFromDigestFile(null, lockedPath, null);
+            if (lock == null) {
+                // lock was removed by someone who does not maintain the index.
+                if (haveWriteLock) {
+                    updateLockIndex(lockedPath, false);
+                }
+                continue;
+            }
+            Date current = new Date(System.currentTimeMillis());
+            if (lock.getExpirationDate() == null || current.compareTo(lock.getExpirationDate()) < 0) {
+                getLocksHandler.handleLock(lock.getPath(), lock, null);
+            } else if (haveWriteLock) {
+                deleteLock(lock);
+            }
+        }
+    }
+
+    /**
+     * Returns lock index, building it first when it is enabled but missing, or <code>null</code>
+     * when there is no index to update. Index that cannot be read is deleted and treated as missing.
+     * Should be called while repository write lock is held.
+     */
+    private FSLockIndex getLockIndexForUpdate() {
+        final FSLockIndex lockIndex = FSLockIndex.getIndex(this);
+        try {
+            if (lockIndex.exists()) {
+                return lockIndex;
+            }
+        } catch (SVNException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            if (!deleteLockIndex(lockIndex)) {
+                return null;
+            }
+        }
+        if (!FSLockIndex.isEnabled()) {
+            return null;
+        }
+        try {
+            lockIndex.build(this);
+            return lockIndex;
+        } catch (SVNException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            deleteLockIndex(lockIndex);
+        }
+        return null;
+    }
+
+    /**
+     * Records lock or unlock of <code>path</code> in the lock index. Index is optional, so failures
+     * are only logged and leave the index deleted. Should be called while repository write lock is held.
+     */
+    private void updateLockIndex(String path, boolean locked) {
+        final FSLockIndex lockIndex = getLockIndexForUpdate();
+        if (lockIndex == null) {
+            return;
+        }
+        try {
+            if (locked) {
+                lockIndex.add(path);
+            } else {
+                lockIndex.remove(path);
+            }
+        } catch (SVNException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            deleteLockIndex(lockIndex);
+        }
+    }
+
+    private boolean deleteLockIndex(FSLockIndex lockIndex) {
+        try {
+            lockIndex.delete();
+            return true;
+        } catch (SVNException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            return false;
+        }
     }
 
     public void walkDigestFiles(File digestFile, ISVNLockHandler getLocksHandler, boolean haveWriteLock) throws SVNException {
@@ -2040,7 +2398,7 @@ public class FSFS {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_NO_SUCH_REVISION, "No such revision {0}", String.valueOf(revision));
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        return new FSFile(revisionFile);
+        return new FSFile(revisionFile, true);
     }
 
     protected FSFile getPackOrRevisionFSFile(long revision) throws SVNException {
@@ -2049,7 +2407,7 @@ public class FSFS {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_NO_SUCH_REVISION, "No such revision {0}", String.valueOf(revision));
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        return new FSFile(file);
+        return new FSFile(file, true);
     }
 
     protected File getAbsoluteRevisionPath(long revision) throws SVNException {
@@ -2156,6 +2514,7 @@ public class FSFS {
         }
 
         SVNFileUtil.rename(tmpCurrentFile, currentFile);
+        getYoungestRevisionHolder().setRevision(revision);
     }
 
     protected long getPackedOffset(long revision) throws SVNException {
@@ -2189,6 +2548,47 @@ public class FSFS {
         return revOffsetLong.longValue();
     }
 
+    private int readSVNDiffVersion(SVNConfigFile config) throws SVNException {
+        if (myDBFormat < MIN_SVNDIFF1_FORMAT) {
+            return 0;
+        }
+        String compression = config != null ? config.getPropertyValue(DELTIFICATION_SECTION, COMPRESSION_OPTION) : null;
+        String compressionLevel = config != null ? config.getPropertyValue(DELTIFICATION_SECTION, COMPRESSION_LEVEL_OPTION) : null;
+        if (compression != null && compressionLevel != null) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.BAD_CONFIG_VALUE, 
+                    "The ''{0}'' and ''{1}'' options are mutually exclusive", new Object[] {COMPRESSION_OPTION, COMPRESSION_LEVEL_OPTION});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        if (compression == null && compressionLevel == null) {
+            return 1;
+        }
+        compression = compression != null ? compression.trim() : "zlib-" + compressionLevel.trim();
+        if ("none".equals(compression)) {
+            return 0;
+        } else if ("lz4".equals(compression)) {
+            if (myDBFormat < MIN_SVNDIFF2_FORMAT) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.BAD_CONFIG_VALUE, 
+                        "Compression type ''lz4'' requires FSFS format {0} or higher", new Integer(MIN_SVNDIFF2_FORMAT));
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+            return 2;
+        } else if ("zlib".equals(compression)) {
+            return 1;
+        } else if (compression.startsWith("zlib-")) {
+            try {
+                int level = Integer.parseInt(compression.substring("zlib-".length()));
+                if (level >= 0 && level <= 9) {
+                    return level == 0 ? 0 : 1;
+                }
+            } catch (NumberFormatException e) {
+            }
+        }
+        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.BAD_CONFIG_VALUE, 
+                "Invalid ''{0}'' value ''{1}'' in the config", new Object[] {COMPRESSION_OPTION, compression});
+        SVNErrorManager.error(err, SVNLogType.FSFS);
+        return 1;
+    }
+
     private SVNConfigFile loadConfig() {
         File confFile = getConfigFile();
         if (myDBFormat < MIN_REP_SHARING_FORMAT || !confFile.exists()) {
@@ -2247,7 +2647,7 @@ public class FSFS {
 
     private SVNLock lock(String path, String token, String username, String comment, Date expirationDate, long currentRevision,
             boolean stealLock, boolean isDAVComment) throws SVNException {
-        long youngestRev = getYoungestRevision();
+        long youngestRev = readYoungestRevisionUnderWriteLock();
         FSRevisionRoot root = createRevisionRoot(youngestRev);
         SVNNodeKind kind = root.checkNodeKind(path);
         
@@ -2330,6 +2730,8 @@ public class FSFS {
         String lastChild = "";
         String path = lock.getPath();
         Collection children = new ArrayList();
+        // missing index entry would hide the lock, so index is updated before digest files.
+        updateLockIndex(path, true);
         while (true) {
             String digestFileName = getDigestFromRepositoryPath(path);
             SVNLock fetchedLock = fetchLockFromDigestFile(null, path, children);
@@ -2454,6 +2856,11 @@ public class FSFS {
         return index.getOffsetByItemIndex(revision, itemIndex);
     }
 
+    protected long[] lookupOffsetsInIndex(FSFile file, long revision, long[] itemIndexes) throws SVNException {
+        FSLogicalAddressingIndex index = new FSLogicalAddressingIndex(this, file);
+        return index.getOffsetsByItemIndexes(revision, itemIndexes);
+    }
+
     protected long lookupOffsetInProtoIndex(FSFile file, String txnId, long itemIndex) throws SVNException {
         FSL2PProtoIndex index = null;
         try {
@@ -2508,6 +2915,13 @@ public class FSFS {
     }
 
     private Date getRevisionTime(long revision) throws SVNException {
+        FSRevisionTimeIndex revisionTimeIndex = getRevisionTimeIndex();
+        if (revisionTimeIndex != null) {
+            Date time = revisionTimeIndex.getTime(revision);
+            if (time != null) {
+                return time;
+            }
+        }
         SVNProperties revisionProperties = getRevisionProperties(revision);
         String timeString = revisionProperties.getStringValue(SVNRevisionProperty.DATE);
         if (timeString == null) {
@@ -2517,6 +2931,62 @@ public class FSFS {
         return SVNDate.parseDateString(timeString);
     }
 
+    /**
+     * Returns revision times index or <code>null</code> when it is disabled.
+     */
+    public synchronized FSRevisionTimeIndex getRevisionTimeIndex() {
+        if (myRevisionTimeIndex == null && FSRevisionTimeIndex.isEnabled()) {
+            myRevisionTimeIndex = new FSRevisionTimeIndex(this);
+        }
+        return FSRevisionTimeIndex.isEnabled() ? myRevisionTimeIndex : null;
+    }
+
+    /**
+     * Returns node history index or <code>null</code> when it is disabled.
+     */
+    public synchronized FSNodeHistoryIndex getNodeHistoryIndex() {
+        if (myNodeHistoryIndex == null && FSNodeHistoryIndex.isEnabled()) {
+            myNodeHistoryIndex = new FSNodeHistoryIndex(this);
+        }
+        return FSNodeHistoryIndex.isEnabled() ? myNodeHistoryIndex : null;
+    }
+
+    /**
+     * Returns changed paths and authors index or <code>null</code> when it is disabled.
+     */
+    public synchronized FSLogIndex getLogIndex() {
+        if (myLogIndex == null && FSLogIndex.isEnabled()) {
+            myLogIndex = new FSLogIndex(this);
+        }
+        return FSLogIndex.isEnabled() ? myLogIndex : null;
+    }
+
+    /**
+     * Updates revision times index with the new <code>svn:date</code> value. Should be called
+     * under the repository write lock. Index is optional, so failures are only logged.
+     */
+    void updateRevisionTimeIndex(long revision, String date) {
+        FSRevisionTimeIndex revisionTimeIndex = getRevisionTimeIndex();
+        if (revisionTimeIndex != null) {
+            try {
+                revisionTimeIndex.setTime(revision, date);
+            } catch (SVNException e) {
+                SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            }
+        }
+    }
+
+    private void updateLogIndex(long revision, String author) {
+        FSLogIndex logIndex = getLogIndex();
+        if (logIndex != null) {
+            try {
+                logIndex.setAuthor(revision, author);
+            } catch (SVNException e) {
+                SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            }
+        }
+    }
+
     private static boolean isRepositoryRoot(File candidatePath) {
         File formatFile = new File(candidatePath, REPOS_FORMAT_FILE);
         SVNFileType fileType = SVNFileType.getType(formatFile);
@@ -16,7 +16,6 @@ import org.tmatesoft.svn.core.internal.util.SVNHashMap;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNMergeInfoManager;
-import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
 
@@ -47,6 +46,8 @@ public class FSFile {
     private long myBufferPosition;
     
     private ByteBuffer myBuffer;
+    private boolean myIsImmutable;
+    private ByteBuffer myMappedBuffer;
     private ByteBuffer myReadLineBuffer;
     private CharsetDecoder myDecoder;
     private MessageDigest myDigest;
@@ -60,7 +61,17 @@ public class FSFile {
     private long myFooterOffset;
 
     public FSFile(File file) {
+        this(file, false);
+    }
+
+    /**
+     * Creates reader of the file. When <code>immutable</code> is <code>true</code> (that is
+     * for revision and pack files) file contents may be served from the memory mapping shared
+     * through {@link FSCaches}.
+     */
+    public FSFile(File file, boolean immutable) {
         myFile = file;
+        myIsImmutable = immutable;
         myData = null;
         myPosition = 0;
         myBufferPosition = 0;
@@ -140,6 +151,9 @@ public class FSFile {
     }
 
     public String readLine(int limit) throws SVNException {
+        if (isMapped()) {
+            return readMappedLine(limit);
+        }
         long currentLimit = limit < 0 ? 1024 : limit; //if limit < 0, read line buffer should have infinite size
         allocateReadBuffer((int) currentLimit);
         try {
@@ -238,17 +252,18 @@ public class FSFile {
                     SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.MALFORMED_FILE);
                     SVNErrorManager.error(err, SVNLogType.DEFAULT);
                 }
-                allocateReadBuffer(length + 1);
-                read(myReadLineBuffer);
-                myReadLineBuffer.flip();
-                myReadLineBuffer.limit(myReadLineBuffer.limit() - 1);
-                int pos = myReadLineBuffer.position();
-                int limit = myReadLineBuffer.limit();
+                ByteBuffer block = readBlock(length + 1);
+                block.limit(block.limit() - 1);
+                int pos = block.position();
+                int limit = block.limit();
                 String key = null;
                 try {
-                    key = myDecoder.decode(myReadLineBuffer).toString();
+                    key = myDecoder.decode(block).toString();
                 } catch (MalformedInputException mfi) {
-                    key = new String(myReadLineBuffer.array(), myReadLineBuffer.arrayOffset() + pos, limit - pos);
+                    byte[] keyBytes = new byte[limit - pos];
+                    block.position(pos);
+                    block.get(keyBytes);
+                    key = new String(keyBytes);
                 }
                 if (kind == 'D') {
                     properties.put(key, (SVNPropertyValue) null);
@@ -269,19 +284,17 @@ public class FSFile {
                     SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.MALFORMED_FILE);
                     SVNErrorManager.error(err, SVNLogType.DEFAULT);
                 }
-                allocateReadBuffer(length + 1);
-                read(myReadLineBuffer);
-                myReadLineBuffer.flip();
-                myReadLineBuffer.limit(myReadLineBuffer.limit() - 1);
-                pos = myReadLineBuffer.position();
-                limit = myReadLineBuffer.limit();
+                block = readBlock(length + 1);
+                block.limit(block.limit() - 1);
+                pos = block.position();
+                limit = block.limit();
                 try {
-                    properties.put(key, myDecoder.decode(myReadLineBuffer).toString());
+                    properties.put(key, myDecoder.decode(block).toString());
                 } catch (CharacterCodingException cce) {
                     if (allowBinaryValues){
                         byte[] dst = new byte[limit - pos];
-                        myReadLineBuffer.position(pos);
-                        myReadLineBuffer.get(dst);
+                        block.position(pos);
+                        block.get(dst);
                         properties.put(key, dst);                                                
                     } else {
                         SVNErrorMessage error = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "File ''{0}'' contains unexpected binary property value", getFile());
@@ -363,6 +376,17 @@ public class FSFile {
             }
             return myData[((int) (myOffset + myPosition - 1))] & 0xff;
         }
+        if (isMapped()) {
+            if (myPosition >= myMappedBuffer.limit()) {
+                return -1;
+            }
+            int r = myMappedBuffer.get((int) myPosition) & 0xFF;
+            if (myDigest != null) {
+                myDigest.update((byte) r);
+            }
+            myPosition++;
+            return r;
+        }
         if ((myChannel == null && myInputStream == null) || myPosition < myBufferPosition || myPosition >= myBufferPosition + myBuffer.limit()) {
             if (fill() <= 0) {
                 return -1;
@@ -388,6 +412,15 @@ public class FSFile {
             myPosition += couldRead;
             return couldRead > 0 ? couldRead : -1;
         }
+        if (isMapped()) {
+            int couldRead = (int) Math.max(0, Math.min(myMappedBuffer.limit() - myPosition, target.remaining()));
+            if (couldRead > 0) {
+                target.put(slice(couldRead));
+            } else if (!target.hasRemaining()) {
+                return 0;
+            }
+            return couldRead > 0 ? couldRead : -1;
+        }
         int read = 0;
         while(target.hasRemaining()) {
             if (fill() < 0) {
@@ -418,6 +451,15 @@ public class FSFile {
             myPosition += couldRead;
             return couldRead > 0 ? couldRead : -1;
         }
+        if (isMapped()) {
+            int couldRead = (int) Math.max(0, Math.min(myMappedBuffer.limit() - myPosition, length));
+            if (couldRead > 0) {
+                slice(couldRead).get(buffer, offset, couldRead);
+            } else if (length <= 0) {
+                return 0;
+            }
+            return couldRead > 0 ? couldRead : -1;
+        }
         int read = 0;
         int toRead = length;
         while(toRead > 0) {
@@ -452,9 +494,72 @@ public class FSFile {
         SVNFileUtil.closeFile(myInputStream);
         myChannel = null;
         myInputStream = null;
+        myMappedBuffer = null;
         myPosition = 0;
         myDigest = null;
     }
+
+    private boolean isMapped() {
+        if (myMappedBuffer == null && myIsImmutable) {
+            myMappedBuffer = FSCaches.getMappedFile(myFile);
+            if (myMappedBuffer == null) {
+                myIsImmutable = false;
+            }
+        }
+        return myMappedBuffer != null;
+    }
+
+    /**
+     * Returns view of the next <code>length</code> bytes of the mapped file and moves
+     * current position past them.
+     */
+    private ByteBuffer slice(int length) {
+        ByteBuffer slice = myMappedBuffer.duplicate();
+        slice.limit((int) myPosition + length);
+        slice.position((int) myPosition);
+        if (myDigest != null) {
+            myDigest.update(slice.duplicate());
+        }
+        myPosition += length;
+        return slice;
+    }
+
+    private ByteBuffer readBlock(int length) throws IOException {
+        if (isMapped()) {
+            int couldRead = (int) Math.max(0, Math.min(myMappedBuffer.limit() - myPosition, length));
+            return slice(couldRead).slice();
+        }
+        allocateReadBuffer(length);
+        read(myReadLineBuffer);
+        myReadLineBuffer.flip();
+        return myReadLineBuffer;
+    }
+
+    private String readMappedLine(int limit) throws SVNException {
+        int start = (int) myPosition;
+        int end = limit < 0 ? myMappedBuffer.limit() : (int) Math.min(myMappedBuffer.limit(), (long) start + limit);
+        int index = start;
+        while (index < end && myMappedBuffer.get(index) != '\n') {
+            index++;
+        }
+        boolean eol = index < end;
+        if (!eol && (limit < 0 || index < start + limit)) {
+            slice(index - start);
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.STREAM_UNEXPECTED_EOF, "Can''t read length line from file {0}", getFile());
+            SVNErrorManager.error(err, SVNLogType.DEFAULT);
+        }
+        ByteBuffer line = slice(index - start);
+        if (eol) {
+            slice(1);
+        }
+        try {
+            return myDecoder.decode(line).toString();
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Can''t read length line from file {0}: {1}", new Object[]{getFile(), e.getLocalizedMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
+        }
+        return null;
+    }
     
     private int fill() throws IOException {
         if ((myChannel == null && myInputStream == null) || myPosition < myBufferPosition || (myPosition >= myBufferPosition + myBuffer.limit())) {
@@ -486,67 +591,6 @@ public class FSFile {
         return myChannel;
     }
     
-    public PathInfo readPathInfoFromReportFile() throws IOException, SVNException {
-        int firstByte = read();
-        if (firstByte == -1 || firstByte == '-') {
-            return null;
-        }
-        String path = readStringFromReportFile();
-        String linkPath = read() == '+' ? readStringFromReportFile() : null;
-        long revision = readRevisionFromReportFile();
-        SVNDepth depth = SVNDepth.INFINITY;
-        if (read() == '+') {
-            int id = read();
-            switch(id) {
-                case 'X':
-                    depth = SVNDepth.EXCLUDE;
-                    break;
-                case 'E':
-                    depth = SVNDepth.EMPTY;
-                    break;
-                case 'F':
-                    depth = SVNDepth.FILES;
-                    break;
-                case 'M':
-                    depth = SVNDepth.IMMEDIATES;
-                    break;
-                default: {
-                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.REPOS_BAD_REVISION_REPORT, "Invalid depth ({0}) for path ''{1}''", new Object[]{new Integer(id), path});
-                    SVNErrorManager.error(err, SVNLogType.WC);
-                }
-            }
-        }
-        boolean startEmpty = read() == '+';
-        String lockToken = read() == '+' ? readStringFromReportFile() : null;
-        return new PathInfo(path, linkPath, lockToken, revision, depth, startEmpty);
-    }
-
-    private String readStringFromReportFile() throws IOException {
-        int length = readNumberFromReportFile();
-        if (length == 0) {
-            return "";
-        }
-        byte[] buffer = new byte[length];
-        read(buffer, 0, length);
-        return new String(buffer, "UTF-8");
-    }
-
-    private int readNumberFromReportFile() throws IOException {
-        int b;
-        ByteArrayOutputStream resultStream = new ByteArrayOutputStream();
-        while ((b = read()) != ':') {
-            resultStream.write(b);
-        }
-        return Integer.parseInt(new String(resultStream.toByteArray(), "UTF-8"), 10);
-    }
-
-    private long readRevisionFromReportFile() throws IOException {
-        if (read() == '+') {
-            return readNumberFromReportFile();
-        }
-        return SVNRepository.INVALID_REVISION;
-    }
-
     private void parseFooter(String footerString) throws SVNException {
         String[] fields = footerString.split(" ");
         if (fields.length != 4) {
@@ -14,35 +14,125 @@ package org.tmatesoft.svn.core.internal.io.fs;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.tmatesoft.sqljet.core.SqlJetException;
 import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
 import org.tmatesoft.sqljet.core.table.SqlJetDb;
+import org.tmatesoft.svn.core.ISVNCanceller;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.internal.db.SVNSqlJetDb;
+import org.tmatesoft.svn.core.internal.util.jna.SVNJNAUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.util.SVNLogType;
 
 
 /**
+ * Makes a hot copy of a repository.
+ *
+ * In incremental mode (see {@link #setIncremental(boolean)}) existing copy of the repository
+ * is brought up to date: only packs and revisions that are younger than the destination's
+ * <code>current</code> are copied, revision properties are copied when they differ in size or
+ * modification time and destination's <code>current</code> is updated last, so that interrupted
+ * copy is just resumed by the next run. Empty or missing destination gets a full copy.
+ *
+ * Shards are independent of each other, with more workers (see <code>svnkit.fsfs.hotcopy.threads</code>
+ * system property or {@link #setThreadsCount(int)}) they are copied concurrently. Packs and revision
+ * files never change once written, so when <code>svnkit.fsfs.hotcopy.hardLinks=true</code> they are
+ * hard linked instead of copied where the platform supports it. Note that hard linked copy shares
+ * the storage with the source repository.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
 public class FSHotCopier {
 
+    public static final String THREADS_PROPERTY = "svnkit.fsfs.hotcopy.threads";
+    public static final String HARD_LINKS_PROPERTY = "svnkit.fsfs.hotcopy.hardLinks";
+
+    private static final String CURRENT_TMP_PREFIX = "current.hotcopy";
+
+    private ISVNCanceller myCanceller;
+    private boolean myIsIncremental;
+    private boolean myIsUseHardLinks;
+    private int myThreadsCount;
+
+    public FSHotCopier() {
+        myCanceller = ISVNCanceller.NULL;
+        myIsUseHardLinks = Boolean.valueOf(System.getProperty(HARD_LINKS_PROPERTY, Boolean.FALSE.toString())).booleanValue();
+        setThreadsCount((int) FSCaches.getLongProperty(THREADS_PROPERTY, 1));
+    }
+
+    public void setCanceller(ISVNCanceller canceller) {
+        myCanceller = canceller == null ? ISVNCanceller.NULL : canceller;
+    }
+
+    public void setIncremental(boolean incremental) {
+        myIsIncremental = incremental;
+    }
+
+    public boolean isIncremental() {
+        return myIsIncremental;
+    }
+
+    public void setUseHardLinks(boolean useHardLinks) {
+        myIsUseHardLinks = useHardLinks;
+    }
+
+    public void setThreadsCount(int threadsCount) {
+        myThreadsCount = Math.max(1, threadsCount);
+    }
+
+    public int getThreadsCount() {
+        return myThreadsCount;
+    }
+
     public void runHotCopy(FSFS srcOwner, File dstPath) throws SVNException {
         FSWriteLock dbLogsLock = FSWriteLock.getDBLogsLock(srcOwner, false);
         File srcPath = srcOwner.getRepositoryRoot();
         synchronized (dbLogsLock) {
             try {
                 dbLogsLock.lock();
-                createRepositoryLayout(srcPath, dstPath);
+                if (myIsIncremental && new File(new File(dstPath, FSFS.DB_DIR), FSFS.CURRENT_FILE).isFile()) {
+                    FSFS dstOwner = new FSFS(dstPath);
+                    dstOwner.open();
+                    try {
+                        checkIncrementalDestination(srcOwner, dstOwner);
+                        FSWriteLock dstWriteLock = FSWriteLock.getWriteLockForDB(dstOwner);
+                        synchronized (dstWriteLock) {
+                            try {
+                                dstWriteLock.lock();
+                                createRepositoryLayout(srcPath, dstPath, true);
+                                hotCopy(srcOwner, dstOwner, dstOwner.readYoungestRevisionUnderWriteLock(),
+                                        dstOwner.getDBFormat() >= FSFS.MIN_PACKED_FORMAT ? dstOwner.getMinUnpackedRev() : 0);
+                            } finally {
+                                dstWriteLock.unlock();
+                                FSWriteLock.release(dstWriteLock);
+                            }
+                        }
+                    } finally {
+                        dstOwner.close();
+                    }
+                    return;
+                }
+                createRepositoryLayout(srcPath, dstPath, false);
                 File dstReposLocksDir = new File(dstPath, FSFS.LOCKS_DIR);
                 try {
-                    createReposDir(dstReposLocksDir);
+                    createReposDir(dstReposLocksDir, false);
                 } catch (SVNException svne) {
                     SVNErrorMessage err = svne.getErrorMessage().wrap("Creating lock dir");
                     SVNErrorManager.error(err, SVNLogType.FSFS);
@@ -54,7 +144,7 @@ public class FSHotCopier {
                 SVNFileUtil.setSGID(dstDBDir);
                 FSFS dstOwner = new FSFS(dstPath);
                 String fsType = srcOwner.getFSType();
-                hotCopy(srcOwner, dstOwner);
+                hotCopy(srcOwner, dstOwner, SVNRepository.INVALID_REVISION, 0);
                 writeFSType(dstOwner, fsType);
                 SVNFileUtil.writeVersionFile(new File(dstPath, FSFS.REPOS_FORMAT_FILE),
                         srcOwner.getReposFormat());
@@ -65,6 +155,33 @@ public class FSHotCopier {
         }
     }
 
+    private void checkIncrementalDestination(FSFS srcOwner, FSFS dstOwner) throws SVNException {
+        if (srcOwner.getDBFormat() != dstOwner.getDBFormat()) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNSUPPORTED_FEATURE, "The FSFS format ({0}) of the hotcopy source does not match " +
+                    "the FSFS format ({1}) of the hotcopy destination; please upgrade both repositories to the same format",
+                    new Object[] {new Integer(srcOwner.getDBFormat()), new Integer(dstOwner.getDBFormat())});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        if (!srcOwner.getUUID().equals(dstOwner.getUUID())) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.RA_UUID_MISMATCH, "The UUID of the hotcopy source does not match " +
+                    "the UUID of the hotcopy destination");
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        if (srcOwner.getMaxFilesPerDirectory() != dstOwner.getMaxFilesPerDirectory()) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNSUPPORTED_FEATURE, "The sharding layout configuration of the FSFS " +
+                    "filesystem differs between the hotcopy source and destination");
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        long srcYoungestRev = srcOwner.getYoungestRevision();
+        long dstYoungestRev = dstOwner.getYoungestRevision();
+        if (srcYoungestRev < dstYoungestRev) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNSUPPORTED_FEATURE, "The hotcopy destination already contains more " +
+                    "revisions ({0}) than the hotcopy source contains ({1}); are source and destination swapped?",
+                    new Object[] {String.valueOf(dstYoungestRev), String.valueOf(srcYoungestRev)});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+    }
+
     private void writeFSType(FSFS dstOwner, String fsType) throws SVNException {
         OutputStream fsTypeStream = null;
         try {
@@ -79,7 +196,7 @@ public class FSHotCopier {
         }
     }
 
-    private void createRepositoryLayout(File srcPath, File dstPath) throws SVNException {
+    private void createRepositoryLayout(File srcPath, File dstPath, boolean overwrite) throws SVNException {
         File[] children = srcPath.listFiles();
         for (int i = 0; i < children.length; i++) {
             File child = children[i];
@@ -91,18 +208,18 @@ public class FSHotCopier {
 
             File dstChildPath = new File(dstPath, childName);
             if (child.isDirectory()) {
-                createReposDir(dstChildPath);
-                createRepositoryLayout(child, dstChildPath);
+                createReposDir(dstChildPath, overwrite);
+                createRepositoryLayout(child, dstChildPath, overwrite);
             } else if (child.isFile()) {
                 SVNFileUtil.copyFile(child, dstChildPath, true);
             }
         }
     }
 
-    private void createReposDir(File dir) throws SVNException {
+    private void createReposDir(File dir, boolean overwrite) throws SVNException {
         if (dir.exists()) {
             File[] dstChildren = dir.listFiles();
-            if (dstChildren.length > 0) {
+            if (!overwrite && dstChildren.length > 0) {
                 SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.DIR_NOT_EMPTY,
                         "''{0}'' exists and is non-empty", dir);
                 SVNErrorManager.error(err, SVNLogType.FSFS);
@@ -132,103 +249,324 @@ public class FSHotCopier {
         }
     }
 
-    private void hotCopy(FSFS srcOwner, FSFS dstOwner) throws SVNException {
+    /**
+     * Copies revisions younger than <code>dstYoungestRev</code> and packs of shards that are not packed
+     * in the destination yet. Destination's <code>current</code> is replaced last.
+     */
+    private void hotCopy(final FSFS srcOwner, final FSFS dstOwner, final long dstYoungestRev, long dstMinUnpackedRev) throws SVNException {
         int format = srcOwner.readDBFormat();
         FSRepositoryUtil.checkReposDBFormat(format);
-        SVNFileUtil.copyFile(srcOwner.getCurrentFile(), dstOwner.getCurrentFile(), true);
-        SVNFileUtil.copyFile(srcOwner.getUUIDFile(), dstOwner.getUUIDFile(), true);
-
-        long minUnpackedRevision = 0;
-        if (format >= FSFS.MIN_PACKED_FORMAT) {
-            SVNFileUtil.copyFile(srcOwner.getMinUnpackedRevFile(), dstOwner.getMinUnpackedRevFile(), true);
-            minUnpackedRevision = srcOwner.getMinUnpackedRev();
-        }
-        long youngestRev = dstOwner.getYoungestRevision();
-
-        File dstRevsDir = dstOwner.getDBRevsDir();
-        dstRevsDir.mkdirs();
-
-        long maxFilesPerDirectory = srcOwner.getMaxFilesPerDirectory();
-        long rev = 0;
-        for (; rev < minUnpackedRevision; rev += srcOwner.getMaxFilesPerDirectory()) {
-            long packedShard = rev / maxFilesPerDirectory;
-            SVNFileUtil.copyDirectory(srcOwner.getPackDir(packedShard), dstOwner.getPackDir(packedShard), false, null);
-        }
-
-        SVNErrorManager.assertionFailure(rev == minUnpackedRevision, "expected minimal unpacked revision " + String.valueOf(minUnpackedRevision) + ", but real revision is " +
-                String.valueOf(rev), SVNLogType.FSFS);
-
-        for (; rev <= youngestRev; rev++) {
-            File dstDir = dstRevsDir;
-            if (maxFilesPerDirectory > 0) {
-                String shard = String.valueOf(rev / maxFilesPerDirectory);
-                dstDir = new File(dstRevsDir, shard);
-            }
-            SVNFileUtil.copyFile(srcOwner.getRevisionFile(rev), new File(dstDir, String.valueOf(rev)), true);
-        }
-
-        long min_unpacked_revprop = 0;
-        /* Copy the min unpacked revprop file, and read its value. */
-        if (format >= FSFS.MIN_PACKED_REVPROP_FORMAT)
-          {
-            min_unpacked_revprop = srcOwner.getMinUnpackedRevProp();
-            SVNFileUtil.copyFile(srcOwner.getMinUnpackedRevPropPath(), dstOwner.getMinUnpackedRevPropPath(),true);
-            final File srcRevPropDb = srcOwner.getRevisionPropertiesDbPath();
-            final File dstRevPropDb = dstOwner.getRevisionPropertiesDbPath();
-            final SVNSqlJetDb revPropDb = SVNSqlJetDb.open(
-                    srcOwner.getRevisionPropertiesDbPath(), SVNSqlJetDb.Mode.ReadWrite);
-            try{
-                SVNException e = (SVNException) revPropDb.getDb().runReadTransaction(new ISqlJetTransaction() {
-                        public Object run(SqlJetDb db) throws SqlJetException {
-                            try {
-                                SVNFileUtil.copyFile(srcRevPropDb,
-                                        dstRevPropDb,true);
-                            } catch (SVNException e) {
-                                return e;
-                            }
-                            return null;
+        final boolean incremental = FSRepository.isValidRevision(dstYoungestRev);
+        // source may get new revisions while copying, copy of current taken now tells which of them to copy.
+        File dstCurrentFile = SVNFileUtil.createUniqueFile(dstOwner.getDBRoot(), CURRENT_TMP_PREFIX, ".tmp", false);
+        try {
+            SVNFileUtil.copyFile(srcOwner.getCurrentFile(), dstCurrentFile, true);
+            final long youngestRev = readYoungestRevision(dstCurrentFile);
+            if (!incremental) {
+                SVNFileUtil.copyFile(srcOwner.getUUIDFile(), dstOwner.getUUIDFile(), true);
+            }
+            if (srcOwner.getConfigFile().isFile()) {
+                SVNFileUtil.copyFile(srcOwner.getConfigFile(), dstOwner.getConfigFile(), true);
+            }
+
+            long minUnpackedRevision = 0;
+            if (format >= FSFS.MIN_PACKED_FORMAT) {
+                minUnpackedRevision = srcOwner.getMinUnpackedRev();
+            }
+            File dstRevsDir = dstOwner.getDBRevsDir();
+            dstRevsDir.mkdirs();
+
+            final long maxFilesPerDirectory = srcOwner.getMaxFilesPerDirectory();
+            final boolean packedRevisionProperties = format >= FSFS.MIN_PACKED_REVPROP_FORMAT;
+            if (incremental) {
+                dstOwner.beginRevisionPropertiesChange();
+            }
+
+            List<Callable<Object>> tasks = new ArrayList<Callable<Object>>();
+            long rev = 0;
+            for (; rev < minUnpackedRevision; rev += maxFilesPerDirectory) {
+                final long packedShard = rev / maxFilesPerDirectory;
+                final boolean copyPack = rev >= dstMinUnpackedRev;
+                tasks.add(new Callable<Object>() {
+                    public Object call() throws SVNException {
+                        if (copyPack) {
+                            copyDirectory(srcOwner.getPackDir(packedShard), dstOwner.getPackDir(packedShard), true);
                         }
-                    });
-                if(e!=null){
-                    throw e;
+                        if (packedRevisionProperties) {
+                            String packName = packedShard + FSFS.PACK_EXT;
+                            copyDirectory(new File(srcOwner.getRevisionPropertiesRoot(), packName),
+                                    new File(dstOwner.getRevisionPropertiesRoot(), packName), false);
+                        }
+                        return null;
+                    }
+                });
+            }
+
+            SVNErrorManager.assertionFailure(rev == minUnpackedRevision, "expected minimal unpacked revision " + String.valueOf(minUnpackedRevision) + ", but real revision is " +
+                    String.valueOf(rev), SVNLogType.FSFS);
+
+            final File dstRevPropsDir = dstOwner.getRevisionPropertiesRoot();
+            long minUnpackedRevProp = packedRevisionProperties ? minUnpackedRevision : 0;
+            if (minUnpackedRevProp > 0) {
+                // revision 0 properties are never packed.
+                tasks.add(createRevisionsCopyTask(srcOwner, dstOwner, 0, 0, dstYoungestRev, false));
+            }
+            long shardStart = minUnpackedRevProp;
+            while (shardStart <= youngestRev) {
+                long shardEnd = maxFilesPerDirectory > 0 ? shardStart - shardStart % maxFilesPerDirectory + maxFilesPerDirectory - 1 : youngestRev;
+                shardEnd = Math.min(shardEnd, youngestRev);
+                tasks.add(createRevisionsCopyTask(srcOwner, dstOwner, shardStart, shardEnd, dstYoungestRev, true));
+                shardStart = shardEnd + 1;
+            }
+            runTasks(tasks);
+
+            if (format >= FSFS.MIN_PACKED_FORMAT) {
+                if (format >= FSFS.MIN_PACKED_REVPROP_FORMAT) {
+                    final File srcRevPropDb = srcOwner.getRevisionPropertiesDbPath();
+                    if (srcRevPropDb.isFile()) {
+                        copyRevisionPropertiesDb(srcOwner, dstOwner);
+                    }
+                }
+                if (minUnpackedRevision >= dstMinUnpackedRev) {
+                    SVNFileUtil.copyFile(srcOwner.getMinUnpackedRevFile(), dstOwner.getMinUnpackedRevFile(), true);
+                }
+                for (long shardRev = dstMinUnpackedRev; shardRev < minUnpackedRevision; shardRev += maxFilesPerDirectory) {
+                    // destination shards that are packed now.
+                    long shard = shardRev / maxFilesPerDirectory;
+                    SVNFileUtil.deleteAll(new File(dstRevsDir, String.valueOf(shard)), true, myCanceller);
+                    if (packedRevisionProperties) {
+                        deleteRevPropShard(new File(dstRevPropsDir, String.valueOf(shard)), shard, maxFilesPerDirectory);
+                    }
                 }
-            } catch (SqlJetException e) {
-                SVNErrorMessage err = SVNErrorMessage.create( SVNErrorCode.SQLITE_ERROR, e );
-                SVNErrorManager.error(err, SVNLogType.FSFS);
-            } finally {
-                revPropDb.close();
             }
-          }
+            if (incremental) {
+                dstOwner.endRevisionPropertiesChange();
+            }
 
-        File dstRevPropsDir = dstOwner.getRevisionPropertiesRoot();
-        for (rev = min_unpacked_revprop; rev <= youngestRev; rev++) {
-            File dstDir = dstRevPropsDir;
-            if (maxFilesPerDirectory > 0) {
-                String shard = String.valueOf(rev / maxFilesPerDirectory);
-                dstDir = new File(dstRevPropsDir, shard);
+            dstOwner.getTransactionsParentDir().mkdirs();
+            if (format >= FSFS.MIN_PROTOREVS_DIR_FORMAT) {
+                dstOwner.getTransactionProtoRevsDir().mkdirs();
             }
-            SVNFileUtil.copyFile(srcOwner.getRevisionPropertiesFile(rev, false), new File(dstDir, String.valueOf(rev)),
-                    true);
+
+            File srcLocksDir = srcOwner.getDBLocksDir();
+            if (incremental) {
+                SVNFileUtil.deleteAll(dstOwner.getDBLocksDir(), true, myCanceller);
+                // secondary indexes describe the old destination data, they are rebuilt from the copied data.
+                SVNFileUtil.deleteFile(new File(dstOwner.getDBRoot(), FSLockIndex.LOCKS_INDEX_FILE));
+                SVNFileUtil.deleteFile(new File(dstOwner.getDBRoot(), FSRevisionTimeIndex.REVISION_TIMES_FILE));
+                SVNFileUtil.deleteFile(new File(dstOwner.getDBRoot(), FSLogIndex.LOG_INDEX_DB));
+                SVNFileUtil.deleteFile(new File(dstOwner.getDBRoot(), FSNodeHistoryIndex.NODE_HISTORY_DB));
+            }
+            if (srcLocksDir.exists()) {
+                SVNFileUtil.copyDirectory(srcLocksDir, dstOwner.getDBLocksDir(), false, null);
+            }
+
+            File srcNodeOriginsDir = srcOwner.getNodeOriginsDir();
+            if (srcNodeOriginsDir.exists()) {
+                SVNFileUtil.copyDirectory(srcNodeOriginsDir, dstOwner.getNodeOriginsDir(), false, null);
+            }
+
+            if (format >= FSFS.MIN_CURRENT_TXN_FORMAT) {
+                SVNFileUtil.copyFile(srcOwner.getTransactionCurrentFile(), dstOwner.getTransactionCurrentFile(), true);
+            }
+            SVNFileUtil.rename(dstCurrentFile, dstOwner.getCurrentFile());
+            if (!incremental) {
+                dstOwner.writeDBFormat(format, maxFilesPerDirectory, false);
+            }
+        } finally {
+            SVNFileUtil.deleteFile(dstCurrentFile);
+        }
+    }
+
+    /**
+     * Copies revision files of revisions younger than <code>dstYoungestRev</code> and revision properties
+     * that differ from destination ones for revisions in range from <code>startRev</code> to <code>endRev</code>.
+     */
+    private Callable<Object> createRevisionsCopyTask(final FSFS srcOwner, final FSFS dstOwner, final long startRev, final long endRev,
+                                                     final long dstYoungestRev, final boolean copyRevisions) throws SVNException {
+        final long minUnpackedRev = srcOwner.getDBFormat() >= FSFS.MIN_PACKED_FORMAT ? srcOwner.getMinUnpackedRev() : 0;
+        return new Callable<Object>() {
+            public Object call() throws SVNException {
+                long maxFilesPerDirectory = srcOwner.getMaxFilesPerDirectory();
+                for (long rev = startRev; rev <= endRev; rev++) {
+                    myCanceller.checkCancelled();
+                    String shard = maxFilesPerDirectory > 0 ? String.valueOf(rev / maxFilesPerDirectory) : null;
+                    if (copyRevisions && rev >= minUnpackedRev && rev > dstYoungestRev) {
+                        File dstDir = shard != null ? new File(dstOwner.getDBRevsDir(), shard) : dstOwner.getDBRevsDir();
+                        copyImmutableFile(srcOwner.getRevisionFile(rev), new File(dstDir, String.valueOf(rev)));
+                    }
+                    File dstDir = shard != null ? new File(dstOwner.getRevisionPropertiesRoot(), shard) : dstOwner.getRevisionPropertiesRoot();
+                    copyChangedFile(srcOwner.getRevisionPropertiesFile(rev, false), new File(dstDir, String.valueOf(rev)));
+                }
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Copies contents of a pack directory. Files of a mutable directory that are not in the source
+     * anymore (like rewritten revision properties packs) are deleted.
+     */
+    private void copyDirectory(File srcDir, File dstDir, boolean immutable) throws SVNException {
+        File[] children = srcDir.listFiles();
+        if (children == null) {
+            return;
+        }
+        dstDir.mkdirs();
+        if (!immutable) {
+            File[] dstChildren = dstDir.listFiles();
+            for (int i = 0; dstChildren != null && i < dstChildren.length; i++) {
+                if (!new File(srcDir, dstChildren[i].getName()).exists()) {
+                    SVNFileUtil.deleteAll(dstChildren[i], true, myCanceller);
+                }
+            }
+        }
+        for (int i = 0; i < children.length; i++) {
+            myCanceller.checkCancelled();
+            File dstChild = new File(dstDir, children[i].getName());
+            if (children[i].isDirectory()) {
+                copyDirectory(children[i], dstChild, immutable);
+            } else if (immutable) {
+                copyImmutableFile(children[i], dstChild);
+            } else {
+                copyChangedFile(children[i], dstChild);
+            }
+        }
+    }
+
+    private void copyImmutableFile(File src, File dst) throws SVNException {
+        if (myIsUseHardLinks) {
+            SVNFileUtil.getFileDir(dst).mkdirs();
+            if (SVNJNAUtil.createHardLink(src, dst)) {
+                return;
+            }
+        }
+        SVNFileUtil.copyFile(src, dst, true);
+    }
+
+    private void copyChangedFile(File src, File dst) throws SVNException {
+        if (dst.isFile() && dst.length() == src.length() && dst.lastModified() == src.lastModified()) {
+            return;
+        }
+        SVNFileUtil.copyFile(src, dst, true);
+    }
+
+    private void copyRevisionPropertiesDb(FSFS srcOwner, FSFS dstOwner) throws SVNException {
+        final File srcRevPropDb = srcOwner.getRevisionPropertiesDbPath();
+        final File dstRevPropDb = dstOwner.getRevisionPropertiesDbPath();
+        final SVNSqlJetDb revPropDb = SVNSqlJetDb.open(
+                srcOwner.getRevisionPropertiesDbPath(), SVNSqlJetDb.Mode.ReadWrite);
+        try{
+            SVNException e = (SVNException) revPropDb.getDb().runReadTransaction(new ISqlJetTransaction() {
+                    public Object run(SqlJetDb db) throws SqlJetException {
+                        try {
+                            SVNFileUtil.copyFile(srcRevPropDb,
+                                    dstRevPropDb,true);
+                        } catch (SVNException e) {
+                            return e;
+                        }
+                        return null;
+                    }
+                });
+            if(e!=null){
+                throw e;
+            }
+        } catch (SqlJetException e) {
+            SVNErrorMessage err = SVNErrorMessage.create( SVNErrorCode.SQLITE_ERROR, e );
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        } finally {
+            revPropDb.close();
         }
+    }
 
-        dstOwner.getTransactionsParentDir().mkdirs();
-        if (format >= FSFS.MIN_PROTOREVS_DIR_FORMAT) {
-            dstOwner.getTransactionProtoRevsDir().mkdirs();
+    private void deleteRevPropShard(File revpropShardPath, long shard, long maxFilesPerDirectory) throws SVNException {
+        if (shard == 0) {
+            for (int i = 1; i < maxFilesPerDirectory; i++) {
+                SVNFileUtil.deleteFile(new File(revpropShardPath, String.valueOf(i)));
+            }
+        } else {
+            SVNFileUtil.deleteAll(revpropShardPath, true, myCanceller);
         }
+    }
 
-        File srcLocksDir = srcOwner.getDBLocksDir();
-        if (srcLocksDir.exists()) {
-            SVNFileUtil.copyDirectory(srcLocksDir, dstOwner.getDBLocksDir(), false, null);
+    private long readYoungestRevision(File currentFile) throws SVNException {
+        FSFile file = new FSFile(currentFile);
+        try {
+            String line = file.readLine(180);
+            int spaceIndex = line.indexOf(' ');
+            return Long.parseLong(spaceIndex > 0 ? line.substring(0, spaceIndex) : line);
+        } catch (NumberFormatException nfe) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Can''t parse revision number in file ''{0}''", currentFile);
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        } finally {
+            file.close();
+        }
+        return SVNRepository.INVALID_REVISION;
+    }
+
+    private void runTasks(List<Callable<Object>> tasks) throws SVNException {
+        if (myThreadsCount <= 1 || tasks.size() <= 1) {
+            for (Callable<Object> task : tasks) {
+                try {
+                    task.call();
+                } catch (SVNException e) {
+                    throw e;
+                } catch (Exception e) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, e.getMessage());
+                    SVNErrorManager.error(err, e, SVNLogType.FSFS);
+                }
+            }
+            return;
         }
+        ExecutorService executor = Executors.newFixedThreadPool(myThreadsCount, new HotCopyThreadFactory());
+        List<Future<Object>> futures = new ArrayList<Future<Object>>();
+        try {
+            for (Callable<Object> task : tasks) {
+                futures.add(executor.submit(task));
+            }
+            for (Future<Object> future : futures) {
+                waitFor(future);
+            }
+        } finally {
+            for (Future<Object> future : futures) {
+                future.cancel(false);
+            }
+            executor.shutdownNow();
+            // no task may write to the destination once the caller cleans up and releases its lock.
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
 
-        File srcNodeOriginsDir = srcOwner.getNodeOriginsDir();
-        if (srcNodeOriginsDir.exists()) {
-            SVNFileUtil.copyDirectory(srcNodeOriginsDir, dstOwner.getNodeOriginsDir(), false, null);
+    private void waitFor(Future<?> future) throws SVNException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Hot copy was interrupted");
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } catch (CancellationException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Hot copy was cancelled");
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SVNException) {
+                throw (SVNException) e.getCause();
+            }
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            SVNErrorManager.error(err, e.getCause(), SVNLogType.FSFS);
         }
+    }
+
+    private static class HotCopyThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger myThreadNumber = new AtomicInteger(1);
 
-        if (format >= FSFS.MIN_CURRENT_TXN_FORMAT) {
-            SVNFileUtil.copyFile(srcOwner.getTransactionCurrentFile(), dstOwner.getTransactionCurrentFile(), true);
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "svnkit-fsfs-hotcopy-" + myThreadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
         }
-        dstOwner.writeDBFormat(format, maxFilesPerDirectory, false);
     }
 }
@@ -19,6 +19,9 @@ import java.security.NoSuchAlgorithmException;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.ListIterator;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
@@ -28,6 +31,7 @@ import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.util.SVNDebugLog;
 import org.tmatesoft.svn.util.SVNLogType;
 
 /**
@@ -45,8 +49,11 @@ public class FSInputStream extends InputStream {
     private MessageDigest myDigest;
     private ByteBuffer myBuffer;
     private SVNDeltaCombiner myCombiner;
+    private String myCacheInstanceId;
+    private FSRepresentation myCacheRepresentation;
+    private byte[] myFulltext;
 
-    private FSInputStream(SVNDeltaCombiner combiner, FSRepresentation representation, FSFS owner) throws SVNException {
+    private FSInputStream(SVNDeltaCombiner combiner, FSRepresentation representation, FSFS owner, boolean useCaches) throws SVNException {
         myCombiner = combiner;
         myChunkIndex = 0;
         isChecksumFinalized = false;
@@ -59,9 +66,19 @@ public class FSInputStream extends InputStream {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "MD5 implementation not found: {0}", nsae.getLocalizedMessage());
             SVNErrorManager.error(err, nsae, SVNLogType.FSFS);
         }
+        if (useCaches && !representation.isTxn() && FSCaches.isEnabled()) {
+            myCacheInstanceId = owner.getCacheInstanceId();
+            myCacheRepresentation = new FSRepresentation(representation);
+            if (myLength > 0 && myLength <= FSCaches.getMaxFulltextSize()) {
+                myFulltext = new byte[(int) myLength];
+            }
+        }
 
         try {
             buildRepresentationList(representation, myRepStateList, owner);
+            if (myRepStateList.size() > 1 && FSPrefetcher.isEnabled()) {
+                prefetchRepresentations(!representation.isTxn());
+            }
         } catch (SVNException svne) {
             /*
              * Something terrible has happened while building rep list, need to
@@ -83,14 +100,31 @@ public class FSInputStream extends InputStream {
         if (representation == null) {
             return SVNFileUtil.DUMMY_IN;
         }
-        return new FSInputStream(combiner, representation, owner);
+        return createDeltaStream(combiner, representation, owner);
     }
 
     public static InputStream createDeltaStream(SVNDeltaCombiner combiner, FSRepresentation fileRep, FSFS owner) throws SVNException {
         if (fileRep == null) {
             return SVNFileUtil.DUMMY_IN;
         }
-        return new FSInputStream(combiner, fileRep, owner);
+        if (!fileRep.isTxn()) {
+            final FSCache<FSCacheKey, ByteBuffer> fulltextsCache = FSCaches.getFulltextsCache();
+            if (fulltextsCache != null) {
+                final ByteBuffer fulltext = fulltextsCache.get(FSCacheKey.createRepresentationKey(owner.getCacheInstanceId(), fileRep));
+                if (fulltext != null) {
+                    return new FSFulltextInputStream(fulltext.duplicate());
+                }
+            }
+        }
+        return new FSInputStream(combiner, fileRep, owner, true);
+    }
+
+    /**
+     * Creates stream that reads representation from the revision files, neither using
+     * nor filling fulltexts and windows caches.
+     */
+    static FSInputStream createUncachedDeltaStream(SVNDeltaCombiner combiner, FSRepresentation fileRep, FSFS owner) throws SVNException {
+        return new FSInputStream(combiner, fileRep, owner, false);
     }
 
     public int read(byte[] buf, int offset, int length) throws IOException {
@@ -110,10 +144,17 @@ public class FSInputStream extends InputStream {
         return buf[0] & 0xFF;
     }
 
-    private int readContents(byte[] buf, int offset, int length) throws SVNException {
+    int readContents(byte[] buf, int offset, int length) throws SVNException {
         length = getContents(buf, offset, length);
         if (!isChecksumFinalized && length >= 0) {
             myDigest.update(buf, offset, length);
+            if (myFulltext != null) {
+                if (myOffset + length <= myFulltext.length) {
+                    System.arraycopy(buf, offset, myFulltext, (int) myOffset, length);
+                } else {
+                    myFulltext = null;
+                }
+            }
             myOffset += length;
 
             if (myOffset == myLength) {
@@ -126,6 +167,7 @@ public class FSInputStream extends InputStream {
                     });
                     SVNErrorManager.error(err, SVNLogType.FSFS);
                 }
+                cacheFulltext();
             }
         }
 
@@ -154,9 +196,15 @@ public class FSInputStream extends InputStream {
                     }
                     break;
                 }
+                if (readCachedWindow(resultState)) {
+                    continue;
+                }
                 myCombiner.reset();
                 for (ListIterator states = myRepStateList.listIterator(); states.hasNext();) {
                     FSRepresentationState curState = (FSRepresentationState) states.next();
+                    if (curState.myPrefetch != null && curState.myPrefetch.isDone()) {
+                        curState.usePrefetchedData();
+                    }
 
                     while (curState.myChunkIndex < myChunkIndex) {
                         myCombiner.skipWindow(curState.myFile);
@@ -173,6 +221,7 @@ public class FSInputStream extends InputStream {
                     curState.myOffset = curState.myFile.position();
                     if (target != null) {
                         myBuffer = target;
+                        cacheWindow(target);
                         myChunkIndex++;
                         break;
                     }
@@ -182,9 +231,77 @@ public class FSInputStream extends InputStream {
         return read;
     }
 
+    private void cacheFulltext() {
+        if (myFulltext == null || myOffset != myFulltext.length) {
+            return;
+        }
+        final FSCache<FSCacheKey, ByteBuffer> fulltextsCache = FSCaches.getFulltextsCache();
+        if (fulltextsCache != null) {
+            fulltextsCache.put(FSCacheKey.createRepresentationKey(myCacheInstanceId, myCacheRepresentation),
+                    FSCaches.createCachedContents(myFulltext, 0, myFulltext.length));
+        }
+        myFulltext = null;
+    }
+
+    /*
+     * Windows are cached only for files that are too large to be cached as a whole,
+     * so that parts of such files may be reused by readers without combining the windows again.
+     */
+    private boolean readCachedWindow(FSRepresentationState resultState) throws SVNException {
+        if (myCacheRepresentation == null || myFulltext != null) {
+            return false;
+        }
+        final FSCache<FSCacheKey, ByteBuffer> windowsCache = FSCaches.getWindowsCache();
+        if (windowsCache == null) {
+            return false;
+        }
+        final ByteBuffer window = windowsCache.get(FSCacheKey.createWindowKey(myCacheInstanceId, myCacheRepresentation, myChunkIndex));
+        if (window == null) {
+            return false;
+        }
+        /* Keep the first state in sync, so that the end of the representation is still detected. */
+        myCombiner.skipWindow(resultState.myFile);
+        resultState.myChunkIndex++;
+        resultState.myOffset = resultState.myFile.position();
+        myBuffer = window.duplicate();
+        myChunkIndex++;
+        return true;
+    }
+
+    private void cacheWindow(ByteBuffer target) {
+        if (myCacheRepresentation == null || myFulltext != null) {
+            return;
+        }
+        final FSCache<FSCacheKey, ByteBuffer> windowsCache = FSCaches.getWindowsCache();
+        if (windowsCache != null) {
+            windowsCache.put(FSCacheKey.createWindowKey(myCacheInstanceId, myCacheRepresentation, myChunkIndex),
+                    FSCaches.createCachedContents(target.array(), target.arrayOffset() + target.position(), target.remaining()));
+        }
+    }
+
+    /*
+     * Data of every representation in the chain is read on the prefetch pool, while windows are
+     * combined from the files directly. Once data of a representation becomes available, the
+     * remaining windows of that representation are read from memory.
+     */
+    private void prefetchRepresentations(boolean includeFirst) {
+        for (Iterator states = myRepStateList.iterator(); states.hasNext();) {
+            FSRepresentationState state = (FSRepresentationState) states.next();
+            if (!includeFirst && state == myRepStateList.getFirst()) {
+                continue;
+            }
+            state.myPrefetch = FSPrefetcher.prefetch(state.myFile.getFile(), state.myOffset, (int) (state.myEnd - state.myOffset));
+            state.myPrefetchOffset = state.myOffset;
+        }
+    }
+
     public void close() {
         for (Iterator states = myRepStateList.iterator(); states.hasNext();) {
             FSRepresentationState state = (FSRepresentationState) states.next();
+            if (state.myPrefetch != null) {
+                state.myPrefetch.cancel(false);
+                state.myPrefetch = null;
+            }
             if (state.myFile != null) {
                 state.myFile.close();
             }
@@ -309,6 +426,47 @@ public class FSInputStream extends InputStream {
         }
     }
 
+    private static class FSFulltextInputStream extends InputStream {
+
+        private ByteBuffer myContents;
+
+        public FSFulltextInputStream(ByteBuffer contents) {
+            myContents = contents;
+        }
+
+        public int read() {
+            if (!myContents.hasRemaining()) {
+                return -1;
+            }
+            return myContents.get() & 0xFF;
+        }
+
+        public int read(byte[] buf, int offset, int length) {
+            if (length == 0) {
+                return 0;
+            }
+            if (!myContents.hasRemaining()) {
+                return -1;
+            }
+            length = Math.min(length, myContents.remaining());
+            myContents.get(buf, offset, length);
+            return length;
+        }
+
+        public long skip(long n) {
+            if (n <= 0) {
+                return 0;
+            }
+            int skipped = (int) Math.min(n, myContents.remaining());
+            myContents.position(myContents.position() + skipped);
+            return skipped;
+        }
+
+        public int available() {
+            return myContents.remaining();
+        }
+    }
+
     public static class FSRepresentationState {
         FSFile myFile;
         /* The starting offset for the raw svndiff/plaintext data minus header. */
@@ -325,6 +483,32 @@ public class FSInputStream extends InputStream {
         long myBaseRevision;
         long myBaseOffset;
         long myBaseLength;
+        Future<byte[]> myPrefetch;
+        long myPrefetchOffset;
+
+        void usePrefetchedData() {
+            final Future<byte[]> prefetch = myPrefetch;
+            myPrefetch = null;
+            final byte[] data;
+            try {
+                data = prefetch.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e.getCause());
+                return;
+            } catch (CancellationException e) {
+                return;
+            }
+            final FSFile dataFile = new FSFile(data);
+            dataFile.seek(myOffset - myPrefetchOffset);
+            myFile.close();
+            myFile = dataFile;
+            myStart -= myPrefetchOffset;
+            myOffset -= myPrefetchOffset;
+            myEnd -= myPrefetchOffset;
+        }
     }
 
 }
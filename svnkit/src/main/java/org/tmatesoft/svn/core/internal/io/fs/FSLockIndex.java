@@ -0,0 +1,304 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.lang.ref.SoftReference;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLock;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNLockHandler;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Index of locked paths, so that locks below a path are found without walking
+ * the tree of lock digest files. Digest files remain the only storage of locks
+ * themselves, index only tells which of them to read.
+ *
+ * Index is kept in <code>db/locks-index</code> as a journal of <code>+path</code> and
+ * <code>-path</code> lines, appended under the repository write lock every time a lock
+ * is set or deleted and compacted once it has grown much larger than the number of locks.
+ * In-memory copy of the index is shared by all repository instances and only reads lines
+ * appended since it was read last time. Journal starts with a header line that is different
+ * for every compacted journal, so that replaced journal is always read from the beginning.
+ *
+ * Index is not maintained by native Subversion, so it is disabled by default and should
+ * only be enabled (with <code>svnkit.fsfs.lockIndex=true</code> system property) when locks
+ * are never changed by other tools. Existing index is kept up to date by SVNKit even when it
+ * is disabled. Missing <code>db/locks-index</code> is rebuilt from digest files by the next change
+ * of locks, until then readers walk digest files. Index that cannot be read or written is deleted
+ * under the repository write lock and treated as missing, so it never fails the change of locks.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSLockIndex {
+
+    public static final String ENABLED_PROPERTY = "svnkit.fsfs.lockIndex";
+    public static final String LOCKS_INDEX_FILE = "locks-index";
+
+    private static final String HEADER_PREFIX = "svnkit-locks-index ";
+    private static final int COMPACT_THRESHOLD = 0x1000;
+    private static final long TIMESTAMP_RESOLUTION = 2000;
+
+    private static volatile boolean ourIsEnabled = Boolean.valueOf(System.getProperty(ENABLED_PROPERTY, Boolean.FALSE.toString())).booleanValue();
+    private static final Map<File, SoftReference<FSLockIndex>> ourIndexes = new HashMap<File, SoftReference<FSLockIndex>>();
+
+    public static boolean isEnabled() {
+        return ourIsEnabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ourIsEnabled = enabled;
+    }
+
+    public static FSLockIndex getIndex(FSFS fsfs) {
+        final File key = new File(fsfs.getDBRoot(), LOCKS_INDEX_FILE).getAbsoluteFile();
+        synchronized (ourIndexes) {
+            final SoftReference<FSLockIndex> reference = ourIndexes.get(key);
+            FSLockIndex index = reference != null ? reference.get() : null;
+            if (index == null) {
+                index = new FSLockIndex(key);
+                ourIndexes.put(key, new SoftReference<FSLockIndex>(index));
+            }
+            return index;
+        }
+    }
+
+    private final File myFile;
+    private final TreeSet<String> myPaths;
+    private String myHeader;
+    private long myReadLength;
+    private long myLastModified;
+    private long myReadTime;
+    private long myRecordsCount;
+
+    private FSLockIndex(File file) {
+        myFile = file;
+        myPaths = new TreeSet<String>();
+    }
+
+    public File getFile() {
+        return myFile;
+    }
+
+    /**
+     * Returns sorted locked paths equal to or located below <code>path</code>, or
+     * <code>null</code> when there is no index.
+     */
+    public synchronized List<String> getLockedPaths(String path) throws SVNException {
+        if (!refresh()) {
+            return null;
+        }
+        final List<String> paths = new ArrayList<String>();
+        if ("/".equals(path)) {
+            paths.addAll(myPaths);
+            return paths;
+        }
+        if (myPaths.contains(path)) {
+            paths.add(path);
+        }
+        // '0' follows '/', so that the range includes all paths below path.
+        paths.addAll(myPaths.subSet(path + "/", path + "0"));
+        return paths;
+    }
+
+    /**
+     * Tells whether there is an index.
+     */
+    public synchronized boolean exists() throws SVNException {
+        return refresh();
+    }
+
+    /**
+     * Records lock of <code>path</code>, does nothing when there is no index.
+     * Should be called while repository write lock is held.
+     */
+    public synchronized void add(String path) throws SVNException {
+        if (refresh() && !myPaths.contains(path)) {
+            append('+', path);
+            myPaths.add(path);
+        }
+    }
+
+    /**
+     * Records unlock of <code>path</code>, does nothing when there is no index.
+     * Should be called while repository write lock is held.
+     */
+    public synchronized void remove(String path) throws SVNException {
+        if (refresh() && myPaths.contains(path)) {
+            append('-', path);
+            myPaths.remove(path);
+            if (myRecordsCount > COMPACT_THRESHOLD && myRecordsCount > 2 * myPaths.size()) {
+                write(new ArrayList<String>(myPaths));
+            }
+        }
+    }
+
+    /**
+     * Deletes index file, so that it is treated as missing. Should be called while repository
+     * write lock is held.
+     */
+    public synchronized void delete() throws SVNException {
+        clear();
+        SVNFileUtil.deleteFile(myFile);
+    }
+
+    /**
+     * Creates index from lock digest files. Should be called while repository write lock is held.
+     */
+    public synchronized void build(FSFS fsfs) throws SVNException {
+        final List<String> paths = new ArrayList<String>();
+        fsfs.walkDigestFiles(fsfs.getDigestFileFromRepositoryPath("/"), new ISVNLockHandler() {
+            public void handleLock(String path, SVNLock lock, SVNErrorMessage error) {
+                paths.add(lock.getPath());
+            }
+            public void handleUnlock(String path, SVNLock lock, SVNErrorMessage error) {
+            }
+        }, true);
+        write(paths);
+    }
+
+    private boolean refresh() throws SVNException {
+        final long readTime = System.currentTimeMillis();
+        final long length = myFile.length();
+        final long lastModified = myFile.lastModified();
+        if (length == 0) {
+            clear();
+            return false;
+        }
+        // compacted journal of the same length written within the same timestamp tick would go
+        // unnoticed, so timestamp is trusted only when it is older than the timestamp resolution.
+        if (length == myReadLength && lastModified == myLastModified && myReadTime - lastModified > TIMESTAMP_RESOLUTION) {
+            return true;
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(myFile, "r");
+            final String header = file.readLine();
+            if (header == null || !header.startsWith(HEADER_PREFIX)) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Locks index ''{0}'' is corrupt", myFile);
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+            if (!header.equals(myHeader) || length < myReadLength) {
+                clear();
+                myHeader = header;
+                myReadLength = file.getFilePointer();
+            }
+            final byte[] bytes = new byte[(int) (length - myReadLength)];
+            file.seek(myReadLength);
+            file.readFully(bytes);
+            int lineStart = 0;
+            for (int i = 0; i < bytes.length; i++) {
+                if (bytes[i] != '\n') {
+                    continue;
+                }
+                if (i > lineStart) {
+                    final String path = new String(bytes, lineStart + 1, i - lineStart - 1, "UTF-8");
+                    if (bytes[lineStart] == '+') {
+                        myPaths.add(path);
+                    } else {
+                        myPaths.remove(path);
+                    }
+                    myRecordsCount++;
+                }
+                lineStart = i + 1;
+            }
+            // incomplete line that is being appended right now is read next time.
+            myReadLength += lineStart;
+            myLastModified = lastModified;
+            myReadTime = readTime;
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Cannot read locks index ''{0}'': {1}",
+                    new Object[] {myFile, e.getMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            SVNFileUtil.closeFile(file);
+        }
+        return true;
+    }
+
+    private void append(char operation, String path) throws SVNException {
+        RandomAccessFile file = null;
+        try {
+            final byte[] record = (operation + path + "\n").getBytes("UTF-8");
+            file = new RandomAccessFile(myFile, "rw");
+            file.seek(myReadLength);
+            file.write(record);
+            file.setLength(myReadLength + record.length);
+            myReadLength += record.length;
+            myRecordsCount++;
+            file.close();
+            file = null;
+            myReadTime = System.currentTimeMillis();
+            myLastModified = myFile.lastModified();
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Cannot write locks index ''{0}'': {1}",
+                    new Object[] {myFile, e.getMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            SVNFileUtil.closeFile(file);
+        }
+    }
+
+    private void write(List<String> paths) throws SVNException {
+        final String header = HEADER_PREFIX + Long.toHexString(System.currentTimeMillis()) + "-" + Long.toHexString(System.nanoTime());
+        final File tmpFile = SVNFileUtil.createUniqueFile(myFile.getParentFile(), LOCKS_INDEX_FILE, ".tmp", false);
+        final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        OutputStream os = null;
+        try {
+            contents.write((header + "\n").getBytes("UTF-8"));
+            for (String path : paths) {
+                contents.write(("+" + path + "\n").getBytes("UTF-8"));
+            }
+            os = SVNFileUtil.openFileForWriting(tmpFile);
+            contents.writeTo(os);
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Cannot write locks index ''{0}'': {1}",
+                    new Object[] {myFile, e.getMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            SVNFileUtil.closeFile(os);
+        }
+        SVNFileUtil.rename(tmpFile, myFile);
+
+        clear();
+        myPaths.addAll(paths);
+        myHeader = header;
+        myReadLength = contents.size();
+        myReadTime = System.currentTimeMillis();
+        myLastModified = myFile.lastModified();
+        myRecordsCount = paths.size();
+    }
+
+    private void clear() {
+        myPaths.clear();
+        myHeader = null;
+        myReadLength = 0;
+        myLastModified = 0;
+        myReadTime = 0;
+        myRecordsCount = 0;
+    }
+}
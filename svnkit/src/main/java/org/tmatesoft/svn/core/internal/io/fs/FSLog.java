@@ -25,6 +25,7 @@ import java.util.TreeMap;
 
 import org.tmatesoft.svn.core.ISVNLogEntryHandler;
 import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNLogEntry;
 import org.tmatesoft.svn.core.SVNMergeInfo;
@@ -40,6 +41,7 @@ import org.tmatesoft.svn.core.internal.util.SVNHashMap;
 import org.tmatesoft.svn.core.internal.util.SVNHashSet;
 import org.tmatesoft.svn.core.internal.util.SVNMergeInfoUtil;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNMergeDriver;
 import org.tmatesoft.svn.core.internal.wc.SVNMergeInfoManager;
 import org.tmatesoft.svn.core.io.ISVNLocationSegmentHandler;
@@ -47,6 +49,8 @@ import org.tmatesoft.svn.core.io.SVNLocationEntry;
 import org.tmatesoft.svn.core.io.SVNLocationSegment;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
 
 
 /**
@@ -55,6 +59,7 @@ import org.tmatesoft.svn.core.wc.SVNRevision;
  */
 public class FSLog {
     private static final int MAX_OPEN_HISTORIES = 128;  
+    private static final int INDEX_BATCH_SIZE = 256;
     
     private FSFS myFSFS;
     private String[] myPaths;
@@ -68,6 +73,7 @@ public class FSLog {
     private ISVNLogEntryHandler myHandler;
     private SVNMergeInfoManager myMergeInfoManager;
     private String[] myRevPropNames;
+    private String myAuthor;
     
     private static final Comparator RLP_COMPARATOR = new Comparator() {
         public int compare(Object arg1, Object arg2) {
@@ -144,11 +150,23 @@ public class FSLog {
         myRevPropNames = revPropNames;
         myLimit = limit;
         myHandler = handler;
+        myAuthor = null;
+    }
+
+    /**
+     * Sets author to report only revisions committed by, <code>null</code> reports revisions
+     * of all authors.
+     */
+    public void setAuthor(String author) {
+        myAuthor = author;
     }
     
     public long runLog() throws SVNException {
         long count = 0;
         if (!myIsIncludeMergedRevisions && myPaths.length == 1 && "/".equals(myPaths[0])) {
+            if (myAuthor != null) {
+                return runAuthorLog();
+            }
             count = myEndRevision - myStartRevision + 1;
             if (myLimit > 0 && count > myLimit) {
                 count = myLimit;
@@ -171,6 +189,52 @@ public class FSLog {
         }
         return doLogs(myPaths, logTargetHistoryAsMergeInfo, null, myStartRevision, myEndRevision, myIsIncludeMergedRevisions, false, false, myIsDescending, myLimit);
     }
+
+    private long runAuthorLog() throws SVNException {
+        final FSLogIndex index = myFSFS.getLogIndex();
+        long count = 0;
+        long startRevision = myStartRevision;
+        long endRevision = myEndRevision;
+        while (startRevision <= endRevision && (myLimit <= 0 || count < myLimit)) {
+            final long[] revisions = index != null ? index.getAuthorRevisions(myAuthor, startRevision, endRevision, INDEX_BATCH_SIZE, myIsDescending) : null;
+            if (revisions == null) {
+                break;
+            }
+            for (int i = 0; i < revisions.length && (myLimit <= 0 || count < myLimit); i++) {
+                sendLog(revisions[i], null, null, false, false, false);
+                count++;
+            }
+            if (revisions.length < INDEX_BATCH_SIZE) {
+                return count;
+            }
+            if (myIsDescending) {
+                endRevision = revisions[revisions.length - 1] - 1;
+            } else {
+                startRevision = revisions[revisions.length - 1] + 1;
+            }
+        }
+        for (long i = 0; startRevision + i <= endRevision && (myLimit <= 0 || count < myLimit); i++) {
+            final long revision = myIsDescending ? endRevision - i : startRevision + i;
+            if (isAuthorRevision(revision)) {
+                sendLog(revision, null, null, false, false, false);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private boolean isAuthorRevision(long revision) throws SVNException {
+        if (myAuthor == null) {
+            return true;
+        }
+        final FSLogIndex index = myFSFS.getLogIndex();
+        final Boolean isAuthorRevision = index != null ? index.isAuthorRevision(myAuthor, revision) : null;
+        if (isAuthorRevision != null) {
+            return isAuthorRevision.booleanValue();
+        }
+        final SVNProperties revisionProperties = myFSFS.getRevisionProperties(revision);
+        return revisionProperties != null && myAuthor.equals(revisionProperties.getStringValue(SVNRevisionProperty.AUTHOR));
+    }
     
     private long doLogs(String[] paths, Map logTargetHistoryAsMergeinfo, Set nestedMerges, long startRevision, long endRevision, boolean includeMergedRevisions, 
             boolean subtractiveMerge, boolean handlingMergedRevisions, boolean isDescendingOrder, long limit) throws SVNException {
@@ -194,6 +258,10 @@ public class FSLog {
                 }
             }
 
+            if (changed && !handlingMergedRevisions && !isAuthorRevision(currentRev)) {
+                changed = false;
+            }
+
             if (changed) {
                 boolean hasChildren = false;
                 Map addedMergeInfo = null;
@@ -457,6 +525,10 @@ public class FSLog {
     private PathInfo[] getPathHistories(String[] paths, long start, long end, boolean strictNodeHistory) throws SVNException {
         PathInfo[] histories = new PathInfo[paths.length];
         FSRevisionRoot root = myFSFS.createRevisionRoot(end);
+        FSLogIndex index = myFSFS.getLogIndex();
+        if (index != null && index.getYoungestRevision() < end) {
+            index = null;
+        }
         for (int i = 0; i < paths.length; i++) {
             String path = paths[i];
             
@@ -466,7 +538,10 @@ public class FSLog {
             pathHistory.myIsDone = false;
             pathHistory.myIsFirstTime = true;
             
-            if (i < MAX_OPEN_HISTORIES) {
+            if (index != null && !"/".equals(path)) {
+                pathHistory.myIndex = index;
+                pathHistory.startIndexedSegment(path, end);
+            } else if (i < MAX_OPEN_HISTORIES) {
                 pathHistory.myHistory = root.getNodeHistory(path);
             }
             
@@ -562,13 +637,18 @@ public class FSLog {
             return;
         }
         FSRevisionRoot root = myFSFS.createRevisionRoot(revision);
-        Map changedPaths = root.getChangedPaths();
-        if (changedPaths == null || changedPaths.isEmpty()) {
-            return;
+        FSPathChangesIterator changes = root.getChangedPathsIterator();
+        try {
+            collectChangedMergeInfo(addedMergeInfo, deletedMergeInfo, root, changes);
+        } finally {
+            changes.close();
         }
-        for (Iterator paths = changedPaths.keySet().iterator(); paths.hasNext();) {
-            String changedPath = (String) paths.next();
-            FSPathChange change = (FSPathChange) changedPaths.get(changedPath);
+    }
+    
+    private void collectChangedMergeInfo(Map addedMergeInfo, Map deletedMergeInfo, FSRevisionRoot root, FSPathChangesIterator changes) throws SVNException {
+        long revision = root.getRevision();
+        for (FSPathChange change = changes.next(); change != null; change = changes.next()) {
+            String changedPath = change.getPath();
             if (!change.arePropertiesModified()) {
                 continue;
             }
@@ -770,7 +850,30 @@ public class FSLog {
         long myHistoryRevision;
         String myPath;
         
+        FSLogIndex myIndex;
+        String mySegmentPath;
+        long mySegmentLowerRevision;
+        long mySegmentUpperRevision;
+        long mySegmentCopyRevision;
+        long myLastIndexedRevision;
+        SVNLocationEntry myCopySource;
+        LinkedList myIndexedRevisions;
+
         public PathInfo getHistory(boolean strictNodeHistory, long start) throws SVNException {
+            if (myIndex != null) {
+                SVNLocationEntry entry = getIndexedHistory(strictNodeHistory, start);
+                if (myIndex != null) {
+                    if (entry == null) {
+                        myIsDone = true;
+                        return this;
+                    }
+                    myPath = entry.getPath();
+                    myHistoryRevision = entry.getRevision();
+                    myIsFirstTime = false;
+                    return this;
+                }
+                // index is not available, node history is walked from the last reported location.
+            }
             FSNodeHistory history = null;
             if (myHistory != null) {
                 history = myHistory.getPreviousHistory(strictNodeHistory ? false : true);
@@ -800,6 +903,62 @@ public class FSLog {
             return this;
         }
 
+        /**
+         * Starts the line of history of the node at <code>path</code> in <code>revision</code>, that ends
+         * either at the closest copy or at the node origin. Revisions in between are those changing
+         * <code>path</code> according to the index, and the revision of the copy itself.
+         */
+        void startIndexedSegment(String path, long revision) throws SVNException {
+            FSRevisionRoot root = myFSFS.createRevisionRoot(revision);
+            long[] appearedRevision = new long[] {SVNRepository.INVALID_REVISION};
+            SVNLocationEntry copySource = root.getPreviousLocation(path, appearedRevision);
+            mySegmentPath = path;
+            mySegmentUpperRevision = revision;
+            if (copySource != null) {
+                mySegmentLowerRevision = appearedRevision[0];
+                mySegmentCopyRevision = appearedRevision[0];
+                myCopySource = copySource;
+            } else {
+                mySegmentLowerRevision = Math.max(0, root.getNodeOriginRevision(path));
+                mySegmentCopyRevision = SVNRepository.INVALID_REVISION;
+                myCopySource = null;
+            }
+            myLastIndexedRevision = SVNRepository.INVALID_REVISION;
+            myIndexedRevisions = new LinkedList();
+        }
+
+        private SVNLocationEntry getIndexedHistory(boolean strictNodeHistory, long start) throws SVNException {
+            while (true) {
+                if (!myIndexedRevisions.isEmpty()) {
+                    return new SVNLocationEntry(((Long) myIndexedRevisions.removeFirst()).longValue(), mySegmentPath);
+                }
+                long lowerRevision = Math.max(mySegmentLowerRevision, start);
+                if (mySegmentUpperRevision >= lowerRevision) {
+                    long[] revisions = myIndex.getPathRevisions(mySegmentPath, lowerRevision, mySegmentUpperRevision, INDEX_BATCH_SIZE);
+                    if (revisions == null) {
+                        SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, "Log index " + myIndex.getFile() + " is not available");
+                        myIndex = null;
+                        myIndexedRevisions = null;
+                        return null;
+                    }
+                    for (int i = 0; i < revisions.length; i++) {
+                        myIndexedRevisions.addLast(new Long(revisions[i]));
+                        myLastIndexedRevision = revisions[i];
+                    }
+                    mySegmentUpperRevision = revisions.length < INDEX_BATCH_SIZE ? lowerRevision - 1 : myLastIndexedRevision - 1;
+                    if (mySegmentUpperRevision < lowerRevision && mySegmentCopyRevision >= lowerRevision
+                            && myLastIndexedRevision != mySegmentCopyRevision) {
+                        myIndexedRevisions.addLast(new Long(mySegmentCopyRevision));
+                    }
+                    continue;
+                }
+                if (myCopySource == null || strictNodeHistory || myCopySource.getRevision() < start) {
+                    return null;
+                }
+                startIndexedSegment(myCopySource.getPath(), myCopySource.getRevision());
+            }
+        }
+
         public boolean checkHistory(long currentRevision, boolean strictNodeHistory, 
                                     long start, boolean changed) throws SVNException {
             if (myIsDone) {
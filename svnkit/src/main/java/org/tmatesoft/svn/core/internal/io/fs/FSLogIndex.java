@@ -0,0 +1,424 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
+import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
+import org.tmatesoft.sqljet.core.table.ISqlJetRunnableWithLock;
+import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Secondary index of changed paths and authors kept in <code>db/log-index.db</code>, so that
+ * log of a path and log filtered by author do not walk node history and read revision
+ * properties of every candidate revision.
+ *
+ * For every revision the index keeps its <code>svn:author</code> and every path that is either
+ * changed in the revision or is a parent directory of a changed path, except the root directory.
+ * A node is changed in a revision exactly when its path is listed for that revision, so within
+ * a single line of history (between the node origin or a copy and the next copy) revisions of
+ * the node history are the revisions listed for its path.
+ *
+ * Revisions are always indexed in order and each one in a single transaction, so that index
+ * is complete up to the youngest revision of the revisions table. Lookups of younger revisions
+ * return <code>null</code> and are answered from revision files. New revisions are indexed after
+ * commit when index is not too far behind, <code>svn:author</code> changes made through
+ * {@link FSFS#setRevisionProperty(long, String, org.tmatesoft.svn.core.SVNPropertyValue)} are
+ * written to the index, changes made by other tools are not tracked.
+ *
+ * Index is disabled by default and is enabled with <code>svnkit.fsfs.logIndex=true</code>
+ * system property.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSLogIndex {
+
+    public static final String ENABLED_PROPERTY = "svnkit.fsfs.logIndex";
+    public static final String LOG_INDEX_DB = "log-index.db";
+
+    private static final int LOG_INDEX_DB_FORMAT = 1;
+    private static final String REVISIONS_TABLE = "revisions";
+    private static final String PATHS_TABLE = "paths";
+    private static final String REVISIONS_REVISION_INDEX = "i_revisions_revision";
+    private static final String REVISIONS_AUTHOR_INDEX = "i_revisions_author";
+    private static final String REVISIONS_TABLE_SQL = "create table revisions (revision integer not null, " +
+                                                      "                        author text); ";
+    private static final String REVISIONS_REVISION_INDEX_SQL = "create unique index i_revisions_revision on revisions (revision); ";
+    private static final String REVISIONS_AUTHOR_INDEX_SQL = "create index i_revisions_author on revisions (author, revision); ";
+    private static final String PATHS_TABLE_SQL = "create table paths (path text not null, " +
+                                                  "                    revision integer not null, " +
+                                                  "                    primary key (path, revision)); ";
+
+    private static final int BATCH_SIZE = 256;
+    private static final int COMMIT_UPDATE_LIMIT = 1024;
+
+    private static volatile boolean ourIsEnabled = Boolean.valueOf(System.getProperty(ENABLED_PROPERTY, Boolean.FALSE.toString())).booleanValue();
+
+    public static boolean isEnabled() {
+        return ourIsEnabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ourIsEnabled = enabled;
+    }
+
+    private final FSFS myFSFS;
+    private final File myFile;
+    private SqlJetDb myDB;
+    private ISqlJetTable myRevisionsTable;
+    private ISqlJetTable myPathsTable;
+
+    public FSLogIndex(FSFS fsfs) {
+        myFSFS = fsfs;
+        myFile = new File(fsfs.getDBRoot(), LOG_INDEX_DB);
+    }
+
+    public File getFile() {
+        return myFile;
+    }
+
+    /**
+     * Returns the youngest indexed revision, or {@link SVNRepository#INVALID_REVISION} when
+     * nothing is indexed yet.
+     */
+    public synchronized long getYoungestRevision() {
+        if (!openIfExists()) {
+            return SVNRepository.INVALID_REVISION;
+        }
+        try {
+            return ((Long) myDB.runReadTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    return new Long(getYoungestIndexedRevision());
+                }
+            })).longValue();
+        } catch (SqlJetException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            return SVNRepository.INVALID_REVISION;
+        }
+    }
+
+    /**
+     * Returns at most <code>limit</code> revisions between <code>lowerRevision</code> and
+     * <code>upperRevision</code> inclusive in which <code>path</code> or one of its children was
+     * changed, youngest first. Returns <code>null</code> when <code>upperRevision</code> is not indexed.
+     */
+    public synchronized long[] getPathRevisions(String path, long lowerRevision, long upperRevision, int limit) {
+        return getRevisions(true, SVNPathUtil.canonicalizeAbsolutePath(path), lowerRevision, upperRevision, limit, true);
+    }
+
+    /**
+     * Returns at most <code>limit</code> revisions between <code>lowerRevision</code> and
+     * <code>upperRevision</code> inclusive committed by <code>author</code>. Returns <code>null</code>
+     * when <code>upperRevision</code> is not indexed.
+     */
+    public synchronized long[] getAuthorRevisions(String author, long lowerRevision, long upperRevision, int limit, boolean descending) {
+        return getRevisions(false, author, lowerRevision, upperRevision, limit, descending);
+    }
+
+    /**
+     * Returns <code>true</code> when <code>revision</code> was committed by <code>author</code>, or
+     * <code>null</code> when revision is not indexed.
+     */
+    public synchronized Boolean isAuthorRevision(final String author, final long revision) {
+        if (!openIfExists()) {
+            return null;
+        }
+        try {
+            return (Boolean) myDB.runReadTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    final ISqlJetCursor cursor = myRevisionsTable.lookup(REVISIONS_REVISION_INDEX, new Object[] {new Long(revision)});
+                    try {
+                        if (cursor.eof()) {
+                            return null;
+                        }
+                        return Boolean.valueOf(author.equals(cursor.getString("author")));
+                    } finally {
+                        cursor.close();
+                    }
+                }
+            });
+        } catch (SqlJetException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            return null;
+        }
+    }
+
+    /**
+     * Stores new <code>svn:author</code> value of an indexed revision. Should be called while
+     * repository write lock is held.
+     */
+    public synchronized void setAuthor(final long revision, final String author) throws SVNException {
+        if (!openIfExists()) {
+            return;
+        }
+        try {
+            myDB.runWriteTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    final ISqlJetCursor cursor = myRevisionsTable.lookup(REVISIONS_REVISION_INDEX, new Object[] {new Long(revision)});
+                    try {
+                        if (!cursor.eof()) {
+                            cursor.update(new Long(revision), author);
+                        }
+                    } finally {
+                        cursor.close();
+                    }
+                    return null;
+                }
+            });
+        } catch (SqlJetException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SQLITE_ERROR, "Cannot update log index ''{0}'': {1}",
+                    new Object[] {myFile, e.getMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        }
+    }
+
+    /**
+     * Indexes revisions after commit of <code>revision</code> when index exists or repository is small
+     * and index is not too far behind. Failures are only logged, lookups of revisions that are not
+     * indexed are answered from revision files.
+     */
+    public void updateAfterCommit(long revision) {
+        try {
+            if (getYoungestRevision() + COMMIT_UPDATE_LIMIT >= revision) {
+                update(revision, null);
+            }
+        } catch (SVNException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+        }
+    }
+
+    /**
+     * Indexes revisions up to <code>youngestRevision</code> that are not indexed yet, creating
+     * index when it does not exist.
+     */
+    public void update(long youngestRevision, ISVNCanceller canceller) throws SVNException {
+        while (true) {
+            if (canceller != null) {
+                canceller.checkCancelled();
+            }
+            final long indexedRevision;
+            synchronized (this) {
+                open();
+                indexedRevision = updateBatch(youngestRevision);
+            }
+            if (indexedRevision >= youngestRevision) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Deletes index and builds it again from revision files.
+     */
+    public void rebuild(ISVNCanceller canceller) throws SVNException {
+        synchronized (this) {
+            close();
+            SVNFileUtil.deleteFile(myFile);
+        }
+        update(myFSFS.getYoungestRevision(), canceller);
+    }
+
+    public synchronized void close() {
+        if (myDB != null) {
+            try {
+                myDB.close();
+            } catch (SqlJetException e) {
+                SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            } finally {
+                myDB = null;
+                myRevisionsTable = null;
+                myPathsTable = null;
+            }
+        }
+    }
+
+    private long[] getRevisions(final boolean paths, final String key, final long lowerRevision, final long upperRevision,
+                                final int limit, final boolean descending) {
+        if (!openIfExists()) {
+            return null;
+        }
+        try {
+            return (long[]) myDB.runReadTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    if (upperRevision > getYoungestIndexedRevision()) {
+                        return null;
+                    }
+                    final ISqlJetTable table = paths ? myPathsTable : myRevisionsTable;
+                    final String indexName = paths ? myPathsTable.getPrimaryKeyIndexName() : REVISIONS_AUTHOR_INDEX;
+                    final ISqlJetCursor cursor = table.scope(indexName,
+                            new Object[] {key, new Long(lowerRevision)}, new Object[] {key, new Long(upperRevision)});
+                    try {
+                        final long[] revisions = new long[limit];
+                        int count = 0;
+                        for (boolean hasRow = descending ? cursor.last() : cursor.first(); hasRow && count < limit;
+                             hasRow = descending ? cursor.previous() : cursor.next()) {
+                            revisions[count++] = cursor.getInteger("revision");
+                        }
+                        final long[] result = new long[count];
+                        System.arraycopy(revisions, 0, result, 0, count);
+                        return result;
+                    } finally {
+                        cursor.close();
+                    }
+                }
+            });
+        } catch (SqlJetException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            return null;
+        }
+    }
+
+    private long updateBatch(final long youngestRevision) throws SVNException {
+        try {
+            return ((Long) myDB.runWriteTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    // other repository instance could have indexed some revisions already.
+                    long revision = getYoungestIndexedRevision();
+                    final long lastRevision = Math.min(youngestRevision, revision + BATCH_SIZE);
+                    while (revision < lastRevision) {
+                        revision++;
+                        try {
+                            insertRevision(revision);
+                        } catch (SVNException e) {
+                            throw new SqlJetException(e);
+                        }
+                    }
+                    return new Long(revision);
+                }
+            })).longValue();
+        } catch (SqlJetException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof SVNException) {
+                throw (SVNException) cause;
+            }
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SQLITE_ERROR, "Cannot update log index ''{0}'': {1}",
+                    new Object[] {myFile, e.getMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        }
+        return SVNRepository.INVALID_REVISION;
+    }
+
+    private void insertRevision(long revision) throws SVNException, SqlJetException {
+        final Set<String> paths = new TreeSet<String>();
+        if (revision > 0) {
+            final FSRevisionRoot root = myFSFS.createRevisionRoot(revision);
+            final FSPathChangesIterator changes = root.getChangedPathsIterator();
+            try {
+                for (FSPathChange change = changes.next(); change != null; change = changes.next()) {
+                    for (String path = change.getPath(); path.length() > 1 && paths.add(path); ) {
+                        path = SVNPathUtil.removeTail(path);
+                    }
+                }
+            } finally {
+                changes.close();
+            }
+        }
+        for (String path : paths) {
+            myPathsTable.insert(new Object[] {path, new Long(revision)});
+        }
+        final SVNProperties revisionProperties = myFSFS.getRevisionProperties(revision);
+        final String author = revisionProperties != null ? revisionProperties.getStringValue(SVNRevisionProperty.AUTHOR) : null;
+        myRevisionsTable.insert(new Object[] {new Long(revision), author});
+    }
+
+    private long getYoungestIndexedRevision() throws SqlJetException {
+        final ISqlJetCursor cursor = myRevisionsTable.order(REVISIONS_REVISION_INDEX);
+        try {
+            return cursor.last() ? cursor.getInteger("revision") : SVNRepository.INVALID_REVISION;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private boolean openIfExists() {
+        if (myDB == null && !myFile.isFile()) {
+            return false;
+        }
+        try {
+            open();
+            return true;
+        } catch (SVNException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            return false;
+        }
+    }
+
+    private void open() throws SVNException {
+        if (myDB != null) {
+            return;
+        }
+        SqlJetDb db = null;
+        try {
+            db = SqlJetDb.open(myFile, true);
+            db.setSafetyLevel(SqlJetSafetyLevel.OFF);
+            checkFormat(db);
+            myRevisionsTable = db.getTable(REVISIONS_TABLE);
+            myPathsTable = db.getTable(PATHS_TABLE);
+            myDB = db;
+            db = null;
+        } catch (SqlJetException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SQLITE_ERROR, "Cannot open log index ''{0}'': {1}",
+                    new Object[] {myFile, e.getMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            if (db != null) {
+                try {
+                    db.close();
+                } catch (SqlJetException e) {
+                    SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+                }
+            }
+        }
+    }
+
+    private static void checkFormat(final SqlJetDb db) throws SqlJetException {
+        db.runWithLock(new ISqlJetRunnableWithLock() {
+            public Object runWithLock(SqlJetDb db) throws SqlJetException {
+                int version = db.getOptions().getUserVersion();
+                if (version < LOG_INDEX_DB_FORMAT) {
+                    db.runWriteTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            db.getOptions().setUserVersion(LOG_INDEX_DB_FORMAT);
+                            db.createTable(REVISIONS_TABLE_SQL);
+                            db.createIndex(REVISIONS_REVISION_INDEX_SQL);
+                            db.createIndex(REVISIONS_AUTHOR_INDEX_SQL);
+                            db.createTable(PATHS_TABLE_SQL);
+                            return null;
+                        }
+                    });
+                } else if (version > LOG_INDEX_DB_FORMAT) {
+                    throw new SqlJetException("Schema format " + version + " not recognized");
+                }
+                return null;
+            }
+        });
+    }
+}
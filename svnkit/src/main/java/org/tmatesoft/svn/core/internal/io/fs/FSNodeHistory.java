@@ -101,8 +101,12 @@ public class FSNodeHistory {
             revision = mySearchResumeEntry.getRevision();
         }
 
-        FSRevisionRoot root = myFSFS.createRevisionRoot(revision);
-        FSParentPath parentPath = root.openPath(path, true, true);
+        FSNodeHistoryIndex index = myFSFS.getNodeHistoryIndex();
+        FSParentPath parentPath = index != null ? index.openPath(path, revision) : null;
+        if (parentPath == null) {
+            FSRevisionRoot root = myFSFS.createRevisionRoot(revision);
+            parentPath = root.openPath(path, true, true);
+        }
         FSRevisionNode revNode = parentPath.getRevNode();
         SVNLocationEntry commitEntry = new SVNLocationEntry(revNode.getCreatedRevision(), 
                                                             revNode.getCreatedPath());
@@ -119,7 +123,10 @@ public class FSNodeHistory {
             if (predId == null) {
                 return prevHist;
             }
-            revNode = myFSFS.getRevisionNode(predId);
+            revNode = index != null ? index.getRevisionNode(predId) : null;
+            if (revNode == null) {
+                revNode = myFSFS.getRevisionNode(predId);
+            }
             commitEntry = new SVNLocationEntry(revNode.getCreatedRevision(), revNode.getCreatedPath());
         }
 
@@ -128,8 +135,11 @@ public class FSNodeHistory {
         SVNLocationEntry srcEntry = new SVNLocationEntry(SVNRepository.INVALID_REVISION, null);
         long dstRev = SVNRepository.INVALID_REVISION;
         if (copyrootEntry.getRevision() > commitEntry.getRevision()) {
-            FSRevisionRoot copyrootRoot = myFSFS.createRevisionRoot(copyrootEntry.getRevision());
-            revNode = copyrootRoot.getRevisionNode(copyrootEntry.getPath());
+            revNode = index != null ? index.getRevisionNode(copyrootEntry.getPath(), copyrootEntry.getRevision()) : null;
+            if (revNode == null) {
+                FSRevisionRoot copyrootRoot = myFSFS.createRevisionRoot(copyrootEntry.getRevision());
+                revNode = copyrootRoot.getRevisionNode(copyrootEntry.getPath());
+            }
             String copyDst = revNode.getCreatedPath();
             String reminder = null;
             if (path.equals(copyDst)) {
@@ -0,0 +1,463 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.internal.SqlJetSafetyLevel;
+import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
+import org.tmatesoft.sqljet.core.table.ISqlJetRunnableWithLock;
+import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.sqljet.core.table.ISqlJetTransaction;
+import org.tmatesoft.sqljet.core.table.SqlJetDb;
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Secondary index of node revisions kept in <code>db/node-history.db</code>, so that
+ * node history is walked without opening paths and reading node revisions from revision files.
+ *
+ * For every node revision the index keeps the path and revision it was created at, its
+ * predecessor and its copyfrom and copyroot locations. Node at a path in a revision is the
+ * youngest node created at that path, unless one of the parent directories was copied later
+ * than that, in which case it is the node at the corresponding path of the copy source.
+ * Copies are kept in a separate table to find the youngest copy of parent directories quickly.
+ *
+ * Revisions are always indexed in order and each one in a single transaction, so that index
+ * is complete up to the youngest revision of its root directory rows. Lookups of younger
+ * revisions return <code>null</code> and are answered from revision files. New revisions are
+ * indexed after commit when index is not too far behind, index of an existing repository is
+ * built with {@link #update(long, ISVNCanceller)} or {@link #rebuild(ISVNCanceller)}.
+ *
+ * Index is disabled by default and is enabled with <code>svnkit.fsfs.nodeHistoryIndex=true</code>
+ * system property.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSNodeHistoryIndex {
+
+    public static final String ENABLED_PROPERTY = "svnkit.fsfs.nodeHistoryIndex";
+    public static final String NODE_HISTORY_DB = "node-history.db";
+
+    private static final int NODE_HISTORY_DB_FORMAT = 1;
+    private static final String NODES_TABLE = "nodes";
+    private static final String COPIES_TABLE = "copies";
+    private static final String NODES_ID_INDEX = "i_nodes_id";
+    private static final String NODES_TABLE_SQL = "create table nodes (path text not null, " +
+                                                  "                    revision integer not null, " +
+                                                  "                    id text not null, " +
+                                                  "                    predecessor_id text, " +
+                                                  "                    copyfrom_path text, " +
+                                                  "                    copyfrom_revision integer not null, " +
+                                                  "                    copyroot_path text not null, " +
+                                                  "                    copyroot_revision integer not null, " +
+                                                  "                    primary key (path, revision)); ";
+    private static final String NODES_ID_INDEX_SQL = "create unique index i_nodes_id on nodes (id); ";
+    private static final String COPIES_TABLE_SQL = "create table copies (path text not null, " +
+                                                   "                     revision integer not null, " +
+                                                   "                     copyfrom_path text not null, " +
+                                                   "                     copyfrom_revision integer not null, " +
+                                                   "                     primary key (path, revision)); ";
+
+    private static final int BATCH_SIZE = 256;
+    private static final int COMMIT_UPDATE_LIMIT = 1024;
+
+    private static volatile boolean ourIsEnabled = Boolean.valueOf(System.getProperty(ENABLED_PROPERTY, Boolean.FALSE.toString())).booleanValue();
+
+    public static boolean isEnabled() {
+        return ourIsEnabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ourIsEnabled = enabled;
+    }
+
+    private final FSFS myFSFS;
+    private final File myFile;
+    private SqlJetDb myDB;
+    private ISqlJetTable myNodesTable;
+    private ISqlJetTable myCopiesTable;
+
+    public FSNodeHistoryIndex(FSFS fsfs) {
+        myFSFS = fsfs;
+        myFile = new File(fsfs.getDBRoot(), NODE_HISTORY_DB);
+    }
+
+    public File getFile() {
+        return myFile;
+    }
+
+    /**
+     * Returns the youngest indexed revision, or {@link SVNRepository#INVALID_REVISION} when
+     * nothing is indexed yet.
+     */
+    public synchronized long getYoungestRevision() {
+        if (!openIfExists()) {
+            return SVNRepository.INVALID_REVISION;
+        }
+        try {
+            return ((Long) myDB.runReadTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    return new Long(getYoungestIndexedRevision());
+                }
+            })).longValue();
+        } catch (SqlJetException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            return SVNRepository.INVALID_REVISION;
+        }
+    }
+
+    /**
+     * Returns chain of nodes from the root directory to <code>path</code> in <code>revision</code>,
+     * or <code>null</code> when revision is not indexed. Only id, predecessor id, created path, copyfrom
+     * and copyroot are set in the returned nodes.
+     */
+    public synchronized FSParentPath openPath(final String path, final long revision) {
+        if (!openIfExists()) {
+            return null;
+        }
+        try {
+            return (FSParentPath) myDB.runReadTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    if (revision > getYoungestIndexedRevision()) {
+                        return null;
+                    }
+                    return getParentPath(path, revision);
+                }
+            });
+        } catch (SqlJetException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            return null;
+        }
+    }
+
+    /**
+     * Returns node at <code>path</code> in <code>revision</code>, or <code>null</code> when
+     * revision is not indexed.
+     */
+    public FSRevisionNode getRevisionNode(String path, long revision) {
+        final FSParentPath parentPath = openPath(path, revision);
+        return parentPath != null ? parentPath.getRevNode() : null;
+    }
+
+    /**
+     * Returns node with the <code>id</code>, or <code>null</code> when it is not indexed.
+     */
+    public synchronized FSRevisionNode getRevisionNode(final FSID id) {
+        if (id == null || id.isTxn() || !openIfExists()) {
+            return null;
+        }
+        try {
+            return (FSRevisionNode) myDB.runReadTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    final ISqlJetCursor cursor = myNodesTable.lookup(NODES_ID_INDEX, new Object[] {id.toString()});
+                    try {
+                        return cursor.eof() ? null : createRevisionNode(cursor);
+                    } finally {
+                        cursor.close();
+                    }
+                }
+            });
+        } catch (SqlJetException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            return null;
+        }
+    }
+
+    /**
+     * Indexes revisions after commit of <code>revision</code> when index exists or repository is small
+     * and index is not too far behind. Failures are only logged, lookups of revisions that are not
+     * indexed are answered from revision files.
+     */
+    public void updateAfterCommit(long revision) {
+        try {
+            if (getYoungestRevision() + COMMIT_UPDATE_LIMIT >= revision) {
+                update(revision, null);
+            }
+        } catch (SVNException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+        }
+    }
+
+    /**
+     * Indexes revisions up to <code>youngestRevision</code> that are not indexed yet, creating
+     * index when it does not exist.
+     */
+    public void update(long youngestRevision, ISVNCanceller canceller) throws SVNException {
+        while (true) {
+            if (canceller != null) {
+                canceller.checkCancelled();
+            }
+            final long indexedRevision;
+            synchronized (this) {
+                open();
+                indexedRevision = updateBatch(youngestRevision);
+            }
+            if (indexedRevision >= youngestRevision) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Deletes index and builds it again from revision files.
+     */
+    public void rebuild(ISVNCanceller canceller) throws SVNException {
+        synchronized (this) {
+            close();
+            SVNFileUtil.deleteFile(myFile);
+        }
+        update(myFSFS.getYoungestRevision(), canceller);
+    }
+
+    public synchronized void close() {
+        if (myDB != null) {
+            try {
+                myDB.close();
+            } catch (SqlJetException e) {
+                SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            } finally {
+                myDB = null;
+                myNodesTable = null;
+                myCopiesTable = null;
+            }
+        }
+    }
+
+    private long updateBatch(final long youngestRevision) throws SVNException {
+        try {
+            return ((Long) myDB.runWriteTransaction(new ISqlJetTransaction() {
+                public Object run(SqlJetDb db) throws SqlJetException {
+                    // other repository instance could have indexed some revisions already.
+                    long revision = getYoungestIndexedRevision();
+                    final long lastRevision = Math.min(youngestRevision, revision + BATCH_SIZE);
+                    while (revision < lastRevision) {
+                        revision++;
+                        try {
+                            insertRevision(revision);
+                        } catch (SVNException e) {
+                            throw new SqlJetException(e);
+                        }
+                    }
+                    return new Long(revision);
+                }
+            })).longValue();
+        } catch (SqlJetException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof SVNException) {
+                throw (SVNException) cause;
+            }
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SQLITE_ERROR, "Cannot update node history index ''{0}'': {1}",
+                    new Object[] {myFile, e.getMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        }
+        return SVNRepository.INVALID_REVISION;
+    }
+
+    private void insertRevision(long revision) throws SVNException, SqlJetException {
+        for (FSRevisionNode node : collectNewNodes(revision)) {
+            final String predecessorId = node.getPredecessorId() != null ? node.getPredecessorId().toString() : null;
+            myNodesTable.insert(new Object[] {node.getCreatedPath(), new Long(revision), node.getId().toString(), predecessorId,
+                    node.getCopyFromPath(), new Long(node.getCopyFromRevision()), node.getCopyRootPath(), new Long(node.getCopyRootRevision())});
+            if (node.getCopyFromPath() != null) {
+                myCopiesTable.insert(new Object[] {node.getCreatedPath(), new Long(revision), node.getCopyFromPath(),
+                        new Long(node.getCopyFromRevision())});
+            }
+        }
+    }
+
+    /**
+     * Every node created in a revision is either a changed path or one of its parents.
+     */
+    private List<FSRevisionNode> collectNewNodes(long revision) throws SVNException {
+        final FSRevisionRoot root = myFSFS.createRevisionRoot(revision);
+        final Map<String, FSRevisionNode> nodes = new LinkedHashMap<String, FSRevisionNode>();
+        final FSRevisionNode rootNode = root.getRootRevisionNode();
+        nodes.put(rootNode.getCreatedPath(), rootNode);
+
+        final FSPathChangesIterator changes = root.getChangedPathsIterator();
+        try {
+            for (FSPathChange change = changes.next(); change != null; change = changes.next()) {
+                String path = change.getPath();
+                while (!"/".equals(path) && root.checkNodeKind(path) == SVNNodeKind.NONE) {
+                    path = SVNPathUtil.removeTail(path);
+                }
+                for (FSParentPath parentPath = root.openPath(path, true, true); parentPath != null; parentPath = parentPath.getParent()) {
+                    final FSRevisionNode node = parentPath.getRevNode();
+                    if (node.getId().getRevision() != revision || nodes.containsKey(node.getCreatedPath())) {
+                        continue;
+                    }
+                    nodes.put(node.getCreatedPath(), node);
+                }
+            }
+        } finally {
+            changes.close();
+        }
+        return new ArrayList<FSRevisionNode>(nodes.values());
+    }
+
+    private FSParentPath getParentPath(String path, long revision) throws SqlJetException {
+        path = SVNPathUtil.canonicalizeAbsolutePath(path);
+        FSRevisionNode rootNode = getYoungestNode("/", revision);
+        if (rootNode == null) {
+            return null;
+        }
+        FSParentPath parentPath = new FSParentPath(rootNode, null, null);
+        String youngestCopyPath = null;
+        long youngestCopyRevision = SVNRepository.INVALID_REVISION;
+        String youngestCopyFromPath = null;
+        long youngestCopyFromRevision = SVNRepository.INVALID_REVISION;
+
+        String currentPath = "/";
+        final String[] entries = "/".equals(path) ? new String[0] : path.substring(1).split("/");
+        for (String entry : entries) {
+            final ISqlJetCursor copies = myCopiesTable.scope(myCopiesTable.getPrimaryKeyIndexName(),
+                    new Object[] {currentPath, new Long(0)}, new Object[] {currentPath, new Long(revision)});
+            try {
+                if (copies.last() && copies.getInteger("revision") > youngestCopyRevision) {
+                    youngestCopyPath = currentPath;
+                    youngestCopyRevision = copies.getInteger("revision");
+                    youngestCopyFromPath = copies.getString("copyfrom_path");
+                    youngestCopyFromRevision = copies.getInteger("copyfrom_revision");
+                }
+            } finally {
+                copies.close();
+            }
+
+            currentPath = SVNPathUtil.getAbsolutePath(SVNPathUtil.append(currentPath, entry));
+            FSRevisionNode node = getYoungestNode(currentPath, revision);
+            if (youngestCopyPath != null && (node == null || node.getCreatedRevision() < youngestCopyRevision)) {
+                // node was not changed after the parent directory was copied, so it is the node of the copy source.
+                final String copySourcePath = SVNPathUtil.getAbsolutePath(SVNPathUtil.append(youngestCopyFromPath,
+                        SVNPathUtil.getPathAsChild(youngestCopyPath, currentPath)));
+                final FSParentPath copySourceParentPath = getParentPath(copySourcePath, youngestCopyFromRevision);
+                node = copySourceParentPath != null ? copySourceParentPath.getRevNode() : null;
+            }
+            if (node == null) {
+                return null;
+            }
+            parentPath = new FSParentPath(node, entry, parentPath);
+        }
+        return parentPath;
+    }
+
+    private FSRevisionNode getYoungestNode(String path, long revision) throws SqlJetException {
+        final ISqlJetCursor cursor = myNodesTable.scope(myNodesTable.getPrimaryKeyIndexName(),
+                new Object[] {path, new Long(0)}, new Object[] {path, new Long(revision)});
+        try {
+            return cursor.last() ? createRevisionNode(cursor) : null;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private long getYoungestIndexedRevision() throws SqlJetException {
+        final ISqlJetCursor cursor = myNodesTable.scope(myNodesTable.getPrimaryKeyIndexName(),
+                new Object[] {"/", new Long(0)}, new Object[] {"/", new Long(Long.MAX_VALUE)});
+        try {
+            return cursor.last() ? cursor.getInteger("revision") : SVNRepository.INVALID_REVISION;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static FSRevisionNode createRevisionNode(ISqlJetCursor cursor) throws SqlJetException {
+        final FSRevisionNode node = new FSRevisionNode();
+        node.setId(FSID.fromString(cursor.getString("id")));
+        final String predecessorId = cursor.getString("predecessor_id");
+        node.setPredecessorId(predecessorId != null ? FSID.fromString(predecessorId) : null);
+        node.setCreatedPath(cursor.getString("path"));
+        node.setCopyFromPath(cursor.getString("copyfrom_path"));
+        node.setCopyFromRevision(cursor.getInteger("copyfrom_revision"));
+        node.setCopyRootPath(cursor.getString("copyroot_path"));
+        node.setCopyRootRevision(cursor.getInteger("copyroot_revision"));
+        return node;
+    }
+
+    private boolean openIfExists() {
+        if (myDB == null && !myFile.isFile()) {
+            return false;
+        }
+        try {
+            open();
+            return true;
+        } catch (SVNException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            return false;
+        }
+    }
+
+    private void open() throws SVNException {
+        if (myDB != null) {
+            return;
+        }
+        SqlJetDb db = null;
+        try {
+            db = SqlJetDb.open(myFile, true);
+            db.setSafetyLevel(SqlJetSafetyLevel.OFF);
+            checkFormat(db);
+            myNodesTable = db.getTable(NODES_TABLE);
+            myCopiesTable = db.getTable(COPIES_TABLE);
+            myDB = db;
+            db = null;
+        } catch (SqlJetException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.SQLITE_ERROR, "Cannot open node history index ''{0}'': {1}",
+                    new Object[] {myFile, e.getMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            if (db != null) {
+                try {
+                    db.close();
+                } catch (SqlJetException e) {
+                    SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+                }
+            }
+        }
+    }
+
+    private static void checkFormat(final SqlJetDb db) throws SqlJetException {
+        db.runWithLock(new ISqlJetRunnableWithLock() {
+            public Object runWithLock(SqlJetDb db) throws SqlJetException {
+                int version = db.getOptions().getUserVersion();
+                if (version < NODE_HISTORY_DB_FORMAT) {
+                    db.runWriteTransaction(new ISqlJetTransaction() {
+                        public Object run(SqlJetDb db) throws SqlJetException {
+                            db.getOptions().setUserVersion(NODE_HISTORY_DB_FORMAT);
+                            db.createTable(NODES_TABLE_SQL);
+                            db.createIndex(NODES_ID_INDEX_SQL);
+                            db.createTable(COPIES_TABLE_SQL);
+                            return null;
+                        }
+                    });
+                } else if (version > NODE_HISTORY_DB_FORMAT) {
+                    throw new SqlJetException("Schema format " + version + " not recognized");
+                }
+                return null;
+            }
+        });
+    }
+}
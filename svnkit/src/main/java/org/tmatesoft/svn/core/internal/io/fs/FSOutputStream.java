@@ -27,6 +27,7 @@ import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNNodeKind;
 import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.delta.SVNDiffWindowWriter;
 import org.tmatesoft.svn.core.internal.io.fs.index.FSLogicalAddressingIndex;
 import org.tmatesoft.svn.core.internal.io.fs.index.FSP2LEntry;
 import org.tmatesoft.svn.core.internal.io.fs.index.FSP2LProtoIndex;
@@ -51,6 +52,7 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
 
     private boolean isHeaderWritten;
     private CountingOutputStream myTargetFileOS;
+    private SVNDiffWindowWriter myDiffWindowWriter;
     private File myTargetFile;
     private long myDeltaStart;
     private long myRepSize;
@@ -64,11 +66,10 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
     private long mySourceOffset;
     private ByteArrayOutputStream myTextBuffer;
     private boolean myIsClosed;
-    private boolean myIsCompress;
     private FSWriteLock myTxnLock;
 
     private FSOutputStream(FSRevisionNode revNode, CountingOutputStream targetFileOS, File targetFile, InputStream source, long deltaStart, 
-            long repSize, long repOffset, FSTransactionRoot txnRoot, boolean compress, FSWriteLock txnLock) throws SVNException {
+            long repSize, long repOffset, FSTransactionRoot txnRoot, int svndiffVersion, FSWriteLock txnLock) throws SVNException {
         myTxnRoot = txnRoot;
         myTargetFileOS = targetFileOS;
         myTargetFile = targetFile;
@@ -97,11 +98,11 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
             SVNErrorManager.error(err, nsae, SVNLogType.FSFS);
         }
 
-        myIsCompress = compress;
+        myDiffWindowWriter = new SVNDiffWindowWriter(targetFileOS, svndiffVersion);
     }
 
     private void reset(FSRevisionNode revNode, CountingOutputStream targetFileOS, File targetFile, InputStream source, long deltaStart, 
-            long repSize, long repOffset, FSTransactionRoot txnRoot, FSWriteLock txnLock) {
+            long repSize, long repOffset, FSTransactionRoot txnRoot, int svndiffVersion, FSWriteLock txnLock) {
         myTxnRoot = txnRoot;
         myTargetFileOS = targetFileOS;
         myTargetFile = targetFile;
@@ -117,9 +118,10 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
         mySHA1Digest.reset();
         myTextBuffer.reset();
         myTxnLock = txnLock;
+        myDiffWindowWriter = new SVNDiffWindowWriter(targetFileOS, svndiffVersion);
     }
 
-    public static OutputStream createStream(FSRevisionNode revNode, FSTransactionRoot txnRoot, OutputStream dstStream, boolean compress) throws SVNException {
+    public static OutputStream createStream(FSRevisionNode revNode, FSTransactionRoot txnRoot, OutputStream dstStream, int svndiffVersion) throws SVNException {
         if (revNode.getType() != SVNNodeKind.FILE) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_NOT_FILE, "Attempted to set textual contents of a *non*-file node");
             SVNErrorManager.error(err, SVNLogType.FSFS);
@@ -159,12 +161,12 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
 
             if (dstStream instanceof FSOutputStream) {
                 FSOutputStream fsOS = (FSOutputStream) dstStream;
-                fsOS.reset(revNode, revWriter, targetFile, sourceStream, deltaStart, 0, offset, txnRoot, txnLock);
+                fsOS.reset(revNode, revWriter, targetFile, sourceStream, deltaStart, 0, offset, txnRoot, svndiffVersion, txnLock);
                 return dstStream;
             }
 
             return new FSOutputStream(revNode, revWriter, targetFile, sourceStream, deltaStart, 0, offset, txnRoot, 
-                    compress, txnLock);
+                    svndiffVersion, txnLock);
 
         } catch (IOException ioe) {
             SVNFileUtil.closeFile(targetOS);
@@ -226,6 +228,7 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
         try {
             ByteArrayInputStream target = new ByteArrayInputStream(myTextBuffer.toByteArray());
             myDeltaGenerator.sendDelta(null, mySourceStream, mySourceOffset, target, this, false);
+            myDiffWindowWriter.flush();
 
             final FSRepresentation rep = new FSRepresentation();
             rep.setItemIndex(myRepOffset);
@@ -288,6 +291,7 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
     }
 
     public void closeStreams() throws IOException {
+        myDiffWindowWriter.dispose();
         SVNFileUtil.closeFile(myTargetFileOS);
         SVNFileUtil.closeFile(mySourceStream);
     }
@@ -299,7 +303,7 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
     public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) throws SVNException {
         mySourceOffset += diffWindow.getSourceViewLength();
         try {
-            diffWindow.writeTo(myTargetFileOS, !isHeaderWritten, myIsCompress);
+            myDiffWindowWriter.write(diffWindow, !isHeaderWritten);
             isHeaderWritten = true;
         } catch (IOException ioe) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
@@ -326,16 +330,13 @@ public class FSOutputStream extends OutputStream implements ISVNDeltaConsumer {
             final IFSRepresentationCacheManager reposCacheManager = fsfs.getRepositoryCacheManager();
             if (reposCacheManager != null) {
                 try {
-                    reposCacheManager.runReadTransaction(new IFSSqlJetTransaction() {
-                        public void run() throws SVNException {
-                            final FSRepresentation oldRep = reposCacheManager.getRepresentationByHash(representation.getSHA1HexDigest());
-                            if (oldRep != null) {
-                                oldRep.setUniquifier(representation.getUniquifier());
-                                oldRep.setMD5HexDigest(representation.getMD5HexDigest());
-//                                myRevNode.setTextRepresentation(oldRep);
-                            }
-                        }
-                    });
+                    // manager answers from its in-memory index and opens read transaction only when it has to.
+                    final FSRepresentation oldRep = reposCacheManager.getRepresentationByHash(representation.getSHA1HexDigest());
+                    if (oldRep != null && oldRep.getRevision() <= fsfs.getYoungestRevision()) {
+                        oldRep.setUniquifier(representation.getUniquifier());
+                        oldRep.setMD5HexDigest(representation.getMD5HexDigest());
+                        oldRepresentation = oldRep;
+                    }
                 } catch (SVNException e) {
                     if (e.getErrorMessage().getErrorCode() == SVNErrorCode.FS_CORRUPT || e.getErrorMessage().getErrorCode().getCategory() == SVNErrorCode.MALFUNC_CATEGORY) {
                         throw e;
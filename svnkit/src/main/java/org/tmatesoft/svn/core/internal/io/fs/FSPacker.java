@@ -15,9 +15,22 @@ import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNCancelException;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
@@ -34,20 +47,55 @@ import org.tmatesoft.svn.util.SVNLogType;
 
 
 /**
+ * Packs completed shards of a repository.
+ *
+ * With a single worker (default) all shards are packed one after another while the
+ * repository write lock is held. With more workers (see <code>svnkit.fsfs.pack.threads</code>
+ * system property or {@link #setThreadsCount(int)}) revision files of independent shards,
+ * which never change once the shard is complete, are packed concurrently into temporary
+ * directories without holding the write lock. Every temporary pack is verified against the
+ * original revision files and then swapped in under the write lock, in shard order, together
+ * with packing of (mutable) revision properties of that shard. Events are fired and cancellation
+ * is checked on the calling thread only, in the same order as by a single worker.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
 public class FSPacker {
 
+    public static final String THREADS_PROPERTY = "svnkit.fsfs.pack.threads";
+
+    private static final String TMP_PACK_SUFFIX = ".tmp";
+    private static final int VERIFY_BUFFER_SIZE = 0x4000;
+    private static final long CANCEL_CHECK_INTERVAL = 100;
+
     private ISVNCanceller myCanceller;
     private ISVNAdminEventHandler myNotifyHandler;
+    private int myThreadsCount;
 
     public FSPacker(ISVNAdminEventHandler notifyHandler) {
+        this(notifyHandler, (int) FSCaches.getLongProperty(THREADS_PROPERTY, 1));
+    }
+
+    public FSPacker(ISVNAdminEventHandler notifyHandler, int threadsCount) {
         myCanceller = notifyHandler == null ? ISVNCanceller.NULL : notifyHandler;
         myNotifyHandler = notifyHandler;
+        setThreadsCount(threadsCount);
+    }
+
+    public void setThreadsCount(int threadsCount) {
+        myThreadsCount = Math.max(1, threadsCount);
+    }
+
+    public int getThreadsCount() {
+        return myThreadsCount;
     }
 
     public void pack(FSFS fsfs) throws SVNException {
+        if (myThreadsCount > 1) {
+            packConcurrently(fsfs);
+            return;
+        }
         FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(fsfs);
         synchronized (writeLock) {
             try {
@@ -61,6 +109,21 @@ public class FSPacker {
     }
 
     private void packImpl(FSFS fsfs) throws SVNException {
+        long[] shards = getShardsToPack(fsfs);
+        if (shards == null) {
+            return;
+        }
+        boolean packRevisionProperties = fsfs.getDBFormat() >= FSFS.MIN_PACKED_REVPROP_FORMAT;
+        for (long i = shards[0]; i < shards[1]; i++) {
+            myCanceller.checkCancelled();
+            packShard(fsfs, i, packRevisionProperties);
+        }
+    }
+
+    /**
+     * Returns <code>{firstShard, completedShards}</code> or <code>null</code> when there is nothing to pack.
+     */
+    private long[] getShardsToPack(FSFS fsfs) throws SVNException {
         int format = fsfs.getDBFormat();
         if (format < FSFS.MIN_PACKED_FORMAT) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_UNSUPPORTED_FORMAT, "FS format too old to pack, please upgrade.");
@@ -69,11 +132,11 @@ public class FSPacker {
 
         long maxFilesPerDirectory = fsfs.getMaxFilesPerDirectory();
         if (maxFilesPerDirectory <= 0) {
-            return;
+            return null;
         }
 
         long minUnpackedRev = fsfs.getMinUnpackedRev();
-        long youngestRev = fsfs.getYoungestRevision();
+        long youngestRev = fsfs.readYoungestRevisionUnderWriteLock();
         long completedShards = (youngestRev + 1) / maxFilesPerDirectory;
         long minUnpackedRevProp = 0;
         boolean packRevisionProperties = fsfs.getDBFormat() >= FSFS.MIN_PACKED_REVPROP_FORMAT;
@@ -85,13 +148,226 @@ public class FSPacker {
         if (minUnpackedRev == (completedShards * maxFilesPerDirectory) &&
            minUnpackedRevProp == (completedShards * maxFilesPerDirectory)
         ) {
+            return null;
+        }
+        return new long[] {minUnpackedRev / maxFilesPerDirectory, completedShards};
+    }
+
+    private void packConcurrently(final FSFS fsfs) throws SVNException {
+        long[] shards;
+        FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(fsfs);
+        synchronized (writeLock) {
+            try {
+                writeLock.lock();
+                shards = getShardsToPack(fsfs);
+                if (shards != null && fsfs.isUseLogAddressing()) {
+                    SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_UNSUPPORTED_FORMAT, "Logical addressing is unsupported for FS format ''{0}''", new Object[]{new Integer(fsfs.getDBFormat())});
+                    SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
+                }
+            } finally {
+                writeLock.unlock();
+                FSWriteLock.release(writeLock);
+            }
+        }
+        if (shards == null) {
+            return;
+        }
+
+        boolean packRevisionProperties = fsfs.getDBFormat() >= FSFS.MIN_PACKED_REVPROP_FORMAT;
+        // workers never call the canceller of the caller, which is not expected to be thread safe.
+        final AtomicBoolean stopped = new AtomicBoolean();
+        final ISVNCanceller workerCanceller = new ISVNCanceller() {
+            public void checkCancelled() throws SVNCancelException {
+                if (stopped.get()) {
+                    throw new SVNCancelException();
+                }
+            }
+        };
+        ExecutorService executor = Executors.newFixedThreadPool(myThreadsCount, new PackThreadFactory());
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        try {
+            for (long i = shards[0]; i < shards[1]; i++) {
+                final long shard = i;
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws SVNException {
+                        packRevShardToTemporaryDir(fsfs, shard, workerCanceller);
+                        return null;
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                long shard = shards[0] + i;
+                myCanceller.checkCancelled();
+                firePackEvent(shard, true);
+                waitFor(futures.get(i));
+                myCanceller.checkCancelled();
+                writeLock = FSWriteLock.getWriteLockForDB(fsfs);
+                synchronized (writeLock) {
+                    try {
+                        writeLock.lock();
+                        installShard(fsfs, shard, packRevisionProperties);
+                    } finally {
+                        writeLock.unlock();
+                        FSWriteLock.release(writeLock);
+                    }
+                }
+            }
+        } finally {
+            stopped.set(true);
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+            executor.shutdownNow();
+            // workers must be done with the temporary directories before they are removed.
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            for (long i = shards[0]; i < shards[1]; i++) {
+                SVNFileUtil.deleteAll(getTemporaryPackDir(fsfs, i), true);
+            }
+        }
+    }
+
+    /**
+     * Waits for the worker checking the canceller meanwhile.
+     */
+    private void waitFor(Future<?> future) throws SVNException {
+        try {
+            while (true) {
+                try {
+                    future.get(CANCEL_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                    return;
+                } catch (TimeoutException e) {
+                    myCanceller.checkCancelled();
+                }
+            }
+        } catch (InterruptedException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Packing was interrupted");
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } catch (CancellationException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Packing was cancelled");
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof SVNException) {
+                throw (SVNException) e.getCause();
+            }
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+            SVNErrorManager.error(err, e.getCause(), SVNLogType.FSFS);
+        }
+    }
+
+    private void packRevShardToTemporaryDir(FSFS fsfs, long shard, ISVNCanceller canceller) throws SVNException {
+        canceller.checkCancelled();
+
+        File shardPath = new File(fsfs.getDBRevsDir(), String.valueOf(shard));
+        File tmpPackDir = getTemporaryPackDir(fsfs, shard);
+        SVNFileUtil.deleteAll(tmpPackDir, true, canceller);
+        SVNFileUtil.ensureDirectoryExists(tmpPackDir);
+
+        File packFile = new File(tmpPackDir, FSFS.PACK_KIND_PACK);
+        File manifestFile = new File(tmpPackDir, FSFS.PACK_KIND_MANIFEST);
+        packPhysicallyAddressed(fsfs, shard, shardPath, packFile, manifestFile, canceller);
+        verifyPackedRevShard(fsfs, shard, shardPath, packFile, manifestFile, canceller);
+    }
+
+    /**
+     * Checks that every revision file of the shard is found byte for byte at the
+     * offset recorded in the manifest of the pack.
+     */
+    private void verifyPackedRevShard(FSFS fsfs, long shard, File shardPath, File packFile, File manifestFile, ISVNCanceller canceller) throws SVNException {
+        long startRev = shard * fsfs.getMaxFilesPerDirectory();
+        long endRev = (shard + 1) * fsfs.getMaxFilesPerDirectory() - 1;
+        String[] offsets = SVNFileUtil.readFile(manifestFile).split("\n");
+        if (offsets.length != endRev - startRev + 1) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Manifest of packed shard ''{0}'' has {1} entries, expected {2}",
+                    new Object[] {new Long(shard), new Integer(offsets.length), new Long(endRev - startRev + 1)});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        byte[] expected = new byte[VERIFY_BUFFER_SIZE];
+        byte[] actual = new byte[VERIFY_BUFFER_SIZE];
+        long nextOffset = 0;
+        InputStream packIS = null;
+        try {
+            packIS = SVNFileUtil.openFileForReading(packFile);
+            for (long rev = startRev; rev <= endRev; rev++) {
+                canceller.checkCancelled();
+                long offset = Long.parseLong(offsets[(int) (rev - startRev)].trim());
+                if (offset != nextOffset) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Packed shard ''{0}'' has offset {1} for revision {2}, expected {3}",
+                            new Object[] {new Long(shard), new Long(offset), new Long(rev), new Long(nextOffset)});
+                    SVNErrorManager.error(err, SVNLogType.FSFS);
+                }
+                File path = new File(shardPath, String.valueOf(rev));
+                InputStream revIS = null;
+                try {
+                    revIS = SVNFileUtil.openFileForReading(path);
+                    while (true) {
+                        int read = SVNFileUtil.readIntoBuffer(revIS, expected, 0, expected.length);
+                        if (read <= 0) {
+                            break;
+                        }
+                        if (SVNFileUtil.readIntoBuffer(packIS, actual, 0, read) != read || !regionsEqual(expected, actual, read)) {
+                            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Packed shard ''{0}'' does not match revision {1}",
+                                    new Object[] {new Long(shard), new Long(rev)});
+                            SVNErrorManager.error(err, SVNLogType.FSFS);
+                        }
+                        nextOffset += read;
+                    }
+                } finally {
+                    SVNFileUtil.closeFile(revIS);
+                }
+            }
+            if (packIS.read() >= 0) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Packed shard ''{0}'' is longer than its revisions",
+                        new Long(shard));
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+        } catch (NumberFormatException nfe) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Manifest of packed shard ''{0}'' is corrupt", new Long(shard));
+            SVNErrorManager.error(err, nfe, SVNLogType.FSFS);
+        } catch (IOException ioe) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getMessage());
+            SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
+        } finally {
+            SVNFileUtil.closeFile(packIS);
+        }
+    }
+
+    private static boolean regionsEqual(byte[] expected, byte[] actual, int length) {
+        for (int i = 0; i < length; i++) {
+            if (expected[i] != actual[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void installShard(FSFS fsfs, long shard, boolean packRevisionProperties) throws SVNException {
+        File revShardPath = new File(fsfs.getDBRevsDir(), String.valueOf(shard));
+        File revpropShardPath = new File(fsfs.getRevisionPropertiesRoot(), String.valueOf(shard));
+        if (fsfs.getMinUnpackedRev() != shard * fsfs.getMaxFilesPerDirectory()) {
+            // packed or being packed by someone else meanwhile.
             return;
         }
+        File packDir = fsfs.getPackDir(shard);
+        SVNFileUtil.deleteAll(packDir, true, myCanceller);
+        SVNFileUtil.rename(getTemporaryPackDir(fsfs, shard), packDir);
+        if (!fsfs.getPackFile(shard).isFile()) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Cannot move packed shard into ''{0}''", packDir);
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
 
-        for (long i = minUnpackedRev / maxFilesPerDirectory; i < completedShards; i++) {
+        if (packRevisionProperties) {
             myCanceller.checkCancelled();
-            packShard(fsfs, i, packRevisionProperties);
+            packRevPropShard(fsfs, shard, revpropShardPath, (long)(0.9 * fsfs.getRevPropPackSize()));
         }
+        finishShard(fsfs, shard, revShardPath, revpropShardPath, packRevisionProperties);
+    }
+
+    private File getTemporaryPackDir(FSFS fsfs, long shard) {
+        return new File(fsfs.getDBRevsDir(), shard + FSFS.PACK_EXT + TMP_PACK_SUFFIX);
     }
 
     private void packShard(FSFS fsfs, long shard, boolean packRevisionProperties) throws SVNException {
@@ -103,8 +379,10 @@ public class FSPacker {
             myCanceller.checkCancelled();
             packRevPropShard(fsfs, shard, revpropShardPath, (long)(0.9 * fsfs.getRevPropPackSize()));
         }
+        finishShard(fsfs, shard, revShardPath, revpropShardPath, packRevisionProperties);
+    }
 
-
+    private void finishShard(FSFS fsfs, long shard, File revShardPath, File revpropShardPath, boolean packRevisionProperties) throws SVNException {
         File finalPath = fsfs.getMinUnpackedRevFile();
         File tmpFile = SVNFileUtil.createUniqueFile(fsfs.getDBRoot(), "tempfile", ".tmp", false);
         String line = String.valueOf((shard + 1) * fsfs.getMaxFilesPerDirectory()) + '\n';
@@ -145,11 +423,11 @@ public class FSPacker {
             SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_UNSUPPORTED_FORMAT, "Logical addressing is unsupported for FS format ''{0}''", new Object[]{new Integer(fsfs.getDBFormat())});
             SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
         } else {
-            packPhysicallyAddressed(fsfs, shard, shardPath, packFile, manifestFile);
+            packPhysicallyAddressed(fsfs, shard, shardPath, packFile, manifestFile, myCanceller);
         }
     }
 
-    private void packPhysicallyAddressed(FSFS fsfs, long shard, File shardPath, File packFile, File manifestFile) throws SVNException {
+    private void packPhysicallyAddressed(FSFS fsfs, long shard, File shardPath, File packFile, File manifestFile, ISVNCanceller canceller) throws SVNException {
         long startRev = shard * fsfs.getMaxFilesPerDirectory();
         long endRev = (shard + 1) * fsfs.getMaxFilesPerDirectory() - 1;
         long nextOffset = 0;
@@ -166,7 +444,7 @@ public class FSPacker {
                 InputStream revIS = null;
                 try {
                     revIS = SVNFileUtil.openFileForReading(path);
-                    FSRepositoryUtil.copy(revIS, packFileOS, myCanceller);
+                    FSRepositoryUtil.copy(revIS, packFileOS, canceller);
                 } finally {
                     SVNFileUtil.closeFile(revIS);
                 }
@@ -247,4 +525,15 @@ public class FSPacker {
         final File packFile = new File(packPath, packName);
         packedRevProps.writeToFile(packFile, compressPackedRevprops);
     }
+
+    private static class PackThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger myThreadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "svnkit-fsfs-pack-" + myThreadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
 }
@@ -106,6 +106,11 @@ public class FSPathChange extends SVNLogEntryPath {
         super.setNodeKind(nodeKind);
     }
 
+    public FSPathChange copy() {
+        return new FSPathChange(myPath, myRevNodeId, myChangeKind, isTextModified, arePropertiesModified, isMergeInfoModified,
+                getCopyPath(), getCopyRevision(), getKind());
+    }
+
     public static FSPathChange fromString(String changeLine, String copyfromLine) throws SVNException {
         int delimiterInd = changeLine.indexOf(' ');
 
@@ -0,0 +1,72 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.util.Iterator;
+
+import org.tmatesoft.svn.core.SVNException;
+
+/**
+ * Iterates over changed paths of a root one change at a time. Changes of a revision
+ * that are not cached are read straight from the changes section of the revision file,
+ * so that a revision with a huge number of changed paths never has to be kept in memory
+ * as a whole. Iterator should be closed once it is not needed anymore.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSPathChangesIterator {
+
+    private FSFile myChangesFile;
+    private FSPathChange[] myChanges;
+    private Iterator myChangesIterator;
+    private int myIndex;
+
+    FSPathChangesIterator(FSFile changesFile) {
+        myChangesFile = changesFile;
+    }
+
+    FSPathChangesIterator(FSPathChange[] changes) {
+        myChanges = changes;
+    }
+
+    FSPathChangesIterator(Iterator changesIterator) {
+        myChangesIterator = changesIterator;
+    }
+
+    /**
+     * Returns the next change or <code>null</code> when there are no more changes.
+     */
+    public FSPathChange next() throws SVNException {
+        if (myChangesFile != null) {
+            final FSPathChange change = FSRoot.readChange(myChangesFile);
+            if (change == null) {
+                close();
+            }
+            return change;
+        } else if (myChanges != null) {
+            return myIndex < myChanges.length ? myChanges[myIndex++].copy() : null;
+        } else if (myChangesIterator != null) {
+            return myChangesIterator.hasNext() ? (FSPathChange) myChangesIterator.next() : null;
+        }
+        return null;
+    }
+
+    public void close() {
+        if (myChangesFile != null) {
+            myChangesFile.close();
+            myChangesFile = null;
+        }
+        myChanges = null;
+        myChangesIterator = null;
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Reads ranges of immutable revision and pack files ahead of need on a small
+ * pool of daemon threads, so that data of all representations in a delta
+ * chain may be read while the chain is being combined.
+ *
+ * Prefetching is configured with system properties:
+ * <ul>
+ * <li><code>svnkit.fsfs.prefetch.threads</code> - number of I/O threads, <code>0</code> (default)
+ * disables prefetching;</li>
+ * <li><code>svnkit.fsfs.prefetch.maxSize</code> - size (in bytes) of the largest range to prefetch.</li>
+ * </ul>
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSPrefetcher {
+
+    public static final String THREADS_PROPERTY = "svnkit.fsfs.prefetch.threads";
+    public static final String MAX_SIZE_PROPERTY = "svnkit.fsfs.prefetch.maxSize";
+
+    private static final long ourMaxSize = FSCaches.getLongProperty(MAX_SIZE_PROPERTY, 0x400000);
+
+    private static int ourThreadsCount = (int) FSCaches.getLongProperty(THREADS_PROPERTY, 0);
+    private static ThreadPoolExecutor ourExecutor;
+
+    public static synchronized boolean isEnabled() {
+        return ourThreadsCount > 0;
+    }
+
+    public static synchronized void setThreadsCount(int threadsCount) {
+        if (threadsCount == ourThreadsCount) {
+            return;
+        }
+        ourThreadsCount = threadsCount;
+        if (ourExecutor != null) {
+            ourExecutor.shutdown();
+            ourExecutor = null;
+        }
+    }
+
+    /**
+     * Schedules reading of <code>length</code> bytes of <code>file</code> starting at
+     * <code>offset</code>. Returns <code>null</code> when prefetching is disabled or the
+     * range is too large, otherwise returned future is completed with the bytes read.
+     */
+    public static Future<byte[]> prefetch(final File file, final long offset, final int length) {
+        if (file == null || length <= 0 || length > ourMaxSize) {
+            return null;
+        }
+        final ThreadPoolExecutor executor = getExecutor();
+        if (executor == null) {
+            return null;
+        }
+        try {
+            return executor.submit(new Callable<byte[]>() {
+                public byte[] call() throws IOException {
+                    return readRange(file, offset, length);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, "Could not prefetch " + file + ": " + e.getMessage());
+        }
+        return null;
+    }
+
+    private static byte[] readRange(File file, long offset, int length) throws IOException {
+        final byte[] data = new byte[length];
+        final FSFile fsFile = new FSFile(file, true);
+        try {
+            fsFile.seek(offset);
+            int read = 0;
+            while (read < length) {
+                int r = fsFile.read(data, read, length - read);
+                if (r < 0) {
+                    throw new IOException("Unexpected end of file " + file);
+                }
+                read += r;
+            }
+        } finally {
+            fsFile.close();
+        }
+        return data;
+    }
+
+    private static synchronized ThreadPoolExecutor getExecutor() {
+        if (ourThreadsCount <= 0) {
+            return null;
+        }
+        if (ourExecutor == null) {
+            ourExecutor = new ThreadPoolExecutor(ourThreadsCount, ourThreadsCount, 60L, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new PrefetchThreadFactory());
+            ourExecutor.allowCoreThreadTimeOut(true);
+        }
+        return ourExecutor;
+    }
+
+    private static class PrefetchThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger myThreadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "svnkit-fsfs-prefetch-" + myThreadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -56,7 +56,7 @@ public class FSRecoverer {
         String nextNodeID = null;
         String nextCopyID = null;
         long maxRev = getLargestRevision();
-        long youngestRev = myOwner.getYoungestRevision();
+        long youngestRev = myOwner.readYoungestRevisionUnderWriteLock();
         
         if (youngestRev > maxRev) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Expected current rev to be <= {0} but found {1}", 
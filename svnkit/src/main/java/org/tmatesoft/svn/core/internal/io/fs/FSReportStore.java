@@ -0,0 +1,240 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.util.SVNSpillBuffer;
+import org.tmatesoft.svn.core.internal.util.SVNSpillBufferReader;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Keeps path infos of a client report until the report is driven. Records are kept in memory
+ * in a compact binary form and are spilled to a temporary file only when the report grows beyond
+ * <code>svnkit.fsfs.report.memory</code> bytes (16M by default).
+ *
+ * Every record is a flags byte, a depth byte, the path, and then the link path, the revision and
+ * the lock token when the corresponding flag is set. Strings are UTF-8 bytes prefixed with their
+ * length, numbers are written in 7-bit groups, least significant first.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSReportStore {
+
+    public static final String MEMORY_SIZE_PROPERTY = "svnkit.fsfs.report.memory";
+
+    private static final int BLOCK_SIZE = 0x10000;
+    private static final long MAX_MEMORY_SIZE = FSCaches.getLongProperty(MEMORY_SIZE_PROPERTY, 0x1000000);
+
+    private static final int LINK_PATH_FLAG = 0x01;
+    private static final int LOCK_TOKEN_FLAG = 0x02;
+    private static final int REVISION_FLAG = 0x04;
+    private static final int START_EMPTY_FLAG = 0x08;
+
+    private static final SVNDepth[] DEPTHS = {SVNDepth.INFINITY, SVNDepth.EXCLUDE, SVNDepth.EMPTY, SVNDepth.FILES, SVNDepth.IMMEDIATES};
+
+    private final SVNSpillBuffer myBuffer;
+    private SVNSpillBufferReader myReader;
+    private byte[] myRecord;
+    private int myRecordLength;
+    private final byte[] myReadBuffer;
+    private int myReadPosition;
+    private int myReadLength;
+
+    public FSReportStore() {
+        this(MAX_MEMORY_SIZE);
+    }
+
+    public FSReportStore(long maxMemorySize) {
+        myBuffer = new SVNSpillBuffer(BLOCK_SIZE, maxMemorySize);
+        myRecord = new byte[256];
+        myReadBuffer = new byte[8192];
+    }
+
+    /**
+     * Returns <code>true</code> when the report did not fit into memory and was spilled to disk.
+     */
+    public boolean isSpilled() {
+        return myBuffer.getFileName() != null;
+    }
+
+    public void writePathInfo(String path, String linkPath, String lockToken, long revision, SVNDepth depth, boolean startEmpty) throws SVNException {
+        if (myReader != null) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.REPOS_BAD_REVISION_REPORT, "Report is already being read");
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        int depthId = -1;
+        for (int i = 0; i < DEPTHS.length; i++) {
+            if (DEPTHS[i] == depth) {
+                depthId = i;
+                break;
+            }
+        }
+        if (depthId < 0) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.REPOS_BAD_ARGS, "Unsupported report depth ''{0}''", depth != null ? depth.getName() : "null");
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        int flags = 0;
+        flags |= linkPath != null ? LINK_PATH_FLAG : 0;
+        flags |= lockToken != null ? LOCK_TOKEN_FLAG : 0;
+        flags |= FSRepository.isValidRevision(revision) ? REVISION_FLAG : 0;
+        flags |= startEmpty ? START_EMPTY_FLAG : 0;
+
+        myRecordLength = 0;
+        writeByte(flags);
+        writeByte(depthId);
+        writeString(path);
+        if (linkPath != null) {
+            writeString(linkPath);
+        }
+        if (FSRepository.isValidRevision(revision)) {
+            writeNumber(revision);
+        }
+        if (lockToken != null) {
+            writeString(lockToken);
+        }
+        myBuffer.write(myRecord, 0, myRecordLength);
+    }
+
+    /**
+     * Returns the next path info of the report, or <code>null</code> when all of them were read.
+     * No more path infos could be written once reading started.
+     */
+    public PathInfo readPathInfo() throws SVNException {
+        if (myReader == null) {
+            myReader = new SVNSpillBufferReader(myBuffer);
+        }
+        try {
+            final int flags = readByte();
+            if (flags < 0) {
+                return null;
+            }
+            final int depthId = readByte();
+            if (depthId < 0 || depthId >= DEPTHS.length) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.REPOS_BAD_REVISION_REPORT, "Invalid depth ({0}) in report", new Integer(depthId));
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+            final String path = readString();
+            final String linkPath = (flags & LINK_PATH_FLAG) != 0 ? readString() : null;
+            final long revision = (flags & REVISION_FLAG) != 0 ? readNumber() : SVNRepository.INVALID_REVISION;
+            final String lockToken = (flags & LOCK_TOKEN_FLAG) != 0 ? readString() : null;
+            return new PathInfo(path, linkPath, lockToken, revision, DEPTHS[depthId], (flags & START_EMPTY_FLAG) != 0);
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        }
+        return null;
+    }
+
+    public void close() {
+        myBuffer.close();
+    }
+
+    private void writeString(String string) throws SVNException {
+        final byte[] bytes;
+        try {
+            bytes = string.getBytes("UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+            return;
+        }
+        writeNumber(bytes.length);
+        ensureRecordCapacity(bytes.length);
+        System.arraycopy(bytes, 0, myRecord, myRecordLength, bytes.length);
+        myRecordLength += bytes.length;
+    }
+
+    private void writeNumber(long number) {
+        while ((number & ~0x7FL) != 0) {
+            writeByte((int) ((number & 0x7F) | 0x80));
+            number >>>= 7;
+        }
+        writeByte((int) number);
+    }
+
+    private void writeByte(int b) {
+        ensureRecordCapacity(1);
+        myRecord[myRecordLength++] = (byte) b;
+    }
+
+    private void ensureRecordCapacity(int length) {
+        if (myRecordLength + length > myRecord.length) {
+            final byte[] record = new byte[Math.max(myRecord.length * 2, myRecordLength + length)];
+            System.arraycopy(myRecord, 0, record, 0, myRecordLength);
+            myRecord = record;
+        }
+    }
+
+    private String readString() throws IOException, SVNException {
+        final long length = readNumber();
+        if (length > Integer.MAX_VALUE) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.REPOS_BAD_REVISION_REPORT, "Invalid string length in report");
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        final byte[] bytes = new byte[(int) length];
+        for (int offset = 0; offset < bytes.length; ) {
+            if (myReadPosition == myReadLength && !fill()) {
+                unexpectedEnd();
+            }
+            final int count = Math.min(bytes.length - offset, myReadLength - myReadPosition);
+            System.arraycopy(myReadBuffer, myReadPosition, bytes, offset, count);
+            myReadPosition += count;
+            offset += count;
+        }
+        return new String(bytes, "UTF-8");
+    }
+
+    private long readNumber() throws IOException, SVNException {
+        long number = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            final int b = readByte();
+            if (b < 0) {
+                unexpectedEnd();
+            }
+            number |= ((long) (b & 0x7F)) << shift;
+            if ((b & 0x80) == 0) {
+                return number;
+            }
+        }
+        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.REPOS_BAD_REVISION_REPORT, "Invalid number in report");
+        SVNErrorManager.error(err, SVNLogType.FSFS);
+        return -1;
+    }
+
+    private int readByte() throws IOException {
+        if (myReadPosition == myReadLength && !fill()) {
+            return -1;
+        }
+        return myReadBuffer[myReadPosition++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        final int read = myReader.read(myReadBuffer, 0, myReadBuffer.length);
+        myReadPosition = 0;
+        myReadLength = read > 0 ? read : 0;
+        return myReadLength > 0;
+    }
+
+    private static void unexpectedEnd() throws SVNException {
+        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.STREAM_UNEXPECTED_EOF, "Unexpected end of report");
+        SVNErrorManager.error(err, SVNLogType.FSFS);
+    }
+}
@@ -338,10 +338,33 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
         }
     }
 
+    /**
+     * Same as {@link #log(String[], long, long, boolean, boolean, long, boolean, String[], ISVNLogEntryHandler)},
+     * but reports only revisions committed by <code>author</code>. Revisions are found with the changed
+     * paths and authors index when it is enabled, see {@link FSLogIndex}.
+     */
+    public long log(String[] targetPaths, long startRevision, long endRevision, boolean discoverChangedPaths,
+            boolean strictNodeHistory, long limit, boolean includeMergedRevisions, String[] revisionProperties,
+            String author, ISVNLogEntryHandler handler) throws SVNException {
+        if (includeMergedRevisions) {
+            assertServerIsMergeInfoCapable(null);
+        }
+        return logImpl(targetPaths, startRevision, endRevision, discoverChangedPaths, strictNodeHistory, limit,
+                includeMergedRevisions, revisionProperties, author, handler);
+    }
+
     protected long logImpl(String[] targetPaths, long startRevision, long endRevision, boolean
                     discoverChangedPaths, boolean strictNode, long limit,
                     boolean includeMergedRevisions, String[] revPropNames,
                     ISVNLogEntryHandler handler) throws SVNException {
+        return logImpl(targetPaths, startRevision, endRevision, discoverChangedPaths, strictNode, limit,
+                includeMergedRevisions, revPropNames, null, handler);
+    }
+
+    private long logImpl(String[] targetPaths, long startRevision, long endRevision, boolean
+                    discoverChangedPaths, boolean strictNode, long limit,
+                    boolean includeMergedRevisions, String[] revPropNames, String author,
+                    ISVNLogEntryHandler handler) throws SVNException {
         try {
             openRepository();
             if (targetPaths == null || targetPaths.length == 0) {
@@ -379,7 +402,7 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
             }
 
             FSLog logDriver = getLogDriver(absPaths, limit, histStart, histEnd, isDescendingOrder,
-                    discoverChangedPaths, strictNode, includeMergedRevisions, revPropNames, handler);
+                    discoverChangedPaths, strictNode, includeMergedRevisions, revPropNames, author, handler);
             return logDriver.runLog();
         } finally {
             closeRepository();
@@ -479,7 +502,6 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
             openRepository();
             path = getRepositoryPath(path);
 
-            File digestFile = myFSFS.getDigestFileFromRepositoryPath(path);
             final ArrayList locks = new ArrayList();
             ISVNLockHandler handler = new ISVNLockHandler() {
 
@@ -491,7 +513,7 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
                 }
             };
 
-            myFSFS.walkDigestFiles(digestFile, handler, false);
+            myFSFS.walkLocks(path, handler, false);
 
             return (SVNLock[]) locks.toArray(new SVNLock[locks.size()]);
         } finally {
@@ -945,14 +967,12 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
 
         if (myReporterContext == null) {
             myReporterContext = new FSUpdateContext(this, myFSFS, targetRevision,
-                                                    SVNFileUtil.createTempFile("report", ".tmp"),
                                                     target, fullTargetPath,
                                                     switchURL == null ? false : true,
                                                     depth, ignoreAncestry, textDeltas,
                                                     sendCopyFromArgs, editor);
         } else {
-            myReporterContext.reset(this, myFSFS, targetRevision, SVNFileUtil.createTempFile("report", ".tmp"),
-                                    target, fullTargetPath, switchURL == null ? false : true, depth,
+            myReporterContext.reset(this, myFSFS, targetRevision, target, fullTargetPath, switchURL == null ? false : true, depth,
                                     ignoreAncestry, textDeltas, sendCopyFromArgs, editor);
         }
     }
@@ -1019,7 +1039,7 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
 
     private FSLog getLogDriver(String[] absPaths, long limit, long histStart, long histEnd,
             boolean isDescendingOrder, boolean discoverChangedPaths, boolean strictNode,
-            boolean includeMergedRevisions, String[] revPropNames, ISVNLogEntryHandler handler) {
+            boolean includeMergedRevisions, String[] revPropNames, String author, ISVNLogEntryHandler handler) {
         if (myLogDriver == null) {
             myLogDriver = new FSLog(myFSFS, absPaths, limit, histStart, histEnd, isDescendingOrder,
                     discoverChangedPaths, strictNode, includeMergedRevisions, revPropNames, handler);
@@ -1027,6 +1047,7 @@ public class FSRepository extends SVNRepository implements ISVNReporter {
             myLogDriver.reset(myFSFS, absPaths, limit, histStart, histEnd, isDescendingOrder,
                     discoverChangedPaths, strictNode, includeMergedRevisions, revPropNames, handler);
         }
+        myLogDriver.setAuthor(author);
         return myLogDriver;
     }
 }
\ No newline at end of file
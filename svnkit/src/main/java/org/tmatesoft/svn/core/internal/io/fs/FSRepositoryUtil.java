@@ -71,22 +71,24 @@ public class FSRepositoryUtil {
     }
     
     public static void replay(FSFS fsfs, FSRoot root, String basePath, long lowRevision, boolean sendDeltas, ISVNEditor editor) throws SVNException {
-        Map fsChanges = root.getChangedPaths();
         basePath = basePath.startsWith("/") ? basePath.substring(1) : basePath;
         Collection interestingPaths = new LinkedList();
         Map changedPaths = new SVNHashMap();
-        for (Iterator paths = fsChanges.keySet().iterator(); paths.hasNext();) {
-            String path = (String) paths.next();
-            FSPathChange change = (FSPathChange) fsChanges.get(path);  
-
-            path = path.startsWith("/") ? path.substring(1) : path;
-            if (SVNPathUtil.isWithinBasePath(basePath, path)) {
-                interestingPaths.add(path);
-                changedPaths.put(path, change);
-            } else if (SVNPathUtil.isWithinBasePath(path, basePath)) {
-                interestingPaths.add(path);
-                changedPaths.put(path, change);
+        FSPathChangesIterator fsChanges = root.getChangedPathsIterator();
+        try {
+            for (FSPathChange change = fsChanges.next(); change != null; change = fsChanges.next()) {
+                String path = change.getPath();
+                path = path.startsWith("/") ? path.substring(1) : path;
+                if (SVNPathUtil.isWithinBasePath(basePath, path)) {
+                    interestingPaths.add(path);
+                    changedPaths.put(path, change);
+                } else if (SVNPathUtil.isWithinBasePath(path, basePath)) {
+                    interestingPaths.add(path);
+                    changedPaths.put(path, change);
+                }
             }
+        } finally {
+            fsChanges.close();
         }
         if (FSRepository.isInvalidRevision(lowRevision)) {
             lowRevision = 0;
@@ -268,13 +270,13 @@ public class FSRepositoryUtil {
         }
     }
     
-    public static void loadRootChangesOffsetLogicalAddressing(FSFS fsfs, long revision, FSFile file, long index, long[] rootOffset, long[] changesOffset) throws SVNException {
-        final long offset = fsfs.lookupOffsetInIndex(file, revision, index);
+    public static void loadRootChangesOffsetLogicalAddressing(FSFS fsfs, long revision, FSFile file, long[] rootOffset, long[] changesOffset) throws SVNException {
+        final long[] offsets = fsfs.lookupOffsetsInIndex(file, revision, new long[] {FSID.ITEM_INDEX_ROOT_NODE, FSID.ITEM_INDEX_CHANGES});
         if (rootOffset != null) {
-            rootOffset[0] = offset;
+            rootOffset[0] = offsets[0];
         }
         if (changesOffset != null) {
-            changesOffset[0] = offset;
+            changesOffset[0] = offsets[1];
         }
     }
 
@@ -45,6 +45,8 @@ public class FSRevisionNode {
     public static final String HEADER_MERGE_INFO_COUNT = "minfo-cnt";
     public static final String HEADER_MERGE_INFO_HERE = "minfo-here";
 
+    private static final String OPTIONAL_VALUE_MISSING = "-";
+
     // id: a.b.r<revID>/offset
     private FSID myId;
 
@@ -506,11 +508,14 @@ public class FSRevisionNode {
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
         hexSHA1Digest = representation.substring(0, delimiterInd);
-        if (hexSHA1Digest.length() != 40 || SVNFileUtil.fromHexDigest(hexSHA1Digest) == null) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Malformed text rep offset line in node-rev");
-            SVNErrorManager.error(err, SVNLogType.FSFS);
+        // format 8 and newer use "-" for values that are not present.
+        if (!OPTIONAL_VALUE_MISSING.equals(hexSHA1Digest)) {
+            if (hexSHA1Digest.length() != 40 || SVNFileUtil.fromHexDigest(hexSHA1Digest) == null) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Malformed text rep offset line in node-rev");
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+            rep.setSHA1HexDigest(hexSHA1Digest);
         }
-        rep.setSHA1HexDigest(hexSHA1Digest);
         
         representation = representation.substring(delimiterInd + 1);
         delimiterInd = representation.indexOf(' ');
@@ -521,7 +526,9 @@ public class FSRevisionNode {
             uniquifier = representation;
         }
         
-        rep.setUniquifier(uniquifier);
+        if (!OPTIONAL_VALUE_MISSING.equals(uniquifier)) {
+            rep.setUniquifier(uniquifier);
+        }
     }
 
     private static void parseCopyFrom(String copyfrom, FSRevisionNode revNode) throws SVNException {
@@ -11,12 +11,14 @@
  */
 package org.tmatesoft.svn.core.internal.io.fs;
 
+import java.util.Iterator;
 import java.util.Map;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.io.SVNLocationEntry;
@@ -29,6 +31,9 @@ import org.tmatesoft.svn.util.SVNLogType;
  * @author  TMate Software Ltd.
  */
 public class FSRevisionRoot extends FSRoot {
+
+    private static final String CHANGES_CACHE_KEY = "changes";
+
     private long myRevision;
     private long myRootOffset;
     private long myChangesOffset;
@@ -45,14 +50,61 @@ public class FSRevisionRoot extends FSRoot {
     }
 
     public Map getChangedPaths() throws SVNException {
+        final FSCache<FSCacheKey, FSPathChange[]> changesCache = FSCaches.getChangesCache();
+        final FSCacheKey cacheKey = changesCache != null ? new FSCacheKey(getOwner().getCacheInstanceId(), CHANGES_CACHE_KEY, getRevision(), -1) : null;
+        if (changesCache != null) {
+            final FSPathChange[] cachedChanges = changesCache.get(cacheKey);
+            if (cachedChanges != null) {
+                final Map changedPaths = new SVNHashMap();
+                for (int i = 0; i < cachedChanges.length; i++) {
+                    changedPaths.put(cachedChanges[i].getPath(), cachedChanges[i].copy());
+                }
+                return changedPaths;
+            }
+        }
+        final Map changedPaths;
+        FSFile file = openChanges();
+        try {
+            changedPaths = fetchAllChanges(file, true);
+        } finally {
+            file.close();
+        }
+        if (changesCache != null) {
+            final FSPathChange[] changes = new FSPathChange[changedPaths.size()];
+            int i = 0;
+            for (Iterator values = changedPaths.values().iterator(); values.hasNext();) {
+                changes[i++] = ((FSPathChange) values.next()).copy();
+            }
+            changesCache.put(cacheKey, changes);
+        }
+        return changedPaths;
+    }
+
+    /**
+     * Changes section of a revision file is written already folded, so unless the changes
+     * are cached, they are streamed from the revision file as they are.
+     */
+    public FSPathChangesIterator getChangedPathsIterator() throws SVNException {
+        final FSCache<FSCacheKey, FSPathChange[]> changesCache = FSCaches.getChangesCache();
+        if (changesCache != null) {
+            final FSPathChange[] cachedChanges = changesCache.get(new FSCacheKey(getOwner().getCacheInstanceId(), CHANGES_CACHE_KEY, getRevision(), -1));
+            if (cachedChanges != null) {
+                return new FSPathChangesIterator(cachedChanges);
+            }
+        }
+        return new FSPathChangesIterator(openChanges());
+    }
+
+    private FSFile openChanges() throws SVNException {
         FSFile file = getOwner().getPackOrRevisionFSFile(getRevision());
         try {
             loadOffsets(file, FSID.ITEM_INDEX_CHANGES);
             file.seek(myChangesOffset);
-            return fetchAllChanges(file, true);
-        } finally {
+        } catch (SVNException e) {
             file.close();
+            throw e;
         }
+        return file;
     }
 
     public FSCopyInheritance getCopyInheritance(FSParentPath child) throws SVNException{
@@ -211,18 +263,13 @@ public class FSRevisionRoot extends FSRoot {
         long[] rootOffset = { -1 };
         long[] changesOffset = { -1 };
         if (isUseLogAddressing()) {
-            FSRepositoryUtil.loadRootChangesOffsetLogicalAddressing(getOwner(), getRevision(), file, itemIndex, rootOffset, changesOffset);
-            if (itemIndex == FSID.ITEM_INDEX_ROOT_NODE) {
-                myRootOffset = rootOffset[0];
-            }
-            if (itemIndex == FSID.ITEM_INDEX_CHANGES) {
-                myChangesOffset = changesOffset[0];
-            }
+            // both items are resolved at once, they are usually found in the same index page.
+            FSRepositoryUtil.loadRootChangesOffsetLogicalAddressing(getOwner(), getRevision(), file, rootOffset, changesOffset);
         } else {
             FSRepositoryUtil.loadRootChangesOffset(getOwner(), getRevision(), file, rootOffset, changesOffset);
-            myRootOffset = rootOffset[0];
-            myChangesOffset = changesOffset[0];
         }
+        myRootOffset = rootOffset[0];
+        myChangesOffset = changesOffset[0];
     }
 
 }
@@ -0,0 +1,224 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Date;
+
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Sidecar index of <code>svn:date</code> revision property values, stored in
+ * <code>db/revtimes</code> as one big-endian <code>long</code> (time in microseconds)
+ * per revision, so that dated revision lookups do not read revision properties.
+ *
+ * Index always covers a prefix of revisions, revisions without <code>svn:date</code> have an
+ * unknown time entry. Lookups use the index for the covered prefix only, times of younger
+ * revisions are read from revision properties. Entry of a new revision is appended on commit
+ * before <code>current</code> is updated when the index covers all older revisions, entry of an
+ * indexed revision is rewritten when its <code>svn:date</code> is changed, both under the
+ * repository write lock. Revisions are never indexed on lookup, index is built with
+ * {@link #update(long, ISVNCanceller)} or {@link #rebuild(ISVNCanceller)}. Changes of
+ * <code>svn:date</code> made by other tools are not tracked, so index should be rebuilt after them.
+ *
+ * Index is disabled by default and is enabled with <code>svnkit.fsfs.revisionTimeIndex=true</code>
+ * system property.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRevisionTimeIndex {
+
+    public static final String ENABLED_PROPERTY = "svnkit.fsfs.revisionTimeIndex";
+    public static final String REVISION_TIMES_FILE = "revtimes";
+
+    private static final long UNKNOWN = Long.MIN_VALUE;
+    private static final int ENTRY_SIZE = 8;
+    private static final int BATCH_SIZE = 1024;
+
+    private static volatile boolean ourIsEnabled = Boolean.valueOf(System.getProperty(ENABLED_PROPERTY, Boolean.FALSE.toString())).booleanValue();
+
+    private final FSFS myFSFS;
+    private final File myFile;
+    private MappedByteBuffer myBuffer;
+
+    public static boolean isEnabled() {
+        return ourIsEnabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ourIsEnabled = enabled;
+    }
+
+    public FSRevisionTimeIndex(FSFS fsfs) {
+        myFSFS = fsfs;
+        myFile = new File(fsfs.getDBRoot(), REVISION_TIMES_FILE);
+    }
+
+    public File getFile() {
+        return myFile;
+    }
+
+    /**
+     * Returns time of the revision or <code>null</code> if it is not indexed.
+     */
+    public synchronized Date getTime(long revision) {
+        final long micros = getTimeInMicros(revision);
+        if (micros == UNKNOWN) {
+            return null;
+        }
+        return new SVNDate(floorDiv(micros, 1000), (int) (micros - floorDiv(micros, 1000) * 1000));
+    }
+
+    /**
+     * Stores <code>svn:date</code> value of the revision, <code>null</code> date marks its time as unknown.
+     * Revisions that do not follow the indexed prefix are skipped. Should be called while repository
+     * write lock is held.
+     */
+    public synchronized void setTime(long revision, String date) throws SVNException {
+        if (revision > getIndexedCount()) {
+            return;
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(myFile, "rw");
+            writeTime(file, revision, date);
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Cannot write revision times index ''{0}'': {1}",
+                    new Object[] {myFile, e.getMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            SVNFileUtil.closeFile(file);
+        }
+    }
+
+    /**
+     * Indexes revisions up to <code>youngestRevision</code> that follow the indexed prefix, taking
+     * repository write lock for every {@value #BATCH_SIZE} revisions. Reads revision properties of
+     * all revisions that are not indexed yet, so it is not called on lookups.
+     */
+    public void update(long youngestRevision, ISVNCanceller canceller) throws SVNException {
+        while (true) {
+            if (canceller != null) {
+                canceller.checkCancelled();
+            }
+            final FSWriteLock writeLock = FSWriteLock.getWriteLockForDB(myFSFS);
+            synchronized (writeLock) {
+                try {
+                    writeLock.lock();
+                    if (!updateBatch(youngestRevision)) {
+                        return;
+                    }
+                } finally {
+                    writeLock.unlock();
+                    FSWriteLock.release(writeLock);
+                }
+            }
+        }
+    }
+
+    /**
+     * Deletes index and builds it again from revision properties.
+     */
+    public void rebuild(ISVNCanceller canceller) throws SVNException {
+        synchronized (this) {
+            close();
+            SVNFileUtil.deleteFile(myFile);
+        }
+        update(myFSFS.getYoungestRevision(), canceller);
+    }
+
+    private synchronized boolean updateBatch(long youngestRevision) throws SVNException {
+        final long from = getIndexedCount();
+        if (from > youngestRevision) {
+            return false;
+        }
+        final long to = Math.min(youngestRevision, from + BATCH_SIZE - 1);
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(myFile, "rw");
+            for (long revision = from; revision <= to; revision++) {
+                writeTime(file, revision, myFSFS.getRevisionProperties(revision).getStringValue(SVNRevisionProperty.DATE));
+            }
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "Cannot write revision times index ''{0}'': {1}",
+                    new Object[] {myFile, e.getMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+        } finally {
+            SVNFileUtil.closeFile(file);
+        }
+        return to < youngestRevision;
+    }
+
+    public synchronized void close() {
+        myBuffer = null;
+    }
+
+    private static void writeTime(RandomAccessFile file, long revision, String date) throws SVNException, IOException {
+        long micros = UNKNOWN;
+        if (date != null) {
+            micros = SVNDate.fromDate(SVNDate.parseDateString(date)).getTimeInMicros();
+        }
+        file.seek(revision * ENTRY_SIZE);
+        file.writeLong(micros);
+    }
+
+    private long getIndexedCount() {
+        return myFile.length() / ENTRY_SIZE;
+    }
+
+    private synchronized long getTimeInMicros(long revision) {
+        final long position = revision * ENTRY_SIZE;
+        if (myBuffer == null || position + ENTRY_SIZE > myBuffer.capacity()) {
+            if (!map(position + ENTRY_SIZE)) {
+                return UNKNOWN;
+            }
+        }
+        return myBuffer.getLong((int) position);
+    }
+
+    private boolean map(long minimalLength) {
+        final long length = myFile.length() / ENTRY_SIZE * ENTRY_SIZE;
+        if (length < minimalLength || length > Integer.MAX_VALUE) {
+            return false;
+        }
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(myFile, "r");
+            myBuffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+            return true;
+        } catch (IOException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            return false;
+        } finally {
+            SVNFileUtil.closeFile(file);
+        }
+    }
+
+    private static long floorDiv(long value, long divisor) {
+        final long result = value / divisor;
+        return (value % divisor < 0) ? result - 1 : result;
+    }
+}
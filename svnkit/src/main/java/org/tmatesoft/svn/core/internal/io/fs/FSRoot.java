@@ -39,12 +39,20 @@ import org.tmatesoft.svn.util.SVNLogType;
  */
 public abstract class FSRoot {
 
-    private RevisionCache myRevNodesCache;
+    /**
+     * Maximum number of path to node-revision mappings cached by a single root.
+     */
+    public static final String REVISION_NODES_CACHE_SIZE_PROPERTY = "svnkit.fsfs.root.revisionNodes.entries";
+
+    private static final int REVISION_NODES_CACHE_SIZE = (int) FSCaches.getLongProperty(REVISION_NODES_CACHE_SIZE_PROPERTY, 100);
+
+    private final RevisionCache myRevNodesCache;
     private FSFS myFSFS;
     protected FSRevisionNode myRootRevisionNode;
 
     protected FSRoot(FSFS owner) {
         myFSFS = owner;
+        myRevNodesCache = new RevisionCache(REVISION_NODES_CACHE_SIZE);
     }
 
     public FSFS getOwner() {
@@ -67,6 +75,14 @@ public abstract class FSRoot {
 
     public abstract Map getChangedPaths() throws SVNException;
 
+    /**
+     * Returns iterator over changed paths of this root, same as {@link #getChangedPaths()} returns,
+     * but without necessarily loading all of them into memory.
+     */
+    public FSPathChangesIterator getChangedPathsIterator() throws SVNException {
+        return new FSPathChangesIterator(getChangedPaths().values().iterator());
+    }
+
     public abstract FSCopyInheritance getCopyInheritance(FSParentPath child) throws SVNException;
 
     public FSParentPath openPath(String path, boolean lastEntryMustExist, boolean storeParents) throws SVNException {
@@ -157,9 +173,6 @@ public abstract class FSRoot {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Invalid path ''{0}''", path);
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        if (myRevNodesCache == null) {
-            myRevNodesCache = new RevisionCache(100);
-        }
         myRevNodesCache.put(path, node);
     }
 
@@ -168,16 +181,10 @@ public abstract class FSRoot {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Invalid path ''{0}''", path);
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
-        if (myRevNodesCache == null) {
-            return;
-        }
         myRevNodesCache.delete(path);
     }
 
     protected FSRevisionNode fetchRevNodeFromCache(String path) throws SVNException {
-        if (myRevNodesCache == null) {
-            return null;
-        }
         if (!path.startsWith("/")) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, "Invalid path ''{0}''", path);
             SVNErrorManager.error(err, SVNLogType.FSFS);
@@ -305,7 +312,7 @@ public abstract class FSRoot {
         return changes;
     }
 
-    private FSPathChange readChange(FSFile raReader) throws SVNException {
+    static FSPathChange readChange(FSFile raReader) throws SVNException {
         String changeLine = null;
         try {
             changeLine = raReader.readLine(4096);
@@ -601,45 +608,43 @@ public abstract class FSRoot {
         outputStream.write(bytes, 0, length);
     }
 
+    /**
+     * LRU cache of path to node-revision mappings. Lookups and insertions are O(1),
+     * deletion of a path also deletes cached nodes of all its descendants.
+     */
     private static final class RevisionCache {
 
-        private LinkedList myKeys;
-        private Map myCache;
-        private int mySizeLimit;
+        private final LinkedHashMap myCache;
+        private final int mySizeLimit;
 
         public RevisionCache(int limit) {
             mySizeLimit = limit;
-            myKeys = new LinkedList();
-            myCache = new TreeMap();
+            myCache = new LinkedHashMap(16, 0.75f, true) {
+                protected boolean removeEldestEntry(Map.Entry eldest) {
+                    return size() > mySizeLimit;
+                }
+            };
         }
 
-        public void put(Object key, Object value) {
+        public synchronized void put(String key, Object value) {
             if (mySizeLimit <= 0) {
                 return;
             }
-            if (myKeys.size() == mySizeLimit) {
-                Object cachedKey = myKeys.removeLast();
-                myCache.remove(cachedKey);
-            }
-            myKeys.addFirst(key);
             myCache.put(key, value);
         }
 
-        public void delete(Object key) {
-            myKeys.remove(key);
+        public synchronized void delete(String key) {
             myCache.remove(key);
-        }
-
-        public Object fetch(Object key) {
-            int ind = myKeys.indexOf(key);
-            if (ind != -1) {
-                if (ind != 0) {
-                    Object cachedKey = myKeys.remove(ind);
-                    myKeys.addFirst(cachedKey);
+            final String prefix = "/".equals(key) ? key : key + "/";
+            for (Iterator keys = myCache.keySet().iterator(); keys.hasNext();) {
+                if (((String) keys.next()).startsWith(prefix)) {
+                    keys.remove();
                 }
-                return myCache.get(key);
             }
-            return null;
+        }
+
+        public synchronized Object fetch(String key) {
+            return myCache.get(key);
         }
     }
 
@@ -11,6 +11,7 @@
  */
 package org.tmatesoft.svn.core.internal.io.fs;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStream;
@@ -20,6 +21,7 @@ import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -34,6 +36,7 @@ import org.tmatesoft.svn.core.SVNPropertyValue;
 import org.tmatesoft.svn.core.SVNRevisionProperty;
 import org.tmatesoft.svn.core.internal.io.fs.index.*;
 import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
@@ -55,6 +58,8 @@ public class FSTransactionRoot extends FSRoot {
     private File myTxnChangesFile;
     private File myTxnRevFile;
     private long myBaseRevision;
+    private Map myChangedPathsToCommit;
+    private Map<FSID, byte[]> myPreparedProperties;
     
     public FSTransactionRoot(FSFS owner, String txnID, long baseRevision, int flags) {
         super(owner);
@@ -142,6 +147,61 @@ public class FSTransactionRoot extends FSRoot {
         }
     }
 
+    /**
+     * Returns changed paths collected by {@link #prepareFinalRevision()} or reads them
+     * if final revision was not prepared.
+     */
+    public Map getChangedPathsToCommit() throws SVNException {
+        return myChangedPathsToCommit != null ? myChangedPathsToCommit : getChangedPaths();
+    }
+
+    /**
+     * Does the part of final revision writing that does not depend on the new revision
+     * number: reads changed paths and serializes modified properties of all transaction
+     * nodes. Called before the repository write lock is taken, so that less work is done
+     * while other committers are waiting for the lock.
+     * <p/>
+     * The work is done sequentially in the committing thread: concurrency comes from
+     * several committers preparing their revisions at the same time, not from writing
+     * representations of one revision in parallel. File contents are already in the
+     * proto-revision file, {@link FSOutputStream} writes them while the transaction is built.
+     * Node-revisions, directory representations and index data depend on the new revision
+     * number and are still written under the lock.
+     */
+    public void prepareFinalRevision() throws SVNException {
+        clearPreparedFinalRevision();
+        final Map changedPaths = getChangedPaths();
+        final Map<FSID, byte[]> preparedProperties = new HashMap<FSID, byte[]>();
+        prepareFinalRevision(FSID.createTxnId("0", "0", myTxnID), preparedProperties);
+        myChangedPathsToCommit = changedPaths;
+        myPreparedProperties = preparedProperties;
+    }
+
+    public void clearPreparedFinalRevision() {
+        myChangedPathsToCommit = null;
+        myPreparedProperties = null;
+    }
+
+    private void prepareFinalRevision(FSID id, Map<FSID, byte[]> preparedProperties) throws SVNException {
+        if (!id.isTxn()) {
+            return;
+        }
+        FSFS owner = getOwner();
+        FSRevisionNode revNode = owner.getRevisionNode(id);
+        if (revNode.getType() == SVNNodeKind.DIR) {
+            Map namesToEntries = revNode.getDirEntries(owner);
+            for (Iterator entries = namesToEntries.values().iterator(); entries.hasNext();) {
+                FSEntry dirEntry = (FSEntry) entries.next();
+                prepareFinalRevision(dirEntry.getId(), preparedProperties);
+            }
+        }
+        if (revNode.getPropsRepresentation() != null && revNode.getPropsRepresentation().isTxn()) {
+            ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            SVNWCProperties.setProperties(revNode.getProperties(owner), contents, SVNWCProperties.SVN_HASH_TERMINATOR);
+            preparedProperties.put(id, contents.toByteArray());
+        }
+    }
+
     public int getTxnFlags() {
         return myTxnFlags;
     }
@@ -399,6 +459,8 @@ public class FSTransactionRoot extends FSRoot {
                 textRep.setUniquifier(uniquifier);
                 parentRevNode.setTextRepresentation(textRep);
                 parentRevNode.setIsFreshTxnRoot(false);
+                // entries of a committed directory may be shared, modify a copy
+                parentRevNode.setDirContents(new SVNHashMap(entries));
                 getOwner().putTxnRevisionNode(parentRevNode.getId(), parentRevNode);
             } else {
                 dst = SVNFileUtil.openFileForWriting(childrenFile, true);
@@ -456,7 +518,7 @@ public class FSTransactionRoot extends FSRoot {
 
     public long writeFinalChangedPathInfo(final CountingOutputStream protoFile) throws SVNException, IOException {
         long offset = protoFile.getPosition();
-        Map changedPaths = getChangedPaths();
+        Map changedPaths = getChangedPathsToCommit();
         boolean includeNodeKind = getOwner().getDBFormat() >= FSFS.MIN_KIND_IN_CHANGED_FORMAT;
 
         if (getOwner().isUseLogAddressing()) {
@@ -560,7 +622,7 @@ public class FSTransactionRoot extends FSRoot {
                 try {
                     textRep.setItemIndex(protoFile.getPosition());
                     final MessageDigest checksum = MessageDigest.getInstance("MD5");
-                    long size = writeHashRepresentation(textRep, unparsedEntries, protoFile, checksum, FSP2LProtoIndex.ItemType.DIR_REP);
+                    long size = writeHashRepresentation(textRep, unparsedEntries, null, protoFile, checksum, FSP2LProtoIndex.ItemType.DIR_REP);
                     String hexDigest = SVNFileUtil.toHexDigest(checksum);
                     textRep.setSize(size);
                     textRep.setMD5HexDigest(hexDigest);
@@ -581,12 +643,13 @@ public class FSTransactionRoot extends FSRoot {
 
         if (revNode.getPropsRepresentation() != null && revNode.getPropsRepresentation().isTxn()) {
             FSP2LProtoIndex.ItemType itemType = revNode.getType() == SVNNodeKind.DIR ? FSP2LProtoIndex.ItemType.DIR_PROPS : FSP2LProtoIndex.ItemType.FILE_PROPS;
-            SVNProperties props = revNode.getProperties(owner);
+            byte[] preparedProps = myPreparedProperties != null ? myPreparedProperties.get(id) : null;
+            SVNProperties props = preparedProps == null ? revNode.getProperties(owner) : null;
             FSRepresentation propsRep = revNode.getPropsRepresentation();
             try {
                 propsRep.setItemIndex(protoFile.getPosition());
                 final MessageDigest checksum = MessageDigest.getInstance("MD5");
-                long size = writeHashRepresentation(propsRep, props, protoFile, checksum, itemType);
+                long size = writeHashRepresentation(propsRep, props, preparedProps, protoFile, checksum, itemType);
                 String hexDigest = SVNFileUtil.toHexDigest(checksum);
                 propsRep.setSize(size);
                 propsRep.setMD5HexDigest(hexDigest);
@@ -810,13 +873,17 @@ public class FSTransactionRoot extends FSRoot {
         }
     }
 
-    private long writeHashRepresentation(FSRepresentation representation, SVNProperties hashContents, CountingOutputStream protoFile, MessageDigest digest, FSP2LProtoIndex.ItemType itemType) throws IOException, SVNException {
+    private long writeHashRepresentation(FSRepresentation representation, SVNProperties hashContents, byte[] serializedContents, CountingOutputStream protoFile, MessageDigest digest, FSP2LProtoIndex.ItemType itemType) throws IOException, SVNException {
         final long offset = protoFile.getPosition();
         HashRepresentationStream targetFile = new HashRepresentationStream(protoFile, digest);
         protoFile.resetChecksum();
         String header = FSRepresentation.REP_PLAIN + "\n";
         protoFile.write(header.getBytes("UTF-8"));
-        SVNWCProperties.setProperties(hashContents, targetFile, SVNWCProperties.SVN_HASH_TERMINATOR);
+        if (serializedContents != null) {
+            targetFile.write(serializedContents);
+        } else {
+            SVNWCProperties.setProperties(hashContents, targetFile, SVNWCProperties.SVN_HASH_TERMINATOR);
+        }
 
         /*
         FSRepresentation oldRepresentation = FSOutputStream.getSharedRepresentation();
@@ -11,10 +11,6 @@
  */
 package org.tmatesoft.svn.core.internal.io.fs;
 
-import java.io.ByteArrayOutputStream;
-import java.io.File;
-import java.io.IOException;
-import java.io.OutputStream;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.LinkedList;
@@ -34,7 +30,6 @@ import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
 import org.tmatesoft.svn.core.internal.util.SVNHashMap;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
-import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.ISVNEditor;
 import org.tmatesoft.svn.core.io.SVNLocationEntry;
 import org.tmatesoft.svn.core.io.SVNRepository;
@@ -49,10 +44,8 @@ import org.tmatesoft.svn.util.SVNLogType;
  */
 public class FSUpdateContext {
 
-    private File myReportFile;
+    private FSReportStore myReportStore;
     private String myTarget;
-    private OutputStream myReportOS;
-    private FSFile myReportIS;
     private ISVNEditor myEditor;
     private long myTargetRevision;
     private SVNDepth myDepth;
@@ -69,14 +62,14 @@ public class FSUpdateContext {
     private SVNDeltaGenerator myDeltaGenerator;
     private SVNDeltaCombiner myDeltaCombiner;
 
-    public FSUpdateContext(FSRepository repository, FSFS owner, long revision, File reportFile, 
+    public FSUpdateContext(FSRepository repository, FSFS owner, long revision, 
             String target, String targetPath, boolean isSwitch, SVNDepth depth, 
             boolean ignoreAncestry, boolean textDeltas, boolean sendCopyFromArgs, 
             ISVNEditor editor) {
         myRepository = repository;
         myFSFS = owner;
         myTargetRevision = revision;
-        myReportFile = reportFile;
+        myReportStore = new FSReportStore();
         myTarget = target;
         myEditor = editor;
         myDepth = depth;
@@ -87,13 +80,13 @@ public class FSUpdateContext {
         mySendCopyFromArgs = sendCopyFromArgs;
     }
 
-    public void reset(FSRepository repository, FSFS owner, long revision, File reportFile, String target, String targetPath, boolean isSwitch, SVNDepth depth, boolean ignoreAncestry,
+    public void reset(FSRepository repository, FSFS owner, long revision, String target, String targetPath, boolean isSwitch, SVNDepth depth, boolean ignoreAncestry,
             boolean textDeltas, boolean sendCopyFrom, ISVNEditor editor) throws SVNException {
         dispose();
         myRepository = repository;
         myFSFS = owner;
         myTargetRevision = revision;
-        myReportFile = reportFile;
+        myReportStore = new FSReportStore();
         myTarget = target;
         myEditor = editor;
         myDepth = depth;
@@ -108,13 +101,6 @@ public class FSUpdateContext {
         myTargetRoot = root;
     }
 
-    public OutputStream getReportFileForWriting() throws SVNException {
-        if (myReportOS == null) {
-            myReportOS = SVNFileUtil.openFileForWriting(myReportFile);
-        }
-        return myReportOS;
-    }
-
     private boolean isIgnoreAncestry() {
         return ignoreAncestry;
     }
@@ -136,17 +122,9 @@ public class FSUpdateContext {
     }
 
     public void dispose() throws SVNException {
-        SVNFileUtil.closeFile(myReportOS);
-        myReportOS = null;
-
-        if (myReportIS != null) {
-            myReportIS.close();
-            myReportIS = null;
-        }
-
-        if (myReportFile != null) {
-            SVNFileUtil.deleteFile(myReportFile);
-            myReportFile = null;
+        if (myReportStore != null) {
+            myReportStore.close();
+            myReportStore = null;
         }
 
         if (myDeltaCombiner != null) {
@@ -165,11 +143,8 @@ public class FSUpdateContext {
         return myTargetRevision;
     }
 
-    private PathInfo getNextPathInfo() throws IOException, SVNException {
-        if (myReportIS == null) {
-            myReportIS = new FSFile(myReportFile);
-        }
-        myCurrentPathInfo = myReportIS.readPathInfoFromReportFile();
+    private PathInfo getNextPathInfo() throws SVNException {
+        myCurrentPathInfo = myReportStore.readPathInfo();
         return myCurrentPathInfo;
     }
 
@@ -220,25 +195,7 @@ public class FSUpdateContext {
     }
 
     public void drive() throws SVNException {
-        OutputStream reportOS = getReportFileForWriting();
-        try {
-            reportOS.write('-');
-        } catch (IOException ioe) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
-            SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
-        } finally {
-            SVNFileUtil.closeFile(reportOS);
-            myReportOS = null;
-        }
-
-        PathInfo info = null;
-
-        try {
-            info = getNextPathInfo();
-        } catch (IOException ioe) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
-            SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
-        }
+        PathInfo info = getNextPathInfo();
 
         if (info == null || !info.getPath().equals(getReportTarget()) || info.getLinkPath() != null || FSRepository.isInvalidRevision(info.getRevision())) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.REPOS_BAD_REVISION_REPORT, "Invalid report for top level of working copy");
@@ -246,14 +203,7 @@ public class FSUpdateContext {
         }
 
         long sourceRevision = info.getRevision();
-        PathInfo lookahead = null;
-
-        try {
-            lookahead = getNextPathInfo();
-        } catch (IOException ioe) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
-            SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
-        }
+        PathInfo lookahead = getNextPathInfo();
 
         if (lookahead != null && lookahead.getPath().equals(getReportTarget())) {
             if ("".equals(getReportTarget())) {
@@ -265,13 +215,7 @@ public class FSUpdateContext {
             }
 
             info = lookahead;
-
-            try {
-                getNextPathInfo();
-            } catch (IOException ioe) {
-                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
-                SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
-            }
+            getNextPathInfo();
         }
 
         String fullTargetPath = getReportTargetPath();
@@ -683,12 +627,7 @@ public class FSUpdateContext {
             } else {
                 result[0] = relPath;
                 result[1] = pathInfo;
-                try {
-                    getNextPathInfo();
-                } catch (IOException ioe) {
-                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
-                    SVNErrorManager.error(err, SVNLogType.FSFS);
-                }
+                getNextPathInfo();
             }
         }
         return result;
@@ -714,70 +653,16 @@ public class FSUpdateContext {
 
     private void skipPathInfo(String prefix) throws SVNException {
         while (PathInfo.isRelevant(getCurrentPathInfo(), prefix)) {
-            try {
-                getNextPathInfo();
-            } catch (IOException ioe) {
-                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
-                SVNErrorManager.error(err, SVNLogType.FSFS);
-            }
+            getNextPathInfo();
         }
     }
 
-    private void writeSingleString(String s, OutputStream out) throws IOException {
-        if (s != null) {
-            byte[] b = s.getBytes("UTF-8");
-            out.write('+');
-            out.write(String.valueOf(b.length).getBytes("UTF-8"));
-            out.write(':');
-            out.write(b);
-        } else {
-            out.write('-');
-        }
-    }
-    
     public void writePathInfoToReportFile(String path, String linkPath, String lockToken, long revision, boolean startEmpty, SVNDepth depth) throws SVNException {
         if (depth == null || depth == SVNDepth.UNKNOWN) {
             SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.REPOS_BAD_ARGS, "Unsupported report depth ''{0}''", depth != null ? depth.getName() : "null");
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
         String anchorRelativePath = SVNPathUtil.append(getReportTarget(), path);
-        String revisionRep = FSRepository.isValidRevision(revision) ? "+" + String.valueOf(revision) + ":" : "-";
-        String depthRep = "-";//infinity by default
-        if (depth == SVNDepth.EXCLUDE || depth == SVNDepth.EMPTY || depth == SVNDepth.FILES || depth == SVNDepth.IMMEDIATES) {
-            depthRep = "+" + getDepthLetter(depth);
-        } 
-        try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            writeSingleString(anchorRelativePath, baos);
-            writeSingleString(linkPath, baos);
-            baos.write(revisionRep.getBytes("UTF-8"));
-            baos.write(depthRep.getBytes("UTF-8"));
-            baos.write(startEmpty ? '+' : '-');
-            writeSingleString(lockToken, baos);
-            OutputStream reportOS = getReportFileForWriting();
-            reportOS.write(baos.toByteArray());
-        } catch (IOException ioe) {
-            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, ioe.getLocalizedMessage());
-            SVNErrorManager.error(err, ioe, SVNLogType.FSFS);
-        }
-    }
-
-    public String getDepthLetter(SVNDepth depth) throws SVNException {
-        if (depth == SVNDepth.EXCLUDE) {
-            return "X";
-        }
-        if (depth == SVNDepth.EMPTY) {
-            return "E";
-        }
-        if (depth == SVNDepth.FILES) {
-            return "F";
-        }
-        if (depth == SVNDepth.IMMEDIATES) {
-            return "M";
-        }
-        
-        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.REPOS_BAD_ARGS, "Unsupported report depth ''{0}''", SVNDepth.asString(depth));
-        SVNErrorManager.error(err, SVNLogType.FSFS);
-        return null;
+        myReportStore.writePathInfo(anchorRelativePath, linkPath, lockToken, revision, depth, startEmpty);
     }
 }
@@ -0,0 +1,549 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.tmatesoft.svn.core.ISVNCanceller;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNErrorMessage;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaCombiner;
+import org.tmatesoft.svn.core.internal.io.fs.index.FSLogicalAddressingIndex;
+import org.tmatesoft.svn.core.internal.io.fs.index.FSP2LEntry;
+import org.tmatesoft.svn.core.internal.io.fs.index.FSP2LProtoIndex;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.wc.ISVNEventHandler;
+import org.tmatesoft.svn.core.wc.admin.ISVNAdminEventHandler;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEventAction;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Checks that revisions of FSFS repository may be read back: every node revision created in a
+ * revision is parsed from the revision file and must have the id it is addressed by, contents
+ * and properties written in a revision are read from the revision files, bypassing fulltexts and
+ * windows caches, and must match their checksums, changed paths must refer to nodes of the revision
+ * tree and pack manifests must be consistent. For log addressed repositories L2P and P2L indexes,
+ * read bypassing indexes cache, must address the same items at the same offsets.
+ *
+ * Revisions are split into small ranges, that are verified on <code>svnkit.fsfs.verify.threads</code>
+ * threads (1 by default), each of them reading the repository through its own {@link FSFS} instance.
+ * Verified revisions are reported in order, and when checkpoint file is set, the range of
+ * verified revisions is saved to it, so that interrupted verification is resumed from the first
+ * revision that was not reported as verified. Events are fired and the canceller is called on the
+ * calling thread only, workers are stopped once it fails.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSVerifier {
+
+    public static final String THREADS_PROPERTY = "svnkit.fsfs.verify.threads";
+
+    private static final String CHECKPOINT_PREFIX = "svnkit-verify-checkpoint";
+    private static final int CHECKPOINT_INTERVAL = 64;
+    private static final int MAX_RANGE_SIZE = 64;
+    private static final int BUFFER_SIZE = 0x4000;
+
+    private ISVNCanceller myCanceller;
+    private ISVNAdminEventHandler myEventHandler;
+    private int myThreadsCount;
+    private File myCheckpointFile;
+    private volatile boolean myIsStopped;
+    private Thread myCallingThread;
+
+    public FSVerifier(ISVNAdminEventHandler eventHandler) {
+        this(eventHandler, eventHandler);
+    }
+
+    public FSVerifier(ISVNAdminEventHandler eventHandler, ISVNCanceller canceller) {
+        myCanceller = canceller == null ? ISVNCanceller.NULL : canceller;
+        myEventHandler = eventHandler;
+        setThreadsCount((int) FSCaches.getLongProperty(THREADS_PROPERTY, 1));
+    }
+
+    public void setThreadsCount(int threadsCount) {
+        myThreadsCount = Math.max(1, threadsCount);
+    }
+
+    public int getThreadsCount() {
+        return myThreadsCount;
+    }
+
+    public void setCheckpointFile(File checkpointFile) {
+        myCheckpointFile = checkpointFile;
+    }
+
+    public File getCheckpointFile() {
+        return myCheckpointFile;
+    }
+
+    public void verify(FSFS fsfs, long startRev, long endRev) throws SVNException {
+        long[] checkpoint = readCheckpoint(fsfs, startRev, endRev);
+        long firstRev = checkpoint[0];
+        long nextRev = checkpoint[1];
+        if (nextRev > endRev) {
+            return;
+        }
+        myIsStopped = false;
+        myCallingThread = Thread.currentThread();
+        if (myThreadsCount == 1 || nextRev == endRev) {
+            SVNDeltaCombiner combiner = new SVNDeltaCombiner();
+            for (long rev = nextRev; rev <= endRev; rev++) {
+                myCanceller.checkCancelled();
+                verifyRevision(fsfs, rev, combiner);
+                revisionVerified(fsfs, firstRev, rev, startRev, endRev);
+            }
+            return;
+        }
+        verifyConcurrently(fsfs, firstRev, nextRev, startRev, endRev);
+    }
+
+    private void verifyConcurrently(FSFS fsfs, long firstRev, long nextRev, long startRev, long endRev) throws SVNException {
+        final File repositoryRoot = fsfs.getRepositoryRoot();
+        final List<FSFS> owners = new ArrayList<FSFS>();
+        final ThreadLocal<FSFS> threadOwner = new ThreadLocal<FSFS>();
+        final ThreadLocal<SVNDeltaCombiner> threadCombiner = new ThreadLocal<SVNDeltaCombiner>();
+        // small ranges keep all threads busy when some revisions take much longer to verify than others.
+        long rangeSize = Math.max(1, Math.min(MAX_RANGE_SIZE, (endRev - nextRev + 1) / (4 * myThreadsCount)));
+
+        ExecutorService executor = Executors.newFixedThreadPool(myThreadsCount, new VerifyThreadFactory());
+        List<Future<?>> futures = new ArrayList<Future<?>>();
+        List<long[]> ranges = new ArrayList<long[]>();
+        try {
+            for (long rangeStart = nextRev; rangeStart <= endRev; rangeStart += rangeSize) {
+                final long start = rangeStart;
+                final long end = Math.min(endRev, rangeStart + rangeSize - 1);
+                ranges.add(new long[] {start, end});
+                futures.add(executor.submit(new Callable<Object>() {
+                    public Object call() throws SVNException {
+                        FSFS owner = threadOwner.get();
+                        if (owner == null) {
+                            owner = new FSFS(repositoryRoot);
+                            synchronized (owners) {
+                                owners.add(owner);
+                            }
+                            owner.open();
+                            threadOwner.set(owner);
+                            threadCombiner.set(new SVNDeltaCombiner());
+                        }
+                        for (long rev = start; rev <= end; rev++) {
+                            checkCancelled();
+                            verifyRevision(owner, rev, threadCombiner.get());
+                        }
+                        return null;
+                    }
+                }));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                waitFor(futures.get(i));
+                long[] range = ranges.get(i);
+                for (long rev = range[0]; rev <= range[1]; rev++) {
+                    revisionVerified(fsfs, firstRev, rev, startRev, endRev);
+                }
+            }
+        } finally {
+            myIsStopped = true;
+            for (Future<?> future : futures) {
+                future.cancel(false);
+            }
+            executor.shutdown();
+            try {
+                executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            synchronized (owners) {
+                for (FSFS owner : owners) {
+                    owner.close();
+                }
+            }
+        }
+    }
+
+    /**
+     * Workers only check whether verification is stopped, the canceller, which is not expected to be
+     * thread safe, is called on the calling thread.
+     */
+    private void checkCancelled() throws SVNException {
+        if (myIsStopped) {
+            SVNErrorManager.cancel("Verification was cancelled", SVNLogType.FSFS);
+        }
+        if (Thread.currentThread() == myCallingThread) {
+            myCanceller.checkCancelled();
+        }
+    }
+
+    private void waitFor(Future<?> future) throws SVNException {
+        while (true) {
+            myCanceller.checkCancelled();
+            try {
+                future.get(100, TimeUnit.MILLISECONDS);
+                return;
+            } catch (TimeoutException e) {
+                continue;
+            } catch (InterruptedException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Verification was interrupted");
+                SVNErrorManager.error(err, e, SVNLogType.FSFS);
+            } catch (CancellationException e) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.CANCELLED, "Verification was cancelled");
+                SVNErrorManager.error(err, e, SVNLogType.FSFS);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof SVNException) {
+                    throw (SVNException) e.getCause();
+                }
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.UNKNOWN, e.getCause() != null ? e.getCause().getMessage() : e.getMessage());
+                SVNErrorManager.error(err, e.getCause(), SVNLogType.FSFS);
+            }
+        }
+    }
+
+    private void revisionVerified(FSFS fsfs, long firstRev, long rev, long startRev, long endRev) throws SVNException {
+        if (myCheckpointFile != null && ((rev + 1 - firstRev) % CHECKPOINT_INTERVAL == 0 || rev == endRev)) {
+            writeCheckpoint(fsfs, firstRev, rev + 1);
+        }
+        if (myEventHandler != null) {
+            SVNAdminEvent event = new SVNAdminEvent(rev, SVNAdminEventAction.REVISION_DUMPED, "* Verified revision " + rev + ".");
+            myEventHandler.handleAdminEvent(event, (rev - startRev + 1) * 100.0 / (endRev - startRev + 1));
+        }
+    }
+
+    void verifyRevision(FSFS owner, long revision, SVNDeltaCombiner combiner) throws SVNException {
+        if (owner.isUseLogAddressing()) {
+            verifyIndexes(owner, revision);
+        } else if (owner.isPackedRevision(revision)) {
+            verifyPackedOffset(owner, revision);
+        }
+        FSRevisionRoot root = owner.createRevisionRoot(revision);
+        FSRevisionNode rootNode = root.getRootRevisionNode();
+        if (rootNode.getCount() != revision) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Predecessor count for the root node-revision is wrong: found {0}, committed r{1}",
+                    new Object[] {new Long(rootNode.getCount()), new Long(revision)});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        Set<FSID> nodeIds = new HashSet<FSID>();
+        verifyNode(owner, rootNode.getId(), "/", revision, nodeIds, combiner);
+
+        Map changedPaths = root.getChangedPaths();
+        for (Iterator changes = changedPaths.values().iterator(); changes.hasNext();) {
+            FSPathChange change = (FSPathChange) changes.next();
+            FSID id = change.getRevNodeId();
+            if (change.getChangeKind() == FSPathChangeKind.FS_PATH_CHANGE_DELETE || id == null || id.getRevision() != revision) {
+                continue;
+            }
+            if (!nodeIds.contains(id)) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Changed path ''{0}'' in revision {1} refers to node revision ''{2}'' missing from the revision tree",
+                        new Object[] {change.getPath(), new Long(revision), id});
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+        }
+        owner.getRevisionProperties(revision);
+    }
+
+    private void verifyNode(FSFS owner, FSID id, String path, long revision, Set<FSID> nodeIds, SVNDeltaCombiner combiner) throws SVNException {
+        checkCancelled();
+        FSRevisionNode node = owner.readRevisionNode(id);
+        if (!id.equals(node.getId())) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Node revision ''{0}'' is found where node revision ''{1}'' of ''{2}'' is expected",
+                    new Object[] {node.getId(), id, path});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        nodeIds.add(id);
+
+        FSRepresentation propsRep = node.getPropsRepresentation();
+        if (propsRep != null && propsRep.getRevision() == revision) {
+            verifyProperties(owner, propsRep, path, revision, combiner);
+        }
+        FSRepresentation textRep = node.getTextRepresentation();
+        if (node.getType() == SVNNodeKind.FILE) {
+            if (textRep != null && textRep.getRevision() == revision) {
+                verifyContents(owner, textRep, path, revision, combiner, null);
+            }
+        } else if (node.getType() == SVNNodeKind.DIR) {
+            if (textRep == null) {
+                return;
+            }
+            Map entries = owner.readDirContents(textRep);
+            for (Iterator children = entries.values().iterator(); children.hasNext();) {
+                FSEntry child = (FSEntry) children.next();
+                if (child.getId().getRevision() == revision) {
+                    verifyNode(owner, child.getId(), SVNPathUtil.getAbsolutePath(SVNPathUtil.append(path, child.getName())),
+                            revision, nodeIds, combiner);
+                }
+            }
+        } else {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Node revision ''{0}'' of ''{1}'' has unknown kind",
+                    new Object[] {id, path});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+    }
+
+    private void verifyProperties(FSFS owner, FSRepresentation propsRep, String path, long revision, SVNDeltaCombiner combiner) throws SVNException {
+        byte[] properties = readPlainRepresentation(owner, propsRep);
+        if (properties != null) {
+            MessageDigest md5Digest = createDigest("MD5");
+            md5Digest.update(properties);
+            String md5 = SVNFileUtil.toHexDigest(md5Digest);
+            if (!md5.equals(propsRep.getMD5HexDigest())) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Checksum mismatch for properties of ''{0}'' in revision {1}:\n   expected:  {2}\n     actual:  {3}",
+                        new Object[] {path, new Long(revision), propsRep.getMD5HexDigest(), md5});
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+            MessageDigest sha1Digest = propsRep.getSHA1HexDigest() != null ? createDigest("SHA1") : null;
+            if (sha1Digest != null) {
+                sha1Digest.update(properties);
+            }
+            // plain representations may be written with zero expanded size.
+            verifyLengthAndSHA1(propsRep, path, revision, properties.length, propsRep.getExpandedSize() == 0 ? properties.length : propsRep.getExpandedSize(), sha1Digest);
+        } else {
+            ByteArrayOutputStream target = new ByteArrayOutputStream();
+            verifyContents(owner, propsRep, path, revision, combiner, target);
+            properties = target.toByteArray();
+        }
+        FSFile propsFile = new FSFile(properties);
+        try {
+            propsFile.readProperties(false, true);
+        } finally {
+            propsFile.close();
+        }
+    }
+
+    /**
+     * Returns contents of PLAIN representation, or <code>null</code> when representation is a delta.
+     */
+    private byte[] readPlainRepresentation(FSFS owner, FSRepresentation rep) throws SVNException {
+        FSFile file = owner.openAndSeekRepresentation(rep);
+        try {
+            if (!"PLAIN".equals(file.readLine(160))) {
+                return null;
+            }
+            byte[] contents = new byte[(int) rep.getSize()];
+            int offset = 0;
+            while (offset < contents.length) {
+                int read = file.read(contents, offset, contents.length - offset);
+                if (read <= 0) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Unexpected end of representation in revision {0}", new Long(rep.getRevision()));
+                    SVNErrorManager.error(err, SVNLogType.FSFS);
+                }
+                offset += read;
+            }
+            return contents;
+        } catch (IOException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+            return null;
+        } finally {
+            file.close();
+        }
+    }
+
+    private void verifyContents(FSFS owner, FSRepresentation textRep, String path, long revision, SVNDeltaCombiner combiner, ByteArrayOutputStream target) throws SVNException {
+        MessageDigest sha1Digest = textRep.getSHA1HexDigest() != null ? createDigest("SHA1") : null;
+        long length = 0;
+        byte[] buffer = new byte[BUFFER_SIZE];
+        // MD5 checksum is verified by the stream once expanded size is read.
+        FSInputStream contents = FSInputStream.createUncachedDeltaStream(combiner, textRep, owner);
+        try {
+            while (true) {
+                int read = contents.readContents(buffer, 0, buffer.length);
+                if (read < 0) {
+                    break;
+                }
+                if (sha1Digest != null) {
+                    sha1Digest.update(buffer, 0, read);
+                }
+                if (target != null) {
+                    target.write(buffer, 0, read);
+                }
+                length += read;
+            }
+        } finally {
+            SVNFileUtil.closeFile(contents);
+        }
+        verifyLengthAndSHA1(textRep, path, revision, length, textRep.getExpandedSize(), sha1Digest);
+    }
+
+    private void verifyLengthAndSHA1(FSRepresentation rep, String path, long revision, long length, long expectedLength, MessageDigest sha1Digest) throws SVNException {
+        if (length != expectedLength) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Contents of ''{0}'' in revision {1} are {2} bytes long, while {3} bytes are expected",
+                    new Object[] {path, new Long(revision), new Long(length), new Long(expectedLength)});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+        if (sha1Digest != null) {
+            String sha1 = SVNFileUtil.toHexDigest(sha1Digest);
+            if (!sha1.equals(rep.getSHA1HexDigest())) {
+                SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "SHA1 checksum mismatch for ''{0}'' in revision {1}:\n   expected:  {2}\n     actual:  {3}",
+                        new Object[] {path, new Long(revision), rep.getSHA1HexDigest(), sha1});
+                SVNErrorManager.error(err, SVNLogType.FSFS);
+            }
+        }
+    }
+
+    private static MessageDigest createDigest(String algorithm) throws SVNException {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, "{0} implementation not found: {1}", new Object[] {algorithm, e.getLocalizedMessage()});
+            SVNErrorManager.error(err, e, SVNLogType.FSFS);
+            return null;
+        }
+    }
+
+    /**
+     * Checks that every item of the L2P index is found at the same offset in the P2L index and that P2L index covers the whole revision (or pack) file with items the L2P index addresses.
+     * P2L index of a pack file is checked once, with the first revision of the shard.
+     */
+    private void verifyIndexes(FSFS owner, long revision) throws SVNException {
+        FSFile file = owner.getPackOrRevisionFSFile(revision);
+        try {
+            file.ensureFooterLoaded();
+            FSLogicalAddressingIndex index = new FSLogicalAddressingIndex(owner, file, false);
+            long[] itemIndexes = new long[(int) index.getItemCount(revision)];
+            for (int i = 0; i < itemIndexes.length; i++) {
+                itemIndexes[i] = i;
+            }
+            long[] offsets = index.getOffsetsByItemIndexes(revision, itemIndexes);
+            for (int itemIndex = 0; itemIndex < offsets.length; itemIndex++) {
+                long offset = offsets[itemIndex];
+                if (offset < 0) {
+                    continue;
+                }
+                FSP2LEntry entry = index.lookupP2LEntries(revision, offset, offset + 1).get(0);
+                if (entry.getOffset() != offset || entry.getRevision() != revision || entry.getNumber() != itemIndex) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_INCONSISTENT, "P2L index entry at offset {0} is r{1}:i{2}, while L2P index maps r{3}:i{4} to it",
+                            new Object[] {new Long(offset), new Long(entry.getRevision()), new Long(entry.getNumber()), new Long(revision), new Long(itemIndex)});
+                    SVNErrorManager.error(err, SVNLogType.FSFS);
+                }
+            }
+            if (owner.isPackedRevision(revision) && revision % owner.getMaxFilesPerDirectory() != 0) {
+                return;
+            }
+            long end = file.getL2POffset();
+            long offset = 0;
+            while (offset < end) {
+                checkCancelled();
+                long nextOffset = offset;
+                List<FSP2LEntry> entries = index.lookupP2LEntries(revision, offset, end);
+                for (FSP2LEntry entry : entries) {
+                    if (entry.getOffset() != nextOffset || entry.getSize() <= 0) {
+                        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_INCONSISTENT, "P2L index entry at offset {0} does not start where the previous one ends ({1})",
+                                new Object[] {new Long(entry.getOffset()), new Long(nextOffset)});
+                        SVNErrorManager.error(err, SVNLogType.FSFS);
+                    }
+                    nextOffset = entry.getOffset() + entry.getSize();
+                    if (entry.getType() == FSP2LProtoIndex.ItemType.UNUSED) {
+                        continue;
+                    }
+                    long l2pOffset = index.getOffsetByItemIndex(entry.getRevision(), entry.getNumber());
+                    if (l2pOffset != entry.getOffset()) {
+                        SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_INCONSISTENT, "L2P index maps r{0}:i{1} to offset {2}, while P2L index has it at offset {3}",
+                                new Object[] {new Long(entry.getRevision()), new Long(entry.getNumber()), new Long(l2pOffset), new Long(entry.getOffset())});
+                        SVNErrorManager.error(err, SVNLogType.FSFS);
+                    }
+                }
+                if (nextOffset == offset) {
+                    SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_INCONSISTENT, "P2L index has no entry at offset {0}", new Long(offset));
+                    SVNErrorManager.error(err, SVNLogType.FSFS);
+                }
+                offset = nextOffset;
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    private void verifyPackedOffset(FSFS owner, long revision) throws SVNException {
+        long offset = owner.getPackedOffset(revision);
+        long nextOffset;
+        if ((revision + 1) % owner.getMaxFilesPerDirectory() != 0) {
+            nextOffset = owner.getPackedOffset(revision + 1);
+        } else {
+            nextOffset = owner.getPackedRevPath(revision, FSFS.PACK_KIND_PACK).length();
+        }
+        if (offset < 0 || offset >= nextOffset) {
+            SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.FS_CORRUPT, "Pack manifest offset {0} of revision {1} is out of range, next revision starts at {2}",
+                    new Object[] {new Long(offset), new Long(revision), new Long(nextOffset)});
+            SVNErrorManager.error(err, SVNLogType.FSFS);
+        }
+    }
+
+    /**
+     * Returns <code>{firstRev, nextRev}</code>, revisions from <code>firstRev</code> up to
+     * <code>nextRev</code> (exclusive) are already verified.
+     */
+    private long[] readCheckpoint(FSFS fsfs, long startRev, long endRev) throws SVNException {
+        long[] checkpoint = new long[] {startRev, startRev};
+        if (myCheckpointFile == null || !myCheckpointFile.isFile()) {
+            return checkpoint;
+        }
+        String line = SVNFileUtil.readFile(myCheckpointFile);
+        String[] fields = line != null ? line.trim().split(" ") : new String[0];
+        if (fields.length != 4 || !CHECKPOINT_PREFIX.equals(fields[0]) || !fsfs.getUUID().equals(fields[1])) {
+            return checkpoint;
+        }
+        long firstRev;
+        long nextRev;
+        try {
+            firstRev = Long.parseLong(fields[2]);
+            nextRev = Long.parseLong(fields[3]);
+        } catch (NumberFormatException e) {
+            return checkpoint;
+        }
+        // checkpoint is only used when it covers the beginning of the requested range.
+        if (firstRev <= startRev && startRev <= nextRev && nextRev <= endRev + 1) {
+            checkpoint[0] = firstRev;
+            checkpoint[1] = nextRev;
+        }
+        return checkpoint;
+    }
+
+    private void writeCheckpoint(FSFS fsfs, long firstRev, long nextRev) throws SVNException {
+        File tmpFile = SVNFileUtil.createUniqueFile(myCheckpointFile.getAbsoluteFile().getParentFile(), myCheckpointFile.getName(), ".tmp", false);
+        SVNFileUtil.writeToFile(tmpFile, CHECKPOINT_PREFIX + " " + fsfs.getUUID() + " " + firstRev + " " + nextRev + "\n", "US-ASCII");
+        SVNFileUtil.rename(tmpFile, myCheckpointFile);
+    }
+
+    private static class VerifyThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger myThreadNumber = new AtomicInteger(1);
+
+        public Thread newThread(Runnable task) {
+            Thread thread = new Thread(task, "svnkit-fsfs-verify-" + myThreadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.wc.DefaultSVNOptions;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * Process-wide cache of the youngest revision of a repository, shared by all {@link FSFS}
+ * instances opened for the same repository root.
+ *
+ * Cached revision is validated with the modification time and the size of <code>db/current</code>,
+ * so the file is only read again after it was replaced. Modification time is trusted only once it is
+ * older than {@link #TIMESTAMP_GRANULARITY} milliseconds, until then the file is read on every request:
+ * otherwise a commit made by another process within the same file system time tick would go unnoticed.
+ * Commits made in this process update the cache directly. Cached revision is never trusted while the
+ * repository write lock is held, {@link #readRevision(FSFS)} is used then: a stale value (e.g. because of
+ * attribute caching of a network file system) would let a commit overwrite an existing revision.
+ *
+ * Instances are softly referenced, every {@link FSFS} keeps its instance reachable while it is used.
+ *
+ * Caching is disabled by setting <code>svnkit.fsfs.cache.youngestRevision</code> system property to
+ * <code>false</code>, e.g. for file systems with unreliable modification times.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSYoungestRevision {
+
+    public static final String CACHE_ENABLED_PROPERTY = "svnkit.fsfs.cache.youngestRevision";
+
+    public static final long TIMESTAMP_GRANULARITY = 2000;
+
+    private static final Map<String, SoftReference<FSYoungestRevision>> ourInstances = new HashMap<String, SoftReference<FSYoungestRevision>>();
+    private static final IFSRevisionListener[] NO_LISTENERS = new IFSRevisionListener[0];
+
+    private static volatile boolean ourIsEnabled = DefaultSVNOptions.getBooleanValue(System.getProperty(CACHE_ENABLED_PROPERTY), true);
+
+    private final File myRepositoryRoot;
+    private final File myCurrentFile;
+    private long myRevision;
+    private long myLastModified;
+    private long myLength;
+    private boolean myIsStable;
+    private volatile IFSRevisionListener[] myListeners;
+
+    private FSYoungestRevision(File repositoryRoot, File currentFile) {
+        myRepositoryRoot = repositoryRoot;
+        myCurrentFile = currentFile;
+        myRevision = -1;
+        myListeners = NO_LISTENERS;
+    }
+
+    public static boolean isEnabled() {
+        return ourIsEnabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        ourIsEnabled = enabled;
+    }
+
+    public static synchronized FSYoungestRevision getInstance(FSFS owner) {
+        final File currentFile = owner.getCurrentFile().getAbsoluteFile();
+        final String key = currentFile.getPath();
+        final SoftReference<FSYoungestRevision> reference = ourInstances.get(key);
+        FSYoungestRevision instance = reference != null ? reference.get() : null;
+        if (instance == null) {
+            instance = new FSYoungestRevision(owner.getRepositoryRoot().getAbsoluteFile(), currentFile);
+            ourInstances.put(key, new SoftReference<FSYoungestRevision>(instance));
+        }
+        return instance;
+    }
+
+    public long getRevision(FSFS owner) throws SVNException {
+        return getRevision(owner, true);
+    }
+
+    /**
+     * Reads the youngest revision from <code>db/current</code> ignoring the cached value and
+     * updates the cache with it. Should be used while the repository write lock is held.
+     */
+    public long readRevision(FSFS owner) throws SVNException {
+        return getRevision(owner, false);
+    }
+
+    private long getRevision(FSFS owner, boolean useCache) throws SVNException {
+        final long revision;
+        final long previousRevision;
+        synchronized (this) {
+            final long lastModified = myCurrentFile.lastModified();
+            final long length = myCurrentFile.length();
+            if (useCache && ourIsEnabled && myIsStable && myRevision >= 0 && lastModified == myLastModified && length == myLength) {
+                return myRevision;
+            }
+            revision = owner.readYoungestRevision();
+            previousRevision = myRevision;
+            update(revision, lastModified, length);
+        }
+        if (previousRevision >= 0 && revision > previousRevision) {
+            fireYoungestRevision(revision);
+        }
+        return revision;
+    }
+
+    public void setRevision(long revision) {
+        final long previousRevision;
+        synchronized (this) {
+            previousRevision = myRevision;
+            update(revision, myCurrentFile.lastModified(), myCurrentFile.length());
+        }
+        if (revision > previousRevision) {
+            fireYoungestRevision(revision);
+        }
+    }
+
+    public synchronized void addListener(IFSRevisionListener listener) {
+        if (listener == null) {
+            return;
+        }
+        final IFSRevisionListener[] listeners = new IFSRevisionListener[myListeners.length + 1];
+        System.arraycopy(myListeners, 0, listeners, 0, myListeners.length);
+        listeners[myListeners.length] = listener;
+        myListeners = listeners;
+    }
+
+    public synchronized void removeListener(IFSRevisionListener listener) {
+        for (int i = 0; i < myListeners.length; i++) {
+            if (myListeners[i] == listener) {
+                final IFSRevisionListener[] listeners = new IFSRevisionListener[myListeners.length - 1];
+                System.arraycopy(myListeners, 0, listeners, 0, i);
+                System.arraycopy(myListeners, i + 1, listeners, i, listeners.length - i);
+                myListeners = listeners;
+                return;
+            }
+        }
+    }
+
+    private void update(long revision, long lastModified, long length) {
+        myRevision = revision;
+        myLastModified = lastModified;
+        myLength = length;
+        myIsStable = lastModified > 0 && System.currentTimeMillis() - lastModified > TIMESTAMP_GRANULARITY;
+    }
+
+    private void fireYoungestRevision(long revision) {
+        final IFSRevisionListener[] listeners = myListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            try {
+                listeners[i].handleYoungestRevision(myRepositoryRoot, revision);
+            } catch (Throwable th) {
+                SVNDebugLog.getDefaultLog().logError(SVNLogType.FSFS, th);
+            }
+        }
+    }
+}
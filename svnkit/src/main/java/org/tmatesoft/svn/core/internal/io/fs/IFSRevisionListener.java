@@ -0,0 +1,35 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs;
+
+import java.io.File;
+
+/**
+ * Receives notifications about new revisions of a repository, see
+ * {@link FSFS#addRevisionListener(IFSRevisionListener)}.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public interface IFSRevisionListener {
+
+    /**
+     * Called once the youngest revision of the repository becomes <code>revision</code>.
+     * Revisions committed by other processes are reported when they are noticed, several
+     * of them may be reported with a single call.
+     *
+     * @param repositoryRoot  root directory of the repository
+     * @param revision        new youngest revision
+     */
+    public void handleYoungestRevision(File repositoryRoot, long revision);
+
+}
@@ -3,6 +3,9 @@ package org.tmatesoft.svn.core.internal.io.fs.index;
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.io.fs.FSCache;
+import org.tmatesoft.svn.core.internal.io.fs.FSCacheKey;
+import org.tmatesoft.svn.core.internal.io.fs.FSCaches;
 import org.tmatesoft.svn.core.internal.io.fs.FSFS;
 import org.tmatesoft.svn.core.internal.io.fs.FSFile;
 import org.tmatesoft.svn.core.internal.io.fs.FSID;
@@ -16,19 +19,40 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
+/**
+ * Reads L2P and P2L indexes of log-addressed revision and pack files.
+ * Decoded index headers and pages are kept in the shared {@link FSCaches#getIndexesCache() indexes cache},
+ * pages are stored as arrays of primitives, so that lookups are done by index or binary search.
+ */
 public class FSLogicalAddressingIndex {
 
     public static final String L2P_STREAM_PREFIX = "L2P-INDEX\n";
     public static final String P2L_STREAM_PREFIX = "P2L-INDEX\n";
 
+    private static final String L2P_CACHE_KEY = "l2p";
+    private static final String P2L_CACHE_KEY = "p2l";
+    private static final String PACKED_L2P_CACHE_KEY = "l2p-pack";
+    private static final String PACKED_P2L_CACHE_KEY = "p2l-pack";
+    private static final long HEADER_CACHE_OFFSET = -1;
+
     private FSFile myFile;
     private long startRevision;
     private FSFS fsfs;
+    private boolean useCaches;
 
     public FSLogicalAddressingIndex(FSFS fsfs, FSFile myFile) {
+        this(fsfs, myFile, true);
+    }
+
+    /**
+     * Creates index reader that neither uses nor fills the indexes cache when <code>useCaches</code>
+     * is <code>false</code>, so that index data is always decoded from the file.
+     */
+    public FSLogicalAddressingIndex(FSFS fsfs, FSFile myFile, boolean useCaches) {
         this.fsfs = fsfs;
         this.myFile = myFile;
         this.startRevision = -1;
+        this.useCaches = useCaches;
     }
 
     public long getStartRevision(long revision) {
@@ -40,26 +64,76 @@ public class FSLogicalAddressingIndex {
     }
 
     public long getOffsetByItemIndex(long revision, long itemIndex) throws SVNException {
-        L2PPageInfo pageInfo = getL2PPageInfo(revision, itemIndex);
-        //TODO: cache the result
-
-        final boolean isPackedRevision = fsfs.isPackedRevision(revision);
-        final boolean isCached = false;
-        long offset;
-        if (!isCached) {
-            final long lastRevision = pageInfo.getFirstRevision() + (isPackedRevision ? fsfs.getMaxFilesPerDirectory() : 1);
-            final PageTableEntry entry = pageInfo.getEntry();
-//            final long maxOffset = align(entry.offset + entry.size, fsfs.getBlockSize());
-//            final long minOffset = maxOffset - fsfs.getBlockSize();
-
-            final Page page = getL2PPage(entry);
-            //TODO: cache!
-            offset = getL2PPageEntry(page, pageInfo.getPageOffset(), itemIndex, revision);
-        } else {
-            //TODO: set this to the cached value
-            offset = -1;
+        final L2PIndexHeader header = getL2PHeader(revision);
+        final L2PPageInfo pageInfo = createPageInfo(header, revision, itemIndex);
+        final long[] page = getL2PPage(header, revision, pageInfo.getTableIndex());
+        return getL2PPageEntry(page, pageInfo.getPageOffset(), itemIndex, revision);
+    }
+
+    /**
+     * Returns number of item indexes the L2P index holds for the revision, including unused ones.
+     */
+    public long getItemCount(long revision) throws SVNException {
+        final L2PIndexHeader header = getL2PHeader(revision);
+        final long relativeRevision = revision - header.getFirstRevision();
+        if (relativeRevision < 0 || relativeRevision >= header.getRevisionCount()) {
+            SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_REVISION, "Revision {0} not covered by item index", revision);
+            SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
         }
-        return offset;
+        final long[] pageTableIndex = header.getPageTableIndex();
+        long count = 0;
+        for (long tableIndex = pageTableIndex[(int) relativeRevision]; tableIndex < pageTableIndex[(int) (relativeRevision + 1)]; tableIndex++) {
+            count += header.getPageEntryCounts()[(int) tableIndex];
+        }
+        return count;
+    }
+
+    /**
+     * Resolves offsets of several items of the same revision at once. Every index page involved is
+     * read only once, pages are read in the order they are stored in the index.
+     */
+    public long[] getOffsetsByItemIndexes(long revision, long[] itemIndexes) throws SVNException {
+        final L2PIndexHeader header = getL2PHeader(revision);
+        final L2PPageInfo[] pageInfos = new L2PPageInfo[itemIndexes.length];
+        final int[] tableIndexes = new int[itemIndexes.length];
+        for (int i = 0; i < itemIndexes.length; i++) {
+            pageInfos[i] = createPageInfo(header, revision, itemIndexes[i]);
+            tableIndexes[i] = pageInfos[i].getTableIndex();
+        }
+        Arrays.sort(tableIndexes);
+
+        final long[][] pages = new long[tableIndexes.length][];
+        for (int i = 0; i < tableIndexes.length; i++) {
+            if (i > 0 && tableIndexes[i] == tableIndexes[i - 1]) {
+                pages[i] = pages[i - 1];
+            } else {
+                pages[i] = getL2PPage(header, revision, tableIndexes[i]);
+            }
+        }
+
+        final long[] offsets = new long[itemIndexes.length];
+        for (int i = 0; i < itemIndexes.length; i++) {
+            final long[] page = pages[Arrays.binarySearch(tableIndexes, pageInfos[i].getTableIndex())];
+            offsets[i] = getL2PPageEntry(page, pageInfos[i].getPageOffset(), itemIndexes[i], revision);
+        }
+        return offsets;
+    }
+
+    /**
+     * Returns approximate memory size of decoded index data kept in the indexes cache.
+     */
+    public static long getApproximateSize(Object indexData) {
+        if (indexData instanceof long[]) {
+            return 16 + 8 * ((long[]) indexData).length;
+        } else if (indexData instanceof L2PIndexHeader) {
+            final L2PIndexHeader header = (L2PIndexHeader) indexData;
+            return 96 + 8 * (header.getPageTableIndex().length + 3 * header.getPageOffsets().length);
+        } else if (indexData instanceof P2LIndexHeader) {
+            return 64 + 8 * ((P2LIndexHeader) indexData).getOffsets().length;
+        } else if (indexData instanceof P2LPage) {
+            return 48 + (FSP2LEntry.SIZE_IN_BYTES + 28) * ((P2LPage) indexData).getOffsets().length;
+        }
+        return 64;
     }
 
     public long getItemIndexByOffset(long offset) {
@@ -67,39 +141,10 @@ public class FSLogicalAddressingIndex {
     }
 
     public List<FSP2LEntry> lookupP2LEntries(long revision, long blockStart, long blockEnd) throws SVNException {
-        final boolean isCached = false;
-
-        List<FSP2LEntry> entries = new ArrayList<FSP2LEntry>();
-        P2LPageInfo pageInfo = getP2LKeys(revision, blockStart);
-
-        if (!isCached) {
-            long originalPageStart = pageInfo.getPageStart();
-            int leakingBucket = 4;
-            P2LPageInfo prefetchInfo = pageInfo;
-
-            long maxOffset = FSRepositoryUtil.align(pageInfo.getNextOffset(), fsfs.getBlockSize());
-            long minOffset = FSRepositoryUtil.align(pageInfo.getStartOffset(), fsfs.getBlockSize()) - fsfs.getBlockSize();
-
-            //TODO: block read?
-
-            final List<FSP2LEntry> pageEntries = getP2LPage(
-                    pageInfo.getFirstRevision(),
-                    pageInfo.getStartOffset(),
-                    pageInfo.getNextOffset(),
-                    pageInfo.getPageStart(),
-                    pageInfo.getPageSize());
-            if (pageEntries.size() > 0) {
-                FSP2LEntry entry = pageEntries.get(pageEntries.size() - 1);
-                if (entry.getOffset() + entry.getSize() > pageInfo.getPageSize() * pageInfo.getPageCount()) {
-                    SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_OVERFLOW, "Last P2L index entry extends beyond the last page in revision {0}", new Long(revision));
-                    SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
-                }
-            }
-            //cache_set()
-            appendP2LEntries(entries, pageEntries, blockStart, blockEnd);
-            //TODO: block read again?
-
-        }
+        final List<FSP2LEntry> entries = new ArrayList<FSP2LEntry>();
+        final P2LPageInfo pageInfo = getP2LKeys(revision, blockStart);
+        final P2LPage page = getP2LPage(revision, pageInfo);
+        appendP2LEntries(entries, page, blockStart, blockEnd);
 
         assert entries.size() > 0;
 
@@ -131,29 +176,25 @@ public class FSLogicalAddressingIndex {
     }
 
     private P2LPageInfo getP2LPageInfo(long revision, long offset) throws SVNException {
-        boolean isCached = false;
-
-        if (isCached) {
-            //TODO return cached value here
-            return null;
-        }
-        final P2LIndexHeader header = getP2LHeader();
+        final P2LIndexHeader header = getP2LHeader(revision);
         return createPageInfo(header, revision, offset);
     }
 
-    private P2LIndexHeader getP2LHeader() throws SVNException {
-        boolean isCached = false;
-
-        if (isCached) {
-            //TODO return cached value here
-            return null;
+    private P2LIndexHeader getP2LHeader(long revision) throws SVNException {
+        final FSCache<FSCacheKey, Object> indexesCache = getIndexesCache();
+        final FSCacheKey cacheKey = indexesCache != null ? createCacheKey(revision, false, HEADER_CACHE_OFFSET) : null;
+        if (cacheKey != null) {
+            final P2LIndexHeader header = (P2LIndexHeader) indexesCache.get(cacheKey);
+            if (header != null) {
+                return header;
+            }
         }
 
         final FSPackedNumbersStream packedNumbersStream = autoOpenP2LIndex();
         packedNumbersStream.seek(0);
 
         final long firstRevision = packedNumbersStream.read();
-        if (firstRevision != startRevision) {
+        if (firstRevision != getStartRevision(revision)) {
             SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_CORRUPTION, "Index rev / pack file revision numbers do not match");
             SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
         }
@@ -189,9 +230,10 @@ public class FSLogicalAddressingIndex {
             offsets[i] += offset;
         }
 
-        //TODO: save to cache here
-
         final P2LIndexHeader p2LIndexHeader = new P2LIndexHeader(firstRevision, pageSize, pageCount, fileSize, offsets);
+        if (cacheKey != null) {
+            indexesCache.put(cacheKey, p2LIndexHeader);
+        }
         return p2LIndexHeader;
     }
 
@@ -214,24 +256,41 @@ public class FSLogicalAddressingIndex {
         return pageInfo;
     }
 
-    private void appendP2LEntries(List<FSP2LEntry> entries, List<FSP2LEntry> pageEntries, long blockStart, long blockEnd) {
-        FSP2LEntry entry;
-        int idx = searchLowerBound(pageEntries, blockStart);
+    private void appendP2LEntries(List<FSP2LEntry> entries, P2LPage page, long blockStart, long blockEnd) {
+        final long[] offsets = page.getOffsets();
+        final FSP2LEntry[] pageEntries = page.getEntries();
+        int idx = searchLowerBound(offsets, blockStart);
 
         if (idx > 0) {
-            entry = pageEntries.get(idx - 1);
+            FSP2LEntry entry = pageEntries[idx - 1];
             if (entry.getOffset() + entry.getSize() > blockStart) {
                 idx--;
             }
         }
 
-        for (; idx < pageEntries.size(); idx++) {
-            entry = pageEntries.get(idx);
+        for (; idx < pageEntries.length; idx++) {
+            final FSP2LEntry entry = pageEntries[idx];
             if (entry.getOffset() >= blockEnd) {
                 break;
             }
-            entries.add(entry);
+            // cached entries are shared, return copies
+            entries.add(new FSP2LEntry(entry.getOffset(), entry.getSize(), entry.getType(), entry.getChecksum(), entry.getRevision(), entry.getNumber()));
+        }
+    }
+
+    private static int searchLowerBound(long[] offsets, long key) {
+        int lower = 0;
+        int upper = offsets.length - 1;
+
+        while (lower <= upper) {
+            int attempt = (lower + upper) >>> 1;
+            if (offsets[attempt] < key) {
+                lower = attempt + 1;
+            } else {
+                upper = attempt - 1;
+            }
         }
+        return lower;
     }
 
     public static int searchLowerBound(List<FSP2LEntry> list, long key) {
@@ -257,7 +316,37 @@ public class FSLogicalAddressingIndex {
         return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
     }
 
-    private List<FSP2LEntry> getP2LPage(long startRevision, long startOffset, long nextOffset, long pageStart, long pageSize) throws SVNException {
+    private P2LPage getP2LPage(long revision, P2LPageInfo pageInfo) throws SVNException {
+        final FSCache<FSCacheKey, Object> indexesCache = getIndexesCache();
+        final FSCacheKey cacheKey = indexesCache != null ? createCacheKey(revision, false, pageInfo.getStartOffset()) : null;
+        if (cacheKey != null) {
+            final P2LPage page = (P2LPage) indexesCache.get(cacheKey);
+            if (page != null) {
+                return page;
+            }
+        }
+
+        final List<FSP2LEntry> pageEntries = readP2LPage(
+                pageInfo.getFirstRevision(),
+                pageInfo.getStartOffset(),
+                pageInfo.getNextOffset(),
+                pageInfo.getPageStart(),
+                pageInfo.getPageSize());
+        if (pageEntries.size() > 0) {
+            FSP2LEntry entry = pageEntries.get(pageEntries.size() - 1);
+            if (entry.getOffset() + entry.getSize() > pageInfo.getPageSize() * pageInfo.getPageCount()) {
+                SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_OVERFLOW, "Last P2L index entry extends beyond the last page in revision {0}", new Long(revision));
+                SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
+            }
+        }
+        final P2LPage page = new P2LPage(pageEntries.toArray(new FSP2LEntry[pageEntries.size()]));
+        if (cacheKey != null) {
+            indexesCache.put(cacheKey, page);
+        }
+        return page;
+    }
+
+    private List<FSP2LEntry> readP2LPage(long startRevision, long startOffset, long nextOffset, long pageStart, long pageSize) throws SVNException {
         final List<FSP2LEntry> result = new ArrayList<FSP2LEntry>();
         final FSPackedNumbersStream packedNumbersStream = autoOpenP2LIndex();
         packedNumbersStream.seek(startOffset);
@@ -272,10 +361,10 @@ public class FSLogicalAddressingIndex {
             long offset;
             do {
                 readEntryToList(packedNumbersStream, itemOffset, lastRevision, lastCompound, result);
-                offset = packedNumbersStream.read();
+                offset = packedNumbersStream.position();
             } while (offset < nextOffset);
 
-            if (offset == nextOffset) {
+            if (offset != nextOffset) {
                 SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_CORRUPTION, "P2L page description overlaps with next page description");
                 SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
             }
@@ -326,48 +415,55 @@ public class FSLogicalAddressingIndex {
         itemOffset[0] += entry.getSize();
     }
 
-    private long getL2PPageEntry(Page page, long pageOffset, long itemIndex, long revision) throws SVNException {
-        if (page.getEntryCount() <= pageOffset) {
+    private long getL2PPageEntry(long[] page, long pageOffset, long itemIndex, long revision) throws SVNException {
+        if (page.length <= pageOffset) {
             final SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_OVERFLOW, "Item index {0}" + " too large in revision {1}", itemIndex, revision);
             SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
         }
-        final long[] offsets = page.getOffsets();
-        return offsets[((int) pageOffset)];
+        return page[((int) pageOffset)];
     }
 
-    private Page getL2PPage(PageTableEntry tableEntry) throws SVNException {
-        final long entryCount = tableEntry.entryCount;
+    private long[] getL2PPage(L2PIndexHeader header, long revision, int tableIndex) throws SVNException {
+        final long pageOffset = header.getPageOffsets()[tableIndex];
+        final long pageSize = header.getPageSizes()[tableIndex];
+        final long entryCount = header.getPageEntryCounts()[tableIndex];
+
+        final FSCache<FSCacheKey, Object> indexesCache = getIndexesCache();
+        final FSCacheKey cacheKey = indexesCache != null ? createCacheKey(revision, true, pageOffset) : null;
+        if (cacheKey != null) {
+            final long[] page = (long[]) indexesCache.get(cacheKey);
+            if (page != null) {
+                return page;
+            }
+        }
+
         long lastValue = 0;
         final long[] offsets = new long[(int) entryCount];
 
         final FSPackedNumbersStream packedNumbersStream = autoOpenL2PIndex();
-        packedNumbersStream.seek(tableEntry.offset);
+        packedNumbersStream.seek(pageOffset);
 
         for (int i = 0; i < entryCount; i++) {
             final long value = packedNumbersStream.readSigned();
             lastValue += value;
             offsets[i] = lastValue - 1;
         }
-        if (packedNumbersStream.position() != tableEntry.offset + tableEntry.size) {
+        if (packedNumbersStream.position() != pageOffset + pageSize) {
             SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_CORRUPTION, "L2P actual page size does not match page table value");
             SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
         }
-        return new Page(entryCount, offsets);
-    }
-
-    private L2PPageInfo getL2PPageInfo(long revision, long itemIndex) throws SVNException {
-        //TODO: cache the result
-        final L2PIndexHeader header = getL2PHeaderBody(revision);
-        return createPageInfo(header, revision, itemIndex);
+        if (cacheKey != null) {
+            indexesCache.put(cacheKey, offsets);
+        }
+        return offsets;
     }
 
     private L2PPageInfo createPageInfo(L2PIndexHeader header, long revision, long itemIndex) throws SVNException {
         long relativeRevision = revision - header.getFirstRevision();
-        if (relativeRevision >= header.getRevisionCount()) {
-            SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_REVISION, "Revision %ld not covered by item index", revision);
+        if (relativeRevision < 0 || relativeRevision >= header.getRevisionCount()) {
+            SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_REVISION, "Revision {0} not covered by item index", revision);
             SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
         }
-        final PageTableEntry[] pageTable = header.getPageTable();
         final long[] pageTableIndex = header.getPageTableIndex();
 
         L2PPageInfo pageInfo = new L2PPageInfo();
@@ -378,7 +474,7 @@ public class FSLogicalAddressingIndex {
         if (itemIndex < header.getPageSize()) {
             pageInfo.setPageOffset((int) itemIndex);
             pageInfo.setPageNumber(0);
-            pageInfo.setEntry(pageTable[((int) pageTableIndex[((int) relativeRevision)])]);
+            pageInfo.setTableIndex((int) pageTableIndex[((int) relativeRevision)]);
         } else {
             long maxItemIndex = header.getPageSize()*(pageTableIndex[((int) (relativeRevision + 1))] - pageTableIndex[((int) relativeRevision)]);
 
@@ -390,11 +486,25 @@ public class FSLogicalAddressingIndex {
 
             pageInfo.setPageOffset((int) (itemIndex % header.getPageSize()));
             pageInfo.setPageNumber((int) (itemIndex / header.getPageSize()));
-            pageInfo.setEntry(pageTable[((int) (pageTableIndex[((int) relativeRevision)] + pageInfo.getPageNumber()))]);
+            pageInfo.setTableIndex((int) (pageTableIndex[((int) relativeRevision)] + pageInfo.getPageNumber()));
         }
         return pageInfo;
     }
 
+    private L2PIndexHeader getL2PHeader(long revision) throws SVNException {
+        final FSCache<FSCacheKey, Object> indexesCache = getIndexesCache();
+        if (indexesCache == null) {
+            return getL2PHeaderBody(revision);
+        }
+        final FSCacheKey cacheKey = createCacheKey(revision, true, HEADER_CACHE_OFFSET);
+        L2PIndexHeader header = (L2PIndexHeader) indexesCache.get(cacheKey);
+        if (header == null) {
+            header = getL2PHeaderBody(revision);
+            indexesCache.put(cacheKey, header);
+        }
+        return header;
+    }
+
     private L2PIndexHeader getL2PHeaderBody(long revision) throws SVNException {
         FSPackedNumbersStream packedNumbersStream = autoOpenL2PIndex();
         packedNumbersStream.seek(0);
@@ -433,7 +543,9 @@ public class FSLogicalAddressingIndex {
             SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
         }
 
-        PageTableEntry[] pageTable = new PageTableEntry[(int) pageCount];
+        long[] pageOffsets = new long[(int) pageCount];
+        long[] pageSizes = new long[(int) pageCount];
+        long[] pageEntryCounts = new long[(int) pageCount];
         long[] pageTableIndex = new long[(int) (revisionCount + 1)];
         pageTableIndex[0] = 0;
 
@@ -466,24 +578,23 @@ public class FSLogicalAddressingIndex {
                 SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
             }
 
-            pageTable[page] = new PageTableEntry();
-            pageTable[page].size = value;
+            pageSizes[page] = value;
             value = packedNumbersStream.read();
             if (value > pageSize) {
                 SVNErrorMessage errorMessage = SVNErrorMessage.create(SVNErrorCode.FS_INDEX_CORRUPTION, "Page exceeds L2P index page size");
                 SVNErrorManager.error(errorMessage, SVNLogType.FSFS);
             }
 
-            pageTable[page].entryCount = value;
+            pageEntryCounts[page] = value;
         }
 
         long offset = packedNumbersStream.position();
         for (int page = 0; page < pageCount; page++) {
-            pageTable[page].offset = offset;
-            offset += pageTable[page].size;
+            pageOffsets[page] = offset;
+            offset += pageSizes[page];
         }
 
-        L2PIndexHeader indexHeader = new L2PIndexHeader(firstRevision, revisionCount, pageSize, pageTableIndex, pageTable);
+        L2PIndexHeader indexHeader = new L2PIndexHeader(firstRevision, revisionCount, pageSize, pageTableIndex, pageOffsets, pageSizes, pageEntryCounts);
         return indexHeader;
     }
 
@@ -499,8 +610,22 @@ public class FSLogicalAddressingIndex {
         return packedNumbersStream;
     }
 
+    private FSCache<FSCacheKey, Object> getIndexesCache() {
+        return useCaches ? FSCaches.getIndexesCache() : null;
+    }
+
+    private FSCacheKey createCacheKey(long revision, boolean l2p, long offset) throws SVNException {
+        final String key;
+        if (fsfs.isPackedRevision(revision)) {
+            key = l2p ? PACKED_L2P_CACHE_KEY : PACKED_P2L_CACHE_KEY;
+        } else {
+            key = l2p ? L2P_CACHE_KEY : P2L_CACHE_KEY;
+        }
+        return new FSCacheKey(fsfs.getCacheInstanceId(), key, getStartRevision(revision), offset);
+    }
+
     private FSPackedNumbersStream packedStreamOpen(String prefix) throws SVNException {
-        myFile.seek(myFile.getL2POffset());
+        myFile.seek(P2L_STREAM_PREFIX.equals(prefix) ? myFile.getP2LOffset() : myFile.getL2POffset());
         final int length = prefix.length();
         final byte[] headerBytes = new byte[length];
         try {
@@ -528,14 +653,19 @@ public class FSLogicalAddressingIndex {
         private long revisionCount;
         private long pageSize;
         private long[] pageTableIndex;
-        private PageTableEntry[] pageTable;
+        private long[] pageOffsets;
+        private long[] pageSizes;
+        private long[] pageEntryCounts;
 
-        public L2PIndexHeader(long firstRevision, long revisionCount, long pageSize, long[] pageTableIndex, PageTableEntry[] pageTable) {
+        public L2PIndexHeader(long firstRevision, long revisionCount, long pageSize, long[] pageTableIndex,
+                              long[] pageOffsets, long[] pageSizes, long[] pageEntryCounts) {
             this.firstRevision = firstRevision;
             this.revisionCount = revisionCount;
             this.pageSize = pageSize;
             this.pageTableIndex = pageTableIndex;
-            this.pageTable = pageTable;
+            this.pageOffsets = pageOffsets;
+            this.pageSizes = pageSizes;
+            this.pageEntryCounts = pageEntryCounts;
         }
 
         public long getFirstRevision() {
@@ -554,21 +684,23 @@ public class FSLogicalAddressingIndex {
             return pageTableIndex;
         }
 
-        public PageTableEntry[] getPageTable() {
-            return pageTable;
+        public long[] getPageOffsets() {
+            return pageOffsets;
         }
-    }
 
-    private static class PageTableEntry {
-        private long offset;
-        private long entryCount;
-        private long size;
+        public long[] getPageSizes() {
+            return pageSizes;
+        }
+
+        public long[] getPageEntryCounts() {
+            return pageEntryCounts;
+        }
     }
 
     private static class L2PPageInfo {
         private long revision;
         private long itemIndex;
-        private PageTableEntry entry;
+        private int tableIndex;
         private int pageNumber;
         private int pageOffset;
         private long firstRevision;
@@ -589,12 +721,12 @@ public class FSLogicalAddressingIndex {
             this.itemIndex = itemIndex;
         }
 
-        public PageTableEntry getEntry() {
-            return entry;
+        public int getTableIndex() {
+            return tableIndex;
         }
 
-        public void setEntry(PageTableEntry entry) {
-            this.entry = entry;
+        public void setTableIndex(int tableIndex) {
+            this.tableIndex = tableIndex;
         }
 
         public int getPageNumber() {
@@ -742,18 +874,21 @@ public class FSLogicalAddressingIndex {
         }
     }
 
-    private static class Page {
+    private static class P2LPage {
 
-        long entryCount;
-        long[] offsets;
+        private final FSP2LEntry[] entries;
+        private final long[] offsets;
 
-        public Page(long entryCount, long[] offsets) {
-            this.entryCount = entryCount;
-            this.offsets = offsets;
+        public P2LPage(FSP2LEntry[] entries) {
+            this.entries = entries;
+            this.offsets = new long[entries.length];
+            for (int i = 0; i < entries.length; i++) {
+                offsets[i] = entries[i].getOffset();
+            }
         }
 
-        public long getEntryCount() {
-            return entryCount;
+        public FSP2LEntry[] getEntries() {
+            return entries;
         }
 
         public long[] getOffsets() {
@@ -0,0 +1,339 @@
+/*
+ * ====================================================================
+ * Copyright (c) 2004-2012 TMate Software Ltd.  All rights reserved.
+ *
+ * This software is licensed as described in the file COPYING, which
+ * you should have received as part of this distribution.  The terms
+ * are also available at http://svnkit.com/license.html.
+ * If newer versions of this license are posted there, you may use a
+ * newer version instead, at your option.
+ * ====================================================================
+ */
+package org.tmatesoft.svn.core.internal.io.fs.repcache;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.tmatesoft.sqljet.core.SqlJetException;
+import org.tmatesoft.sqljet.core.table.ISqlJetCursor;
+import org.tmatesoft.sqljet.core.table.ISqlJetTable;
+import org.tmatesoft.svn.core.internal.io.fs.FSCaches;
+import org.tmatesoft.svn.util.SVNDebugLog;
+import org.tmatesoft.svn.util.SVNLogType;
+
+/**
+ * In-memory copy of the <code>rep_cache</code> table, shared by all repository
+ * instances opened for the same <code>rep-cache.db</code> file.
+ *
+ * Rows are kept in primitive arrays sorted by SHA-1 (split into two <code>long</code>
+ * and one <code>int</code> parts), so that both hits and misses are answered with a
+ * binary search and without touching SqlJet. Rows inserted since the last load are
+ * kept aside and merged into the arrays in batches.
+ *
+ * Index is valid as long as database file was not modified by someone else, otherwise
+ * it is reloaded on the next lookup. Maximal number of rows to keep in memory is set
+ * with <code>svnkit.fsfs.repcache.index.maxEntries</code> system property, for larger
+ * databases (or when property is <code>0</code>) lookups go to SqlJet.
+ *
+ * @version 1.3
+ * @author  TMate Software Ltd.
+ */
+public class FSRepresentationCacheIndex {
+
+    public static final String MAX_ENTRIES_PROPERTY = "svnkit.fsfs.repcache.index.maxEntries";
+
+    private static final int MERGE_THRESHOLD = 0x1000;
+
+    private static final int ourMaxEntries = (int) FSCaches.getLongProperty(MAX_ENTRIES_PROPERTY, 0x100000);
+    private static final Map<File, SoftReference<FSRepresentationCacheIndex>> ourIndexes = new HashMap<File, SoftReference<FSRepresentationCacheIndex>>();
+
+    public static FSRepresentationCacheIndex getIndex(File repCacheFile) {
+        if (ourMaxEntries <= 0) {
+            return null;
+        }
+        final File key = repCacheFile.getAbsoluteFile();
+        synchronized (ourIndexes) {
+            final SoftReference<FSRepresentationCacheIndex> reference = ourIndexes.get(key);
+            FSRepresentationCacheIndex index = reference != null ? reference.get() : null;
+            if (index == null) {
+                index = new FSRepresentationCacheIndex(key);
+                ourIndexes.put(key, new SoftReference<FSRepresentationCacheIndex>(index));
+            }
+            return index;
+        }
+    }
+
+    private final File myFile;
+    private volatile Entries myEntries;
+    private Map<String, FSRepresentationCacheRecord> myRecentRecords;
+    private long myLastModified;
+    private long myLength;
+    private boolean myIsDisabled;
+
+    private FSRepresentationCacheIndex(File file) {
+        myFile = file;
+        myRecentRecords = new HashMap<String, FSRepresentationCacheRecord>();
+    }
+
+    public synchronized boolean isDisabled() {
+        return myIsDisabled;
+    }
+
+    /**
+     * Returns <code>true</code> when index is loaded and database file was not changed since then.
+     */
+    public synchronized boolean isUpToDate() {
+        return isUpToDate(myFile.lastModified(), myFile.length());
+    }
+
+    public synchronized boolean isUpToDate(long lastModified, long length) {
+        return !myIsDisabled && myEntries != null && myLastModified == lastModified && myLength == length;
+    }
+
+    /**
+     * Reads all rows of the table. Should be called while database is locked for reading.
+     */
+    public synchronized void load(ISqlJetTable table) throws SqlJetException {
+        if (myIsDisabled) {
+            return;
+        }
+        final long lastModified = myFile.lastModified();
+        final long length = myFile.length();
+        myEntries = null;
+        myRecentRecords.clear();
+
+        Entries entries = new Entries(0x400);
+        final ISqlJetCursor cursor = table.open();
+        try {
+            for (boolean hasRow = !cursor.eof(); hasRow; hasRow = cursor.next()) {
+                if (entries.mySize >= ourMaxEntries) {
+                    SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, "Representation cache " + myFile + " has more than " + ourMaxEntries + " entries, not indexing it");
+                    myIsDisabled = true;
+                    return;
+                }
+                final String hash = cursor.getString(FSRepresentationCacheRecord.HASH_FIELD);
+                if (hash == null || hash.length() != 40) {
+                    continue;
+                }
+                entries = entries.ensureCapacity(entries.mySize + 1);
+                entries.set(entries.mySize, hash,
+                        cursor.getInteger(FSRepresentationCacheRecord.REVISION_FIELD),
+                        cursor.getInteger(FSRepresentationCacheRecord.OFFSET_FIELD),
+                        cursor.getInteger(FSRepresentationCacheRecord.SIZE_FIELD),
+                        cursor.getInteger(FSRepresentationCacheRecord.EXPANDED_SIZE_FIELD));
+                entries.mySize++;
+            }
+        } finally {
+            cursor.close();
+        }
+        entries.sort(0, entries.mySize - 1);
+        myEntries = entries;
+        myLastModified = lastModified;
+        myLength = length;
+    }
+
+    /**
+     * Returns row for the given hash or <code>null</code> if there is no such row. Result is
+     * only meaningful while {@link #isUpToDate()} is <code>true</code>.
+     */
+    public FSRepresentationCacheRecord get(String hash) {
+        final Entries entries = myEntries;
+        if (entries != null && hash != null && hash.length() == 40) {
+            final int index = entries.find(parseHex(hash, 0, 16), parseHex(hash, 16, 32), (int) parseHex(hash, 32, 40));
+            if (index >= 0) {
+                return new FSRepresentationCacheRecord(hash, entries.myRevisions[index], entries.myOffsets[index],
+                        entries.mySizes[index], entries.myExpandedSizes[index]);
+            }
+        }
+        synchronized (this) {
+            return myRecentRecords.get(hash);
+        }
+    }
+
+    /**
+     * Adds rows written to the database in a transaction that changed database file
+     * from <code>(lastModified, length)</code> to its current state. If the index did not
+     * reflect the state before the transaction, rows are not added and index will be reloaded.
+     */
+    public synchronized void add(Collection<FSRepresentationCacheRecord> records, long lastModified, long length) {
+        if (!isUpToDate(lastModified, length)) {
+            return;
+        }
+        for (FSRepresentationCacheRecord record : records) {
+            if (record.getHash() != null && record.getHash().length() == 40) {
+                myRecentRecords.put(record.getHash(), record);
+            }
+        }
+        myLastModified = myFile.lastModified();
+        myLength = myFile.length();
+
+        if (myRecentRecords.size() >= MERGE_THRESHOLD) {
+            final Entries entries = myEntries;
+            if (entries.mySize + myRecentRecords.size() > ourMaxEntries) {
+                myIsDisabled = true;
+                myEntries = null;
+                myRecentRecords.clear();
+                return;
+            }
+            final Entries recent = new Entries(myRecentRecords.size());
+            for (FSRepresentationCacheRecord record : myRecentRecords.values()) {
+                recent.set(recent.mySize++, record.getHash(), record.getRevision(), record.getOffset(), record.getSize(), record.getExpandedSize());
+            }
+            recent.sort(0, recent.mySize - 1);
+            myEntries = entries.merge(recent);
+            myRecentRecords.clear();
+        }
+    }
+
+    private static long parseHex(String hash, int start, int end) {
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            final int digit = Character.digit(hash.charAt(i), 16);
+            value = (value << 4) | (digit < 0 ? 0 : digit);
+        }
+        return value;
+    }
+
+    private static class Entries {
+
+        private long[] myHashHighs;
+        private long[] myHashMiddles;
+        private int[] myHashLows;
+        private long[] myRevisions;
+        private long[] myOffsets;
+        private long[] mySizes;
+        private long[] myExpandedSizes;
+        private int mySize;
+
+        public Entries(int capacity) {
+            myHashHighs = new long[capacity];
+            myHashMiddles = new long[capacity];
+            myHashLows = new int[capacity];
+            myRevisions = new long[capacity];
+            myOffsets = new long[capacity];
+            mySizes = new long[capacity];
+            myExpandedSizes = new long[capacity];
+        }
+
+        public Entries ensureCapacity(int capacity) {
+            if (capacity <= myHashHighs.length) {
+                return this;
+            }
+            final Entries entries = new Entries(Math.max(capacity, myHashHighs.length * 2));
+            entries.copy(this, 0, 0, mySize);
+            entries.mySize = mySize;
+            return entries;
+        }
+
+        public void set(int index, String hash, long revision, long offset, long size, long expandedSize) {
+            myHashHighs[index] = parseHex(hash, 0, 16);
+            myHashMiddles[index] = parseHex(hash, 16, 32);
+            myHashLows[index] = (int) parseHex(hash, 32, 40);
+            myRevisions[index] = revision;
+            myOffsets[index] = offset;
+            mySizes[index] = size;
+            myExpandedSizes[index] = expandedSize;
+        }
+
+        public int find(long high, long middle, int low) {
+            int from = 0;
+            int to = mySize - 1;
+            while (from <= to) {
+                final int index = (from + to) >>> 1;
+                final int c = compare(index, high, middle, low);
+                if (c < 0) {
+                    from = index + 1;
+                } else if (c > 0) {
+                    to = index - 1;
+                } else {
+                    return index;
+                }
+            }
+            return -1;
+        }
+
+        public Entries merge(Entries other) {
+            final Entries result = new Entries(mySize + other.mySize);
+            int i = 0;
+            int j = 0;
+            while (i < mySize || j < other.mySize) {
+                if (j >= other.mySize || (i < mySize &&
+                        compare(i, other.myHashHighs[j], other.myHashMiddles[j], other.myHashLows[j]) <= 0)) {
+                    result.copy(this, i++, result.mySize++, 1);
+                } else {
+                    result.copy(other, j++, result.mySize++, 1);
+                }
+            }
+            return result;
+        }
+
+        public void sort(int from, int to) {
+            while (to - from > 16) {
+                final int pivot = partition(from, to);
+                if (pivot - from < to - pivot) {
+                    sort(from, pivot - 1);
+                    from = pivot + 1;
+                } else {
+                    sort(pivot + 1, to);
+                    to = pivot - 1;
+                }
+            }
+            for (int i = from + 1; i <= to; i++) {
+                for (int j = i; j > from && compare(j, myHashHighs[j - 1], myHashMiddles[j - 1], myHashLows[j - 1]) < 0; j--) {
+                    swap(j, j - 1);
+                }
+            }
+        }
+
+        private int partition(int from, int to) {
+            swap((from + to) >>> 1, to);
+            final long high = myHashHighs[to];
+            final long middle = myHashMiddles[to];
+            final int low = myHashLows[to];
+            int store = from;
+            for (int i = from; i < to; i++) {
+                if (compare(i, high, middle, low) < 0) {
+                    swap(i, store++);
+                }
+            }
+            swap(store, to);
+            return store;
+        }
+
+        private int compare(int index, long high, long middle, int low) {
+            if (myHashHighs[index] != high) {
+                return myHashHighs[index] < high ? -1 : 1;
+            }
+            if (myHashMiddles[index] != middle) {
+                return myHashMiddles[index] < middle ? -1 : 1;
+            }
+            if (myHashLows[index] != low) {
+                return myHashLows[index] < low ? -1 : 1;
+            }
+            return 0;
+        }
+
+        private void copy(Entries source, int sourceIndex, int targetIndex, int length) {
+            System.arraycopy(source.myHashHighs, sourceIndex, myHashHighs, targetIndex, length);
+            System.arraycopy(source.myHashMiddles, sourceIndex, myHashMiddles, targetIndex, length);
+            System.arraycopy(source.myHashLows, sourceIndex, myHashLows, targetIndex, length);
+            System.arraycopy(source.myRevisions, sourceIndex, myRevisions, targetIndex, length);
+            System.arraycopy(source.myOffsets, sourceIndex, myOffsets, targetIndex, length);
+            System.arraycopy(source.mySizes, sourceIndex, mySizes, targetIndex, length);
+            System.arraycopy(source.myExpandedSizes, sourceIndex, myExpandedSizes, targetIndex, length);
+        }
+
+        private void swap(int i, int j) {
+            long l = myHashHighs[i]; myHashHighs[i] = myHashHighs[j]; myHashHighs[j] = l;
+            l = myHashMiddles[i]; myHashMiddles[i] = myHashMiddles[j]; myHashMiddles[j] = l;
+            final int n = myHashLows[i]; myHashLows[i] = myHashLows[j]; myHashLows[j] = n;
+            l = myRevisions[i]; myRevisions[i] = myRevisions[j]; myRevisions[j] = l;
+            l = myOffsets[i]; myOffsets[i] = myOffsets[j]; myOffsets[j] = l;
+            l = mySizes[i]; mySizes[i] = mySizes[j]; mySizes[j] = l;
+            l = myExpandedSizes[i]; myExpandedSizes[i] = myExpandedSizes[j]; myExpandedSizes[j] = l;
+        }
+    }
+}
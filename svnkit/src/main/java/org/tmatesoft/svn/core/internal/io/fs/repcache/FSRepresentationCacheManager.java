@@ -12,6 +12,9 @@
 package org.tmatesoft.svn.core.internal.io.fs.repcache;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.tmatesoft.sqljet.core.SqlJetErrorCode;
 import org.tmatesoft.sqljet.core.SqlJetException;
@@ -34,6 +37,10 @@ import org.tmatesoft.svn.util.SVNLogType;
 
 
 /**
+ * Lookups are answered from the shared in-memory {@link FSRepresentationCacheIndex} when it is
+ * up to date with the database file and go to SqlJet otherwise. Rows inserted within a write
+ * transaction are added to the index once that transaction is committed.
+ *
  * @version 1.3
  * @author  TMate Software Ltd.
  */
@@ -50,9 +57,15 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
     private SqlJetDb myRepCacheDB;
     private ISqlJetTable myTable;
     private FSFS myFSFS;
+    private FSRepresentationCacheIndex myIndex;
+    private Map<String, FSRepresentationCacheRecord> myPendingRecords;
+    private long myWriteLastModified;
+    private long myWriteLength;
     
     public static IFSRepresentationCacheManager openRepresentationCache(FSFS fsfs) throws SVNException {
         final FSRepresentationCacheManager cacheObj = new FSRepresentationCacheManager();
+        cacheObj.myFSFS = fsfs;
+        cacheObj.myIndex = FSRepresentationCacheIndex.getIndex(fsfs.getRepositoryCacheFile());
         try {
             cacheObj.myRepCacheDB = SqlJetDb.open(fsfs.getRepositoryCacheFile(), true);
             cacheObj.myRepCacheDB.setSafetyLevel(SqlJetSafetyLevel.OFF);
@@ -134,6 +147,10 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
         } catch (SqlJetException e) {
             SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
         }
+        if (myPendingRecords != null) {
+            myPendingRecords.put(representation.getSHA1HexDigest(), new FSRepresentationCacheRecord(representation.getSHA1HexDigest(),
+                    representation.getRevision(), representation.getItemIndex(), representation.getSize(), representation.getExpandedSize()));
+        }
     }
 
     public void close() throws SVNException {
@@ -165,6 +182,21 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
     }
 
     private FSRepresentationCacheRecord getByHash(final String hash) throws SVNException {
+        if (myPendingRecords != null && myPendingRecords.containsKey(hash)) {
+            return myPendingRecords.get(hash);
+        }
+        if (isIndexUpToDate()) {
+            return myIndex.get(hash);
+        }
+        if (myRepCacheDB != null && !myRepCacheDB.isInTransaction()) {
+            final FSRepresentationCacheRecord[] record = new FSRepresentationCacheRecord[1];
+            runReadTransaction(new IFSSqlJetTransaction() {
+                public void run() throws SVNException {
+                    record[0] = getByHash(hash);
+                }
+            });
+            return record[0];
+        }
         ISqlJetCursor lookup = null;
         try {
             lookup = myTable.lookup(myTable.getPrimaryKeyIndexName(), new Object[] { hash });
@@ -185,6 +217,38 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
         return null;
     }
 
+    private boolean isIndexUpToDate() {
+        if (myIndex == null || myTable == null) {
+            return false;
+        }
+        if (myPendingRecords != null) {
+            // never reload within own write transaction, database file already contains uncommitted rows.
+            return myIndex.isUpToDate(myWriteLastModified, myWriteLength);
+        }
+        if (myIndex.isUpToDate()) {
+            return true;
+        }
+        if (myIndex.isDisabled()) {
+            return false;
+        }
+        try {
+            if (myRepCacheDB.isInTransaction()) {
+                myIndex.load(myTable);
+            } else {
+                myRepCacheDB.runReadTransaction(new ISqlJetTransaction() {
+                    public Object run(SqlJetDb db) throws SqlJetException {
+                        myIndex.load(myTable);
+                        return null;
+                    }
+                });
+            }
+        } catch (SqlJetException e) {
+            SVNDebugLog.getDefaultLog().logFine(SVNLogType.FSFS, e);
+            return false;
+        }
+        return myIndex.isUpToDate();
+    }
+
     private static SVNErrorMessage convertError(SqlJetException e) {
         SVNErrorMessage err = SVNErrorMessage.create(convertErrorCode(e), e.getMessage());
         return err;
@@ -200,9 +264,16 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
 
     public void runWriteTransaction(final IFSSqlJetTransaction transaction) throws SVNException {
         if (myRepCacheDB != null) {
+            final boolean nested = myPendingRecords != null;
             try {
                 myRepCacheDB.runWriteTransaction(new ISqlJetTransaction() {
                     public Object run(SqlJetDb db) throws SqlJetException {
+                        if (!nested) {
+                            final File file = myFSFS != null ? myFSFS.getRepositoryCacheFile() : null;
+                            myPendingRecords = new LinkedHashMap<String, FSRepresentationCacheRecord>();
+                            myWriteLastModified = file != null ? file.lastModified() : -1;
+                            myWriteLength = file != null ? file.length() : -1;
+                        }
                         try {
                             transaction.run();
                         } catch (SVNException e) {
@@ -211,8 +282,15 @@ public class FSRepresentationCacheManager implements IFSRepresentationCacheManag
                         return null;
                     }
                 });
+                if (!nested && myIndex != null && myPendingRecords != null && !myPendingRecords.isEmpty()) {
+                    myIndex.add(new ArrayList<FSRepresentationCacheRecord>(myPendingRecords.values()), myWriteLastModified, myWriteLength);
+                }
             } catch (SqlJetException e) {
                 SVNErrorManager.error(convertError(e), SVNLogType.FSFS);
+            } finally {
+                if (!nested) {
+                    myPendingRecords = null;
+                }
             }
         }
     }
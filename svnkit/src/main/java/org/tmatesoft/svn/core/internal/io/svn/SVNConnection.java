@@ -47,6 +47,7 @@ public class SVNConnection {
     private InputStream myInputStream;
     private SVNRepositoryImpl myRepository;
     private boolean myIsSVNDiff1;
+    private boolean myIsSVNDiff2;
     private boolean myIsCommitRevprops;
     private boolean myIsReopening = false;
     private boolean myIsCredentialsReceived = false;
@@ -58,6 +59,7 @@ public class SVNConnection {
     
     private static final String EDIT_PIPELINE = "edit-pipeline";
     private static final String SVNDIFF1 = "svndiff1";
+    private static final String ACCEPTS_SVNDIFF2 = "accepts-svndiff2";
     private static final String ABSENT_ENTRIES = "absent-entries";
     private static final String COMMIT_REVPROPS = "commit-revprops";
     private static final String MERGE_INFO = "mergeinfo";
@@ -94,6 +96,13 @@ public class SVNConnection {
         return myIsSVNDiff1;
     }
 
+    public int getSVNDiffVersion() {
+        if (myIsSVNDiff2) {
+            return 2;
+        }
+        return myIsSVNDiff1 ? 1 : 0;
+    }
+
     public boolean isCommitRevprops() {
         return myIsCommitRevprops;
     }
@@ -154,9 +163,10 @@ public class SVNConnection {
         
         
         myIsSVNDiff1 = SVNReader.hasValue(items, 3, SVNDIFF1);
+        myIsSVNDiff2 = SVNReader.hasValue(items, 3, ACCEPTS_SVNDIFF2);
         myIsCommitRevprops = SVNReader.hasValue(items, 3, COMMIT_REVPROPS);
 
-        write("(n(wwwwww)s)", new Object[]{"2", EDIT_PIPELINE, SVNDIFF1, ABSENT_ENTRIES, DEPTH, MERGE_INFO, LOG_REVPROPS, 
+        write("(n(wwwwwww)s)", new Object[]{"2", EDIT_PIPELINE, SVNDIFF1, ACCEPTS_SVNDIFF2, ABSENT_ENTRIES, DEPTH, MERGE_INFO, LOG_REVPROPS, 
                 repository.getLocation().toString()});
     }
 
@@ -78,6 +78,12 @@ public class DebugProxyISVNCLibrary implements ISVNCLibrary {
         return symlink;
     }
 
+    public int link(String targetPath, String linkPath) {
+        int link = myLibrary.link(targetPath, linkPath);
+        myDebugLog.log(SVNLogType.NATIVE_CALL, "CALLED ISVNCLibrary#link(" + targetPath + ", " + linkPath + ") = " + link, Level.INFO);
+        return link;
+    }
+
     public int getuid() {
         int getuid = myLibrary.getuid();
         myDebugLog.log(SVNLogType.NATIVE_CALL, "CALLED ISVNCLibrary#getuid() = " + getuid, Level.INFO);
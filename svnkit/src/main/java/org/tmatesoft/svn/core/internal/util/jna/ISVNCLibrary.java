@@ -38,6 +38,8 @@ interface ISVNCLibrary extends Library {
     public int stat(String path, Pointer stat);
 
     public int symlink(String targetPath, String linkPath);
+
+    public int link(String targetPath, String linkPath);
     
     public int getuid();
     
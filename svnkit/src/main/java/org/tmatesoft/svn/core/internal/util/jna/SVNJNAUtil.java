@@ -105,6 +105,13 @@ public class SVNJNAUtil {
         return false;
     }
 
+    public static boolean createHardLink(File target, File link) {
+        if (isJNAPresent() && !SVNFileUtil.isWindows) {
+            return SVNLinuxUtil.createHardLink(target, link);
+        }
+        return false;
+    }
+
     public static Long getSymlinkLastModified(File file) {
         if (isJNAPresent()) {
             return SVNLinuxUtil.getSymlinkLastModified(file);
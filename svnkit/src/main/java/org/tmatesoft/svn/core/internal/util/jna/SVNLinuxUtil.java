@@ -396,6 +396,26 @@ public class SVNLinuxUtil {
         return false;
     }
 
+    public static boolean createHardLink(File target, File link) {
+        if (target == null || link == null || ourSharedMemory == null) {
+            return false;
+        }
+        try {
+            ISVNCLibrary cLibrary = JNALibraryLoader.getCLibrary();
+            if (cLibrary == null) {
+                return false;
+            }
+            int rc;
+            synchronized (cLibrary) {
+                rc = cLibrary.link(target.getAbsolutePath(), link.getAbsolutePath());
+            }
+            return rc < 0 ? false : true;
+        } catch (Throwable th) {
+            //
+        }
+        return false;
+    }
+
     private static int getFileModeOffset() {
         if (SVNFileUtil.isLinux && SVNFileUtil.is64Bit) {
             return 24;
@@ -15,7 +15,8 @@ public class SvnRepositoryVerifyImpl extends SvnRepositoryOperationRunner<SVNAdm
         SVNAdminClient ac = new SVNAdminClient(getOperation().getAuthenticationManager(), getOperation().getOptions());
         ac.setEventHandler(this);
                 
-        ac.doVerify(getOperation().getRepositoryRoot(), getOperation().getStartRevision(), getOperation().getEndRevision());
+        ac.doVerify(getOperation().getRepositoryRoot(), getOperation().getStartRevision(), getOperation().getEndRevision(),
+                getOperation().getCheckpointFile());
         
         return getOperation().first();
     }
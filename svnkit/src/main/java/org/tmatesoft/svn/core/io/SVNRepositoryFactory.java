@@ -440,6 +440,24 @@ public abstract class SVNRepositoryFactory {
      public static SVNURL createLocalRepository(File path, String uuid, boolean enableRevisionProperties,
             boolean force, boolean pre14Compatible, boolean pre15Compatible, boolean pre16Compatible,
             boolean pre17Compatible, boolean with17Compatible) throws SVNException {
+        return createLocalRepository(path, uuid, enableRevisionProperties,
+                force, pre14Compatible, pre15Compatible, pre16Compatible, pre17Compatible, with17Compatible, false);
+     }
+
+     /**
+      * Creates a local blank FSFS-type repository. <code>with17Compatible</code> repository is created
+      * in format 7, still readable by Subversion 1.9 and older SVNKit versions. Set <code>with110Compatible</code>
+      * to <span class="javakeyword">true</span> to create format 8 repository, which may only be read by
+      * Subversion 1.10 or later.
+      *
+      * @param  with110Compatible             <span class="javakeyword">true</span> to
+      *                                       create a repository with 1.10 format
+      * @see                                  #createLocalRepository(File, String, boolean, boolean, boolean, boolean, boolean)
+      * @since                                1.9.0
+      */
+     public static SVNURL createLocalRepository(File path, String uuid, boolean enableRevisionProperties,
+            boolean force, boolean pre14Compatible, boolean pre15Compatible, boolean pre16Compatible,
+            boolean pre17Compatible, boolean with17Compatible, boolean with110Compatible) throws SVNException {
         SVNFileType fType = SVNFileType.getType(path);
         if (fType != SVNFileType.NONE) {
             if (fType == SVNFileType.DIRECTORY) {
@@ -541,8 +559,8 @@ public abstract class SVNRepositoryFactory {
                 SVNErrorManager.error(err, SVNLogType.FSFS);
             }
 
-            int fsFormat = FSFS.DB_FORMAT;
-            if( FSFS.DB_FORMAT_PRE_17_USE_AS_DEFAULT && !with17Compatible ) {
+            int fsFormat = with110Compatible ? FSFS.DB_FORMAT : FSFS.DB_FORMAT_PRE_110;
+            if( FSFS.DB_FORMAT_PRE_17_USE_AS_DEFAULT && !with17Compatible && !with110Compatible ) {
                 fsFormat = FSFS.DB_FORMAT_PRE_17;
             }
             if( pre17Compatible) {
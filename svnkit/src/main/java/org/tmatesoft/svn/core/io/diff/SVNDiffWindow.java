@@ -16,11 +16,11 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
 import java.util.Iterator;
-import java.util.zip.DeflaterOutputStream;
 
 import org.tmatesoft.svn.core.SVNErrorCode;
 import org.tmatesoft.svn.core.SVNErrorMessage;
 import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.internal.delta.SVNDiffCompression;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
 import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.util.SVNLogType;
@@ -55,6 +55,12 @@ public class SVNDiffWindow {
      * @since 1.1, new in Subversion 1.4 
      */
     public static final byte[] SVN1_HEADER = new byte[] {'S', 'V', 'N', '\1'};
+
+    /**
+     * Bytes of the delta header of a LZ4 compressed diff window.
+     * @since 1.9.0, new in Subversion 1.10
+     */
+    public static final byte[] SVN2_HEADER = new byte[] {'S', 'V', 'N', '\2'};
     
     /**
      * An empty window (in particular, its instructions length = 0). Corresponds 
@@ -235,8 +241,8 @@ public class SVNDiffWindow {
     public void apply(SVNDiffWindowApplyBaton applyBaton) throws SVNException {
         // here we have streams and buffer from the previous calls (or nulls).
         
-        // 1. buffer for target.
-        if (applyBaton.myTargetBuffer == null || applyBaton.myTargetViewSize < getTargetViewLength()) {
+        // 1. buffer for target, reused as long as it is large enough.
+        if (applyBaton.myTargetBuffer == null || applyBaton.myTargetBuffer.length < getTargetViewLength()) {
             applyBaton.myTargetBuffer = new byte[getTargetViewLength()];
         }
         applyBaton.myTargetViewSize = getTargetViewLength();
@@ -245,15 +251,19 @@ public class SVNDiffWindow {
         int length = 0;
         if (getSourceViewOffset() != applyBaton.mySourceViewOffset || getSourceViewLength() > applyBaton.mySourceViewLength) {
             byte[] oldSourceBuffer = applyBaton.mySourceBuffer;
-            // create a new buffer
-            applyBaton.mySourceBuffer = new byte[getSourceViewLength()];
-            // copy from the old buffer.
+            // reuse the old buffer when it is large enough, arraycopy handles overlapping ranges.
+            byte[] sourceBuffer = oldSourceBuffer != null && oldSourceBuffer.length >= getSourceViewLength() ? 
+                    oldSourceBuffer : new byte[getSourceViewLength()];
             if (applyBaton.mySourceViewOffset + applyBaton.mySourceViewLength > getSourceViewOffset()) {
-                // copy overlapping part to the new buffer
+                // copy overlapping part to the beginning of the buffer
                 int start = (int) (getSourceViewOffset() - applyBaton.mySourceViewOffset);
-                System.arraycopy(oldSourceBuffer, start, applyBaton.mySourceBuffer, 0, (applyBaton.mySourceViewLength - start));
+                System.arraycopy(oldSourceBuffer, start, sourceBuffer, 0, (applyBaton.mySourceViewLength - start));
                 length = (applyBaton.mySourceViewLength - start);
-            }            
+            }
+            applyBaton.mySourceBuffer = sourceBuffer;
+        } else {
+            // the whole source view is already in the buffer.
+            length = getSourceViewLength();
         }
         if (length < getSourceViewLength()) {
             // fill what remains.
@@ -262,7 +272,7 @@ public class SVNDiffWindow {
                 if (toSkip > 0) {
                     applyBaton.mySourceStream.skip(toSkip);
                 }
-                SVNFileUtil.readIntoBuffer(applyBaton.mySourceStream, applyBaton.mySourceBuffer, length, applyBaton.mySourceBuffer.length - length);
+                SVNFileUtil.readIntoBuffer(applyBaton.mySourceStream, applyBaton.mySourceBuffer, length, getSourceViewLength() - length);
             } catch (IOException e) {
                 SVNErrorMessage err = SVNErrorMessage.create(SVNErrorCode.IO_ERROR, e.getLocalizedMessage());
                 SVNErrorManager.error(err, e, SVNLogType.DEFAULT);
@@ -273,36 +283,8 @@ public class SVNDiffWindow {
         applyBaton.mySourceViewOffset = getSourceViewOffset();
         
         // apply instructions.
-        int tpos = 0;
-        int npos = myInstructionsLength;
+        applyInstructions(applyBaton.mySourceBuffer, 0, applyBaton.myTargetBuffer, 0);
         try {
-            for (Iterator instructions = instructions(true); instructions.hasNext();) {
-                SVNDiffInstruction instruction = (SVNDiffInstruction) instructions.next();
-                int iLength = instruction.length < getTargetViewLength() - tpos ? (int) instruction.length : getTargetViewLength() - tpos; 
-                switch (instruction.type) {
-                    case SVNDiffInstruction.COPY_FROM_NEW_DATA:
-                        System.arraycopy(myData, myDataOffset + npos, applyBaton.myTargetBuffer, tpos, iLength);
-                        npos += iLength;
-                        break;
-                    case SVNDiffInstruction.COPY_FROM_TARGET:
-                        int start = instruction.offset;
-                        int end = instruction.offset + iLength;
-                        int tIndex = tpos;
-                        for(int j = start; j < end; j++) {
-                            applyBaton.myTargetBuffer[tIndex] = applyBaton.myTargetBuffer[j];
-                            tIndex++;
-                        }
-                        break;
-                    case SVNDiffInstruction.COPY_FROM_SOURCE:
-                        System.arraycopy(applyBaton.mySourceBuffer, instruction.offset, applyBaton.myTargetBuffer, tpos, iLength);
-                        break;
-                    default:
-                }
-                tpos += instruction.length;
-                if (tpos >= getTargetViewLength()) {
-                    break;
-                }
-            }
             // save tbuffer.
             if (applyBaton.myDigest != null) {
                 applyBaton.myDigest.update(applyBaton.myTargetBuffer, 0, getTargetViewLength());
@@ -337,36 +319,147 @@ public class SVNDiffWindow {
      * @see                 #apply(SVNDiffWindowApplyBaton)
      */
     public int apply(byte[] sourceBuffer, byte[] targetBuffer) {
-        int dataOffset = myInstructionsLength;
+        applyInstructions(sourceBuffer, 0, targetBuffer, 0);
+        return getTargetViewLength();
+    }
+
+    /**
+     * Applies this window's instructions provided source and target view buffers, which 
+     * may be direct or memory mapped ones. 
+     * 
+     * <p>
+     * The source view is read starting at the current position of <code>sourceBuffer</code>,  
+     * the position of the source buffer is not changed. The target view is written starting at the 
+     * current position of <code>targetBuffer</code>, which should have at least 
+     * {@link #getTargetViewLength()} bytes remaining; its position is advanced past the 
+     * written target view.
+     * 
+     * <p>
+     * Instructions are decoded right from this window data, no intermediate 
+     * copies of the source or target views are made.
+     * 
+     * @param sourceBuffer  a buffer containing a source view
+     * @param targetBuffer  a buffer to get a target view
+     * @return              the size of the resultant target view
+     * @see                 #apply(byte[], byte[])
+     * @since               1.9.0
+     */
+    public int apply(ByteBuffer sourceBuffer, ByteBuffer targetBuffer) {
+        final int targetPosition = targetBuffer.position();
+        if (targetBuffer.hasArray() && (sourceBuffer == null || sourceBuffer.hasArray())) {
+            applyInstructions(sourceBuffer != null ? sourceBuffer.array() : null,
+                    sourceBuffer != null ? sourceBuffer.arrayOffset() + sourceBuffer.position() : 0,
+                    targetBuffer.array(), targetBuffer.arrayOffset() + targetPosition);
+        } else {
+            applyInstructions(sourceBuffer, targetBuffer);
+        }
+        targetBuffer.position(targetPosition + getTargetViewLength());
+        return getTargetViewLength();
+    }
+
+    private void applyInstructions(byte[] sourceBuffer, int sourceOffset, byte[] targetBuffer, int targetOffset) {
+        final int targetLength = getTargetViewLength();
+        final int instructionsEnd = myDataOffset + myInstructionsLength;
+        final int[] position = new int[] {myDataOffset};
+        int npos = instructionsEnd;
         int tpos = 0;
-        for (Iterator instructions = instructions(true); instructions.hasNext();) {
-            SVNDiffInstruction instruction = (SVNDiffInstruction) instructions.next();
-            int iLength = instruction.length < getTargetViewLength() - tpos ? (int) instruction.length : getTargetViewLength() - tpos;
-            switch (instruction.type) {
+        while (position[0] < instructionsEnd && tpos < targetLength) {
+            final int type = (myData[position[0]] & 0xC0) >> 6;
+            int length = myData[position[0]++] & 0x3F;
+            if (length == 0) {
+                length = readInstructionInt(position, instructionsEnd);
+            }
+            final int offset = type == SVNDiffInstruction.COPY_FROM_SOURCE || type == SVNDiffInstruction.COPY_FROM_TARGET ? readInstructionInt(position, instructionsEnd) : 0;
+            if (length < 0 || offset < 0) {
+                break;
+            }
+            final int iLength = length < targetLength - tpos ? length : targetLength - tpos;
+            switch (type) {
                 case SVNDiffInstruction.COPY_FROM_NEW_DATA:
-                    System.arraycopy(myData, myDataOffset + dataOffset, targetBuffer, tpos, iLength);
-                    dataOffset += iLength;
+                    System.arraycopy(myData, npos, targetBuffer, targetOffset + tpos, iLength);
+                    npos += iLength;
                     break;
                 case SVNDiffInstruction.COPY_FROM_TARGET:
-                    int start = instruction.offset;
-                    int end = instruction.offset + iLength;
-                    int tIndex = tpos;
-                    for(int j = start; j < end; j++) {
-                        targetBuffer[tIndex] = targetBuffer[j];
-                        tIndex++;
+                    if (offset + iLength <= tpos) {
+                        System.arraycopy(targetBuffer, targetOffset + offset, targetBuffer, targetOffset + tpos, iLength);
+                    } else {
+                        // overlapping ranges repeat a pattern, copy byte by byte.
+                        for (int i = 0; i < iLength; i++) {
+                            targetBuffer[targetOffset + tpos + i] = targetBuffer[targetOffset + offset + i];
+                        }
                     }
                     break;
                 case SVNDiffInstruction.COPY_FROM_SOURCE:
-                    System.arraycopy(sourceBuffer, instruction.offset, targetBuffer, tpos, iLength);
+                    System.arraycopy(sourceBuffer, sourceOffset + offset, targetBuffer, targetOffset + tpos, iLength);
                     break;
                 default:
             }
-            tpos += instruction.length;
-            if (tpos >= getTargetViewLength()) {
+            tpos += length;
+        }
+    }
+
+    private void applyInstructions(ByteBuffer sourceBuffer, ByteBuffer targetBuffer) {
+        final int targetLength = getTargetViewLength();
+        final int targetOffset = targetBuffer.position();
+        final int sourceOffset = sourceBuffer != null ? sourceBuffer.position() : 0;
+        final ByteBuffer target = targetBuffer.duplicate();
+        final ByteBuffer source = sourceBuffer != null ? sourceBuffer.duplicate() : null;
+        final int instructionsEnd = myDataOffset + myInstructionsLength;
+        final int[] position = new int[] {myDataOffset};
+        int npos = instructionsEnd;
+        int tpos = 0;
+        while (position[0] < instructionsEnd && tpos < targetLength) {
+            final int type = (myData[position[0]] & 0xC0) >> 6;
+            int length = myData[position[0]++] & 0x3F;
+            if (length == 0) {
+                length = readInstructionInt(position, instructionsEnd);
+            }
+            final int offset = type == SVNDiffInstruction.COPY_FROM_SOURCE || type == SVNDiffInstruction.COPY_FROM_TARGET ? readInstructionInt(position, instructionsEnd) : 0;
+            if (length < 0 || offset < 0) {
                 break;
             }
+            final int iLength = length < targetLength - tpos ? length : targetLength - tpos;
+            target.limit(target.capacity());
+            target.position(targetOffset + tpos);
+            switch (type) {
+                case SVNDiffInstruction.COPY_FROM_NEW_DATA:
+                    target.put(myData, npos, iLength);
+                    npos += iLength;
+                    break;
+                case SVNDiffInstruction.COPY_FROM_TARGET:
+                    if (offset + iLength <= tpos) {
+                        final ByteBuffer copy = targetBuffer.duplicate();
+                        copy.limit(targetOffset + offset + iLength);
+                        copy.position(targetOffset + offset);
+                        target.put(copy);
+                    } else {
+                        // overlapping ranges repeat a pattern, copy byte by byte.
+                        for (int i = 0; i < iLength; i++) {
+                            target.put(targetOffset + tpos + i, target.get(targetOffset + offset + i));
+                        }
+                    }
+                    break;
+                case SVNDiffInstruction.COPY_FROM_SOURCE:
+                    source.limit(sourceOffset + offset + iLength);
+                    source.position(sourceOffset + offset);
+                    target.put(source);
+                    break;
+                default:
+            }
+            tpos += length;
         }
-        return getTargetViewLength();
+    }
+
+    private int readInstructionInt(int[] position, int instructionsEnd) {
+        int result = 0;
+        while (position[0] < instructionsEnd) {
+            final byte b = myData[position[0]++];
+            result = (result << 7) | (b & 0x7F);
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        return -1;
     }
     
     /**
@@ -453,8 +546,25 @@ public class SVNDiffWindow {
      * @since                 1.1
      */
     public void writeTo(OutputStream os, boolean writeHeader, boolean compress) throws IOException {
+        writeTo(os, writeHeader, compress ? 1 : 0);
+    }
+
+    /**
+     * Formats and writes this window bytes in the specified svndiff format version
+     * to the specified output stream.
+     * 
+     * @param os              an output stream to write the window to
+     * @param writeHeader     if <span class="javakeyword">true</span> a window
+     *                        header will be also written
+     * @param version         <code>0</code> to write non-compressed window with {@link #SVN_HEADER},
+     *                        <code>1</code> to write zlib compressed window with {@link #SVN1_HEADER},
+     *                        <code>2</code> to write LZ4 compressed window with {@link #SVN2_HEADER}
+     * @throws IOException
+     * @since                 1.9.0
+     */
+    public void writeTo(OutputStream os, boolean writeHeader, int version) throws IOException {
         if (writeHeader) {
-            os.write(compress ? SVN1_HEADER : SVN_HEADER);
+            os.write(version == 2 ? SVN2_HEADER : (version == 1 ? SVN1_HEADER : SVN_HEADER));
         }
         if (!hasInstructions()) {
             return;
@@ -468,10 +578,11 @@ public class SVNDiffWindow {
         ByteBuffer newData = null;
         int instLength = 0;
         int dataLength = 0;
+        final boolean compress = version > 0;
         if (compress) {
-            instructions = inflate(myData, myDataOffset, myInstructionsLength);
+            instructions = SVNDiffCompression.compress(myData, myDataOffset, myInstructionsLength, version);
             instLength = instructions.remaining();
-            newData = inflate(myData, myDataOffset + myInstructionsLength, myNewDataLength);
+            newData = SVNDiffCompression.compress(myData, myDataOffset + myInstructionsLength, myNewDataLength, version);
             dataLength = newData.remaining();
             SVNDiffInstruction.writeInt(offsets, instLength);
             SVNDiffInstruction.writeInt(offsets, dataLength);
@@ -509,11 +620,18 @@ public class SVNDiffWindow {
      *         instruction
      */
     public boolean hasCopyFromSourceInstructions() {
-        for(Iterator instrs = instructions(true); instrs.hasNext();) {
-            SVNDiffInstruction instruction = (SVNDiffInstruction) instrs.next();
-            if (instruction.type == SVNDiffInstruction.COPY_FROM_SOURCE) {
+        final int instructionsEnd = myDataOffset + myInstructionsLength;
+        final int[] position = new int[] {myDataOffset};
+        while (myData != null && position[0] < instructionsEnd) {
+            final int type = (myData[position[0]] & 0xC0) >> 6;
+            final int length = myData[position[0]++] & 0x3F;
+            if (type == SVNDiffInstruction.COPY_FROM_SOURCE) {
                 return true;
             }
+            if ((length == 0 && readInstructionInt(position, instructionsEnd) < 0) || 
+                    (type == SVNDiffInstruction.COPY_FROM_TARGET && readInstructionInt(position, instructionsEnd) < 0)) {
+                break;
+            }
         }
         return false;
     }
@@ -541,35 +659,6 @@ public class SVNDiffWindow {
         return clone;
     }
     
-    private static ByteBuffer inflate(byte[] src, int offset, int length) throws IOException {
-        final ByteBuffer buffer = ByteBuffer.allocate(length*2 + 2);
-        SVNDiffInstruction.writeInt(buffer, length);
-        if (length < 512) {
-            buffer.put(src, offset, length);
-        } else {
-            DeflaterOutputStream out = new DeflaterOutputStream(new OutputStream() {
-                public void write(int b) throws IOException {
-                    buffer.put((byte) (b & 0xFF));
-                }
-                public void write(byte[] b, int off, int len) throws IOException {
-                    buffer.put(b, off, len);
-                }
-                public void write(byte[] b) throws IOException {
-                    write(b, 0, b.length);
-                }
-            });
-            out.write(src, offset, length);
-            out.finish();
-            if (buffer.position() >= length) {
-                buffer.clear();
-                SVNDiffInstruction.writeInt(buffer, length);
-                buffer.put(src, offset, length);
-            }
-        }
-        buffer.flip();
-        return buffer;
-    }
-    
     private class InstructionsIterator implements Iterator {
         
         private SVNDiffInstruction myNextInsruction;
@@ -655,19 +744,42 @@ public class SVNDiffWindow {
      * If <code>target</code> is large enough to receive all instruction 
      * objects, then it's simply filled up to the end of instructions.
      * However if it's not, it will be expanded to receive all instructions. 
+     * Instruction objects already present in <code>target</code> are reused 
+     * and overwritten.
      * 
      * @param  target  an instructions receiver 
      * @return         an array  containing all instructions
      */
     public SVNDiffInstruction[] loadDiffInstructions(SVNDiffInstruction[] target) {
         int index = 0;
-        for (Iterator instructions = instructions(); instructions.hasNext();) {
+        final int instructionsEnd = myDataOffset + myInstructionsLength;
+        final int[] position = new int[] {myDataOffset};
+        int newDataOffset = 0;
+        while (myData != null && position[0] < instructionsEnd) {
+            final int type = (myData[position[0]] & 0xC0) >> 6;
+            int length = myData[position[0]++] & 0x3f;
+            if (length == 0) {
+                length = readInstructionInt(position, instructionsEnd);
+            }
+            int offset;
+            if (type == SVNDiffInstruction.COPY_FROM_SOURCE || type == SVNDiffInstruction.COPY_FROM_TARGET) {
+                offset = readInstructionInt(position, instructionsEnd);
+            } else {
+                offset = newDataOffset;
+                newDataOffset += length;
+            }
             if (index >= target.length) {
-                SVNDiffInstruction[] newTarget = new SVNDiffInstruction[index*3/2];
+                SVNDiffInstruction[] newTarget = new SVNDiffInstruction[Math.max(10, index*3/2)];
                 System.arraycopy(target, 0, newTarget, 0, index);
                 target = newTarget;
             }
-            target[index] = (SVNDiffInstruction) instructions.next();
+            // instruction objects left in the array by the previous call are reused.
+            if (target[index] == null) {
+                target[index] = new SVNDiffInstruction();
+            }
+            target[index].type = type;
+            target[index].length = length;
+            target[index].offset = offset;
             index++;
         }
         myInstructionsCount = index;
@@ -46,6 +46,7 @@ import org.tmatesoft.svn.core.internal.io.fs.FSRecoverer;
 import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryUtil;
 import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
 import org.tmatesoft.svn.core.internal.io.fs.FSRoot;
+import org.tmatesoft.svn.core.internal.io.fs.FSVerifier;
 import org.tmatesoft.svn.core.internal.util.SVNDate;
 import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
 import org.tmatesoft.svn.core.internal.util.SVNUUIDGenerator;
@@ -54,7 +55,6 @@ import org.tmatesoft.svn.core.internal.wc.DefaultLoadHandler;
 import org.tmatesoft.svn.core.internal.wc.ISVNLoadHandler;
 import org.tmatesoft.svn.core.internal.wc.SVNAdminDeltifier;
 import org.tmatesoft.svn.core.internal.wc.SVNAdminHelper;
-import org.tmatesoft.svn.core.internal.wc.SVNCancellableEditor;
 import org.tmatesoft.svn.core.internal.wc.SVNDumpEditor;
 import org.tmatesoft.svn.core.internal.wc.SVNDumpStreamParser;
 import org.tmatesoft.svn.core.internal.wc.SVNErrorManager;
@@ -308,6 +308,15 @@ public class SVNAdminClient extends SVNAdminBasicClient {
         return SVNRepositoryFactory.createLocalRepository(path, uuid, enableRevisionProperties, force, pre14Compatible, pre15Compatible, pre16Compatible, pre17Compatible, with17Compatible);
     }
 
+    /**
+     * @since 1.9.0
+     */
+    public SVNURL doCreateRepository(File path, String uuid, boolean enableRevisionProperties, boolean force,
+            boolean pre14Compatible, boolean pre15Compatible, boolean pre16Compatible, boolean pre17Compatible, boolean with17Compatible,
+            boolean with110Compatible) throws SVNException {
+        return SVNRepositoryFactory.createLocalRepository(path, uuid, enableRevisionProperties, force, pre14Compatible, pre15Compatible, pre16Compatible, pre17Compatible, with17Compatible, with110Compatible);
+    }
+
     /**
      * Creates an FSFS-type repository.
      *
@@ -910,10 +919,7 @@ public class SVNAdminClient extends SVNAdminBasicClient {
     }
 
     /**
-     * Verifies the data stored in the repository. This method uses the dump implementation
-     * (non incremental, beginning with revision 0, ending at the latest one)
-     * passing a dummy output stream to it. This allows to check the integrity of the
-     * repository data.
+     * Verifies the data stored in the repository, beginning with revision 0 and ending at the latest one.
      *
      * <p/>
      * This is identical to <code>doVerify(repositoryRoot, SVNRevision.create(0), SVNRevision.HEAD)</code>.
@@ -928,9 +934,10 @@ public class SVNAdminClient extends SVNAdminBasicClient {
 
     /**
      * Verifies repository contents found under <code>repositoryRoot</code> starting at <code>startRevision</code>
-     * and up to <code>endRevision</code>. This method uses the dump implementation
-     * (non incremental) passing a dummy output stream to it. This allows to check the integrity of the
-     * repository data.
+     * and up to <code>endRevision</code>.
+     *
+     * <p/>
+     * This is identical to <code>doVerify(repositoryRoot, startRevision, endRevision, null)</code>.
      *
      * <p/>
      * If <code>startRevision</code> is {@link SVNRevision#isValid() invalid}, it defaults to <code>0</code>.
@@ -943,6 +950,32 @@ public class SVNAdminClient extends SVNAdminBasicClient {
      * @since                   1.2.0, SVN 1.5.0
      */
     public void doVerify(File repositoryRoot, SVNRevision startRevision, SVNRevision endRevision) throws SVNException {
+        doVerify(repositoryRoot, startRevision, endRevision, null);
+    }
+
+    /**
+     * Verifies repository contents found under <code>repositoryRoot</code> starting at <code>startRevision</code>
+     * and up to <code>endRevision</code> reading node revisions, properties and file contents created in every
+     * revision and checking them against their checksums. Revisions are verified on
+     * <code>svnkit.fsfs.verify.threads</code> threads.
+     *
+     * <p/>
+     * If <code>checkpointFile</code> is not <span class="javakeyword">null</span>, verified revisions are
+     * recorded in it and verification that was interrupted is resumed from the first revision not verified yet.
+     * Revisions already recorded in <code>checkpointFile</code> are not verified again.
+     *
+     * <p/>
+     * On each revision verified this method fires an {@link SVNAdminEvent} with action set to
+     * {@link SVNAdminEventAction#REVISION_DUMPED} to the registered {@link ISVNAdminEventHandler} (if any).
+     *
+     * @param  repositoryRoot   a repository root directory path
+     * @param  startRevision    revision to start verification at
+     * @param  endRevision      revision to stop verification at
+     * @param  checkpointFile   file to record verified revisions in, may be <span class="javakeyword">null</span>
+     * @throws SVNException     verification failed - a repository may be corrupted
+     * @since                   1.9
+     */
+    public void doVerify(File repositoryRoot, SVNRevision startRevision, SVNRevision endRevision, File checkpointFile) throws SVNException {
         FSFS fsfs = SVNAdminHelper.openRepository(repositoryRoot, true);
         try {
             long youngestRevision = fsfs.getYoungestRevision();
@@ -954,7 +987,7 @@ public class SVNAdminClient extends SVNAdminBasicClient {
                 upperRev = lowerRev;
             }
 
-            verify(fsfs, lowerRev, upperRev);
+            verify(fsfs, lowerRev, upperRev, checkpointFile);
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
         }
@@ -1197,9 +1230,29 @@ public class SVNAdminClient extends SVNAdminBasicClient {
      * @since                       1.2.0, SVN 1.5.0
      */
     public void doHotCopy(File srcRepositoryRoot, File newRepositoryRoot) throws SVNException {
+        doHotCopy(srcRepositoryRoot, newRepositoryRoot, false);
+    }
+
+    /**
+     * Makes a hot copy of a repository located at <code>srcRepositoryRoot</code> to one located at
+     * <code>newRepositoryRoot</code>. This method is identical to the <code>'svnadmin hotcopy'</code> command.
+     *
+     * <p/>
+     * If <code>incremental</code> is <span class="javakeyword">true</span> and <code>newRepositoryRoot</code>
+     * already contains a hot copy of the repository, only data that changed since that copy was made is copied.
+     *
+     * @param  srcRepositoryRoot   repository to copy data from
+     * @param  newRepositoryRoot   repository to copy data to
+     * @param  incremental         whether to copy only changes made since the previous hot copy
+     * @throws SVNException
+     * @since                       1.9, SVN 1.8
+     */
+    public void doHotCopy(File srcRepositoryRoot, File newRepositoryRoot, boolean incremental) throws SVNException {
         FSFS fsfs = SVNAdminHelper.openRepository(srcRepositoryRoot, false);
         try {
             FSHotCopier copier = getHotCopier();
+            copier.setIncremental(incremental);
+            copier.setCanceller(this);
             copier.runHotCopy(fsfs, newRepositoryRoot);
         } finally {
             SVNAdminHelper.closeRepository(fsfs);
@@ -1370,7 +1423,7 @@ public class SVNAdminClient extends SVNAdminBasicClient {
         return myHotCopier;
     }
 
-    private void verify(FSFS fsfs, long startRev, long endRev) throws SVNException {
+    private void verify(FSFS fsfs, long startRev, long endRev, File checkpointFile) throws SVNException {
         long youngestRev = fsfs.getYoungestRevision();
         if (!SVNRevision.isValidRevisionNumber(startRev)) {
             startRev = 0;
@@ -1392,19 +1445,9 @@ public class SVNAdminClient extends SVNAdminBasicClient {
             SVNErrorManager.error(err, SVNLogType.FSFS);
         }
 
-        for (long rev = startRev; rev <= endRev; rev++) {
-            FSRevisionRoot toRoot = fsfs.createRevisionRoot(rev);
-            ISVNEditor editor = getDumpEditor(fsfs, toRoot, rev, startRev, "/", SVNFileUtil.DUMMY_OUT, false, true);
-            editor = SVNCancellableEditor.newInstance(editor, getEventDispatcher(), getDebugLog());
-            FSRepositoryUtil.replay(fsfs, toRoot, "", SVNRepository.INVALID_REVISION, false, editor);
-            fsfs.getRevisionProperties(rev);
-            String message = "* Verified revision " + rev + ".";
-
-            if (myEventHandler != null) {
-                SVNAdminEvent event = new SVNAdminEvent(rev, SVNAdminEventAction.REVISION_DUMPED, message);
-                myEventHandler.handleAdminEvent(event, ISVNEventHandler.UNKNOWN);
-            }
-        }
+        FSVerifier verifier = new FSVerifier(myEventHandler, getEventDispatcher());
+        verifier.setCheckpointFile(checkpointFile);
+        verifier.verify(fsfs, startRev, endRev);
     }
 
     private void dump(FSFS fsfs, OutputStream dumpStream, long start, long end, boolean isIncremental, boolean useDeltas) throws SVNException {
@@ -13,6 +13,7 @@ public class SvnRepositoryCreate extends SvnRepositoryOperation<SVNURL> {
     private boolean pre16Compatible;
     private boolean pre17Compatible;
     private boolean with17Compatible;
+    private boolean with110Compatible;
         
     public SvnRepositoryCreate(SvnOperationFactory factory) {
         super(factory);
@@ -74,6 +75,20 @@ public class SvnRepositoryCreate extends SvnRepositoryOperation<SVNURL> {
 		this.with17Compatible = with17Compatible;
 	}
 
+	/**
+	 * @since 1.9.0
+	 */
+	public boolean isWith110Compatible() {
+		return with110Compatible;
+	}
+
+	/**
+	 * @since 1.9.0
+	 */
+	public void setWith110Compatible(boolean with110Compatible) {
+		this.with110Compatible = with110Compatible;
+	}
+
 	public boolean isPre14Compatible() {
 		return pre14Compatible;
 	}
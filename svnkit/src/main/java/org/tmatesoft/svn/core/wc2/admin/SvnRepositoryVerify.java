@@ -1,5 +1,7 @@
 package org.tmatesoft.svn.core.wc2.admin;
 
+import java.io.File;
+
 import org.tmatesoft.svn.core.wc.SVNRevision;
 import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
 import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
@@ -8,6 +10,7 @@ public class SvnRepositoryVerify extends SvnRepositoryReceivingOperation<SVNAdmi
 
     private SVNRevision startRevision;
     private SVNRevision endRevision;
+    private File checkpointFile;
     
     public SvnRepositoryVerify(SvnOperationFactory factory) {
         super(factory);
@@ -35,4 +38,16 @@ public class SvnRepositoryVerify extends SvnRepositoryReceivingOperation<SVNAdmi
     public void setEndRevision(SVNRevision endRevision) {
         this.endRevision = endRevision;
     }
+
+    /**
+     * Returns file verified revisions are recorded in, so that interrupted verification may be resumed.
+     * May be <code>null</code>, then verification always starts at the start revision.
+     */
+    public File getCheckpointFile() {
+        return checkpointFile;
+    }
+
+    public void setCheckpointFile(File checkpointFile) {
+        this.checkpointFile = checkpointFile;
+    }
 }
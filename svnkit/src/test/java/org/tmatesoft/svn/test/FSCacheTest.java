@@ -0,0 +1,50 @@
+package org.tmatesoft.svn.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.internal.io.fs.FSCache;
+
+public class FSCacheTest {
+
+    @Test
+    public void testLeastRecentlyUsedEntryIsEvicted() throws Exception {
+        final FSCache<String, String> cache = new FSCache<String, String>("test", 2);
+        cache.put("a", "A");
+        cache.put("b", "B");
+        Assert.assertEquals("A", cache.get("a"));
+
+        cache.put("c", "C");
+
+        Assert.assertEquals("A", cache.get("a"));
+        Assert.assertNull(cache.get("b"));
+        Assert.assertEquals("C", cache.get("c"));
+        Assert.assertEquals(2, cache.getEntriesCount());
+        Assert.assertEquals(1, cache.getEvictionsCount());
+        Assert.assertEquals(3, cache.getHitsCount());
+        Assert.assertEquals(1, cache.getMissesCount());
+    }
+
+    @Test
+    public void testWeightLimit() throws Exception {
+        final FSCache<String, String> cache = new FSCache<String, String>("test", 0, 10, 1) {
+            protected long getWeight(String key, String value) {
+                return value.length();
+            }
+        };
+        cache.put("a", "aaaa");
+        cache.put("b", "bbbb");
+        cache.put("c", "cccc");
+
+        Assert.assertNull(cache.get("a"));
+        Assert.assertEquals("bbbb", cache.get("b"));
+        Assert.assertEquals("cccc", cache.get("c"));
+        Assert.assertEquals(8, cache.getWeight());
+
+        cache.put("d", "too large to be cached");
+        Assert.assertNull(cache.get("d"));
+        Assert.assertEquals(8, cache.getWeight());
+
+        cache.remove("b");
+        Assert.assertEquals(4, cache.getWeight());
+    }
+}
@@ -0,0 +1,101 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSCaches;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSPathChange;
+import org.tmatesoft.svn.core.internal.io.fs.FSPathChangeKind;
+import org.tmatesoft.svn.core.internal.io.fs.FSPathChangesIterator;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSChangedPathsCacheTest {
+
+    @Test
+    public void testCachedAndStreamedChangesAreEqual() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testCachedAndStreamedChangesAreEqual", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            for (int i = 0; i < 20; i++) {
+                commitBuilder1.addFile("directory/file" + i);
+            }
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.addDirectoryByCopying("copy", "directory");
+            commitBuilder2.changeFile("directory/file0", "changed".getBytes());
+            commitBuilder2.delete("directory/file1");
+            commitBuilder2.commit();
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                for (long revision = 1; revision <= 2; revision++) {
+                    final Map<String, FSPathChange> streamedChanges = readChanges(fsfs.createRevisionRoot(revision));
+
+                    final long hits = FSCaches.getChangesCache().getHitsCount();
+                    final Map changedPaths = fsfs.createRevisionRoot(revision).getChangedPaths();
+                    assertChangesEqual(streamedChanges, changedPaths);
+
+                    changedPaths.clear();
+                    assertChangesEqual(streamedChanges, fsfs.createRevisionRoot(revision).getChangedPaths());
+                    assertChangesEqual(streamedChanges, readChanges(fsfs.createRevisionRoot(revision)));
+                    Assert.assertEquals(hits + 2, FSCaches.getChangesCache().getHitsCount());
+                }
+
+                final Map changedPaths = fsfs.createRevisionRoot(2).getChangedPaths();
+                Assert.assertEquals(3, changedPaths.size());
+                Assert.assertEquals(FSPathChangeKind.FS_PATH_CHANGE_ADD, ((FSPathChange) changedPaths.get("/copy")).getChangeKind());
+                Assert.assertEquals("/directory", ((FSPathChange) changedPaths.get("/copy")).getCopyPath());
+                Assert.assertEquals(FSPathChangeKind.FS_PATH_CHANGE_MODIFY, ((FSPathChange) changedPaths.get("/directory/file0")).getChangeKind());
+                Assert.assertEquals(FSPathChangeKind.FS_PATH_CHANGE_DELETE, ((FSPathChange) changedPaths.get("/directory/file1")).getChangeKind());
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private Map<String, FSPathChange> readChanges(FSRevisionRoot root) throws Exception {
+        final Map<String, FSPathChange> changes = new HashMap<String, FSPathChange>();
+        final FSPathChangesIterator iterator = root.getChangedPathsIterator();
+        try {
+            for (FSPathChange change = iterator.next(); change != null; change = iterator.next()) {
+                Assert.assertNull(changes.put(change.getPath(), change));
+            }
+        } finally {
+            iterator.close();
+        }
+        return changes;
+    }
+
+    private void assertChangesEqual(Map<String, FSPathChange> expectedChanges, Map actualChanges) {
+        Assert.assertEquals(expectedChanges.keySet(), actualChanges.keySet());
+        for (FSPathChange expected : expectedChanges.values()) {
+            final FSPathChange actual = (FSPathChange) actualChanges.get(expected.getPath());
+            Assert.assertEquals(expected.getChangeKind(), actual.getChangeKind());
+            Assert.assertEquals(expected.getRevNodeId(), actual.getRevNodeId());
+            Assert.assertEquals(expected.isTextModified(), actual.isTextModified());
+            Assert.assertEquals(expected.arePropertiesModified(), actual.arePropertiesModified());
+            Assert.assertEquals(expected.getCopyPath(), actual.getCopyPath());
+            Assert.assertEquals(expected.getCopyRevision(), actual.getCopyRevision());
+            Assert.assertEquals(expected.getKind(), actual.getKind());
+        }
+    }
+
+    private String getTestName() {
+        return "FSChangedPathsCacheTest";
+    }
+}
@@ -0,0 +1,86 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSCaches;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSContentsCacheTest {
+
+    @Test
+    public void testFulltextIsReusedByReaders() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testFulltextIsReusedByReaders", options);
+        SVNRepository svnRepository = null;
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("file", "line1\nline2\n".getBytes());
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.changeFile("file", "line1\nline2\nline3\n".getBytes());
+            commitBuilder2.commit();
+
+            svnRepository = SVNRepositoryFactory.create(url);
+            Assert.assertEquals("line1\nline2\nline3\n", new String(getFile(svnRepository, "file", 2)));
+
+            final long hits = FSCaches.getFulltextsCache().getHitsCount();
+            Assert.assertEquals("line1\nline2\nline3\n", new String(getFile(svnRepository, "file", 2)));
+            Assert.assertEquals(hits + 1, FSCaches.getFulltextsCache().getHitsCount());
+            Assert.assertEquals("line1\nline2\n", new String(getFile(svnRepository, "file", 1)));
+        } finally {
+            if (svnRepository != null) {
+                svnRepository.closeSession();
+            }
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testWindowsOfLargeFileAreReused() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testWindowsOfLargeFileAreReused", options);
+        SVNRepository svnRepository = null;
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final byte[] contents = new byte[(int) FSCaches.getMaxFulltextSize() + 0x10000];
+            for (int i = 0; i < contents.length; i++) {
+                contents[i] = (byte) ((i * 31) ^ (i >> 7));
+            }
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("file", contents);
+            commitBuilder.commit();
+
+            svnRepository = SVNRepositoryFactory.create(url);
+            Assert.assertArrayEquals(contents, getFile(svnRepository, "file", 1));
+
+            final long hits = FSCaches.getWindowsCache().getHitsCount();
+            Assert.assertArrayEquals(contents, getFile(svnRepository, "file", 1));
+            Assert.assertTrue(FSCaches.getWindowsCache().getHitsCount() > hits);
+        } finally {
+            if (svnRepository != null) {
+                svnRepository.closeSession();
+            }
+            sandbox.dispose();
+        }
+    }
+
+    private byte[] getFile(SVNRepository svnRepository, String path, long revision) throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        svnRepository.getFile(path, revision, null, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private String getTestName() {
+        return "FSContentsCacheTest";
+    }
+}
@@ -2,12 +2,16 @@ package org.tmatesoft.svn.test;
 
 import org.junit.Assert;
 import org.junit.Test;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNException;
 import org.tmatesoft.svn.core.SVNProperties;
 import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.internal.io.fs.FSCaches;
 import org.tmatesoft.svn.core.internal.io.fs.FSFile;
 import org.tmatesoft.svn.core.internal.io.fs.index.FSPackedNumbersStream;
 
 import java.io.File;
+import java.util.Map;
 
 public class FSFileTest {
 
@@ -84,4 +88,61 @@ public class FSFileTest {
             file.close();
         }
     }
+
+    @Test
+    public void testReadMappedFile() throws Exception {
+        final String content =
+                "id: 0.0.r1/17\n" +
+                        "type: dir\n" +
+                        "\n" +
+                        "K 10\n" +
+                        "svn:author\n" +
+                        "V 8\n" +
+                        "username\n" +
+                        "END\n" +
+                        "no eol";
+
+        final TestOptions options = TestOptions.getInstance();
+
+        final boolean mappingEnabled = FSCaches.isMappingEnabled();
+        FSCaches.setMappingEnabled(true);
+        FSFile file = null;
+        final Sandbox sandbox = Sandbox.createWithCleanup(getClass().getSimpleName() + ".testReadMappedFile", options);
+        try {
+            final File directory = sandbox.createDirectory("directory");
+            final File fsFile = new File(directory, "fsfile");
+            TestUtil.writeFileContentsString(fsFile, content);
+
+            file = new FSFile(fsFile, true);
+            final Map header = file.readHeader();
+            Assert.assertEquals("0.0.r1/17", header.get("id"));
+            Assert.assertEquals("dir", header.get("type"));
+
+            file.resetDigest();
+            final SVNProperties properties = file.readProperties(false, true);
+            Assert.assertEquals("username", properties.getStringValue(SVNRevisionProperty.AUTHOR));
+            final String mappedDigest = file.digest();
+
+            final FSFile memoryFile = new FSFile(content.getBytes());
+            memoryFile.readHeader();
+            memoryFile.resetDigest();
+            memoryFile.readProperties(false, true);
+            Assert.assertEquals(memoryFile.digest(), mappedDigest);
+            memoryFile.close();
+
+            Assert.assertEquals("no", file.readLine(2));
+            try {
+                file.readLine(10);
+                Assert.fail();
+            } catch (SVNException e) {
+                Assert.assertEquals(SVNErrorCode.STREAM_UNEXPECTED_EOF, e.getErrorMessage().getErrorCode());
+            }
+        } finally {
+            if (file != null) {
+                file.close();
+            }
+            FSCaches.setMappingEnabled(mappingEnabled);
+            sandbox.dispose();
+        }
+    }
 }
@@ -0,0 +1,154 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSHotCopier;
+import org.tmatesoft.svn.core.internal.io.fs.FSLogIndex;
+import org.tmatesoft.svn.core.internal.io.fs.FSNodeHistoryIndex;
+import org.tmatesoft.svn.core.internal.io.fs.FSPacker;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSHotCopierTest {
+
+    @Test
+    public void testIncrementalHotCopy() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIncrementalHotCopy", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final File copyRoot = new File(sandbox.createDirectory("copies"), "svn.repo.copy");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+
+            final FSFS formatFSFS = new FSFS(repositoryRoot);
+            formatFSFS.open();
+            formatFSFS.writeDBFormat(formatFSFS.getDBFormat(), 10, true);
+            formatFSFS.close();
+
+            commit(url, 0, 15);
+            pack(repositoryRoot);
+            hotCopy(repositoryRoot, copyRoot, false, 1);
+            assertRepositoriesEqual(repositoryRoot, copyRoot);
+
+            final File packedRevisionFile = new File(copyRoot, "db/revs/0.pack/pack");
+            final File unpackedRevisionFile = new File(copyRoot, "db/revs/1/12");
+            Assert.assertTrue(packedRevisionFile.isFile());
+            Assert.assertTrue(unpackedRevisionFile.isFile());
+            Assert.assertTrue(packedRevisionFile.setLastModified(1000));
+            Assert.assertTrue(unpackedRevisionFile.setLastModified(1000));
+
+            // stale secondary indexes of the destination are dropped by incremental copy.
+            final File logIndex = new File(copyRoot, "db/" + FSLogIndex.LOG_INDEX_DB);
+            final File nodeHistoryIndex = new File(copyRoot, "db/" + FSNodeHistoryIndex.NODE_HISTORY_DB);
+            SVNFileUtil.writeToFile(logIndex, "stale", "US-ASCII");
+            SVNFileUtil.writeToFile(nodeHistoryIndex, "stale", "US-ASCII");
+
+            commit(url, 15, 35);
+            setRevisionProperty(repositoryRoot, 5, "packed");
+            setRevisionProperty(repositoryRoot, 32, "unpacked");
+            pack(repositoryRoot);
+            hotCopy(repositoryRoot, copyRoot, true, 4);
+            assertRepositoriesEqual(repositoryRoot, copyRoot);
+
+            Assert.assertFalse(logIndex.exists());
+            Assert.assertFalse(nodeHistoryIndex.exists());
+
+            // revisions that were already copied are not copied again.
+            Assert.assertEquals(1000, packedRevisionFile.lastModified());
+            Assert.assertFalse(unpackedRevisionFile.exists());
+            Assert.assertTrue(new File(copyRoot, "db/revs/1.pack/pack").isFile());
+
+            setRevisionProperty(repositoryRoot, 12, "packed later");
+            hotCopy(repositoryRoot, copyRoot, true, 4);
+            assertRepositoriesEqual(repositoryRoot, copyRoot);
+
+            final FSFS dstFSFS = new FSFS(copyRoot);
+            dstFSFS.open();
+            try {
+                Assert.assertEquals(0, dstFSFS.getRevisionPropertiesGeneration() % 2);
+                Assert.assertTrue(dstFSFS.getRevisionPropertiesGeneration() > 0);
+            } finally {
+                dstFSFS.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private void commit(SVNURL url, int from, int to) throws Exception {
+        for (int i = from; i < to; i++) {
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("file" + i, ("contents" + i).getBytes());
+            commitBuilder.commit();
+        }
+    }
+
+    private void setRevisionProperty(File repositoryRoot, long revision, String value) throws Exception {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        try {
+            fsfs.setRevisionProperty(revision, "test", SVNPropertyValue.create(value));
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private void pack(File repositoryRoot) throws Exception {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        try {
+            new FSPacker(null).pack(fsfs);
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private void hotCopy(File repositoryRoot, File copyRoot, boolean incremental, int threadsCount) throws Exception {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        try {
+            final FSHotCopier hotCopier = new FSHotCopier();
+            hotCopier.setIncremental(incremental);
+            hotCopier.setThreadsCount(threadsCount);
+            hotCopier.runHotCopy(fsfs, copyRoot);
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private void assertRepositoriesEqual(File repositoryRoot, File copyRoot) throws Exception {
+        final SVNRepository srcRepository = SVNRepositoryFactory.create(SVNURL.fromFile(repositoryRoot));
+        final SVNRepository dstRepository = SVNRepositoryFactory.create(SVNURL.fromFile(copyRoot));
+        try {
+            final long youngestRevision = srcRepository.getLatestRevision();
+            Assert.assertEquals(youngestRevision, dstRepository.getLatestRevision());
+            Assert.assertEquals(srcRepository.getRepositoryUUID(true), dstRepository.getRepositoryUUID(true));
+            for (long revision = 0; revision <= youngestRevision; revision++) {
+                Assert.assertEquals(srcRepository.getRevisionProperties(revision, null).asMap(),
+                        dstRepository.getRevisionProperties(revision, null).asMap());
+            }
+            for (int i = 0; i < youngestRevision; i++) {
+                final String path = "file" + i;
+                final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+                dstRepository.getFile(path, youngestRevision, null, contents);
+                Assert.assertEquals("contents" + i, contents.toString());
+            }
+        } finally {
+            srcRepository.closeSession();
+            dstRepository.closeSession();
+        }
+    }
+
+    private String getTestName() {
+        return "FSHotCopierTest";
+    }
+}
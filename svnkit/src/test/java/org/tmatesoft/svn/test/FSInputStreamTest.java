@@ -0,0 +1,74 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSCaches;
+import org.tmatesoft.svn.core.internal.io.fs.FSPrefetcher;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSInputStreamTest {
+
+    @Test
+    public void testDeltaChainWithPrefetch() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testDeltaChainWithPrefetch", options);
+        final boolean cachesEnabled = FSCaches.isEnabled();
+        SVNRepository svnRepository = null;
+        try {
+            final SVNURL url = sandbox.createSvnRepository();
+
+            final byte[][] contents = new byte[5][];
+            for (int revision = 0; revision < contents.length; revision++) {
+                contents[revision] = createContents(0x40000, revision);
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                if (revision == 0) {
+                    commitBuilder.addFile("file", contents[revision]);
+                } else {
+                    commitBuilder.changeFile("file", contents[revision]);
+                }
+                commitBuilder.commit();
+            }
+
+            FSCaches.setEnabled(false);
+            FSPrefetcher.setThreadsCount(2);
+
+            svnRepository = SVNRepositoryFactory.create(url);
+            for (int revision = contents.length - 1; revision >= 0; revision--) {
+                Assert.assertArrayEquals(contents[revision], getFile(svnRepository, "file", revision + 1));
+            }
+        } finally {
+            FSPrefetcher.setThreadsCount(0);
+            FSCaches.setEnabled(cachesEnabled);
+            if (svnRepository != null) {
+                svnRepository.closeSession();
+            }
+            sandbox.dispose();
+        }
+    }
+
+    private byte[] createContents(int length, int revision) {
+        final byte[] contents = new byte[length];
+        for (int i = 0; i < length; i++) {
+            contents[i] = (byte) ((i * 31) ^ (i >> 7));
+        }
+        for (int i = revision; i < length; i += 0x1000) {
+            contents[i] = (byte) revision;
+        }
+        return contents;
+    }
+
+    private byte[] getFile(SVNRepository svnRepository, String path, long revision) throws Exception {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        svnRepository.getFile(path, revision, null, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    private String getTestName() {
+        return "FSInputStreamTest";
+    }
+}
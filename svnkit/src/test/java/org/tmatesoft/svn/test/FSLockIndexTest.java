@@ -0,0 +1,219 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNLock;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.BasicAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSLockIndex;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSLockIndexTest {
+
+    @Test
+    public void testLocksFoundThroughIndex() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testLocksFoundThroughIndex", options);
+        final boolean wasEnabled = FSLockIndex.isEnabled();
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            for (int i = 0; i < 10; i++) {
+                commitBuilder.addFile("a/file" + i);
+                commitBuilder.addFile("a/b/file" + i);
+                commitBuilder.addFile("ab/file" + i);
+            }
+            commitBuilder.commit();
+
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            svnRepository.setAuthenticationManager(new BasicAuthenticationManager("user", "password"));
+            try {
+                final Map<String, Long> pathsToRevisions = new HashMap<String, Long>();
+                for (int i = 0; i < 10; i++) {
+                    pathsToRevisions.put("a/file" + i, 1L);
+                    pathsToRevisions.put("a/b/file" + i, 1L);
+                    pathsToRevisions.put("ab/file" + i, 1L);
+                }
+                svnRepository.lock(pathsToRevisions, "comment", false, null);
+
+                FSLockIndex.setEnabled(true);
+                final File indexFile = new File(new File(repositoryRoot, FSFS.DB_DIR), FSLockIndex.LOCKS_INDEX_FILE);
+                Assert.assertFalse(indexFile.exists());
+                // readers do not build the index, it is built by the next change of locks.
+                Assert.assertEquals(30, svnRepository.getLocks("/").length);
+                Assert.assertFalse(indexFile.exists());
+
+                final Map<String, String> pathsToTokens = new HashMap<String, String>();
+                pathsToTokens.put("ab/file0", svnRepository.getLock("ab/file0").getID());
+                svnRepository.unlock(pathsToTokens, false, null);
+                Assert.assertTrue(indexFile.exists());
+
+                Assert.assertEquals(29, svnRepository.getLocks("/").length);
+                Assert.assertEquals(20, svnRepository.getLocks("a").length);
+                Assert.assertEquals(10, svnRepository.getLocks("a/b").length);
+                Assert.assertEquals(1, svnRepository.getLocks("a/b/file3").length);
+
+                pathsToTokens.clear();
+                for (int i = 0; i < 5; i++) {
+                    pathsToTokens.put("a/b/file" + i, svnRepository.getLock("a/b/file" + i).getID());
+                }
+                svnRepository.unlock(pathsToTokens, false, null);
+                Assert.assertEquals(15, svnRepository.getLocks("a").length);
+
+                final TreeSet<String> indexedLocks = getLockedPaths(svnRepository.getLocks("/"));
+                FSLockIndex.setEnabled(false);
+                Assert.assertEquals(getLockedPaths(svnRepository.getLocks("/")), indexedLocks);
+
+                FSLockIndex.setEnabled(true);
+                Assert.assertTrue(indexFile.delete());
+                Assert.assertEquals(indexedLocks, getLockedPaths(svnRepository.getLocks("/")));
+                Assert.assertEquals(5, svnRepository.getLocks("a/b").length);
+
+                // index that cannot be read does not break readers.
+                SVNFileUtil.writeToFile(indexFile, "corrupt\n", "US-ASCII");
+                Assert.assertEquals(indexedLocks, getLockedPaths(svnRepository.getLocks("/")));
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            FSLockIndex.setEnabled(wasEnabled);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testCorruptIndexDoesNotBreakLocking() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testCorruptIndexDoesNotBreakLocking", options);
+        final boolean wasEnabled = FSLockIndex.isEnabled();
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            for (int i = 0; i < 4; i++) {
+                commitBuilder.addFile("file" + i);
+            }
+            commitBuilder.commit();
+
+            final File indexFile = new File(new File(repositoryRoot, FSFS.DB_DIR), FSLockIndex.LOCKS_INDEX_FILE);
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            svnRepository.setAuthenticationManager(new BasicAuthenticationManager("user", "password"));
+            try {
+                // existing index is maintained even when it is disabled.
+                FSLockIndex.setEnabled(false);
+                SVNFileUtil.writeToFile(indexFile, "corrupt\n", "US-ASCII");
+                lock(svnRepository, "file0");
+                Assert.assertFalse(indexFile.exists());
+                Assert.assertEquals(1, svnRepository.getLocks("/").length);
+
+                FSLockIndex.setEnabled(true);
+                SVNFileUtil.writeToFile(indexFile, "corrupt\n", "US-ASCII");
+                lock(svnRepository, "file1");
+                Assert.assertTrue(indexFile.exists());
+                Assert.assertEquals(2, svnRepository.getLocks("/").length);
+
+                // truncated header.
+                SVNFileUtil.writeToFile(indexFile, "svnkit-loc", "US-ASCII");
+                unlock(svnRepository, "file0");
+                Assert.assertTrue(indexFile.exists());
+                Assert.assertEquals(getPaths("/file1"), getLockedPaths(svnRepository.getLocks("/")));
+
+                SVNFileUtil.writeToFile(indexFile, "corrupt\n", "US-ASCII");
+                lock(svnRepository, "file2");
+                unlock(svnRepository, "file1");
+                lock(svnRepository, "file3");
+                Assert.assertEquals(getPaths("/file2", "/file3"), getLockedPaths(svnRepository.getLocks("/")));
+
+                FSLockIndex.setEnabled(false);
+                Assert.assertEquals(getPaths("/file2", "/file3"), getLockedPaths(svnRepository.getLocks("/")));
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            FSLockIndex.setEnabled(wasEnabled);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testCompactionWithinTimestampResolution() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testCompactionWithinTimestampResolution", options);
+        final boolean wasEnabled = FSLockIndex.isEnabled();
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("file0");
+            commitBuilder.addFile("file1");
+            commitBuilder.commit();
+
+            final File indexFile = new File(new File(repositoryRoot, FSFS.DB_DIR), FSLockIndex.LOCKS_INDEX_FILE);
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            svnRepository.setAuthenticationManager(new BasicAuthenticationManager("user", "password"));
+            try {
+                FSLockIndex.setEnabled(true);
+                lock(svnRepository, "file0");
+                Assert.assertEquals(getPaths("/file0"), getLockedPaths(svnRepository.getLocks("/")));
+
+                // another journal of the same length and timestamp replaces the read one.
+                final String contents = SVNFileUtil.readFile(indexFile);
+                final long lastModified = indexFile.lastModified();
+                final String header = contents.substring(0, contents.indexOf('\n'));
+                final String replacedHeader = header.substring(0, header.length() - 1) + (header.endsWith("0") ? "1" : "0");
+                SVNFileUtil.writeToFile(indexFile, replacedHeader + contents.substring(header.length()).replace("file0", "file1"), "US-ASCII");
+                Assert.assertTrue(indexFile.setLastModified(lastModified));
+                Assert.assertEquals(getPaths("/file1"), new TreeSet<String>(FSLockIndex.getIndex(new FSFS(repositoryRoot)).getLockedPaths("/")));
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            FSLockIndex.setEnabled(wasEnabled);
+            sandbox.dispose();
+        }
+    }
+
+    private void lock(SVNRepository svnRepository, String path) throws Exception {
+        final Map<String, Long> pathsToRevisions = new HashMap<String, Long>();
+        pathsToRevisions.put(path, 1L);
+        svnRepository.lock(pathsToRevisions, "comment", false, null);
+    }
+
+    private void unlock(SVNRepository svnRepository, String path) throws Exception {
+        final Map<String, String> pathsToTokens = new HashMap<String, String>();
+        pathsToTokens.put(path, svnRepository.getLock(path).getID());
+        svnRepository.unlock(pathsToTokens, false, null);
+    }
+
+    private TreeSet<String> getPaths(String... paths) {
+        return new TreeSet<String>(Arrays.asList(paths));
+    }
+
+    private TreeSet<String> getLockedPaths(SVNLock[] locks) {
+        final TreeSet<String> paths = new TreeSet<String>();
+        for (SVNLock lock : locks) {
+            paths.add(lock.getPath());
+        }
+        return paths;
+    }
+
+    private String getTestName() {
+        return "FSLockIndexTest";
+    }
+}
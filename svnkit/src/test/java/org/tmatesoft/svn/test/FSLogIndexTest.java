@@ -0,0 +1,208 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.ISVNLogEntryHandler;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNLogEntry;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSEntry;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSLogIndex;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepository;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSLogIndexTest {
+
+    @Test
+    public void testIndexedLogMatchesNodeHistory() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIndexedLogMatchesNodeHistory", options);
+        final boolean wasEnabled = FSLogIndex.isEnabled();
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("trunk/a/file");
+            commitBuilder1.addFile("trunk/a/b/file");
+            commitBuilder1.addFile("trunk/c/file");
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.changeFile("trunk/a/b/file", "changed".getBytes());
+            commitBuilder2.commit();
+
+            FSLogIndex.setEnabled(true);
+
+            final CommitBuilder commitBuilder3 = new CommitBuilder(url);
+            commitBuilder3.addDirectoryByCopying("branches/branch", "trunk");
+            commitBuilder3.commit();
+
+            final CommitBuilder commitBuilder4 = new CommitBuilder(url);
+            commitBuilder4.changeFile("branches/branch/a/file", "changed on branch".getBytes());
+            commitBuilder4.addDirectoryByCopying("branches/branch/d", "trunk/a", 1);
+            commitBuilder4.changeFile("trunk/c/file", "changed on trunk".getBytes());
+            commitBuilder4.commit();
+
+            final CommitBuilder commitBuilder5 = new CommitBuilder(url);
+            commitBuilder5.addDirectoryByCopying("tags/tag", "branches/branch");
+            commitBuilder5.replaceDirectoryByCopying("trunk/a", "branches/branch/d");
+            commitBuilder5.delete("trunk/c");
+            commitBuilder5.commit();
+
+            final CommitBuilder commitBuilder6 = new CommitBuilder(url);
+            commitBuilder6.changeFile("tags/tag/d/b/file", "changed on tag".getBytes());
+            commitBuilder6.addFileByCopying("trunk/c-file", "trunk/c/file", 4);
+            commitBuilder6.commit();
+
+            final CommitBuilder commitBuilder7 = new CommitBuilder(url);
+            commitBuilder7.delete("trunk/a/file");
+            commitBuilder7.addFile("trunk/c/file", "added again".getBytes());
+            commitBuilder7.commit();
+
+            final CommitBuilder commitBuilder8 = new CommitBuilder(url);
+            commitBuilder8.changeFile("trunk/c/file", "changed again".getBytes());
+            commitBuilder8.addFileByCopying("trunk/a/file", "trunk/a/file", 5);
+            commitBuilder8.commit();
+
+            final CommitBuilder commitBuilder9 = new CommitBuilder(url);
+            commitBuilder9.changeFile("branches/branch/a/file", "changed on branch again".getBytes());
+            commitBuilder9.commit();
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                final FSLogIndex index = fsfs.getLogIndex();
+                Assert.assertNotNull(index);
+                Assert.assertTrue(index.getFile().isFile());
+                Assert.assertEquals(9, index.getYoungestRevision());
+
+                for (long revision = 1; revision <= 9; revision++) {
+                    fsfs.setRevisionProperty(revision, SVNRevisionProperty.AUTHOR, SVNPropertyValue.create(revision % 2 == 0 ? "even" : "odd"));
+                }
+
+                final FSRepository repository = (FSRepository) SVNRepositoryFactory.create(url);
+                try {
+                    for (long revision = 1; revision <= 9; revision++) {
+                        final FSRevisionRoot root = fsfs.createRevisionRoot(revision);
+                        for (String path : getPaths(fsfs, root, "/")) {
+                            for (int strict = 0; strict < 2; strict++) {
+                                assertLogsEqual(repository, path, revision, 0, strict == 1, 0);
+                                assertLogsEqual(repository, path, 0, revision, strict == 1, 0);
+                                assertLogsEqual(repository, path, revision, 2, strict == 1, 0);
+                                assertLogsEqual(repository, path, revision, 0, strict == 1, 2);
+                            }
+                        }
+                    }
+
+                    FSLogIndex.setEnabled(false);
+                    final List<String> oddRevisions = log(repository, "/trunk", 9, 0, false, 0, null);
+                    FSLogIndex.setEnabled(true);
+                    for (Iterator<String> entries = oddRevisions.iterator(); entries.hasNext();) {
+                        if (Long.parseLong(entries.next().split(" ")[0]) % 2 == 0) {
+                            entries.remove();
+                        }
+                    }
+                    Assert.assertEquals(oddRevisions, log(repository, "/trunk", 9, 0, false, 0, "odd"));
+                    Assert.assertEquals(4, log(repository, "/", 9, 0, false, 0, "even").size());
+                    Assert.assertEquals(2, log(repository, "/", 1, 9, false, 2, "odd").size());
+                    Assert.assertEquals("3 [/branches, /branches/branch]", log(repository, "/", 2, 4, false, 1, "odd").get(0));
+
+                    FSLogIndex.setEnabled(false);
+                    Assert.assertEquals(log(repository, "/trunk", 9, 0, false, 0, "odd"), oddRevisions);
+                    Assert.assertEquals(4, log(repository, "/", 9, 0, false, 0, "even").size());
+                    FSLogIndex.setEnabled(true);
+
+                    index.rebuild(null);
+                    Assert.assertEquals(9, index.getYoungestRevision());
+                    Assert.assertEquals(oddRevisions, log(repository, "/trunk", 9, 0, false, 0, "odd"));
+
+                    // index that becomes unavailable in the middle of log is replaced with node history walk.
+                    for (String path : new String[] {"/tags/tag/d/b/file", "/trunk/a/b/file"}) {
+                        FSLogIndex.setEnabled(false);
+                        final List<String> expectedLog = log(repository, path, 9, 0, false, 0, null);
+                        FSLogIndex.setEnabled(true);
+                        final List<String> actualLog = logDroppingIndex(repository, path);
+                        Assert.assertEquals(path, expectedLog, actualLog);
+                        Assert.assertFalse(index.getFile().exists());
+                        Assert.assertTrue(new File(index.getFile().getPath() + ".moved").renameTo(index.getFile()));
+                    }
+                } finally {
+                    repository.closeSession();
+                }
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            FSLogIndex.setEnabled(wasEnabled);
+            sandbox.dispose();
+        }
+    }
+
+    private void assertLogsEqual(FSRepository repository, String path, long startRevision, long endRevision, boolean strictNode, long limit) throws SVNException {
+        final List<String> indexedLog = log(repository, path, startRevision, endRevision, strictNode, limit, null);
+        FSLogIndex.setEnabled(false);
+        final List<String> log = log(repository, path, startRevision, endRevision, strictNode, limit, null);
+        FSLogIndex.setEnabled(true);
+        Assert.assertEquals(path + "@" + startRevision + ":" + endRevision + (strictNode ? " strict" : ""), log, indexedLog);
+    }
+
+    private List<String> log(FSRepository repository, String path, long startRevision, long endRevision, boolean strictNode, long limit,
+                             String author) throws SVNException {
+        final List<String> entries = new ArrayList<String>();
+        repository.log(new String[] {path}, startRevision, endRevision, true, strictNode, limit, false, null, author, new ISVNLogEntryHandler() {
+            public void handleLogEntry(SVNLogEntry logEntry) {
+                entries.add(logEntry.getRevision() + " " + new TreeSet<String>(logEntry.getChangedPaths().keySet()));
+            }
+        });
+        return entries;
+    }
+
+    private List<String> logDroppingIndex(final FSRepository repository, String path) throws SVNException {
+        final List<String> entries = new ArrayList<String>();
+        repository.log(new String[] {path}, 9, 0, true, false, 0, false, null, null, new ISVNLogEntryHandler() {
+            public void handleLogEntry(SVNLogEntry logEntry) {
+                if (entries.isEmpty()) {
+                    final FSLogIndex logIndex = repository.getFSFS().getLogIndex();
+                    logIndex.close();
+                    Assert.assertTrue(logIndex.getFile().renameTo(new File(logIndex.getFile().getPath() + ".moved")));
+                }
+                entries.add(logEntry.getRevision() + " " + new TreeSet<String>(logEntry.getChangedPaths().keySet()));
+            }
+        });
+        return entries;
+    }
+
+    private List<String> getPaths(FSFS fsfs, FSRevisionRoot root, String path) throws Exception {
+        final List<String> paths = new ArrayList<String>();
+        paths.add(path);
+        final FSRevisionNode node = root.getRevisionNode(path);
+        if (node.getType() == SVNNodeKind.DIR) {
+            final Map entries = node.getDirEntries(fsfs);
+            for (Iterator iterator = entries.values().iterator(); iterator.hasNext();) {
+                final FSEntry entry = (FSEntry) iterator.next();
+                paths.addAll(getPaths(fsfs, root, SVNPathUtil.getAbsolutePath(SVNPathUtil.append(path, entry.getName()))));
+            }
+        }
+        return paths;
+    }
+
+    private String getTestName() {
+        return "FSLogIndexTest";
+    }
+}
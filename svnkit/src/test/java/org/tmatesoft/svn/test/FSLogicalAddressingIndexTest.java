@@ -0,0 +1,124 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.internal.io.fs.FSCaches;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSFile;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepositoryUtil;
+import org.tmatesoft.svn.core.internal.io.fs.index.FSLogicalAddressingIndex;
+import org.tmatesoft.svn.core.internal.io.fs.index.FSP2LEntry;
+import org.tmatesoft.svn.core.internal.io.fs.index.FSP2LProtoIndex;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSLogicalAddressingIndexTest {
+
+    private static final long REVISION = 5;
+
+    @Test
+    public void testLookupsUseCachedPages() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testLookupsUseCachedPages", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                final byte[] revisionFile = createRevisionFile();
+
+                FSLogicalAddressingIndex index = new FSLogicalAddressingIndex(fsfs, new FSFile(revisionFile));
+                Assert.assertEquals(0, index.getOffsetByItemIndex(REVISION, 1));
+                Assert.assertEquals(40, index.getOffsetByItemIndex(REVISION, 2));
+
+                final long hits = FSCaches.getIndexesCache().getHitsCount();
+                index = new FSLogicalAddressingIndex(fsfs, new FSFile(revisionFile));
+                final long[] offsets = index.getOffsetsByItemIndexes(REVISION, new long[] {2, 1, 2});
+                Assert.assertArrayEquals(new long[] {40, 0, 40}, offsets);
+                Assert.assertEquals(hits + 2, FSCaches.getIndexesCache().getHitsCount());
+
+                for (int i = 0; i < 2; i++) {
+                    final List<FSP2LEntry> entries = index.lookupP2LEntries(REVISION, 30, 50);
+                    Assert.assertEquals(2, entries.size());
+                    Assert.assertEquals(0, entries.get(0).getOffset());
+                    Assert.assertEquals(40, entries.get(0).getSize());
+                    Assert.assertEquals(FSP2LProtoIndex.ItemType.NODEREV, entries.get(0).getType());
+                    Assert.assertEquals(40, entries.get(1).getOffset());
+                    Assert.assertEquals(60, entries.get(1).getSize());
+                    Assert.assertEquals(2, entries.get(1).getNumber());
+                    entries.get(0).setSize(0);
+                }
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private byte[] createRevisionFile() throws Exception {
+        final ByteArrayOutputStream revisionFile = new ByteArrayOutputStream();
+        revisionFile.write(new byte[100]);
+
+        final long l2pOffset = revisionFile.size();
+        final ByteArrayOutputStream l2pPage = new ByteArrayOutputStream();
+        writeSigned(l2pPage, 0);
+        writeSigned(l2pPage, 1);
+        writeSigned(l2pPage, 40);
+        revisionFile.write(FSLogicalAddressingIndex.L2P_STREAM_PREFIX.getBytes("UTF-8"));
+        write(revisionFile, REVISION);
+        write(revisionFile, 0x2000);
+        write(revisionFile, 1);
+        write(revisionFile, 1);
+        write(revisionFile, 1);
+        write(revisionFile, l2pPage.size());
+        write(revisionFile, 3);
+        revisionFile.write(l2pPage.toByteArray());
+
+        final long p2lOffset = revisionFile.size();
+        final ByteArrayOutputStream p2lPage = new ByteArrayOutputStream();
+        write(p2lPage, 0);
+        writeP2LEntry(p2lPage, 40, 1 * 8 + FSP2LProtoIndex.ItemType.NODEREV.getCode());
+        writeP2LEntry(p2lPage, 60, 2 * 8 + FSP2LProtoIndex.ItemType.FILE_REP.getCode() - (1 * 8 + FSP2LProtoIndex.ItemType.NODEREV.getCode()));
+        writeP2LEntry(p2lPage, 0x400 - 100, -(2 * 8 + FSP2LProtoIndex.ItemType.FILE_REP.getCode()));
+        revisionFile.write(FSLogicalAddressingIndex.P2L_STREAM_PREFIX.getBytes("UTF-8"));
+        write(revisionFile, REVISION);
+        write(revisionFile, l2pOffset);
+        write(revisionFile, 0x400);
+        write(revisionFile, 1);
+        write(revisionFile, p2lPage.size());
+        revisionFile.write(p2lPage.toByteArray());
+
+        final String footer = l2pOffset + " 0 " + p2lOffset + " 0";
+        revisionFile.write(footer.getBytes("UTF-8"));
+        revisionFile.write(footer.length());
+        return revisionFile.toByteArray();
+    }
+
+    private void writeP2LEntry(ByteArrayOutputStream outputStream, long size, long compoundDiff) {
+        write(outputStream, size);
+        writeSigned(outputStream, compoundDiff);
+        writeSigned(outputStream, 0);
+        write(outputStream, 0);
+    }
+
+    private void write(ByteArrayOutputStream outputStream, long value) {
+        final byte[] bytes = new byte[10];
+        outputStream.write(bytes, 0, FSRepositoryUtil.encodeUnsignedInt(bytes, value));
+    }
+
+    private void writeSigned(ByteArrayOutputStream outputStream, long value) {
+        final byte[] bytes = new byte[10];
+        outputStream.write(bytes, 0, FSRepositoryUtil.encodeInt(bytes, value));
+    }
+
+    private String getTestName() {
+        return "FSLogicalAddressingIndexTest";
+    }
+}
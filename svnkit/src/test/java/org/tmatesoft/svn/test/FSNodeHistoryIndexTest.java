@@ -0,0 +1,150 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSEntry;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSNodeHistory;
+import org.tmatesoft.svn.core.internal.io.fs.FSNodeHistoryIndex;
+import org.tmatesoft.svn.core.internal.io.fs.FSParentPath;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.internal.util.SVNPathUtil;
+import org.tmatesoft.svn.core.io.SVNLocationEntry;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSNodeHistoryIndexTest {
+
+    @Test
+    public void testIndexedNodesMatchRevisionFiles() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIndexedNodesMatchRevisionFiles", options);
+        final boolean wasEnabled = FSNodeHistoryIndex.isEnabled();
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("trunk/a/file");
+            commitBuilder1.addFile("trunk/a/b/file");
+            commitBuilder1.addFile("trunk/c/file");
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.changeFile("trunk/a/b/file", "changed".getBytes());
+            commitBuilder2.commit();
+
+            FSNodeHistoryIndex.setEnabled(true);
+
+            final CommitBuilder commitBuilder3 = new CommitBuilder(url);
+            commitBuilder3.addDirectoryByCopying("branches/branch", "trunk");
+            commitBuilder3.commit();
+
+            final CommitBuilder commitBuilder4 = new CommitBuilder(url);
+            commitBuilder4.changeFile("branches/branch/a/file", "changed on branch".getBytes());
+            commitBuilder4.addDirectoryByCopying("branches/branch/d", "trunk/a", 1);
+            commitBuilder4.changeFile("trunk/c/file", "changed on trunk".getBytes());
+            commitBuilder4.commit();
+
+            final CommitBuilder commitBuilder5 = new CommitBuilder(url);
+            commitBuilder5.addDirectoryByCopying("tags/tag", "branches/branch");
+            commitBuilder5.replaceDirectoryByCopying("trunk/a", "branches/branch/d");
+            commitBuilder5.delete("trunk/c");
+            commitBuilder5.commit();
+
+            final CommitBuilder commitBuilder6 = new CommitBuilder(url);
+            commitBuilder6.changeFile("tags/tag/d/b/file", "changed on tag".getBytes());
+            commitBuilder6.addFileByCopying("trunk/c-file", "trunk/c/file", 4);
+            commitBuilder6.commit();
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                final FSNodeHistoryIndex index = fsfs.getNodeHistoryIndex();
+                Assert.assertNotNull(index);
+                Assert.assertTrue(index.getFile().isFile());
+                Assert.assertEquals(6, index.getYoungestRevision());
+
+                for (long revision = 0; revision <= 6; revision++) {
+                    final FSRevisionRoot root = fsfs.createRevisionRoot(revision);
+                    for (String path : getPaths(fsfs, root, "/")) {
+                        final FSParentPath expected = root.openPath(path, true, true);
+                        final FSParentPath actual = index.openPath(path, revision);
+                        Assert.assertNotNull(path + "@" + revision, actual);
+                        for (FSParentPath e = expected, a = actual; e != null || a != null; e = e.getParent(), a = a.getParent()) {
+                            assertNodesEqual(e.getRevNode(), a.getRevNode());
+                        }
+                        final SVNLocationEntry expectedCopyroot = FSNodeHistory.findYoungestCopyroot(repositoryRoot, expected);
+                        final SVNLocationEntry actualCopyroot = FSNodeHistory.findYoungestCopyroot(repositoryRoot, actual);
+                        Assert.assertEquals(expectedCopyroot.getRevision(), actualCopyroot.getRevision());
+                        Assert.assertEquals(expectedCopyroot.getPath(), actualCopyroot.getPath());
+                    }
+                }
+
+                final FSRevisionRoot youngestRoot = fsfs.createRevisionRoot(6);
+                for (String path : getPaths(fsfs, youngestRoot, "/")) {
+                    final List<String> indexedHistory = getHistory(youngestRoot, path);
+                    FSNodeHistoryIndex.setEnabled(false);
+                    Assert.assertEquals(path, getHistory(youngestRoot, path), indexedHistory);
+                    FSNodeHistoryIndex.setEnabled(true);
+                }
+
+                index.rebuild(null);
+                Assert.assertEquals(6, index.getYoungestRevision());
+                assertNodesEqual(youngestRoot.getRevisionNode("/tags/tag/d/file"), index.getRevisionNode("/tags/tag/d/file", 6));
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            FSNodeHistoryIndex.setEnabled(wasEnabled);
+            sandbox.dispose();
+        }
+    }
+
+    private void assertNodesEqual(FSRevisionNode expected, FSRevisionNode actual) {
+        Assert.assertEquals(expected.getId(), actual.getId());
+        Assert.assertEquals(expected.getPredecessorId(), actual.getPredecessorId());
+        Assert.assertEquals(expected.getCreatedPath(), actual.getCreatedPath());
+        Assert.assertEquals(expected.getCreatedRevision(), actual.getCreatedRevision());
+        Assert.assertEquals(expected.getCopyFromPath(), actual.getCopyFromPath());
+        Assert.assertEquals(expected.getCopyFromRevision(), actual.getCopyFromRevision());
+        Assert.assertEquals(expected.getCopyRootPath(), actual.getCopyRootPath());
+        Assert.assertEquals(expected.getCopyRootRevision(), actual.getCopyRootRevision());
+    }
+
+    private List<String> getHistory(FSRevisionRoot root, String path) throws Exception {
+        final List<String> history = new ArrayList<String>();
+        for (FSNodeHistory nodeHistory = root.getNodeHistory(path).getPreviousHistory(true); nodeHistory != null;
+             nodeHistory = nodeHistory.getPreviousHistory(true)) {
+            history.add(nodeHistory.getHistoryEntry().getPath() + "@" + nodeHistory.getHistoryEntry().getRevision());
+        }
+        return history;
+    }
+
+    private List<String> getPaths(FSFS fsfs, FSRevisionRoot root, String path) throws Exception {
+        final List<String> paths = new ArrayList<String>();
+        paths.add(path);
+        final FSRevisionNode node = root.getRevisionNode(path);
+        if (node.getType() == SVNNodeKind.DIR) {
+            final Map entries = node.getDirEntries(fsfs);
+            for (Iterator iterator = entries.values().iterator(); iterator.hasNext();) {
+                final FSEntry entry = (FSEntry) iterator.next();
+                paths.addAll(getPaths(fsfs, root, SVNPathUtil.getAbsolutePath(SVNPathUtil.append(path, entry.getName()))));
+            }
+        }
+        return paths;
+    }
+
+    private String getTestName() {
+        return "FSNodeHistoryIndexTest";
+    }
+}
@@ -0,0 +1,70 @@
+package org.tmatesoft.svn.test;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNDepth;
+import org.tmatesoft.svn.core.internal.io.fs.FSReportStore;
+import org.tmatesoft.svn.core.internal.io.fs.PathInfo;
+import org.tmatesoft.svn.core.io.SVNRepository;
+
+public class FSReportStoreTest {
+
+    private static final SVNDepth[] DEPTHS = {SVNDepth.INFINITY, SVNDepth.EXCLUDE, SVNDepth.EMPTY, SVNDepth.FILES, SVNDepth.IMMEDIATES};
+
+    @Test
+    public void testPathInfosAreKeptInMemory() throws Exception {
+        final FSReportStore store = new FSReportStore(0x100000);
+        try {
+            writePathInfos(store, 1000);
+            Assert.assertFalse(store.isSpilled());
+            readPathInfos(store, 1000);
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testPathInfosAreSpilledToDisk() throws Exception {
+        final FSReportStore store = new FSReportStore(0x1000);
+        try {
+            writePathInfos(store, 10000);
+            Assert.assertTrue(store.isSpilled());
+            readPathInfos(store, 10000);
+            Assert.assertFalse(store.isSpilled());
+        } finally {
+            store.close();
+        }
+    }
+
+    private void writePathInfos(FSReportStore store, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            store.writePathInfo(getPath(i), i % 3 == 0 ? "/branches/ветка/" + i : null, i % 5 == 0 ? "opaquelocktoken:" + i : null,
+                    i % 7 == 0 ? SVNRepository.INVALID_REVISION : i * 1000L, DEPTHS[i % DEPTHS.length], i % 2 == 0);
+        }
+    }
+
+    private void readPathInfos(FSReportStore store, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            final PathInfo pathInfo = store.readPathInfo();
+            Assert.assertNotNull(pathInfo);
+            Assert.assertEquals(getPath(i), pathInfo.getPath());
+            Assert.assertEquals(i % 3 == 0 ? "/branches/ветка/" + i : null, pathInfo.getLinkPath());
+            Assert.assertEquals(i % 5 == 0 ? "opaquelocktoken:" + i : null, pathInfo.getLockToken());
+            Assert.assertEquals(i % 7 == 0 ? SVNRepository.INVALID_REVISION : i * 1000L, pathInfo.getRevision());
+            Assert.assertEquals(DEPTHS[i % DEPTHS.length], pathInfo.getDepth());
+            Assert.assertEquals(i % 2 == 0, pathInfo.isStartEmpty());
+        }
+        Assert.assertNull(store.readPathInfo());
+    }
+
+    private String getPath(int i) {
+        if (i == 0) {
+            return "";
+        }
+        final StringBuilder path = new StringBuilder("trunk/directory " + (i % 10) + "/file-" + i);
+        for (int j = 0; j < i % 50; j++) {
+            path.append('x');
+        }
+        return path.toString();
+    }
+}
@@ -0,0 +1,68 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
+import org.tmatesoft.svn.core.internal.io.fs.repcache.FSRepresentationCacheIndex;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSRepresentationCacheTest {
+
+    @Test
+    public void testSharedRepresentationFoundInIndex() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testSharedRepresentationFoundInIndex", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            final byte[] contents = "shared contents\n".getBytes();
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("file1", contents);
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.addFile("file2", contents);
+            commitBuilder2.commit();
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                final FSRevisionNode node = fsfs.createRevisionRoot(2).getRevisionNode("/file2");
+                final FSRepresentation representation = node.getTextRepresentation();
+                Assert.assertEquals(1, representation.getRevision());
+
+                final FSRepresentation cached = fsfs.getRepositoryCacheManager().getRepresentationByHash(representation.getSHA1HexDigest());
+                Assert.assertNotNull(cached);
+                Assert.assertEquals(1, cached.getRevision());
+                Assert.assertNull(fsfs.getRepositoryCacheManager().getRepresentationByHash("0123456789012345678901234567890123456789"));
+                Assert.assertTrue(FSRepresentationCacheIndex.getIndex(fsfs.getRepositoryCacheFile()).isUpToDate());
+            } finally {
+                fsfs.close();
+            }
+
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                svnRepository.getFile("file2", 2, null, outputStream);
+                Assert.assertArrayEquals(contents, outputStream.toByteArray());
+            } finally {
+                svnRepository.closeSession();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private String getTestName() {
+        return "FSRepresentationCacheTest";
+    }
+}
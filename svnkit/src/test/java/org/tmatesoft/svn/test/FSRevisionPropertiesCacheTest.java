@@ -0,0 +1,119 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNProperties;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSCaches;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSPacker;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSRevisionPropertiesCacheTest {
+
+    @Test
+    public void testChangesMadeByOtherInstanceAreSeen() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testChangesMadeByOtherInstanceAreSeen", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+
+            final FSFS formatFSFS = new FSFS(repositoryRoot);
+            formatFSFS.open();
+            formatFSFS.writeDBFormat(formatFSFS.getDBFormat(), 10, true);
+            formatFSFS.close();
+
+            for (int i = 0; i < 25; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file" + i);
+                commitBuilder.commit();
+            }
+
+            final FSFS packFSFS = new FSFS(repositoryRoot);
+            packFSFS.open();
+            new FSPacker(null).pack(packFSFS);
+            packFSFS.close();
+
+            final FSFS reader = new FSFS(repositoryRoot);
+            final FSFS writer = new FSFS(repositoryRoot);
+            reader.open();
+            writer.open();
+            try {
+                final long generation = reader.getRevisionPropertiesGeneration();
+                final long hits = FSCaches.getRevisionPropertiesCache().getHitsCount();
+                for (long revision = 0; revision <= 25; revision++) {
+                    Assert.assertNotNull(reader.getRevisionProperties(revision).getStringValue("svn:date"));
+                }
+                // revisions 1-9 were decoded together with packed revision 0.
+                Assert.assertTrue(FSCaches.getRevisionPropertiesCache().getHitsCount() - hits >= 9);
+
+                final SVNProperties properties = reader.getRevisionProperties(5);
+                properties.put("test", "modified copy");
+                Assert.assertNull(reader.getRevisionProperties(5).getStringValue("test"));
+
+                writer.setRevisionProperty(5, "test", SVNPropertyValue.create("packed"));
+                writer.setRevisionProperty(22, "test", SVNPropertyValue.create("unpacked"));
+                Assert.assertEquals(generation + 4, reader.getRevisionPropertiesGeneration());
+
+                Assert.assertEquals("packed", reader.getRevisionProperties(5).getStringValue("test"));
+                Assert.assertEquals("unpacked", reader.getRevisionProperties(22).getStringValue("test"));
+                Assert.assertNull(reader.getRevisionProperties(6).getStringValue("test"));
+            } finally {
+                reader.close();
+                writer.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testGenerationIsReadOnlyWhenFileChanges() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testGenerationIsReadOnlyWhenFileChanges", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true, false, false, false, false, false, true);
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                final File generationFile = fsfs.getRevisionPropertiesGenerationFile();
+                final long oldTime = System.currentTimeMillis() - 60 * 1000;
+                SVNFileUtil.writeToFile(generationFile, "2\n", "US-ASCII");
+                Assert.assertTrue(generationFile.setLastModified(oldTime));
+                Assert.assertEquals(2, fsfs.getRevisionPropertiesGeneration());
+
+                // same timestamp and length, cached generation is used.
+                SVNFileUtil.writeToFile(generationFile, "4\n", "US-ASCII");
+                Assert.assertTrue(generationFile.setLastModified(oldTime));
+                Assert.assertEquals(2, fsfs.getRevisionPropertiesGeneration());
+
+                Assert.assertTrue(generationFile.setLastModified(oldTime + 10000));
+                Assert.assertEquals(4, fsfs.getRevisionPropertiesGeneration());
+
+                // recently modified file is read every time.
+                SVNFileUtil.writeToFile(generationFile, "6\n", "US-ASCII");
+                Assert.assertEquals(6, fsfs.getRevisionPropertiesGeneration());
+                SVNFileUtil.writeToFile(generationFile, "8\n", "US-ASCII");
+                Assert.assertEquals(8, fsfs.getRevisionPropertiesGeneration());
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private String getTestName() {
+        return "FSRevisionPropertiesCacheTest";
+    }
+}
@@ -0,0 +1,155 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNRevisionProperty;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionTimeIndex;
+import org.tmatesoft.svn.core.internal.util.SVNDate;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSRevisionTimeIndexTest {
+
+    @Test
+    public void testDatedRevisionLookups() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testDatedRevisionLookups", options);
+        final boolean indexEnabled = FSRevisionTimeIndex.isEnabled();
+        try {
+            FSRevisionTimeIndex.setEnabled(true);
+
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+            final File indexFile = new File(new File(repositoryRoot, FSFS.DB_DIR), FSRevisionTimeIndex.REVISION_TIMES_FILE);
+            Assert.assertFalse(indexFile.exists());
+            buildIndex(repositoryRoot);
+            Assert.assertEquals(8, indexFile.length());
+
+            for (int i = 0; i < 10; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file" + i);
+                commitBuilder.commit();
+            }
+            Assert.assertEquals(11 * 8, indexFile.length());
+
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                for (int revision = 0; revision <= 10; revision++) {
+                    svnRepository.setRevisionPropertyValue(revision, SVNRevisionProperty.DATE,
+                            SVNPropertyValue.create(getDate(revision)));
+                }
+                assertDatedRevisions(svnRepository);
+
+                svnRepository.closeSession();
+                Assert.assertTrue(indexFile.delete());
+                assertDatedRevisions(svnRepository);
+                Assert.assertFalse(indexFile.exists());
+            } finally {
+                svnRepository.closeSession();
+            }
+
+            buildIndex(repositoryRoot);
+            Assert.assertEquals(11 * 8, indexFile.length());
+        } finally {
+            FSRevisionTimeIndex.setEnabled(indexEnabled);
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testIndexCoversStoredPrefixOnly() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testIndexCoversStoredPrefixOnly", options);
+        final boolean indexEnabled = FSRevisionTimeIndex.isEnabled();
+        try {
+            FSRevisionTimeIndex.setEnabled(true);
+
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+            for (int i = 0; i < 10; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file" + i);
+                commitBuilder.commit();
+            }
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                for (int revision = 0; revision <= 10; revision++) {
+                    svnRepository.setRevisionPropertyValue(revision, SVNRevisionProperty.DATE,
+                            SVNPropertyValue.create(getDate(revision)));
+                }
+            } finally {
+                svnRepository.closeSession();
+            }
+            buildIndex(repositoryRoot);
+
+            // entries of the stored prefix are trusted, the rest is read from revision properties.
+            final File indexFile = new File(new File(repositoryRoot, FSFS.DB_DIR), FSRevisionTimeIndex.REVISION_TIMES_FILE);
+            Assert.assertEquals(11 * 8, indexFile.length());
+            final RandomAccessFile file = new RandomAccessFile(indexFile, "rw");
+            try {
+                file.setLength(5 * 8);
+                file.seek(2 * 8);
+                file.writeLong(SVNDate.parseDate(getDate(3)).getTime() * 1000);
+            } finally {
+                file.close();
+            }
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                // stored entry of revision 2 claims it is younger than the date, so it is not re-read.
+                Assert.assertEquals(1, fsfs.getDatedRevision(SVNDate.parseDate(getDate(2))));
+                Assert.assertEquals(8, fsfs.getDatedRevision(SVNDate.parseDate(getDate(8))));
+                Assert.assertEquals(5 * 8, indexFile.length());
+            } finally {
+                fsfs.close();
+            }
+
+            // a commit does not fill the gap after the stored prefix.
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("file10");
+            commitBuilder.commit();
+            Assert.assertEquals(5 * 8, indexFile.length());
+
+            buildIndex(repositoryRoot);
+            Assert.assertEquals(12 * 8, indexFile.length());
+        } finally {
+            FSRevisionTimeIndex.setEnabled(indexEnabled);
+            sandbox.dispose();
+        }
+    }
+
+    private static void buildIndex(File repositoryRoot) throws Exception {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        try {
+            fsfs.getRevisionTimeIndex().update(fsfs.getYoungestRevision(), null);
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private void assertDatedRevisions(SVNRepository svnRepository) throws Exception {
+        for (int revision = 0; revision <= 10; revision++) {
+            Assert.assertEquals(revision, svnRepository.getDatedRevision(SVNDate.parseDate(getDate(revision))));
+            Assert.assertEquals(revision, svnRepository.getDatedRevision(SVNDate.parseDate(getDate(revision).replace("00.000000Z", "30.000000Z"))));
+        }
+        Assert.assertEquals(0, svnRepository.getDatedRevision(SVNDate.parseDate("2000-01-01T00:00:00.000000Z")));
+    }
+
+    private String getDate(int revision) {
+        return "2010-01-01T10:" + (revision < 10 ? "0" : "") + revision + ":00.000000Z";
+    }
+
+    private String getTestName() {
+        return "FSRevisionTimeIndexTest";
+    }
+}
@@ -0,0 +1,54 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionRoot;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSRootTest {
+
+    @Test
+    public void testRemovedPathEvictsDescendants() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testRemovedPathEvictsDescendants", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            final CommitBuilder commitBuilder = new CommitBuilder(url);
+            commitBuilder.addFile("directory/file", "contents".getBytes());
+            commitBuilder.addFile("directory2/file", "contents".getBytes());
+            commitBuilder.commit();
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                final FSRevisionRoot root = fsfs.createRevisionRoot(1);
+                final FSRevisionNode rootNode = root.getRootRevisionNode();
+                root.putRevNodeToCache("/directory/file", rootNode);
+                root.putRevNodeToCache("/directory2/file", rootNode);
+                Assert.assertEquals(SVNNodeKind.DIR, root.getRevisionNode("/directory/file").getType());
+
+                root.removeRevNodeFromCache("/directory");
+
+                Assert.assertEquals(SVNNodeKind.FILE, root.getRevisionNode("/directory/file").getType());
+                Assert.assertEquals(SVNNodeKind.DIR, root.getRevisionNode("/directory2/file").getType());
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private String getTestName() {
+        return "FSRootTest";
+    }
+}
@@ -0,0 +1,283 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNCancelException;
+import org.tmatesoft.svn.core.SVNErrorCode;
+import org.tmatesoft.svn.core.SVNException;
+import org.tmatesoft.svn.core.SVNPropertyValue;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.auth.ISVNAuthenticationManager;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSPacker;
+import org.tmatesoft.svn.core.internal.io.fs.FSVerifier;
+import org.tmatesoft.svn.core.internal.io.fs.index.FSLogicalAddressingIndex;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.wc.ISVNEventHandler;
+import org.tmatesoft.svn.core.wc.SVNEvent;
+import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.admin.ISVNAdminEventHandler;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminClient;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEventAction;
+import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
+import org.tmatesoft.svn.core.wc2.admin.SvnRepositoryVerify;
+
+public class FSVerifierTest {
+
+    @Test
+    public void testParallelResumableVerification() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final SvnOperationFactory svnOperationFactory = new SvnOperationFactory();
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testParallelResumableVerification", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final File checkpointFile = new File(sandbox.createDirectory("checkpoint"), "verify.checkpoint");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+
+            final FSFS formatFSFS = new FSFS(repositoryRoot);
+            formatFSFS.open();
+            formatFSFS.writeDBFormat(formatFSFS.getDBFormat(), 10, true);
+            formatFSFS.close();
+
+            for (int i = 0; i < 25; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("trunk/dir" + (i % 3) + "/file" + i, ("contents of file " + i).getBytes());
+                if (i > 0) {
+                    commitBuilder.changeFile("trunk/dir0/file0", ("contents changed in " + i).getBytes());
+                    commitBuilder.setFileProperty("trunk/dir0/file0", "property", SVNPropertyValue.create("value" + i));
+                }
+                if (i % 5 == 4) {
+                    commitBuilder.addDirectoryByCopying("branches/branch" + i, "trunk");
+                }
+                commitBuilder.commit();
+            }
+            pack(repositoryRoot);
+
+            final List<Long> verifiedRevisions = new ArrayList<Long>();
+            verify(repositoryRoot, 0, 25, 4, checkpointFile, verifiedRevisions);
+            Assert.assertEquals(26, verifiedRevisions.size());
+            for (int i = 0; i < verifiedRevisions.size(); i++) {
+                Assert.assertEquals(i, verifiedRevisions.get(i).longValue());
+            }
+            Assert.assertTrue(checkpointFile.isFile());
+
+            verifiedRevisions.clear();
+            verify(repositoryRoot, 0, 25, 4, checkpointFile, verifiedRevisions);
+            Assert.assertTrue(verifiedRevisions.isEmpty());
+
+            final String checkpoint = SVNFileUtil.readFile(checkpointFile);
+            SVNFileUtil.writeToFile(checkpointFile, checkpoint.replace(" 26\n", " 17\n"), "US-ASCII");
+            verify(repositoryRoot, 0, 25, 1, checkpointFile, verifiedRevisions);
+            Assert.assertEquals(9, verifiedRevisions.size());
+            Assert.assertEquals(17, verifiedRevisions.get(0).longValue());
+
+            final SvnRepositoryVerify repositoryVerify = svnOperationFactory.createRepositoryVerify();
+            repositoryVerify.setRepositoryRoot(repositoryRoot);
+            repositoryVerify.setStartRevision(SVNRevision.create(0));
+            repositoryVerify.setEndRevision(SVNRevision.HEAD);
+            repositoryVerify.setCheckpointFile(new File(checkpointFile.getParentFile(), "other.checkpoint"));
+            repositoryVerify.run();
+
+            corruptContents(new File(repositoryRoot, "db/revs/2/23"), "contents of file 22");
+            verifiedRevisions.clear();
+            try {
+                verify(repositoryRoot, 0, 25, 4, null, verifiedRevisions);
+                Assert.fail("Corrupted contents are not detected");
+            } catch (SVNException e) {
+                Assert.assertEquals(SVNErrorCode.FS_CORRUPT, e.getErrorMessage().getRootErrorMessage().getErrorCode());
+            }
+            Assert.assertTrue(verifiedRevisions.size() <= 23);
+        } finally {
+            svnOperationFactory.dispose();
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testLogAddressedRepositoryIndexes() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testLogAddressedRepositoryIndexes", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+            writeLogAddressedRevisionZero(repositoryRoot);
+
+            for (int i = 0; i < 5; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("trunk/file" + i, ("contents of file " + i).getBytes());
+                commitBuilder.setFileProperty("trunk/file" + i, "property", SVNPropertyValue.create("value" + i));
+                commitBuilder.commit();
+            }
+            final List<Long> verifiedRevisions = new ArrayList<Long>();
+            verify(repositoryRoot, 0, 5, 2, null, verifiedRevisions);
+            Assert.assertEquals(6, verifiedRevisions.size());
+
+            // L2P index of revision 0 maps changes item into the middle of the root node revision.
+            final RandomAccessFile file = new RandomAccessFile(new File(repositoryRoot, "db/revs/0/0"), "rw");
+            try {
+                file.seek(107 + FSLogicalAddressingIndex.L2P_STREAM_PREFIX.length() + 9);
+                Assert.assertEquals(0xd6, file.read());
+                file.seek(file.getFilePointer() - 1);
+                file.write(0xd4);
+            } finally {
+                file.close();
+            }
+            try {
+                verify(repositoryRoot, 0, 0, 1, null, verifiedRevisions);
+                Assert.fail("Inconsistent indexes are not detected");
+            } catch (SVNException e) {
+                Assert.assertEquals(SVNErrorCode.FS_INDEX_INCONSISTENT, e.getErrorMessage().getErrorCode());
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private void writeLogAddressedRevisionZero(File repositoryRoot) throws Exception {
+        final File formatFile = new File(repositoryRoot, "db/format");
+        SVNFileUtil.setReadonly(formatFile, false);
+        SVNFileUtil.writeToFile(formatFile, "7\nlayout sharded 1000\naddressing logical\n", "US-ASCII");
+
+        // revision 0 as native Subversion writes it, except for item checksums of P2L index entries.
+        final ByteArrayOutputStream revision = new ByteArrayOutputStream();
+        revision.write(("PLAIN\nEND\nENDREP\n" +
+                "id: 0.0.r0/2\n" +
+                "type: dir\n" +
+                "count: 0\n" +
+                "text: 0 3 4 4 2d2977d1c96f487abe4a1e202dd03b4e\n" +
+                "cpath: /\n" +
+                "\n\n").getBytes("US-ASCII"));
+        final byte[] l2pIndex = createIndex(FSLogicalAddressingIndex.L2P_STREAM_PREFIX,
+                0, 0x80, 0x40, 1, 1, 1, 6, 4, 0, 0xd6, 1, 0xb1, 1, 0x21);
+        final byte[] p2lIndex = createIndex(FSLogicalAddressingIndex.P2L_STREAM_PREFIX,
+                0, 0x6b, 0x80, 0x80, 4, 1, 0x13,
+                0,
+                0x11, 0x34, 0, 0,
+                0x59, 0x09, 0, 0,
+                0x01, 0x0d, 0, 0,
+                0x95, 0xff, 3, 0x1b, 0, 0);
+        revision.write(l2pIndex);
+        revision.write(p2lIndex);
+        final String footer = "107 " + md5(l2pIndex) + " " + (107 + l2pIndex.length) + " " + md5(p2lIndex);
+        revision.write(footer.getBytes("US-ASCII"));
+        revision.write(footer.length());
+
+        final File revisionFile = new File(repositoryRoot, "db/revs/0/0");
+        SVNFileUtil.setReadonly(revisionFile, false);
+        SVNFileUtil.writeToFile(revisionFile, revision.toByteArray());
+    }
+
+    private static byte[] createIndex(String prefix, int... data) throws Exception {
+        final ByteArrayOutputStream index = new ByteArrayOutputStream();
+        index.write(prefix.getBytes("US-ASCII"));
+        for (int i = 0; i < data.length; i++) {
+            index.write(data[i]);
+        }
+        return index.toByteArray();
+    }
+
+    private static String md5(byte[] data) throws Exception {
+        final MessageDigest digest = MessageDigest.getInstance("MD5");
+        digest.update(data);
+        return SVNFileUtil.toHexDigest(digest);
+    }
+
+    @Test
+    public void testVerificationIsCancelledThroughClientCanceller() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testVerificationIsCancelledThroughClientCanceller", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+            for (int i = 0; i < 3; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file" + i);
+                commitBuilder.commit();
+            }
+
+            final Thread callingThread = Thread.currentThread();
+            final SVNAdminClient adminClient = new SVNAdminClient((ISVNAuthenticationManager) null, null);
+            // not an admin event handler, so it is only reachable through the event dispatcher.
+            adminClient.setEventHandler(new ISVNEventHandler() {
+                public void handleEvent(SVNEvent event, double progress) {
+                }
+                public void checkCancelled() throws SVNCancelException {
+                    Assert.assertSame(callingThread, Thread.currentThread());
+                    throw new SVNCancelException();
+                }
+            });
+            try {
+                adminClient.doVerify(repositoryRoot, SVNRevision.create(0), SVNRevision.HEAD);
+                Assert.fail("Verification is expected to be cancelled");
+            } catch (SVNCancelException e) {
+                Assert.assertEquals(SVNErrorCode.CANCELLED, e.getErrorMessage().getErrorCode());
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private void verify(File repositoryRoot, long startRevision, long endRevision, int threadsCount, File checkpointFile,
+                        final List<Long> verifiedRevisions) throws SVNException {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        try {
+            final FSVerifier verifier = new FSVerifier(new ISVNAdminEventHandler() {
+                public void handleAdminEvent(SVNAdminEvent event, double progress) {
+                    Assert.assertEquals(SVNAdminEventAction.REVISION_DUMPED, event.getAction());
+                    verifiedRevisions.add(event.getRevision());
+                }
+                public void handleEvent(SVNEvent event, double progress) {
+                }
+                public void checkCancelled() {
+                }
+            });
+            verifier.setThreadsCount(threadsCount);
+            verifier.setCheckpointFile(checkpointFile);
+            verifier.verify(fsfs, startRevision, endRevision);
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private void pack(File repositoryRoot) throws Exception {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        try {
+            new FSPacker(null).pack(fsfs);
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private void corruptContents(File revisionFile, String contents) throws Exception {
+        final byte[] bytes = SVNFileUtil.readFully(revisionFile);
+        final int offset = new String(bytes, "ISO-8859-1").indexOf(contents);
+        Assert.assertTrue(offset >= 0);
+        final RandomAccessFile file = new RandomAccessFile(revisionFile, "rw");
+        try {
+            file.seek(offset);
+            file.write('C');
+        } finally {
+            file.close();
+        }
+    }
+
+    private String getTestName() {
+        return "FSVerifierTest";
+    }
+}
@@ -0,0 +1,136 @@
+package org.tmatesoft.svn.test;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNNodeKind;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSYoungestRevision;
+import org.tmatesoft.svn.core.internal.io.fs.IFSRevisionListener;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+
+public class FSYoungestRevisionTest {
+
+    @Test
+    public void testCachedYoungestRevisionAndListeners() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testCachedYoungestRevisionAndListeners", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            final List<Long> revisions = new ArrayList<Long>();
+            final IFSRevisionListener listener = new IFSRevisionListener() {
+                public void handleYoungestRevision(File root, long revision) {
+                    Assert.assertEquals(repositoryRoot.getAbsoluteFile(), root);
+                    revisions.add(revision);
+                }
+            };
+            try {
+                Assert.assertEquals(0, fsfs.getYoungestRevision());
+                fsfs.addRevisionListener(listener);
+
+                for (int i = 0; i < 3; i++) {
+                    final CommitBuilder commitBuilder = new CommitBuilder(url);
+                    commitBuilder.addFile("file" + i);
+                    commitBuilder.commit();
+                }
+                Assert.assertEquals(3, revisions.size());
+                Assert.assertEquals(3, revisions.get(2).longValue());
+                Assert.assertEquals(3, fsfs.getYoungestRevision());
+
+                final File currentFile = fsfs.getCurrentFile();
+                final String current = SVNFileUtil.readFile(currentFile);
+                final long lastModified = System.currentTimeMillis() - 10 * FSYoungestRevision.TIMESTAMP_GRANULARITY;
+                Assert.assertTrue(currentFile.setLastModified(lastModified));
+                Assert.assertEquals(3, fsfs.getYoungestRevision());
+
+                SVNFileUtil.writeToFile(currentFile, current.replace('3', '2'), "US-ASCII");
+                Assert.assertTrue(currentFile.setLastModified(lastModified));
+                Assert.assertEquals(3, fsfs.getYoungestRevision());
+
+                FSYoungestRevision.setEnabled(false);
+                try {
+                    Assert.assertEquals(2, fsfs.getYoungestRevision());
+                } finally {
+                    FSYoungestRevision.setEnabled(true);
+                }
+
+                SVNFileUtil.writeToFile(currentFile, current.replace('3', '4'), "US-ASCII");
+                Assert.assertTrue(currentFile.setLastModified(lastModified + FSYoungestRevision.TIMESTAMP_GRANULARITY));
+                Assert.assertEquals(4, fsfs.getYoungestRevision());
+                Assert.assertEquals(4, revisions.size());
+                Assert.assertEquals(4, revisions.get(3).longValue());
+
+                SVNFileUtil.writeToFile(currentFile, current, "US-ASCII");
+                fsfs.removeRevisionListener(listener);
+                Assert.assertEquals(3, fsfs.getYoungestRevision());
+
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file3");
+                commitBuilder.commit();
+                Assert.assertEquals(4, revisions.size());
+                Assert.assertEquals(4, fsfs.getYoungestRevision());
+            } finally {
+                fsfs.removeRevisionListener(listener);
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testCommitIgnoresStaleCachedRevision() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testCommitIgnoresStaleCachedRevision", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+            for (int i = 0; i < 2; i++) {
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file" + i);
+                commitBuilder.commit();
+            }
+
+            final FSFS fsfs = new FSFS(repositoryRoot);
+            fsfs.open();
+            try {
+                // current looks unchanged, so cached revision 1 is trusted by readers.
+                final File currentFile = fsfs.getCurrentFile();
+                final String current = SVNFileUtil.readFile(currentFile);
+                final long lastModified = System.currentTimeMillis() - 10 * FSYoungestRevision.TIMESTAMP_GRANULARITY;
+                SVNFileUtil.writeToFile(currentFile, current.replace('2', '1'), "US-ASCII");
+                Assert.assertTrue(currentFile.setLastModified(lastModified));
+                Assert.assertEquals(1, fsfs.getYoungestRevision());
+                SVNFileUtil.writeToFile(currentFile, current, "US-ASCII");
+                Assert.assertTrue(currentFile.setLastModified(lastModified));
+                Assert.assertEquals(1, fsfs.getYoungestRevision());
+
+                final CommitBuilder commitBuilder = new CommitBuilder(url);
+                commitBuilder.addFile("file2");
+                Assert.assertEquals(3, commitBuilder.commit().getNewRevision());
+                Assert.assertEquals(3, fsfs.getYoungestRevision());
+                Assert.assertEquals(SVNNodeKind.FILE, fsfs.createRevisionRoot(2).checkNodeKind("file1"));
+                Assert.assertEquals(SVNNodeKind.FILE, fsfs.createRevisionRoot(3).checkNodeKind("file2"));
+            } finally {
+                fsfs.close();
+            }
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    private String getTestName() {
+        return "FSYoungestRevisionTest";
+    }
+}
@@ -15,15 +15,23 @@ import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
 import org.tmatesoft.svn.core.io.SVNRepository;
 import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
 import org.tmatesoft.svn.core.wc.SVNClientManager;
+import org.tmatesoft.svn.core.wc.SVNEvent;
 import org.tmatesoft.svn.core.wc.SVNRevision;
+import org.tmatesoft.svn.core.wc.admin.ISVNAdminEventHandler;
 import org.tmatesoft.svn.core.wc.admin.ISVNChangeEntryHandler;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEvent;
+import org.tmatesoft.svn.core.wc.admin.SVNAdminEventAction;
 import org.tmatesoft.svn.core.wc.admin.SVNChangeEntry;
 import org.tmatesoft.svn.core.wc.admin.SVNLookClient;
 import org.tmatesoft.svn.core.wc2.SvnGetProperties;
 import org.tmatesoft.svn.core.wc2.SvnOperationFactory;
 import org.tmatesoft.svn.core.wc2.SvnTarget;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 public class PackedRevPropsTest {
 
@@ -65,6 +73,78 @@ public class PackedRevPropsTest {
         }
     }
 
+    @Test
+    public void testPackFSFSRepositoryConcurrently() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testPackFSFSRepositoryConcurrently", options);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true,
+                    false, false, false, false, false, true);
+
+            updateMaxFilesPerDirectory(repositoryRoot);
+
+            for (int i = 0; i < 35; i++) {
+                createCommitThatAddsFile(url, "file" + i);
+            }
+            final SVNRepository svnRepository = SVNRepositoryFactory.create(url);
+            try {
+                for (int i = 0; i <= 35; i++) {
+                    svnRepository.setRevisionPropertyValue(i, "test" + i, SVNPropertyValue.create("value" + i));
+                }
+                final List<Long> packedShards = new ArrayList<Long>();
+                final List<String> events = new ArrayList<String>();
+                final Thread callingThread = Thread.currentThread();
+                final ISVNAdminEventHandler eventHandler = new ISVNAdminEventHandler() {
+                    public void handleAdminEvent(SVNAdminEvent event, double progress) {
+                        Assert.assertSame(callingThread, Thread.currentThread());
+                        if (event.getAction() == SVNAdminEventAction.PACK_END) {
+                            packedShards.add(event.getShard());
+                        }
+                        events.add((event.getAction() == SVNAdminEventAction.PACK_START ? "start " : "end ") + event.getShard());
+                    }
+                    public void handleEvent(SVNEvent event, double progress) {
+                    }
+                    public void checkCancelled() {
+                        Assert.assertSame(callingThread, Thread.currentThread());
+                    }
+                };
+                final FSFS fsfs = new FSFS(repositoryRoot);
+                fsfs.open();
+                new FSPacker(eventHandler, 3).pack(fsfs);
+                Assert.assertEquals(30, fsfs.getMinUnpackedRev());
+                for (long shard = 0; shard < 3; shard++) {
+                    Assert.assertTrue(new File(fsfs.getDBRevsDir(), shard + FSFS.PACK_EXT).isDirectory());
+                    Assert.assertFalse(new File(fsfs.getDBRevsDir(), String.valueOf(shard)).exists());
+                    Assert.assertFalse(new File(fsfs.getDBRevsDir(), shard + FSFS.PACK_EXT + ".tmp").exists());
+                }
+                fsfs.close();
+                Assert.assertEquals(3, packedShards.size());
+                for (int i = 0; i < 3; i++) {
+                    Assert.assertEquals(i, packedShards.get(i).longValue());
+                }
+                // the same events as sent by a single worker: revisions, revision properties and end of every shard.
+                Assert.assertEquals(Arrays.asList("start 0", "start 0", "end 0", "start 1", "start 1", "end 1", "start 2", "start 2", "end 2"), events);
+
+                for (int i = 0; i <= 35; i++) {
+                    final SVNPropertyValue propertyValue = svnRepository.getRevisionPropertyValue(i, "test" + i);
+                    Assert.assertEquals("value" + i, SVNPropertyValue.getPropertyAsString(propertyValue));
+                }
+                for (int i = 0; i < 35; i++) {
+                    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+                    svnRepository.getFile("file" + i, i + 1, null, outputStream);
+                    Assert.assertEquals(0, outputStream.size());
+                }
+            } finally {
+                svnRepository.closeSession();
+            }
+
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
     @Test
     public void testPackAndCompressFSFSRepository() throws Exception {
         final TestOptions options = TestOptions.getInstance();
@@ -0,0 +1,243 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaReader;
+import org.tmatesoft.svn.core.internal.delta.SVNDiffCompression;
+import org.tmatesoft.svn.core.internal.delta.SVNLZ4;
+import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.io.fs.FSFS;
+import org.tmatesoft.svn.core.internal.io.fs.FSRepresentation;
+import org.tmatesoft.svn.core.internal.io.fs.FSRevisionNode;
+import org.tmatesoft.svn.core.internal.wc.SVNFileUtil;
+import org.tmatesoft.svn.core.io.ISVNDeltaConsumer;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+public class SVNDiff2Test {
+
+    @Test
+    public void testLZ4RoundTrip() throws Exception {
+        final Random random = new Random(11);
+        for (int i = 0; i < 300; i++) {
+            final byte[] data = createData(random, i < 40 ? i : random.nextInt(200000), i % 4);
+            final byte[] compressed = new byte[data.length + data.length / 255 + 16];
+            final int compressedLength = SVNLZ4.compress(data, 0, data.length, compressed, 0, compressed.length);
+            Assert.assertTrue("case " + i, compressedLength > 0);
+
+            final byte[] decompressed = new byte[data.length];
+            SVNLZ4.decompress(compressed, 0, compressedLength, decompressed, 0, decompressed.length);
+            Assert.assertTrue("case " + i, Arrays.equals(data, decompressed));
+        }
+        final byte[] zeros = new byte[100000];
+        final byte[] compressed = new byte[zeros.length];
+        Assert.assertTrue(SVNLZ4.compress(zeros, 0, zeros.length, compressed, 0, compressed.length) < 1000);
+    }
+
+    @Test
+    public void testLZ4BlockFormat() throws Exception {
+        // "abcd" literals, a 12 bytes long overlapping match at distance 4 and "12345" last literals.
+        final byte[] block = new byte[] {0x48, 'a', 'b', 'c', 'd', 0x04, 0x00, 0x50, '1', '2', '3', '4', '5'};
+        final byte[] decompressed = new byte[21];
+        SVNLZ4.decompress(block, 0, block.length, decompressed, 0, decompressed.length);
+        Assert.assertEquals("abcdabcdabcdabcd12345", new String(decompressed, "US-ASCII"));
+
+        try {
+            SVNLZ4.decompress(block, 0, block.length, new byte[22], 0, 22);
+            Assert.fail("Wrong original length is not detected");
+        } catch (IOException e) {
+        }
+        final byte[] corrupted = block.clone();
+        corrupted[5] = 0x10;
+        try {
+            SVNLZ4.decompress(corrupted, 0, corrupted.length, decompressed, 0, decompressed.length);
+            Assert.fail("Match beyond the start of data is not detected");
+        } catch (IOException e) {
+        }
+        try {
+            SVNLZ4.decompress(block, 0, 6, decompressed, 0, decompressed.length);
+            Assert.fail("Truncated data is not detected");
+        } catch (IOException e) {
+        }
+    }
+
+    @Test
+    public void testSvndiff2WindowsAreReadBack() throws Exception {
+        final Random random = new Random(3);
+        final SVNXDeltaAlgorithm algorithm = new SVNXDeltaAlgorithm();
+        for (int kind = 0; kind < 4; kind++) {
+            final byte[] source = createData(random, 100 * 1024, kind);
+            final byte[] target = createData(random, 100 * 1024, kind);
+            System.arraycopy(source, 1000, target, 30000, 40000);
+
+            algorithm.reset();
+            algorithm.computeDelta(source, source.length, target, target.length);
+            final SVNDiffWindow window = new SVNDiffWindow(0, source.length, target.length,
+                    algorithm.getInstructionsLength(), algorithm.getNewDataLength());
+            window.setData(algorithm.getData());
+
+            final ByteArrayOutputStream svndiff = new ByteArrayOutputStream();
+            window.writeTo(svndiff, true, 2);
+            final byte[] bytes = svndiff.toByteArray();
+            Assert.assertTrue(Arrays.equals(SVNDiffWindow.SVN2_HEADER, Arrays.copyOf(bytes, 4)));
+
+            final byte[][] applied = new byte[1][];
+            final ISVNDeltaConsumer consumer = new ISVNDeltaConsumer() {
+                public void applyTextDelta(String path, String baseChecksum) {
+                }
+                public OutputStream textDeltaChunk(String path, SVNDiffWindow diffWindow) {
+                    applied[0] = new byte[diffWindow.getTargetViewLength()];
+                    diffWindow.apply(source, applied[0]);
+                    return null;
+                }
+                public void textDeltaEnd(String path) {
+                }
+            };
+            final SVNDeltaReader reader = new SVNDeltaReader();
+            for (int offset = 0; offset < bytes.length; offset += 1000) {
+                reader.nextWindow(bytes, offset, Math.min(1000, bytes.length - offset), "file", consumer);
+            }
+            Assert.assertTrue("kind " + kind, Arrays.equals(target, applied[0]));
+        }
+    }
+
+    @Test
+    public void testIncompressibleSectionIsStoredAsIs() throws Exception {
+        final byte[] data = createData(new Random(1), 1000, 0);
+        final ByteBuffer section = SVNDiffCompression.compress(data, 0, data.length, 2);
+        Assert.assertEquals(data.length + 2, section.remaining());
+
+        final ByteBuffer empty = SVNDiffCompression.compress(data, 0, 0, 2);
+        Assert.assertEquals(1, empty.remaining());
+        Assert.assertEquals(0, empty.get());
+    }
+
+    @Test
+    public void testFormat8RepositoryUsesSvndiff2() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testFormat8RepositoryUsesSvndiff2", options);
+        try {
+            final File defaultRepositoryRoot = sandbox.createDirectory("svn.repo.default");
+            SVNRepositoryFactory.createLocalRepository(defaultRepositoryRoot, null, true, false, false, false, false, false, true);
+            assertFormat(defaultRepositoryRoot, FSFS.DB_FORMAT_PRE_110, 1);
+
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, null, true, false, false, false, false, false, false, true);
+            assertFormat(repositoryRoot, FSFS.DB_FORMAT, 1);
+
+            final File config = new File(repositoryRoot, "db/" + FSFS.PATH_CONFIG);
+            SVNFileUtil.writeToFile(config, "[deltification]\ncompression = lz4\n", "US-ASCII");
+            assertFormat(repositoryRoot, FSFS.DB_FORMAT, 2);
+
+            final byte[] contents1 = createData(new Random(5), 300000, 2);
+            final byte[] contents2 = contents1.clone();
+            for (int i = 0; i < contents2.length; i += 10000) {
+                contents2[i] ^= 1;
+            }
+            commit(url, contents1, true);
+            commit(url, contents2, false);
+
+            Assert.assertTrue(contains(readFile(new File(repositoryRoot, "db/revs/0/1")), "DELTA\nSVN\2"));
+            Assert.assertTrue(contains(readFile(new File(repositoryRoot, "db/revs/0/2")), "SVN\2"));
+            assertContents(url, 1, contents1);
+            assertContents(url, 2, contents2);
+
+            SVNFileUtil.writeToFile(config, "[deltification]\ncompression = zlib-5\n", "US-ASCII");
+            final byte[] contents3 = contents2.clone();
+            contents3[0] ^= 1;
+            commit(url, contents3, false);
+            Assert.assertTrue(contains(readFile(new File(repositoryRoot, "db/revs/0/3")), "SVN\1"));
+            assertContents(url, 3, contents3);
+        } finally {
+            sandbox.dispose();
+        }
+    }
+
+    @Test
+    public void testRepresentationWithOptionalValues() throws Exception {
+        final FSRevisionNode revNode = new FSRevisionNode();
+        FSRevisionNode.parseRepresentationHeader("2 16 120 300 0123456789abcdef0123456789abcdef - -", revNode, null, true, false);
+        final FSRepresentation representation = revNode.getTextRepresentation();
+        Assert.assertEquals(2, representation.getRevision());
+        Assert.assertEquals(300, representation.getExpandedSize());
+        Assert.assertNull(representation.getSHA1HexDigest());
+        Assert.assertNull(representation.getUniquifier());
+    }
+
+    private void assertFormat(File repositoryRoot, int dbFormat, int svndiffVersion) throws Exception {
+        final FSFS fsfs = new FSFS(repositoryRoot);
+        fsfs.open();
+        try {
+            Assert.assertEquals(dbFormat, fsfs.getDBFormat());
+            Assert.assertEquals(svndiffVersion, fsfs.getSVNDiffVersion());
+        } finally {
+            fsfs.close();
+        }
+    }
+
+    private void commit(SVNURL url, byte[] contents, boolean add) throws Exception {
+        final CommitBuilder commitBuilder = new CommitBuilder(url);
+        if (add) {
+            commitBuilder.addFile("file", contents);
+        } else {
+            commitBuilder.changeFile("file", contents);
+        }
+        commitBuilder.commit();
+    }
+
+    private void assertContents(SVNURL url, long revision, byte[] expected) throws Exception {
+        final SVNRepository repository = SVNRepositoryFactory.create(url);
+        try {
+            final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+            repository.getFile("file", revision, null, contents);
+            Assert.assertTrue(Arrays.equals(expected, contents.toByteArray()));
+        } finally {
+            repository.closeSession();
+        }
+    }
+
+    private static byte[] readFile(File file) throws Exception {
+        return SVNFileUtil.readFully(file);
+    }
+
+    private static boolean contains(byte[] data, String text) throws Exception {
+        return new String(data, "ISO-8859-1").contains(text);
+    }
+
+    private static byte[] createData(Random random, int length, int kind) {
+        final byte[] data = new byte[length];
+        if (kind == 0) {
+            random.nextBytes(data);
+        } else if (kind == 1) {
+            for (int i = 0; i < length; i++) {
+                data[i] = (byte) ('a' + random.nextInt(4));
+            }
+        } else if (kind == 2) {
+            random.nextBytes(data);
+            for (int i = 0; i + 1000 < length; i += 2000) {
+                Arrays.fill(data, i, i + 1000, (byte) (i / 2000));
+            }
+        } else {
+            random.nextBytes(data);
+            for (int i = 64; i + 64 < length; i += 128) {
+                System.arraycopy(data, random.nextInt(i), data, i, 64);
+            }
+        }
+        return data;
+    }
+
+    private String getTestName() {
+        return "SVNDiff2Test";
+    }
+}
@@ -0,0 +1,207 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.SVNURL;
+import org.tmatesoft.svn.core.internal.delta.SVNDiffCompression;
+import org.tmatesoft.svn.core.internal.delta.SVNDiffWindowWriter;
+import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
+import org.tmatesoft.svn.core.io.SVNRepository;
+import org.tmatesoft.svn.core.io.SVNRepositoryFactory;
+import org.tmatesoft.svn.core.io.diff.SVNDiffInstruction;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+
+public class SVNDiffCompressionTest {
+
+    @Test
+    public void testCompressionIsIdenticalToDeflaterOutputStream() throws Exception {
+        final Random random = new Random(23);
+        for (int i = 0; i < 200; i++) {
+            final byte[] data = createData(random, i < 20 ? i * 40 : random.nextInt(300000), i % 3);
+            final int offset = data.length > 0 ? random.nextInt(Math.min(data.length, 100)) : 0;
+            final int length = data.length - offset;
+
+            final ByteBuffer compressed = SVNDiffCompression.compress(data, offset, length);
+            final ByteBuffer expected = compressWithStream(data, offset, length);
+            Assert.assertEquals("case " + i, expected, compressed);
+
+            final ByteBuffer lengthBuffer = compressed.duplicate();
+            final int originalLength = readInt(lengthBuffer);
+            Assert.assertEquals(length, originalLength);
+            final byte[] decompressed = new byte[length];
+            if (lengthBuffer.remaining() == length) {
+                lengthBuffer.get(decompressed);
+            } else {
+                SVNDiffCompression.decompress(lengthBuffer.array(), lengthBuffer.position(), lengthBuffer.remaining(), decompressed, 0, length);
+            }
+            Assert.assertTrue("case " + i, Arrays.equals(Arrays.copyOfRange(data, offset, data.length), decompressed));
+        }
+    }
+
+    @Test
+    public void testCorruptedDataIsRejected() throws Exception {
+        final byte[] data = createData(new Random(1), 10000, 1);
+        final ByteBuffer compressed = SVNDiffCompression.compress(data, 0, data.length);
+        Assert.assertEquals(data.length, readInt(compressed));
+        Assert.assertTrue(compressed.remaining() < data.length);
+        final byte[] decompressed = new byte[data.length];
+        try {
+            SVNDiffCompression.decompress(compressed.array(), compressed.position(), compressed.remaining() / 2, decompressed, 0, data.length);
+            Assert.fail("Truncated data is not detected");
+        } catch (IOException e) {
+        }
+        final byte[] corrupted = compressed.array().clone();
+        corrupted[compressed.position()] ^= 0x55;
+        try {
+            SVNDiffCompression.decompress(corrupted, compressed.position(), compressed.remaining(), decompressed, 0, data.length);
+            Assert.fail("Corrupted data is not detected");
+        } catch (IOException e) {
+        }
+        SVNDiffCompression.decompress(compressed.array(), compressed.position(), compressed.remaining(), decompressed, 0, data.length);
+        Assert.assertTrue(Arrays.equals(data, decompressed));
+    }
+
+    @Test
+    public void testParallelWriterKeepsWindowsOrder() throws Exception {
+        final Random random = new Random(5);
+        final SVNXDeltaAlgorithm algorithm = new SVNXDeltaAlgorithm();
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        final ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        SVNDiffWindowWriter.setThreadsCount(3);
+        try {
+            final SVNDiffWindowWriter writer = new SVNDiffWindowWriter(actual, 1);
+            for (int i = 0; i < 40; i++) {
+                final byte[] source = createData(random, 100 * 1024, i % 3);
+                final byte[] target = createData(random, 100 * 1024, i % 3);
+                System.arraycopy(source, 0, target, 0, 50 * 1024);
+
+                algorithm.reset();
+                algorithm.computeDelta(source, source.length, target, target.length);
+                final SVNDiffWindow window = new SVNDiffWindow(i * 100L * 1024, source.length, target.length,
+                        algorithm.getInstructionsLength(), algorithm.getNewDataLength());
+                window.setData(algorithm.getData());
+
+                window.writeTo(expected, i == 0, true);
+                writer.write(window, i == 0);
+                if (i == 20) {
+                    writer.write(SVNDiffWindow.EMPTY, false);
+                    SVNDiffWindow.EMPTY.writeTo(expected, false, true);
+                }
+            }
+            writer.flush();
+        } finally {
+            SVNDiffWindowWriter.setThreadsCount(0);
+        }
+        Assert.assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+    }
+
+    @Test
+    public void testCommitWithParallelCompression() throws Exception {
+        final TestOptions options = TestOptions.getInstance();
+
+        final Sandbox sandbox = Sandbox.createWithCleanup(getTestName() + ".testCommitWithParallelCompression", options);
+        SVNDiffWindowWriter.setThreadsCount(4);
+        try {
+            final File repositoryRoot = sandbox.createDirectory("svn.repo");
+            final SVNURL url = SVNRepositoryFactory.createLocalRepository(repositoryRoot, true, false);
+
+            final byte[] contents1 = createData(new Random(7), 3 * 1024 * 1024 + 17, 2);
+            final byte[] contents2 = contents1.clone();
+            for (int i = 0; i < contents2.length; i += 100000) {
+                contents2[i] ^= 1;
+            }
+
+            final CommitBuilder commitBuilder1 = new CommitBuilder(url);
+            commitBuilder1.addFile("file", contents1);
+            commitBuilder1.commit();
+
+            final CommitBuilder commitBuilder2 = new CommitBuilder(url);
+            commitBuilder2.changeFile("file", contents2);
+            commitBuilder2.commit();
+
+            final SVNRepository repository = SVNRepositoryFactory.create(url);
+            try {
+                Assert.assertTrue(Arrays.equals(contents1, getFile(repository, 1)));
+                Assert.assertTrue(Arrays.equals(contents2, getFile(repository, 2)));
+            } finally {
+                repository.closeSession();
+            }
+        } finally {
+            SVNDiffWindowWriter.setThreadsCount(0);
+            sandbox.dispose();
+        }
+    }
+
+    private byte[] getFile(SVNRepository repository, long revision) throws Exception {
+        final ByteArrayOutputStream contents = new ByteArrayOutputStream();
+        repository.getFile("file", revision, null, contents);
+        return contents.toByteArray();
+    }
+
+    private static byte[] createData(Random random, int length, int kind) {
+        final byte[] data = new byte[length];
+        if (kind == 0) {
+            random.nextBytes(data);
+        } else if (kind == 1) {
+            for (int i = 0; i < length; i++) {
+                data[i] = (byte) ('a' + random.nextInt(4));
+            }
+        } else {
+            random.nextBytes(data);
+            for (int i = 0; i + 1000 < length; i += 2000) {
+                Arrays.fill(data, i, i + 1000, (byte) (i / 2000));
+            }
+        }
+        return data;
+    }
+
+    private static ByteBuffer compressWithStream(byte[] src, int offset, int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.allocate(length * 2 + 2);
+        SVNDiffInstruction.writeInt(buffer, length);
+        if (length < 512) {
+            buffer.put(src, offset, length);
+        } else {
+            final DeflaterOutputStream out = new DeflaterOutputStream(new OutputStream() {
+                public void write(int b) {
+                    buffer.put((byte) (b & 0xFF));
+                }
+                public void write(byte[] b, int off, int len) {
+                    buffer.put(b, off, len);
+                }
+            });
+            out.write(src, offset, length);
+            out.finish();
+            if (buffer.position() >= length) {
+                buffer.clear();
+                SVNDiffInstruction.writeInt(buffer, length);
+                buffer.put(src, offset, length);
+            }
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static int readInt(ByteBuffer buffer) {
+        int result = 0;
+        while (true) {
+            final byte b = buffer.get();
+            result = (result << 7) | (b & 0x7F);
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+    }
+
+    private String getTestName() {
+        return "SVNDiffCompressionTest";
+    }
+}
@@ -0,0 +1,186 @@
+package org.tmatesoft.svn.test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
+import org.tmatesoft.svn.core.io.diff.SVNDiffInstruction;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindow;
+import org.tmatesoft.svn.core.io.diff.SVNDiffWindowApplyBaton;
+
+public class SVNDiffWindowApplyTest {
+
+    @Test
+    public void testApplyToHeapAndDirectBuffers() throws Exception {
+        final Random random = new Random(7);
+        final SVNXDeltaAlgorithm algorithm = new SVNXDeltaAlgorithm();
+        for (int i = 0; i < 50; i++) {
+            final byte[] source = createData(random, random.nextInt(50000));
+            final byte[] target = mutate(random, source);
+
+            algorithm.reset();
+            algorithm.computeDelta(source, source.length, target, target.length);
+            final SVNDiffWindow window = new SVNDiffWindow(0, source.length, target.length,
+                    algorithm.getInstructionsLength(), algorithm.getNewDataLength());
+            window.setData(algorithm.getData());
+
+            final byte[] expected = applyWithIterator(window, source);
+            Assert.assertTrue("case " + i, Arrays.equals(target, expected));
+
+            final byte[] heapTarget = new byte[target.length];
+            Assert.assertEquals(target.length, window.apply(source, heapTarget));
+            Assert.assertTrue("case " + i, Arrays.equals(target, heapTarget));
+
+            final ByteBuffer directSource = ByteBuffer.allocateDirect(source.length + 3);
+            directSource.position(3);
+            directSource.put(source);
+            directSource.position(3);
+            final ByteBuffer directTarget = ByteBuffer.allocateDirect(target.length + 5);
+            directTarget.position(5);
+            Assert.assertEquals(target.length, window.apply(directSource, directTarget));
+            Assert.assertEquals(target.length + 5, directTarget.position());
+            Assert.assertEquals(3, directSource.position());
+
+            final byte[] directResult = new byte[target.length];
+            directTarget.position(5);
+            directTarget.get(directResult);
+            Assert.assertTrue("case " + i, Arrays.equals(target, directResult));
+
+            Assert.assertEquals(containsSourceCopies(window), window.hasCopyFromSourceInstructions());
+        }
+    }
+
+    @Test
+    public void testOverlappingTargetCopy() throws Exception {
+        // "ab" new data followed by a 10 bytes copy from target offset 0, which repeats the pattern.
+        final byte[] data = new byte[] {(byte) 0x82, 0x4A, 0x00, 'a', 'b'};
+        final SVNDiffWindow window = new SVNDiffWindow(0, 0, 12, 3, 2);
+        window.setData(ByteBuffer.wrap(data));
+
+        final byte[] heapTarget = new byte[12];
+        window.apply(new byte[0], heapTarget);
+        Assert.assertEquals("abababababab", new String(heapTarget, "US-ASCII"));
+
+        final ByteBuffer directTarget = ByteBuffer.allocateDirect(12);
+        window.apply(ByteBuffer.allocateDirect(0), directTarget);
+        directTarget.flip();
+        final byte[] directResult = new byte[12];
+        directTarget.get(directResult);
+        Assert.assertEquals("abababababab", new String(directResult, "US-ASCII"));
+        Assert.assertFalse(window.hasCopyFromSourceInstructions());
+    }
+
+    @Test
+    public void testApplyBatonReusesSourceView() throws Exception {
+        final Random random = new Random(13);
+        final byte[] source = createData(random, 30000);
+        final byte[] target = mutate(random, source);
+        final SVNXDeltaAlgorithm algorithm = new SVNXDeltaAlgorithm();
+        algorithm.computeDelta(source, source.length, target, target.length);
+
+        final ByteArrayOutputStream result = new ByteArrayOutputStream();
+        final SVNDiffWindowApplyBaton baton = SVNDiffWindowApplyBaton.create(new ByteArrayInputStream(source), result, null);
+        // the same source view is used by both windows.
+        for (int i = 0; i < 2; i++) {
+            final SVNDiffWindow window = new SVNDiffWindow(0, source.length, target.length,
+                    algorithm.getInstructionsLength(), algorithm.getNewDataLength());
+            window.setData(algorithm.getData());
+            window.apply(baton);
+        }
+        baton.close();
+
+        final byte[] expected = new byte[target.length * 2];
+        System.arraycopy(target, 0, expected, 0, target.length);
+        System.arraycopy(target, 0, expected, target.length, target.length);
+        Assert.assertTrue(Arrays.equals(expected, result.toByteArray()));
+    }
+
+    @Test
+    public void testLoadDiffInstructionsReusesObjects() throws Exception {
+        final byte[] data = new byte[] {(byte) 0x82, 0x4A, 0x00, 'a', 'b'};
+        final SVNDiffWindow window = new SVNDiffWindow(0, 0, 12, 3, 2);
+        window.setData(ByteBuffer.wrap(data));
+
+        final SVNDiffInstruction reused = new SVNDiffInstruction();
+        SVNDiffInstruction[] instructions = window.loadDiffInstructions(new SVNDiffInstruction[] {reused});
+        Assert.assertEquals(2, window.getInstructionsCount());
+        Assert.assertSame(reused, instructions[0]);
+        Assert.assertEquals(SVNDiffInstruction.COPY_FROM_NEW_DATA, instructions[0].type);
+        Assert.assertEquals(2, instructions[0].length);
+        Assert.assertEquals(SVNDiffInstruction.COPY_FROM_TARGET, instructions[1].type);
+        Assert.assertEquals(10, instructions[1].length);
+        Assert.assertEquals(0, instructions[1].offset);
+
+        instructions = window.loadDiffInstructions(new SVNDiffInstruction[0]);
+        Assert.assertEquals(2, window.getInstructionsCount());
+        Assert.assertNotNull(instructions[1]);
+    }
+
+    private static byte[] applyWithIterator(SVNDiffWindow window, byte[] source) {
+        final byte[] target = new byte[window.getTargetViewLength()];
+        final byte[] newData = new byte[window.getNewDataLength()];
+        final ByteBuffer newDataBuffer = ByteBuffer.wrap(newData);
+        window.writeNewData(newDataBuffer, 0, newData.length);
+        int tpos = 0;
+        for (Iterator instructions = window.instructions(); instructions.hasNext();) {
+            final SVNDiffInstruction instruction = (SVNDiffInstruction) instructions.next();
+            for (int i = 0; i < instruction.length; i++) {
+                if (instruction.type == SVNDiffInstruction.COPY_FROM_SOURCE) {
+                    target[tpos + i] = source[instruction.offset + i];
+                } else if (instruction.type == SVNDiffInstruction.COPY_FROM_TARGET) {
+                    target[tpos + i] = target[instruction.offset + i];
+                } else {
+                    target[tpos + i] = newData[instruction.offset + i];
+                }
+            }
+            tpos += instruction.length;
+        }
+        return target;
+    }
+
+    private static boolean containsSourceCopies(SVNDiffWindow window) {
+        for (Iterator instructions = window.instructions(); instructions.hasNext();) {
+            if (((SVNDiffInstruction) instructions.next()).type == SVNDiffInstruction.COPY_FROM_SOURCE) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static byte[] mutate(Random random, byte[] source) {
+        final ByteArrayOutputStream target = new ByteArrayOutputStream();
+        int position = 0;
+        while (position < source.length) {
+            final int length = Math.min(source.length - position, 1 + random.nextInt(2000));
+            if (random.nextInt(4) == 0) {
+                final byte[] inserted = createData(random, random.nextInt(300));
+                target.write(inserted, 0, inserted.length);
+            } else if (random.nextInt(4) == 0 && target.size() > 100) {
+                // repeat recently written bytes.
+                final byte[] written = target.toByteArray();
+                target.write(written, written.length - 100, 100);
+            }
+            target.write(source, position, length);
+            position += length + random.nextInt(50);
+        }
+        return target.toByteArray();
+    }
+
+    private static byte[] createData(Random random, int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) ('a' + random.nextInt(random.nextBoolean() ? 3 : 26));
+        }
+        return data;
+    }
+
+    private String getTestName() {
+        return "SVNDiffWindowApplyTest";
+    }
+}
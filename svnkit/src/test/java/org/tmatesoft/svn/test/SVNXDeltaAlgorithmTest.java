@@ -0,0 +1,308 @@
+package org.tmatesoft.svn.test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.tmatesoft.svn.core.internal.delta.SVNDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.delta.SVNXDeltaAlgorithm;
+import org.tmatesoft.svn.core.internal.util.SVNHashMap;
+
+public class SVNXDeltaAlgorithmTest {
+
+    private static final int WINDOW_SIZE = 100 * 1024;
+
+    @Test
+    public void testDeltaIsIdenticalToReferenceImplementation() throws Exception {
+        final Random random = new Random(20121017L);
+        final SVNXDeltaAlgorithm algorithm = new SVNXDeltaAlgorithm();
+        final ReferenceXDeltaAlgorithm referenceAlgorithm = new ReferenceXDeltaAlgorithm();
+
+        for (int i = 0; i < 300; i++) {
+            final byte[] source = createSource(random, i);
+            final byte[] target = createTarget(random, source, i);
+            assertDeltasEqual("case " + i, algorithm, referenceAlgorithm, source, source.length, target, target.length);
+        }
+    }
+
+    @Test
+    public void testDeltaOfPartiallyFilledBuffers() throws Exception {
+        final Random random = new Random(17L);
+        final SVNXDeltaAlgorithm algorithm = new SVNXDeltaAlgorithm();
+        final ReferenceXDeltaAlgorithm referenceAlgorithm = new ReferenceXDeltaAlgorithm();
+
+        final byte[] source = new byte[WINDOW_SIZE];
+        random.nextBytes(source);
+        final byte[] target = new byte[WINDOW_SIZE];
+        for (int i = 0; i < 50; i++) {
+            final int sourceLength = random.nextInt(WINDOW_SIZE);
+            final int targetLength = random.nextInt(WINDOW_SIZE);
+            final int offset = random.nextInt(WINDOW_SIZE);
+            for (int j = 0; j < targetLength; j++) {
+                target[j] = source[(offset + j) % WINDOW_SIZE];
+            }
+            target[random.nextInt(WINDOW_SIZE)] ^= 1;
+            assertDeltasEqual("buffer " + i, algorithm, referenceAlgorithm, source, sourceLength, target, targetLength);
+        }
+    }
+
+    private void assertDeltasEqual(String message, SVNDeltaAlgorithm algorithm, SVNDeltaAlgorithm referenceAlgorithm,
+                                   byte[] source, int sourceLength, byte[] target, int targetLength) {
+        algorithm.reset();
+        referenceAlgorithm.reset();
+        algorithm.computeDelta(source, sourceLength, target, targetLength);
+        referenceAlgorithm.computeDelta(source, sourceLength, target, targetLength);
+
+        Assert.assertEquals(message, referenceAlgorithm.getInstructionsLength(), algorithm.getInstructionsLength());
+        Assert.assertEquals(message, referenceAlgorithm.getNewDataLength(), algorithm.getNewDataLength());
+        Assert.assertTrue(message, Arrays.equals(toArray(referenceAlgorithm.getData()), toArray(algorithm.getData())));
+    }
+
+    private static byte[] createSource(Random random, int i) {
+        final int kind = i % 5;
+        final int length = i < 10 ? i * 13 : random.nextInt(WINDOW_SIZE + 1);
+        final byte[] source = new byte[length];
+        if (kind == 0) {
+            random.nextBytes(source);
+        } else if (kind == 1) {
+            // text-like data with repeated lines
+            final String[] words = {"public", "void", "return", "int", "{", "}", ";", "\n", "    ", "svn"};
+            for (int j = 0; j < length; j++) {
+                final String word = words[(j / 7 + random.nextInt(2)) % words.length];
+                source[j] = (byte) word.charAt(j % word.length());
+            }
+        } else if (kind == 2) {
+            // long runs of the same byte make many blocks share a checksum
+            for (int j = 0; j < length; j++) {
+                source[j] = (byte) ((j / 1000) % 3);
+            }
+        } else if (kind == 3) {
+            // periodic data with a period that is not a multiple of the block size
+            for (int j = 0; j < length; j++) {
+                source[j] = (byte) (j % 61);
+            }
+        } else {
+            random.nextBytes(source);
+            for (int j = 0; j + 128 < length; j += 256) {
+                System.arraycopy(source, 0, source, j, 128);
+            }
+        }
+        return source;
+    }
+
+    private static byte[] createTarget(Random random, byte[] source, int i) {
+        final int kind = (i / 5) % 6;
+        if (source.length == 0 || kind == 0) {
+            final byte[] target = new byte[random.nextInt(i < 20 ? 130 : WINDOW_SIZE)];
+            random.nextBytes(target);
+            return target;
+        }
+        if (kind == 1) {
+            return source.clone();
+        }
+        final ByteBuffer target = ByteBuffer.allocate(source.length * 2 + 4096);
+        int position = 0;
+        while (position < source.length && target.remaining() > 4096) {
+            final int length = Math.min(source.length - position, 1 + random.nextInt(kind == 5 ? 64 : 4096));
+            final int operation = random.nextInt(kind == 2 ? 2 : 4);
+            if (operation == 0) {
+                target.put(source, position, length);
+            } else if (operation == 1) {
+                target.put(source, position, length);
+                target.put(position % 2 == 0 ? (byte) 0 : (byte) random.nextInt());
+            } else if (operation == 2) {
+                final byte[] inserted = new byte[random.nextInt(300)];
+                random.nextBytes(inserted);
+                target.put(inserted);
+            } else {
+                final int from = random.nextInt(source.length);
+                target.put(source, from, Math.min(length, source.length - from));
+            }
+            position += operation == 3 ? 0 : length;
+            if (operation == 3) {
+                position += random.nextInt(200);
+            }
+        }
+        final byte[] result = new byte[Math.min(target.position(), WINDOW_SIZE)];
+        System.arraycopy(target.array(), 0, result, 0, result.length);
+        return result;
+    }
+
+    private static byte[] toArray(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.get(bytes);
+        return bytes;
+    }
+
+    /**
+     * Original implementation of the xdelta algorithm, kept to verify that the output does not change.
+     */
+    private static class ReferenceXDeltaAlgorithm extends SVNDeltaAlgorithm {
+
+        private static final int MATCH_BLOCK_SIZE = 64;
+
+        public void computeDelta(byte[] a, int aLength, byte[] b, int bLength) {
+            if (bLength < MATCH_BLOCK_SIZE) {
+                copyFromNewData(b, 0, bLength);
+                return;
+            }
+            PseudoAdler32 bAdler = new PseudoAdler32();
+            Map aMatchesTable = createMatchesTable(a, aLength, MATCH_BLOCK_SIZE, bAdler);
+            bAdler.reset();
+            bAdler.add(b, 0, MATCH_BLOCK_SIZE);
+
+            int lo = 0;
+            int size = bLength;
+            Match previousInsertion = null;
+
+            while(lo < size) {
+                Match match = findMatch(aMatchesTable, bAdler, a, aLength, b, bLength, lo, previousInsertion);
+                if (match == null) {
+                    if (previousInsertion != null && previousInsertion.length > 0) {
+                        previousInsertion.length++;
+                    } else {
+                        previousInsertion = new Match(lo, 1);
+                    }
+                } else {
+                    if (previousInsertion != null && previousInsertion.length > 0) {
+                        copyFromNewData(b, previousInsertion.position, previousInsertion.length);
+                        previousInsertion = null;
+                    }
+                    copyFromSource(match.position, match.length);                
+                }
+                int advance = match != null ? match.advance : 1;
+                for (int next = lo; next < lo + advance; next++) {
+                    bAdler.remove(b[next]);
+                    if (next + MATCH_BLOCK_SIZE < bLength) {
+                        bAdler.add(b[next + MATCH_BLOCK_SIZE]);
+                    }
+                }
+                lo += advance;
+            }
+            if (previousInsertion != null && previousInsertion.length > 0) {
+                copyFromNewData(b, previousInsertion.position, previousInsertion.length);
+                previousInsertion = null;
+            }
+        }
+
+        private static Match findMatch(Map matchesTable, PseudoAdler32 checksum, byte[] a, int aLength, byte[] b, int bLength, int bPos, Match previousInsertion) {
+            Match existingMatch = (Match) matchesTable.get(new Integer(checksum.getValue()));
+            if (existingMatch == null) {
+                return null;
+            }
+            if (!equals(a, aLength, existingMatch.position, existingMatch.length, b, bLength, bPos)) {
+                return null;
+            }
+            existingMatch = new Match(existingMatch.position, existingMatch.length);
+            existingMatch.advance = existingMatch.length;
+
+            // extend forward 
+            while(existingMatch.position + existingMatch.length < aLength &&
+                    bPos + existingMatch.advance < bLength &&
+                    a[existingMatch.position + existingMatch.length] == b[bPos + existingMatch.advance]) {
+                existingMatch.length++;
+                existingMatch.advance++;
+            }
+            // extend backward
+            if (previousInsertion != null) {
+                while(existingMatch.position > 0 && bPos > 0 &&
+                        a[existingMatch.position - 1] == b[bPos -1] &&
+                        previousInsertion.length != 0) {
+                    previousInsertion.length--;
+                    bPos--;
+                    existingMatch.position--;
+                    existingMatch.length++;
+                }
+            }
+            return existingMatch;
+        }
+
+        private static Map createMatchesTable(byte[] data, int dataLength, int blockLength, PseudoAdler32 adler32) {
+            Map matchesTable = new SVNHashMap();
+            for(int i = 0; i < dataLength; i+= blockLength) {
+                int length = i + blockLength >= dataLength ? dataLength - i : blockLength;
+                adler32.add(data, i, length);
+                Integer checksum = new Integer(adler32.getValue());
+                if (!matchesTable.containsKey(checksum)) {
+                    matchesTable.put(checksum, new Match(i, length));
+                }
+                adler32.reset();
+            }
+            return matchesTable;
+        }
+
+        private static boolean equals(byte[] a, int aLength, int aPos, int length, byte[] b, int bLength, int bPos) {
+            if (aPos + length - 1 > aLength || bPos + length > bLength) {
+                return false;
+            }
+            for(int i = 0; i < length; i++) {
+                if (a[aPos + i] != b[bPos + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static class Match {
+
+            public Match(int p, int l) {
+                position = p;
+                length = l;
+            }
+
+            public int position;
+            public int length;
+            public int advance;
+        }
+
+        private static final int ADLER32_MASK = 0x0000FFFF;
+
+        private static class PseudoAdler32 {        
+
+            private int myS1;
+            private int myS2;
+            private int myLength;
+
+            public PseudoAdler32() {
+                reset();
+            }
+
+            public void add(byte b) {
+                int z = b & 0x000000FF;
+                myS1 = myS1 + z;
+                myS1 = myS1 & ADLER32_MASK;
+                myS2 = myS2 + myS1;
+                myS2 = myS2 & ADLER32_MASK;
+                myLength++;
+            }
+
+            public void remove(byte b) {
+                int z = b & 0x000000FF;
+                myS1 = myS1 - z;
+                myS1 = myS1 & ADLER32_MASK;
+                myS2 = myS2 - (myLength * z + 1);
+                myS2 = myS2 & ADLER32_MASK;
+                myLength--;
+            }
+
+            public void add(byte[] data, int offset, int length) {
+                for (int i = offset; i < offset + length; i++) {
+                    add(data[i]);
+                }
+            }
+
+            public int getValue() {
+                return (myS2 << 16) | myS1;
+            }
+
+            public void reset() {
+                myS1 = 1;
+                myS2 = 0;
+                myLength = 0;
+            }
+        }
+    }
+}